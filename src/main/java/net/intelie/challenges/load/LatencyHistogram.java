@@ -0,0 +1,153 @@
+package net.intelie.challenges.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, safe to record from many threads, in constant
+ * memory however long the run.
+ * <p>
+ * Values below 32 have a bucket each. Above that, each power of two is split
+ * into 32 buckets, so a percentile is reported with at most about 3% of
+ * error, rounded up, over the whole <code>long</code> range, in 1,888
+ * buckets.
+ */
+public final class LatencyHistogram {
+
+  /** Number of bits of the buckets within a power of two. */
+  private static final int SUB_BUCKET_BITS = 5;
+
+  /** Number of buckets within a power of two. */
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** Number of buckets. */
+  private static final int BUCKETS = SUB_BUCKETS + (64 - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  /** Number of values of each bucket. */
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  /** Number of values. */
+  private final AtomicLong count = new AtomicLong();
+
+  /** Sum of the values. */
+  private final AtomicLong sum = new AtomicLong();
+
+  /** Largest value. */
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Gets the bucket of a value.
+   *
+   * @param value The value. It must not be negative.
+   * @return The index of the bucket.
+   */
+  private static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  /**
+   * Gets the largest value of a bucket.
+   *
+   * @param bucket The index of the bucket.
+   * @return The value.
+   */
+  private static long highestOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param value The value. Negative values are recorded as zero.
+   */
+  public void record(long value) {
+    value = Math.max(0, value);
+    counts.incrementAndGet(bucketOf(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  /**
+   * Gets the number of recorded values.
+   *
+   * @return The count.
+   */
+  public long count() {
+    return count.get();
+  }
+
+  /**
+   * Gets the largest recorded value.
+   *
+   * @return The value, or zero if there is none.
+   */
+  public long max() {
+    return max.get();
+  }
+
+  /**
+   * Gets the mean of the recorded values.
+   *
+   * @return The mean, or zero if there is none.
+   */
+  public double mean() {
+    long values = count.get();
+    return values == 0 ? 0 : (double) sum.get() / values;
+  }
+
+  /**
+   * Gets a percentile of the recorded values.
+   *
+   * @param percentile The percentile, from 0 to 100.
+   * @return The value, rounded up to its bucket, but never above the largest
+   *         value; zero if there is none.
+   */
+  public long valueAt(double percentile) {
+    if (!(percentile >= 0 && percentile <= 100)) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+    }
+    long values = count.get();
+    if (values == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * values));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+      seen += counts.get(bucket);
+      if (seen >= rank) {
+        return Math.min(highestOf(bucket), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Copies the histogram, so it can be read while recording goes on.
+   *
+   * @return The copy.
+   */
+  public LatencyHistogram snapshot() {
+    LatencyHistogram copy = new LatencyHistogram();
+    long values = 0;
+    for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+      long bucketCount = counts.get(bucket);
+      copy.counts.set(bucket, bucketCount);
+      values += bucketCount;
+    }
+    copy.count.set(values);
+    copy.sum.set(sum.get());
+    copy.max.set(max.get());
+    return copy;
+  }
+
+}
@@ -0,0 +1,131 @@
+package net.intelie.challenges.load;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/**
+ * Command line entry point of the load harness, for capacity planning and
+ * soak tests. Arguments are <code>name=value</code> pairs:
+ * <ul>
+ * <li><code>store</code>: class of the store, with a public no-argument
+ * constructor; {@link EventStoreImpl} by default.</li>
+ * <li><code>threads</code>: worker threads; the number of processors by
+ * default.</li>
+ * <li><code>duration</code> and <code>report</code>: length of the run and
+ * interval of the progress reports, in seconds; 60 and 10 by default.</li>
+ * <li><code>speed</code>: rate at which the schedule is played; zero runs as
+ * fast as possible. 1 by default.</li>
+ * <li><code>trace</code>: a trace to be replayed. Without it, a synthetic
+ * workload is run from <code>seed</code>, <code>insertRate</code>,
+ * <code>queryRate</code>, <code>removeRate</code>,
+ * <code>removeAllRate</code>, <code>outOfOrder</code>,
+ * <code>maxLatenessMillis</code>, <code>typeSkew</code>,
+ * <code>windows</code> (FIXED, UNIFORM or EXPONENTIAL) and
+ * <code>windowMillis</code>, which default to
+ * {@link WorkloadProfile#defaults()}.</li>
+ * </ul>
+ * For example:
+ *
+ * <pre>
+ * java -Xmx4g -cp target/classes net.intelie.challenges.load.LoadHarness \
+ *   store=net.intelie.challenges.service.chunked.ChunkedEventStore \
+ *   duration=3600 insertRate=50000 outOfOrder=0.05
+ * </pre>
+ */
+public final class LoadHarness {
+
+  /** Prevents instantiation. */
+  private LoadHarness() {
+  }
+
+  /**
+   * Runs a workload and prints its reports.
+   *
+   * @param args The arguments, as <code>name=value</code> pairs.
+   * @throws Exception if the store cannot be created or the run fails.
+   */
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator <= 0) {
+        throw new IllegalArgumentException("Arguments must be name=value pairs: " + arg);
+      }
+      options.put(arg.substring(0, separator), arg.substring(separator + 1));
+    }
+
+    EventStore store = (EventStore) Class.forName(options.getOrDefault("store", EventStoreImpl.class.getName()))
+      .getConstructor().newInstance();
+    int threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime()
+      .availableProcessors())));
+    long duration = Long.parseLong(options.getOrDefault("duration", "60"));
+    long report = Long.parseLong(options.getOrDefault("report", "10"));
+    double speed = Double.parseDouble(options.getOrDefault("speed", "1"));
+    WorkloadRunner runner = new WorkloadRunner(store, threads, speed);
+
+    WorkloadReport result;
+    if (options.containsKey("trace")) {
+      try (TraceWorkload workload = TraceWorkload.open(Paths.get(options.get("trace")))) {
+        result = runner.run(workload, duration, report, TimeUnit.SECONDS, LoadHarness::print);
+      }
+    }
+    else {
+      result = runner.run(new SyntheticWorkload(profile(options), Long.parseLong(options.getOrDefault("seed",
+        "1"))), duration, report, TimeUnit.SECONDS, LoadHarness::print);
+    }
+    System.out.println("final");
+    System.out.println(result);
+    if (store instanceof AutoCloseable) {
+      ((AutoCloseable) store).close();
+    }
+  }
+
+  /**
+   * Builds the profile of a synthetic workload from the arguments.
+   *
+   * @param options The arguments.
+   * @return The profile.
+   */
+  private static WorkloadProfile profile(Map<String, String> options) {
+    WorkloadProfile profile = WorkloadProfile.defaults();
+    profile = profile.withInsertRate(number(options, "insertRate", profile.insertRate()));
+    profile = profile.withQueryRate(number(options, "queryRate", profile.queryRate()));
+    profile = profile.withRemoveRates(number(options, "removeRate", profile.removeRate()), number(options,
+      "removeAllRate", profile.removeAllRate()));
+    profile = profile.withOutOfOrder(number(options, "outOfOrder", profile.outOfOrderRatio()), (long) number(
+      options, "maxLatenessMillis", profile.maxLatenessMillis()));
+    profile = profile.withTypeSkew(number(options, "typeSkew", profile.typeSkew()));
+    String windows = options.getOrDefault("windows", profile.windowDistribution().name());
+    return profile.withWindows(WorkloadProfile.WindowDistribution.valueOf(windows), (long) number(options,
+      "windowMillis", profile.meanWindowMillis()));
+  }
+
+  /**
+   * Gets a numeric argument.
+   *
+   * @param options The arguments.
+   * @param name The name of the argument.
+   * @param fallback The value if the argument is missing.
+   * @return The value.
+   */
+  private static double number(Map<String, String> options, String name, double fallback) {
+    String value = options.get(name);
+    return value == null ? fallback : Double.parseDouble(value);
+  }
+
+  /**
+   * Prints a progress report.
+   *
+   * @param report The report.
+   */
+  private static void print(WorkloadReport report) {
+    System.out.println(report);
+    System.out.println();
+  }
+
+}
@@ -0,0 +1,226 @@
+package net.intelie.challenges.load;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * An operation of a workload, scheduled at an offset from the start of the
+ * run. Operations are written to traces one per line:
+ *
+ * <pre>
+ * offsetNanos INSERT type timestamp
+ * offsetNanos QUERY type startTime endTime
+ * offsetNanos REMOVE type startTime endTime
+ * offsetNanos REMOVE_ALL type
+ * </pre>
+ */
+public final class Operation {
+
+  /** The kinds of operations. */
+  public enum Kind {
+
+    /** Inserts an event. */
+    INSERT,
+
+    /** Reads all the events of a range. */
+    QUERY,
+
+    /** Removes all the events of a range. */
+    REMOVE,
+
+    /** Removes all the events of a type. */
+    REMOVE_ALL
+  }
+
+  /** Offset from the start of the run, in nanoseconds. */
+  private final long offsetNanos;
+
+  /** The kind of the operation. */
+  private final Kind kind;
+
+  /** The type of the events. */
+  private final String type;
+
+  /** Timestamp of the inserted event, or start of the range (inclusive). */
+  private final long startTime;
+
+  /** End of the range (exclusive). */
+  private final long endTime;
+
+  /**
+   * Constructor. Creates a new instance of {@link Operation}.
+   *
+   * @param offsetNanos Offset from the start of the run, in nanoseconds.
+   * @param kind The kind of the operation.
+   * @param type The type of the events.
+   * @param startTime Timestamp of the event, or start of the range.
+   * @param endTime End of the range.
+   */
+  private Operation(long offsetNanos, Kind kind, String type, long startTime, long endTime) {
+    if (offsetNanos < 0) {
+      throw new IllegalArgumentException("Offset cannot be negative.");
+    }
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    this.offsetNanos = offsetNanos;
+    this.kind = kind;
+    this.type = type;
+    this.startTime = startTime;
+    this.endTime = endTime;
+  }
+
+  /**
+   * Creates an insert.
+   *
+   * @param offsetNanos Offset from the start of the run, in nanoseconds.
+   * @param type The type of the event.
+   * @param timestamp The timestamp of the event.
+   * @return The operation.
+   */
+  public static Operation insert(long offsetNanos, String type, long timestamp) {
+    return new Operation(offsetNanos, Kind.INSERT, type, timestamp, timestamp);
+  }
+
+  /**
+   * Creates a query that reads all the events of a range.
+   *
+   * @param offsetNanos Offset from the start of the run, in nanoseconds.
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The operation.
+   */
+  public static Operation query(long offsetNanos, String type, long startTime, long endTime) {
+    return new Operation(offsetNanos, Kind.QUERY, type, startTime, endTime);
+  }
+
+  /**
+   * Creates a removal of all the events of a range.
+   *
+   * @param offsetNanos Offset from the start of the run, in nanoseconds.
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The operation.
+   */
+  public static Operation remove(long offsetNanos, String type, long startTime, long endTime) {
+    return new Operation(offsetNanos, Kind.REMOVE, type, startTime, endTime);
+  }
+
+  /**
+   * Creates a removal of all the events of a type.
+   *
+   * @param offsetNanos Offset from the start of the run, in nanoseconds.
+   * @param type The type of the events.
+   * @return The operation.
+   */
+  public static Operation removeAll(long offsetNanos, String type) {
+    return new Operation(offsetNanos, Kind.REMOVE_ALL, type, 0, 0);
+  }
+
+  /**
+   * Parses an operation from a line of a trace.
+   *
+   * @param line The line.
+   * @return The operation.
+   * @throws IllegalArgumentException if the line is malformed.
+   */
+  public static Operation parse(String line) {
+    String[] fields = line.trim().split("\\s+");
+    try {
+      long offsetNanos = Long.parseLong(fields[0]);
+      switch (Kind.valueOf(fields[1])) {
+        case INSERT:
+          return fields.length == 4 ? insert(offsetNanos, fields[2], Long.parseLong(fields[3])) : malformed(line);
+        case QUERY:
+          return fields.length == 5 ? query(offsetNanos, fields[2], Long.parseLong(fields[3]), Long.parseLong(
+            fields[4])) : malformed(line);
+        case REMOVE:
+          return fields.length == 5 ? remove(offsetNanos, fields[2], Long.parseLong(fields[3]), Long.parseLong(
+            fields[4])) : malformed(line);
+        default:
+          return fields.length == 3 ? removeAll(offsetNanos, fields[2]) : malformed(line);
+      }
+    }
+    catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new IllegalArgumentException("Malformed operation '" + line + "': " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Rejects a line with the wrong number of fields.
+   *
+   * @param line The line.
+   * @return Never returns.
+   */
+  private static Operation malformed(String line) {
+    throw new IllegalArgumentException("Wrong number of fields.");
+  }
+
+  /**
+   * Applies the operation to a store.
+   *
+   * @param store The store.
+   * @return The number of events read by a query, or zero.
+   * @throws Exception if the store fails.
+   */
+  long applyTo(EventStore store) throws Exception {
+    switch (kind) {
+      case INSERT:
+        store.insert(new Event(type, startTime));
+        return 0;
+      case QUERY:
+        long read = 0;
+        try (EventIterator iterator = store.query(type, startTime, endTime)) {
+          while (iterator.moveNext()) {
+            ++read;
+          }
+        }
+        return read;
+      case REMOVE:
+        store.removeIf(type, startTime, endTime, event -> true);
+        return 0;
+      default:
+        store.removeAll(type);
+        return 0;
+    }
+  }
+
+  public long offsetNanos() {
+    return offsetNanos;
+  }
+
+  public Kind kind() {
+    return kind;
+  }
+
+  public String type() {
+    return type;
+  }
+
+  public long startTime() {
+    return startTime;
+  }
+
+  public long endTime() {
+    return endTime;
+  }
+
+  /**
+   * {@inheritDoc} It is the line of the operation in a trace.
+   */
+  @Override
+  public String toString() {
+    switch (kind) {
+      case INSERT:
+        return offsetNanos + " " + kind + " " + type + " " + startTime;
+      case REMOVE_ALL:
+        return offsetNanos + " " + kind + " " + type;
+      default:
+        return offsetNanos + " " + kind + " " + type + " " + startTime + " " + endTime;
+    }
+  }
+
+}
@@ -0,0 +1,157 @@
+package net.intelie.challenges.load;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * A {@link Workload} synthesized from a {@link WorkloadProfile}. It never
+ * ends; the run is bounded by its duration. A seed makes it reproducible.
+ */
+public class SyntheticWorkload implements Workload {
+
+  /** Kinds of operations, in the order of their arrival times. */
+  private static final Operation.Kind[] KINDS = Operation.Kind.values();
+
+  /** The parameters of the workload. */
+  private final WorkloadProfile profile;
+
+  /** The source of randomness. */
+  private final Random random;
+
+  /** Cumulative probability of each type. */
+  private final double[] typeWeights;
+
+  /** Next arrival of each kind of operation, in nanoseconds. */
+  private final long[] arrivals = new long[KINDS.length];
+
+  /**
+   * Constructor. Creates a new instance of {@link SyntheticWorkload}.
+   *
+   * @param profile The parameters of the workload.
+   * @param seed The seed of the randomness.
+   */
+  public SyntheticWorkload(WorkloadProfile profile, long seed) {
+    Utils.requireNonNull(profile, "Profile cannot be null.");
+    this.profile = profile;
+    this.random = new Random(seed);
+
+    EventType[] types = EventType.values();
+    typeWeights = new double[types.length];
+    double total = 0;
+    for (int i = 0; i < types.length; ++i) {
+      total += 1 / Math.pow(i + 1, profile.typeSkew());
+      typeWeights[i] = total;
+    }
+    for (int i = 0; i < types.length; ++i) {
+      typeWeights[i] /= total;
+    }
+    for (int i = 0; i < KINDS.length; ++i) {
+      arrivals[i] = arrivalAfter(0, rateOf(KINDS[i]));
+    }
+  }
+
+  /**
+   * Gets the rate of a kind of operation.
+   *
+   * @param kind The kind.
+   * @return Operations per second.
+   */
+  private double rateOf(Operation.Kind kind) {
+    switch (kind) {
+      case INSERT:
+        return profile.insertRate();
+      case QUERY:
+        return profile.queryRate();
+      case REMOVE:
+        return profile.removeRate();
+      default:
+        return profile.removeAllRate();
+    }
+  }
+
+  /**
+   * Draws the next arrival of a Poisson process.
+   *
+   * @param now The current time, in nanoseconds.
+   * @param rate Arrivals per second.
+   * @return The time of the next arrival, or {@link Long#MAX_VALUE} if the
+   *         rate is zero.
+   */
+  private long arrivalAfter(long now, double rate) {
+    if (rate == 0) {
+      return Long.MAX_VALUE;
+    }
+    return now + (long) Math.ceil(-Math.log(1 - random.nextDouble()) / rate * TimeUnit.SECONDS.toNanos(1));
+  }
+
+  /**
+   * Picks a type by its weight.
+   *
+   * @return The type.
+   */
+  private String nextType() {
+    double draw = random.nextDouble();
+    EventType[] types = EventType.values();
+    for (int i = 0; i < types.length - 1; ++i) {
+      if (draw < typeWeights[i]) {
+        return types[i].toString();
+      }
+    }
+    return types[types.length - 1].toString();
+  }
+
+  /**
+   * Draws the length of a window.
+   *
+   * @return The length, in nanoseconds. At least one.
+   */
+  private long nextWindow() {
+    double mean = TimeUnit.MILLISECONDS.toNanos(profile.meanWindowMillis());
+    switch (profile.windowDistribution()) {
+      case FIXED:
+        return (long) mean;
+      case UNIFORM:
+        return 1 + (long) (random.nextDouble() * 2 * mean);
+      default:
+        return 1 + (long) (-Math.log(1 - random.nextDouble()) * mean);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Operation next() {
+    int next = 0;
+    for (int i = 1; i < arrivals.length; ++i) {
+      if (arrivals[i] < arrivals[next]) {
+        next = i;
+      }
+    }
+    long now = arrivals[next];
+    arrivals[next] = arrivalAfter(now, rateOf(KINDS[next]));
+
+    String type = nextType();
+    switch (KINDS[next]) {
+      case INSERT:
+        long timestamp = now;
+        if (random.nextDouble() < profile.outOfOrderRatio()) {
+          long lateness = TimeUnit.MILLISECONDS.toNanos(profile.maxLatenessMillis());
+          timestamp = Math.max(0, now - 1 - (long) (random.nextDouble() * lateness));
+        }
+        return Operation.insert(now, type, timestamp);
+      case QUERY:
+        return Operation.query(now, type, Math.max(0, now - nextWindow()), now);
+      case REMOVE:
+        long window = nextWindow();
+        long start = (long) (random.nextDouble() * Math.max(0, now - window));
+        return Operation.remove(now, type, start, Math.min(now, start + window));
+      default:
+        return Operation.removeAll(now, type);
+    }
+  }
+
+}
@@ -0,0 +1,227 @@
+package net.intelie.challenges.load;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * An {@link EventStore} that writes the operations made on it to a trace,
+ * to be replayed later by a {@link TraceWorkload}. It wraps the store of a
+ * real deployment to capture its traffic mix.
+ * <p>
+ * Operations are written as they are called, with their offset from the
+ * creation of the recorder. A query is written when it is made, whether or
+ * not it is read to its end. Removals made through an iterator or by
+ * {@link #removeIf} are written one event at a time, since their conditions
+ * cannot be replayed.
+ */
+public class TraceRecorder implements EventStore, AutoCloseable {
+
+  /** The recorded store. */
+  private final EventStore delegate;
+
+  /** The trace. */
+  private final Writer writer;
+
+  /** Guards the trace, so offsets are written in order. */
+  private final Lock lock = new ReentrantLock();
+
+  /** Time the recording started, as given by {@link System#nanoTime()}. */
+  private final long startNanos = System.nanoTime();
+
+  /**
+   * Constructor. Creates a new instance of {@link TraceRecorder}.
+   *
+   * @param delegate The recorded store.
+   * @param writer The trace. It is closed with the recorder.
+   */
+  public TraceRecorder(EventStore delegate, Writer writer) {
+    Utils.requireNonNull(delegate, "Delegate cannot be null.");
+    Utils.requireNonNull(writer, "Writer cannot be null.");
+    this.delegate = delegate;
+    this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+  }
+
+  /**
+   * Writes an operation to the trace.
+   *
+   * @param kind The kind of the operation.
+   * @param type The type of the events.
+   * @param startTime Timestamp of the event, or start of the range.
+   * @param endTime End of the range.
+   * @throws UncheckedIOException if the trace cannot be written.
+   */
+  private void record(Operation.Kind kind, String type, long startTime, long endTime) {
+    lock.lock();
+    try {
+      long offsetNanos = System.nanoTime() - startNanos;
+      Operation operation;
+      switch (kind) {
+        case INSERT:
+          operation = Operation.insert(offsetNanos, type, startTime);
+          break;
+        case QUERY:
+          operation = Operation.query(offsetNanos, type, startTime, endTime);
+          break;
+        case REMOVE:
+          operation = Operation.remove(offsetNanos, type, startTime, endTime);
+          break;
+        default:
+          operation = Operation.removeAll(offsetNanos, type);
+      }
+      writer.write(operation.toString());
+      writer.write('\n');
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the removal of a single event to the trace.
+   *
+   * @param type The type of the event.
+   * @param timestamp The timestamp of the event.
+   */
+  private void recordRemoval(String type, long timestamp) {
+    record(Operation.Kind.REMOVE, type, timestamp, timestamp == Long.MAX_VALUE ? timestamp : timestamp + 1);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void insert(Event event) {
+    Utils.checkEvent(event);
+    record(Operation.Kind.INSERT, event.type(), event.timestamp(), event.timestamp());
+    delegate.insert(event);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeAll(String type) {
+    Utils.checkEventType(type);
+    record(Operation.Kind.REMOVE_ALL, type, 0, 0);
+    delegate.removeAll(type);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public EventIterator query(String type, long startTime, long endTime) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    record(Operation.Kind.QUERY, type, startTime, endTime);
+    return new RecordingIterator(delegate.query(type, startTime, endTime));
+  }
+
+  /**
+   * {@inheritDoc} Each removed event is written as it is matched.
+   */
+  @Override
+  public long removeIf(String type, long startTime, long endTime, Predicate<? super Event> filter) {
+    Utils.requireNonNull(filter, "Filter cannot be null.");
+    return delegate.removeIf(type, startTime, endTime, event -> {
+      if (!filter.test(event)) {
+        return false;
+      }
+      recordRemoval(event.type(), event.timestamp());
+      return true;
+    });
+  }
+
+  /**
+   * Writes the buffered operations to the trace.
+   *
+   * @throws IOException if the trace cannot be written.
+   */
+  public void flush() throws IOException {
+    lock.lock();
+    try {
+      writer.flush();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc} The recorded store is not closed.
+   */
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      writer.close();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** An iterator that writes the removals made through it. */
+  private final class RecordingIterator implements EventIterator {
+
+    /** The iterator of the store. */
+    private final EventIterator iterator;
+
+    /**
+     * Constructor. Creates a new instance of {@link RecordingIterator}.
+     *
+     * @param iterator The iterator of the store.
+     */
+    private RecordingIterator(EventIterator iterator) {
+      this.iterator = iterator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean moveNext() {
+      return iterator.moveNext();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Event current() {
+      return iterator.current();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+      Event removed = iterator.current();
+      iterator.remove();
+      recordRemoval(removed.type(), removed.timestamp());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws Exception {
+      iterator.close();
+    }
+  }
+
+}
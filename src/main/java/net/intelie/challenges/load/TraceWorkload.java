@@ -0,0 +1,96 @@
+package net.intelie.challenges.load;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import net.intelie.challenges.util.Utils;
+
+/**
+ * A {@link Workload} that replays a recorded trace, one {@link Operation} per
+ * line, as written by a {@link TraceRecorder}. Blank lines and lines starting
+ * with <code>#</code> are skipped. The trace is read as it is replayed, so it
+ * can be larger than the heap.
+ */
+public class TraceWorkload implements Workload, Closeable {
+
+  /** The trace. */
+  private final BufferedReader reader;
+
+  /** Number of the last line read, for error messages. */
+  private long lineNumber;
+
+  /** Offset of the last operation read. */
+  private long lastOffset;
+
+  /**
+   * Constructor. Creates a new instance of {@link TraceWorkload}.
+   *
+   * @param reader The trace. It is closed with the workload.
+   */
+  public TraceWorkload(BufferedReader reader) {
+    Utils.requireNonNull(reader, "Reader cannot be null.");
+    this.reader = reader;
+  }
+
+  /**
+   * Opens a trace file.
+   *
+   * @param path The path of the trace.
+   * @return The workload.
+   * @throws IOException if the file cannot be opened.
+   */
+  public static TraceWorkload open(Path path) throws IOException {
+    return new TraceWorkload(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalArgumentException if a line is malformed or goes back in
+   *         time.
+   * @throws UncheckedIOException if the trace cannot be read.
+   */
+  @Override
+  public Operation next() {
+    String line;
+    try {
+      do {
+        line = reader.readLine();
+        ++lineNumber;
+      }
+      while (line != null && (line.trim().isEmpty() || line.startsWith("#")));
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (line == null) {
+      return null;
+    }
+    Operation operation;
+    try {
+      operation = Operation.parse(line);
+    }
+    catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+    }
+    if (operation.offsetNanos() < lastOffset) {
+      throw new IllegalArgumentException("Line " + lineNumber + ": offsets must not decrease.");
+    }
+    lastOffset = operation.offsetNanos();
+    return operation;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+}
@@ -0,0 +1,17 @@
+package net.intelie.challenges.load;
+
+/**
+ * A source of operations, in schedule order, to be run against a store by a
+ * {@link WorkloadRunner}. It is read by a single thread.
+ */
+public interface Workload {
+
+  /**
+   * Gets the next operation. Offsets never decrease from one operation to the
+   * next.
+   *
+   * @return The operation, or <code>null</code> if the workload is over.
+   */
+  Operation next();
+
+}
@@ -0,0 +1,221 @@
+package net.intelie.challenges.load;
+
+/**
+ * The parameters of a {@link SyntheticWorkload}. Profiles are immutable: each
+ * <code>with</code> method returns a changed copy, starting from
+ * {@link #defaults()}.
+ * <p>
+ * Operations of each kind arrive as a Poisson process of their own rate.
+ * Event timestamps are the nanoseconds elapsed since the start of the run,
+ * except for out-of-order events, which are moved back by up to the maximum
+ * lateness. Queries read a window ending at the current time; removals take
+ * out a window placed anywhere in the past. Types are picked with a Zipf
+ * distribution over the supported types.
+ */
+public final class WorkloadProfile {
+
+  /** How the lengths of the query and removal windows are distributed. */
+  public enum WindowDistribution {
+
+    /** Every window has the mean length. */
+    FIXED,
+
+    /** Lengths are uniform between zero and twice the mean. */
+    UNIFORM,
+
+    /** Lengths are exponential: mostly short, with a long tail. */
+    EXPONENTIAL
+  }
+
+  /** Inserts per second. */
+  private final double insertRate;
+
+  /** Queries per second. */
+  private final double queryRate;
+
+  /** Range removals per second. */
+  private final double removeRate;
+
+  /** Removals of a whole type per second. */
+  private final double removeAllRate;
+
+  /** Fraction of the inserts that arrive out of order. */
+  private final double outOfOrderRatio;
+
+  /** Largest lateness of an out-of-order insert, in milliseconds. */
+  private final long maxLatenessMillis;
+
+  /** Exponent of the Zipf distribution of the types; zero is uniform. */
+  private final double typeSkew;
+
+  /** Distribution of the window lengths. */
+  private final WindowDistribution windowDistribution;
+
+  /** Mean window length, in milliseconds. */
+  private final long meanWindowMillis;
+
+  /**
+   * Constructor. Creates a new instance of {@link WorkloadProfile}.
+   *
+   * @param insertRate Inserts per second.
+   * @param queryRate Queries per second.
+   * @param removeRate Range removals per second.
+   * @param removeAllRate Removals of a whole type per second.
+   * @param outOfOrderRatio Fraction of the inserts that arrive out of order.
+   * @param maxLatenessMillis Largest lateness of an out-of-order insert.
+   * @param typeSkew Exponent of the Zipf distribution of the types.
+   * @param windowDistribution Distribution of the window lengths.
+   * @param meanWindowMillis Mean window length.
+   */
+  private WorkloadProfile(double insertRate, double queryRate, double removeRate, double removeAllRate,
+    double outOfOrderRatio, long maxLatenessMillis, double typeSkew, WindowDistribution windowDistribution,
+    long meanWindowMillis) {
+    if (!(insertRate >= 0 && queryRate >= 0 && removeRate >= 0 && removeAllRate >= 0)) {
+      throw new IllegalArgumentException("Rates cannot be negative.");
+    }
+    if (insertRate + queryRate + removeRate + removeAllRate == 0) {
+      throw new IllegalArgumentException("At least one rate must be positive.");
+    }
+    if (!(outOfOrderRatio >= 0 && outOfOrderRatio <= 1)) {
+      throw new IllegalArgumentException("Out-of-order ratio must be between 0 and 1.");
+    }
+    if (maxLatenessMillis <= 0 || meanWindowMillis <= 0) {
+      throw new IllegalArgumentException("Lateness and window must be positive.");
+    }
+    if (!(typeSkew >= 0)) {
+      throw new IllegalArgumentException("Type skew cannot be negative.");
+    }
+    if (windowDistribution == null) {
+      throw new IllegalArgumentException("Window distribution cannot be null.");
+    }
+    this.insertRate = insertRate;
+    this.queryRate = queryRate;
+    this.removeRate = removeRate;
+    this.removeAllRate = removeAllRate;
+    this.outOfOrderRatio = outOfOrderRatio;
+    this.maxLatenessMillis = maxLatenessMillis;
+    this.typeSkew = typeSkew;
+    this.windowDistribution = windowDistribution;
+    this.meanWindowMillis = meanWindowMillis;
+  }
+
+  /**
+   * Gets the default profile: 10,000 inserts and 100 queries per second, one
+   * range removal per second and no whole-type removal; 1% of the inserts up
+   * to one second late; a Zipf type skew of 1; and exponential windows of one
+   * second on average.
+   *
+   * @return The default profile.
+   */
+  public static WorkloadProfile defaults() {
+    return new WorkloadProfile(10_000, 100, 1, 0, 0.01, 1000, 1, WindowDistribution.EXPONENTIAL, 1000);
+  }
+
+  /**
+   * Changes the rate of the inserts.
+   *
+   * @param insertRate Inserts per second.
+   * @return The changed profile.
+   */
+  public WorkloadProfile withInsertRate(double insertRate) {
+    return new WorkloadProfile(insertRate, queryRate, removeRate, removeAllRate, outOfOrderRatio,
+      maxLatenessMillis, typeSkew, windowDistribution, meanWindowMillis);
+  }
+
+  /**
+   * Changes the rate of the queries.
+   *
+   * @param queryRate Queries per second.
+   * @return The changed profile.
+   */
+  public WorkloadProfile withQueryRate(double queryRate) {
+    return new WorkloadProfile(insertRate, queryRate, removeRate, removeAllRate, outOfOrderRatio,
+      maxLatenessMillis, typeSkew, windowDistribution, meanWindowMillis);
+  }
+
+  /**
+   * Changes the deletion mix.
+   *
+   * @param removeRate Range removals per second.
+   * @param removeAllRate Removals of a whole type per second.
+   * @return The changed profile.
+   */
+  public WorkloadProfile withRemoveRates(double removeRate, double removeAllRate) {
+    return new WorkloadProfile(insertRate, queryRate, removeRate, removeAllRate, outOfOrderRatio,
+      maxLatenessMillis, typeSkew, windowDistribution, meanWindowMillis);
+  }
+
+  /**
+   * Changes how the inserts arrive out of order.
+   *
+   * @param outOfOrderRatio Fraction of the inserts that arrive out of order.
+   * @param maxLatenessMillis Largest lateness of an out-of-order insert, in
+   *        milliseconds.
+   * @return The changed profile.
+   */
+  public WorkloadProfile withOutOfOrder(double outOfOrderRatio, long maxLatenessMillis) {
+    return new WorkloadProfile(insertRate, queryRate, removeRate, removeAllRate, outOfOrderRatio,
+      maxLatenessMillis, typeSkew, windowDistribution, meanWindowMillis);
+  }
+
+  /**
+   * Changes how the operations are spread over the types.
+   *
+   * @param typeSkew Exponent of the Zipf distribution of the types; zero
+   *        spreads them evenly.
+   * @return The changed profile.
+   */
+  public WorkloadProfile withTypeSkew(double typeSkew) {
+    return new WorkloadProfile(insertRate, queryRate, removeRate, removeAllRate, outOfOrderRatio,
+      maxLatenessMillis, typeSkew, windowDistribution, meanWindowMillis);
+  }
+
+  /**
+   * Changes the lengths of the query and removal windows.
+   *
+   * @param windowDistribution Distribution of the window lengths.
+   * @param meanWindowMillis Mean window length, in milliseconds.
+   * @return The changed profile.
+   */
+  public WorkloadProfile withWindows(WindowDistribution windowDistribution, long meanWindowMillis) {
+    return new WorkloadProfile(insertRate, queryRate, removeRate, removeAllRate, outOfOrderRatio,
+      maxLatenessMillis, typeSkew, windowDistribution, meanWindowMillis);
+  }
+
+  public double insertRate() {
+    return insertRate;
+  }
+
+  public double queryRate() {
+    return queryRate;
+  }
+
+  public double removeRate() {
+    return removeRate;
+  }
+
+  public double removeAllRate() {
+    return removeAllRate;
+  }
+
+  public double outOfOrderRatio() {
+    return outOfOrderRatio;
+  }
+
+  public long maxLatenessMillis() {
+    return maxLatenessMillis;
+  }
+
+  public double typeSkew() {
+    return typeSkew;
+  }
+
+  public WindowDistribution windowDistribution() {
+    return windowDistribution;
+  }
+
+  public long meanWindowMillis() {
+    return meanWindowMillis;
+  }
+
+}
@@ -0,0 +1,195 @@
+package net.intelie.challenges.load;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of a {@link WorkloadRunner} run, or of its part so far.
+ * <p>
+ * Latencies are measured from the time each operation was scheduled, not from
+ * the time it started, so a store that falls behind its workload shows the
+ * wait of the queued operations instead of hiding it. Memory is measured on
+ * the heap of the whole JVM, so a run should have it to itself.
+ */
+public final class WorkloadReport {
+
+  /** Time since the start of the run, in nanoseconds. */
+  private final long elapsedNanos;
+
+  /** Latencies of each kind of operation, in nanoseconds. */
+  private final Map<Operation.Kind, LatencyHistogram> latencies;
+
+  /** Number of operations that threw. */
+  private final long errors;
+
+  /** Number of events read by the queries. */
+  private final long eventsRead;
+
+  /** Heap in use at the time of the report, in bytes. */
+  private final long heapUsedBytes;
+
+  /** Largest heap in use seen during the run, in bytes. */
+  private final long peakHeapUsedBytes;
+
+  /** Number of garbage collections during the run. */
+  private final long gcCount;
+
+  /** Time spent in garbage collections during the run, in milliseconds. */
+  private final long gcTimeMillis;
+
+  /** Number of events in the store, or -1 if it cannot tell. */
+  private final long liveEvents;
+
+  /** Heap retained per event added by the run, or -1 if not measured. */
+  private final long bytesPerEvent;
+
+  /** The store's own estimate of its bytes per event, or -1. */
+  private final long estimatedBytesPerEvent;
+
+  /**
+   * Constructor. Creates a new instance of {@link WorkloadReport}.
+   *
+   * @param elapsedNanos Time since the start of the run, in nanoseconds.
+   * @param latencies Latencies of each kind of operation, in nanoseconds.
+   * @param errors Number of operations that threw.
+   * @param eventsRead Number of events read by the queries.
+   * @param heapUsedBytes Heap in use at the time of the report.
+   * @param peakHeapUsedBytes Largest heap in use seen during the run.
+   * @param gcCount Number of garbage collections during the run.
+   * @param gcTimeMillis Time spent in garbage collections during the run.
+   * @param liveEvents Number of events in the store, or -1.
+   * @param bytesPerEvent Heap retained per event added by the run, or -1.
+   * @param estimatedBytesPerEvent The store's own estimate, or -1.
+   */
+  WorkloadReport(long elapsedNanos, Map<Operation.Kind, LatencyHistogram> latencies, long errors, long eventsRead,
+    long heapUsedBytes, long peakHeapUsedBytes, long gcCount, long gcTimeMillis, long liveEvents, long bytesPerEvent,
+    long estimatedBytesPerEvent) {
+    this.elapsedNanos = elapsedNanos;
+    this.latencies = latencies;
+    this.errors = errors;
+    this.eventsRead = eventsRead;
+    this.heapUsedBytes = heapUsedBytes;
+    this.peakHeapUsedBytes = peakHeapUsedBytes;
+    this.gcCount = gcCount;
+    this.gcTimeMillis = gcTimeMillis;
+    this.liveEvents = liveEvents;
+    this.bytesPerEvent = bytesPerEvent;
+    this.estimatedBytesPerEvent = estimatedBytesPerEvent;
+  }
+
+  /**
+   * Gets the number of operations run.
+   *
+   * @return The count, including the failed ones.
+   */
+  public long operations() {
+    long operations = 0;
+    for (LatencyHistogram histogram : latencies.values()) {
+      operations += histogram.count();
+    }
+    return operations;
+  }
+
+  /**
+   * Gets the number of operations of a kind run.
+   *
+   * @param kind The kind of the operations.
+   * @return The count, including the failed ones.
+   */
+  public long operations(Operation.Kind kind) {
+    return latencies.get(kind).count();
+  }
+
+  /**
+   * Gets the number of operations run per second.
+   *
+   * @return The throughput.
+   */
+  public double throughput() {
+    return elapsedNanos == 0 ? 0 : operations() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  /**
+   * Gets the latencies of a kind of operation.
+   *
+   * @param kind The kind of the operations.
+   * @return The histogram, in nanoseconds.
+   */
+  public LatencyHistogram latency(Operation.Kind kind) {
+    return latencies.get(kind);
+  }
+
+  public long elapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public long errors() {
+    return errors;
+  }
+
+  public long eventsRead() {
+    return eventsRead;
+  }
+
+  public long heapUsedBytes() {
+    return heapUsedBytes;
+  }
+
+  public long peakHeapUsedBytes() {
+    return peakHeapUsedBytes;
+  }
+
+  public long gcCount() {
+    return gcCount;
+  }
+
+  public long gcTimeMillis() {
+    return gcTimeMillis;
+  }
+
+  public long liveEvents() {
+    return liveEvents;
+  }
+
+  public long bytesPerEvent() {
+    return bytesPerEvent;
+  }
+
+  public long estimatedBytesPerEvent() {
+    return estimatedBytesPerEvent;
+  }
+
+  /**
+   * {@inheritDoc} It is a table of the latencies followed by the throughput
+   * and the memory figures.
+   */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    text.append(String.format("%-10s %10s %10s %10s %10s %10s %10s%n", "operation", "count", "p50 us", "p90 us",
+      "p99 us", "p99.9 us", "max us"));
+    for (Map.Entry<Operation.Kind, LatencyHistogram> entry : latencies.entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      if (histogram.count() > 0) {
+        text.append(String.format("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), histogram
+          .count(), histogram.valueAt(50) / 1e3, histogram.valueAt(90) / 1e3, histogram.valueAt(99) / 1e3,
+          histogram.valueAt(99.9) / 1e3, histogram.max() / 1e3));
+      }
+    }
+    text.append(String.format("elapsed %.1f s, %.0f ops/s, %d errors, %d events read%n", elapsedNanos / 1e9,
+      throughput(), errors, eventsRead));
+    text.append(String.format("heap %d MB (peak %d MB), %d GCs taking %d ms", heapUsedBytes >> 20,
+      peakHeapUsedBytes >> 20, gcCount, gcTimeMillis));
+    if (liveEvents >= 0) {
+      text.append(String.format("%n%d live events", liveEvents));
+      if (bytesPerEvent >= 0) {
+        text.append(String.format(", %d bytes per event measured", bytesPerEvent));
+      }
+      if (estimatedBytesPerEvent >= 0) {
+        text.append(String.format(", %d estimated by the store", estimatedBytesPerEvent));
+      }
+    }
+    return text.toString();
+  }
+
+}
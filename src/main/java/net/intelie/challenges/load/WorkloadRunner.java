@@ -0,0 +1,306 @@
+package net.intelie.challenges.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.service.SizedEventStore;
+import net.intelie.challenges.util.ThreadFactories;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Runs a {@link Workload} against any {@link EventStore} and reports its
+ * throughput, latency percentiles, heap and GC impact and, for a
+ * {@link SizedEventStore}, the memory retained per event.
+ * <p>
+ * The run is open-loop: a dispatcher thread hands each operation to a pool of
+ * workers at its scheduled time, whether or not the previous ones are done,
+ * the way independent clients would. Latencies are measured from the
+ * scheduled time, so queueing behind a slow store counts. When the workers
+ * fall far enough behind to fill their queue, the dispatcher runs operations
+ * itself until they catch up. At a speed of zero, the schedule is ignored
+ * and operations are dispatched as fast as the store takes them, which
+ * measures the largest throughput instead.
+ * <p>
+ * For soak tests, a run can report its progress at a fixed interval. A runner
+ * runs one workload at a time.
+ */
+public class WorkloadRunner {
+
+  /** Number of queued operations per worker before the dispatcher helps. */
+  private static final int QUEUE_PER_THREAD = 1024;
+
+  /** Shortest time between two samples of the heap, in nanoseconds. */
+  private static final long HEAP_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  /** The store under test. */
+  private final EventStore store;
+
+  /** Number of worker threads. */
+  private final int threads;
+
+  /** Rate at which the schedule is played; zero ignores it. */
+  private final double speed;
+
+  /** The heap of the JVM. */
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+  /** Latencies of the current run, by kind of operation. */
+  private final Map<Operation.Kind, LatencyHistogram> latencies = new EnumMap<>(Operation.Kind.class);
+
+  /** Number of failed operations of the current run. */
+  private final LongAdder errors = new LongAdder();
+
+  /** Number of events read by the queries of the current run. */
+  private final LongAdder eventsRead = new LongAdder();
+
+  /** Largest heap in use seen during the current run. */
+  private long peakHeapUsed;
+
+  /** Time of the last heap sample. */
+  private long lastHeapSample;
+
+  /** Heap in use after a collection at the start of the current run. */
+  private long baselineHeap;
+
+  /** Number of events in the store at the start of the current run. */
+  private long baselineEvents;
+
+  /** Number of collections at the start of the current run. */
+  private long baselineGcCount;
+
+  /** Collection time at the start of the current run. */
+  private long baselineGcMillis;
+
+  /**
+   * Constructor. Creates a new instance of {@link WorkloadRunner} that plays
+   * workloads at their recorded pace.
+   *
+   * @param store The store under test.
+   * @param threads Number of worker threads.
+   */
+  public WorkloadRunner(EventStore store, int threads) {
+    this(store, threads, 1);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link WorkloadRunner}.
+   *
+   * @param store The store under test.
+   * @param threads Number of worker threads.
+   * @param speed Rate at which the schedule is played: 2 plays it twice as
+   *        fast, and zero dispatches operations as fast as possible.
+   */
+  public WorkloadRunner(EventStore store, int threads, double speed) {
+    Utils.requireNonNull(store, "Store cannot be null.");
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive.");
+    }
+    if (!(speed >= 0) || Double.isInfinite(speed)) {
+      throw new IllegalArgumentException("Speed must be finite and cannot be negative.");
+    }
+    this.store = store;
+    this.threads = threads;
+    this.speed = speed;
+  }
+
+  /**
+   * Runs a workload until it ends or its schedule reaches a duration.
+   *
+   * @param workload The workload.
+   * @param duration Longest time to run for.
+   * @param unit Unit of the duration.
+   * @return The final report.
+   * @throws InterruptedException if the thread is interrupted.
+   */
+  public WorkloadReport run(Workload workload, long duration, TimeUnit unit) throws InterruptedException {
+    return run(workload, duration, 0, unit, null);
+  }
+
+  /**
+   * Runs a workload until it ends or its schedule reaches a duration,
+   * reporting the progress at an interval.
+   *
+   * @param workload The workload.
+   * @param duration Longest time to run for.
+   * @param reportInterval Time between two progress reports; zero reports
+   *        nothing before the end.
+   * @param unit Unit of the duration and of the interval.
+   * @param progress Receives the progress reports, on the dispatcher thread.
+   * @return The final report, taken after the store settles.
+   * @throws InterruptedException if the thread is interrupted.
+   */
+  public WorkloadReport run(Workload workload, long duration, long reportInterval, TimeUnit unit,
+    Consumer<WorkloadReport> progress) throws InterruptedException {
+    Utils.requireNonNull(workload, "Workload cannot be null.");
+    Utils.requireNonNull(unit, "Unit cannot be null.");
+    if (duration <= 0 || reportInterval < 0) {
+      throw new IllegalArgumentException("Duration must be positive and interval cannot be negative.");
+    }
+    if (reportInterval > 0 && progress == null) {
+      throw new IllegalArgumentException("Progress consumer cannot be null.");
+    }
+    long durationNanos = unit.toNanos(duration);
+    boolean reporting = reportInterval > 0;
+    long intervalNanos = unit.toNanos(reportInterval);
+    start();
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<>(QUEUE_PER_THREAD * threads), ThreadFactories.daemon("workload-runner"),
+      new ThreadPoolExecutor.CallerRunsPolicy());
+    long started = System.nanoTime();
+    long nextReport = started + intervalNanos;
+    try {
+      Operation operation;
+      while ((operation = workload.next()) != null) {
+        long scheduled = speed == 0 ? System.nanoTime() : started + (long) (operation.offsetNanos() / speed);
+        if (scheduled - started >= durationNanos) {
+          break;
+        }
+        long now;
+        while ((now = System.nanoTime()) - scheduled < 0 || reporting && now - nextReport >= 0) {
+          sampleHeap(now);
+          if (reporting && now - nextReport >= 0) {
+            progress.accept(report(now - started, false));
+            nextReport += intervalNanos;
+          }
+          else {
+            LockSupport.parkNanos(reporting ? Math.min(scheduled - now, nextReport - now) : scheduled - now);
+            if (Thread.interrupted()) {
+              throw new InterruptedException();
+            }
+          }
+        }
+        sampleHeap(now);
+        Operation dispatched = operation;
+        executor.execute(() -> apply(dispatched, scheduled));
+      }
+    }
+    finally {
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+    return report(System.nanoTime() - started, true);
+  }
+
+  /**
+   * Resets the measures and takes the baselines of a run.
+   */
+  private void start() {
+    for (Operation.Kind kind : Operation.Kind.values()) {
+      latencies.put(kind, new LatencyHistogram());
+    }
+    errors.reset();
+    eventsRead.reset();
+    System.gc();
+    baselineHeap = memory.getHeapMemoryUsage().getUsed();
+    peakHeapUsed = baselineHeap;
+    lastHeapSample = System.nanoTime();
+    baselineEvents = store instanceof SizedEventStore ? ((SizedEventStore) store).size() : -1;
+    baselineGcCount = gcCount();
+    baselineGcMillis = gcMillis();
+  }
+
+  /**
+   * Runs an operation on a worker and records its outcome.
+   *
+   * @param operation The operation.
+   * @param scheduled Time the operation was scheduled for.
+   */
+  private void apply(Operation operation, long scheduled) {
+    try {
+      eventsRead.add(operation.applyTo(store));
+    }
+    catch (Exception e) {
+      errors.increment();
+    }
+    finally {
+      latencies.get(operation.kind()).record(System.nanoTime() - scheduled);
+    }
+  }
+
+  /**
+   * Samples the heap in use, at most once every few milliseconds.
+   *
+   * @param now The current time.
+   */
+  private void sampleHeap(long now) {
+    if (now - lastHeapSample >= HEAP_SAMPLE_NANOS) {
+      lastHeapSample = now;
+      peakHeapUsed = Math.max(peakHeapUsed, memory.getHeapMemoryUsage().getUsed());
+    }
+  }
+
+  /**
+   * Gets the number of collections so far.
+   *
+   * @return The count, summed over the collectors.
+   */
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, collector.getCollectionCount());
+    }
+    return count;
+  }
+
+  /**
+   * Gets the collection time so far.
+   *
+   * @return The time, in milliseconds, summed over the collectors.
+   */
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, collector.getCollectionTime());
+    }
+    return millis;
+  }
+
+  /**
+   * Reports the measures of the current run.
+   *
+   * @param elapsedNanos Time since the start of the run.
+   * @param last Whether the run is over, in which case a collection is
+   *        requested to measure the heap retained per event.
+   * @return The report.
+   */
+  private WorkloadReport report(long elapsedNanos, boolean last) {
+    Map<Operation.Kind, LatencyHistogram> snapshot = new EnumMap<>(Operation.Kind.class);
+    for (Map.Entry<Operation.Kind, LatencyHistogram> entry : latencies.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    long heapUsed = memory.getHeapMemoryUsage().getUsed();
+    peakHeapUsed = Math.max(peakHeapUsed, heapUsed);
+    long gcCount = gcCount() - baselineGcCount;
+    long gcMillis = gcMillis() - baselineGcMillis;
+
+    long liveEvents = -1;
+    long bytesPerEvent = -1;
+    long estimatedBytesPerEvent = -1;
+    if (store instanceof SizedEventStore) {
+      SizedEventStore sized = (SizedEventStore) store;
+      liveEvents = sized.size();
+      estimatedBytesPerEvent = sized.estimatedBytesPerEvent();
+      if (last) {
+        System.gc();
+        heapUsed = memory.getHeapMemoryUsage().getUsed();
+        if (liveEvents > baselineEvents) {
+          bytesPerEvent = Math.max(0, heapUsed - baselineHeap) / (liveEvents - baselineEvents);
+        }
+      }
+    }
+    return new WorkloadReport(elapsedNanos, snapshot, errors.sum(), eventsRead.sum(), heapUsed, peakHeapUsed,
+      gcCount, gcMillis, liveEvents, bytesPerEvent, estimatedBytesPerEvent);
+  }
+
+}
@@ -33,4 +33,9 @@ public class Event {
     Event other = (Event) obj;
     return timestamp == other.timestamp && Objects.equals(type, other.type);
   }
+
+  @Override
+  public int hashCode() {
+    return 31 * Objects.hashCode(type) + Long.hashCode(timestamp);
+  }
 }
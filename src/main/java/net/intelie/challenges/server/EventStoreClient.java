@@ -0,0 +1,625 @@
+package net.intelie.challenges.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.util.ThreadFactories;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * An {@link EventStore} served by an {@link EventStoreServer}, reached over a
+ * single TCP connection.
+ * <p>
+ * The client is thread-safe and pipelines the requests of all its callers: a
+ * writer thread drains the queued requests into the connection and flushes
+ * them once there are no more, and a reader thread completes them as the
+ * responses arrive, in the same order. The methods of {@link EventStore} wait
+ * for their response, while the asynchronous variants return right away, so a
+ * single caller can keep many requests in flight.
+ * <p>
+ * Query results are streamed in pages; the next page is requested as soon as
+ * the current one arrives. Removals made through the returned iterators are
+ * applied to the server, and failures of the server are thrown as the same
+ * {@link IllegalArgumentException} and {@link IllegalStateException} the store
+ * threw. A broken connection fails the pending requests with an
+ * {@link UncheckedIOException}; the client must then be discarded.
+ */
+public class EventStoreClient implements EventStore, AutoCloseable {
+
+  /** Default number of events per page of a query. */
+  public static final int DEFAULT_PAGE_SIZE = 4096;
+
+  /** Maximum number of requests waiting to be written. */
+  private static final int MAX_PENDING = 64 * 1024;
+
+  /** Size of the buffers of the connection. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Time the writer waits for requests before checking if it must stop. */
+  private static final long POLL_MILLIS = 100;
+
+  /** Time the client waits for the pending responses when it is closed. */
+  private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+  /** Number of events per page of a query. */
+  private final int pageSize;
+
+  /** The connection to the server. */
+  private final Socket socket;
+
+  /** Stream to the server. Only used by the writer thread. */
+  private final DataOutputStream output;
+
+  /** Stream from the server. Only used by the reader thread. */
+  private final DataInputStream input;
+
+  /** Requests waiting to be written. */
+  private final BlockingQueue<Call<?>> pending = new LinkedBlockingQueue<>(MAX_PENDING);
+
+  /** Requests written and waiting for their response, in order. */
+  private final Queue<Call<?>> inFlight = new ConcurrentLinkedQueue<>();
+
+  /** Indicates whether the client is being closed. */
+  private volatile boolean closed;
+
+  /** The failure of the connection, or <code>null</code> if it is healthy. */
+  private volatile RuntimeException failure;
+
+  /** The thread that writes the requests. */
+  private final Thread writer;
+
+  /** The thread that reads the responses. */
+  private final Thread reader;
+
+  /**
+   * Constructor. Creates a new instance of {@link EventStoreClient} using the
+   * default page size.
+   *
+   * @param host Host of the server.
+   * @param port Port of the server.
+   * @throws IOException if the connection could not be opened.
+   */
+  public EventStoreClient(String host, int port) throws IOException {
+    this(host, port, DEFAULT_PAGE_SIZE);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link EventStoreClient} and
+   * connects to the server.
+   *
+   * @param host Host of the server.
+   * @param port Port of the server.
+   * @param pageSize Number of events per page of a query.
+   * @throws IOException if the connection could not be opened.
+   */
+  public EventStoreClient(String host, int port, int pageSize) throws IOException {
+    if (pageSize <= 0 || pageSize > Protocol.MAX_BATCH) {
+      throw new IllegalArgumentException("Page size must be positive and at most " + Protocol.MAX_BATCH + ".");
+    }
+    this.pageSize = pageSize;
+    this.socket = new Socket();
+    socket.setTcpNoDelay(true);
+    socket.connect(new InetSocketAddress(host, port));
+    this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+    this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+
+    writer = ThreadFactories.forBlockingWork("event-store-client-writer").newThread(this::write);
+    reader = ThreadFactories.forBlockingWork("event-store-client-reader").newThread(this::read);
+    writer.start();
+    reader.start();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void insert(Event event) {
+    await(insertAsync(event));
+  }
+
+  /**
+   * Inserts an event without waiting for the server.
+   *
+   * @param event The event to be inserted.
+   * @return Completed once the event is stored.
+   */
+  public CompletableFuture<Void> insertAsync(Event event) {
+    Utils.checkEvent(event);
+    return submit(output -> {
+      output.writeByte(Protocol.INSERT);
+      output.writeUTF(event.type());
+      output.writeLong(event.timestamp());
+    }, input -> null);
+  }
+
+  /**
+   * Inserts a collection of events, sent in as few requests as possible.
+   *
+   * @param events The events to be inserted.
+   */
+  public void insertAll(Collection<Event> events) {
+    await(insertAllAsync(events));
+  }
+
+  /**
+   * Inserts a collection of events without waiting for the server.
+   *
+   * @param events The events to be inserted.
+   * @return Completed once all events are stored.
+   */
+  public CompletableFuture<Void> insertAllAsync(Collection<Event> events) {
+    Utils.requireNonNull(events, "Events cannot be null.");
+    List<Event> batch = new ArrayList<>(Math.min(events.size(), Protocol.MAX_BATCH));
+    List<CompletableFuture<Void>> batches = new ArrayList<>();
+    for (Event event : events) {
+      Utils.checkEvent(event);
+      batch.add(event);
+      if (batch.size() == Protocol.MAX_BATCH) {
+        batches.add(submitBatch(batch));
+        batch = new ArrayList<>(Protocol.MAX_BATCH);
+      }
+    }
+    if (!batch.isEmpty()) {
+      batches.add(submitBatch(batch));
+    }
+    return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]));
+  }
+
+  /**
+   * Sends a batch of insertions.
+   *
+   * @param batch The events, at most {@link Protocol#MAX_BATCH} of them.
+   * @return Completed once the events are stored.
+   */
+  private CompletableFuture<Void> submitBatch(List<Event> batch) {
+    return submit(output -> {
+      output.writeByte(Protocol.INSERT_ALL);
+      output.writeInt(batch.size());
+      for (Event event : batch) {
+        output.writeUTF(event.type());
+        output.writeLong(event.timestamp());
+      }
+    }, input -> null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeAll(String type) {
+    Utils.checkEventType(type);
+    await(submit(output -> {
+      output.writeByte(Protocol.REMOVE_ALL);
+      output.writeUTF(type);
+    }, input -> null));
+  }
+
+  /**
+   * {@inheritDoc} The events are streamed from a cursor of the server, which
+   * is released when the iterator is closed or reaches its end.
+   */
+  @Override
+  public EventIterator query(String type, long startTime, long endTime) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    long[] cursor = new long[1];
+    Page first = await(submit(output -> {
+      output.writeByte(Protocol.QUERY);
+      output.writeUTF(type);
+      output.writeLong(startTime);
+      output.writeLong(endTime);
+      output.writeInt(pageSize);
+    }, input -> {
+      cursor[0] = input.readLong();
+      return Page.read(input);
+    }));
+    return new RemoteEventIterator(type, cursor[0], first);
+  }
+
+  /**
+   * Requests the next page of a cursor.
+   *
+   * @param cursor The id of the cursor.
+   * @return Completed with the page.
+   */
+  private CompletableFuture<Page> fetch(long cursor) {
+    return submit(output -> {
+      output.writeByte(Protocol.FETCH);
+      output.writeLong(cursor);
+      output.writeInt(pageSize);
+    }, Page::read);
+  }
+
+  /**
+   * Queues a request to be written.
+   *
+   * @param request Writes the request.
+   * @param response Reads the result of a successful response.
+   * @return Completed with the result of the response.
+   * @throws IllegalStateException if the client is closed.
+   * @throws UncheckedIOException if the connection is broken.
+   */
+  private <T> CompletableFuture<T> submit(Request request, Response<T> response) {
+    Call<T> call = new Call<>(request, response);
+    try {
+      while (!pending.offer(call, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        checkOpen();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to send the request.", e);
+    }
+    if ((closed || failure != null) && pending.remove(call)) {
+      checkOpen();
+    }
+    return call.future;
+  }
+
+  /**
+   * Checks whether requests can still be sent.
+   *
+   * @throws IllegalStateException if the client is closed.
+   * @throws UncheckedIOException if the connection is broken.
+   */
+  private void checkOpen() {
+    if (failure != null) {
+      throw failure;
+    }
+    if (closed) {
+      throw new IllegalStateException("The client is closed.");
+    }
+  }
+
+  /**
+   * Waits for the result of a request.
+   *
+   * @param future The result of the request.
+   * @return The result.
+   */
+  private static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    }
+    catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("The request failed.", e.getCause());
+    }
+  }
+
+  /**
+   * Writes the queued requests until the client is closed and the queue is
+   * empty, flushing them whenever the queue runs out.
+   */
+  private void write() {
+    try {
+      while (!closed || !pending.isEmpty()) {
+        Call<?> call = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (call == null) {
+          continue;
+        }
+        do {
+          inFlight.add(call);
+          call.request.write(output);
+        }
+        while ((call = pending.poll()) != null);
+        output.flush();
+      }
+      socket.shutdownOutput();
+    }
+    catch (InterruptedException e) {
+      fail(new IllegalStateException("The client was interrupted."));
+    }
+    catch (IOException e) {
+      fail(new UncheckedIOException("The connection to the server is broken.", e));
+    }
+  }
+
+  /**
+   * Reads the responses until the server closes the connection, completing
+   * the requests in order.
+   */
+  private void read() {
+    try {
+      while (true) {
+        int status = input.readUnsignedByte();
+        Call<?> call = inFlight.poll();
+        if (call == null) {
+          throw new IOException("Unexpected response from the server.");
+        }
+        if (status == Protocol.OK) {
+          call.complete(input);
+        }
+        else {
+          call.future.completeExceptionally(Protocol.toException(status, input.readUTF()));
+        }
+      }
+    }
+    catch (IOException e) {
+      fail(closed && inFlight.isEmpty() ? new IllegalStateException("The client is closed.")
+        : new UncheckedIOException("The connection to the server is broken.", e));
+    }
+  }
+
+  /**
+   * Fails the connection and every request that is still pending.
+   *
+   * @param e The failure.
+   */
+  private void fail(RuntimeException e) {
+    if (failure == null) {
+      failure = e;
+    }
+    try {
+      socket.close();
+    }
+    catch (IOException ignored) {
+      // Nothing left to release.
+    }
+    Call<?> call;
+    while ((call = inFlight.poll()) != null || (call = pending.poll()) != null) {
+      call.future.completeExceptionally(failure);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Sends the requests still queued and waits for their
+   * responses before closing the connection.
+   */
+  @Override
+  public void close() throws InterruptedException {
+    closed = true;
+    writer.join();
+    reader.join(CLOSE_TIMEOUT_MILLIS);
+    fail(new IllegalStateException("The client is closed."));
+  }
+
+  /** Writes a request. */
+  @FunctionalInterface
+  private interface Request {
+
+    /**
+     * Writes the request.
+     *
+     * @param output The destination of the request.
+     * @throws IOException if the request could not be written.
+     */
+    void write(DataOutput output) throws IOException;
+  }
+
+  /**
+   * Reads the result of a successful response.
+   *
+   * @param <T> The type of the result.
+   */
+  @FunctionalInterface
+  private interface Response<T> {
+
+    /**
+     * Reads the result.
+     *
+     * @param input The source of the response.
+     * @return The result.
+     * @throws IOException if the response could not be read.
+     */
+    T read(DataInput input) throws IOException;
+  }
+
+  /**
+   * A request and its pending result.
+   *
+   * @param <T> The type of the result.
+   */
+  private static final class Call<T> {
+
+    /** Writes the request. */
+    final Request request;
+
+    /** Reads the result of a successful response. */
+    final Response<T> response;
+
+    /** Completed with the result of the response. */
+    final CompletableFuture<T> future = new CompletableFuture<>();
+
+    /**
+     * Constructor. Creates a new instance of {@link Call}.
+     *
+     * @param request Writes the request.
+     * @param response Reads the result of a successful response.
+     */
+    Call(Request request, Response<T> response) {
+      this.request = request;
+      this.response = response;
+    }
+
+    /**
+     * Reads the result of a successful response and completes the request.
+     *
+     * @param input The source of the response.
+     * @throws IOException if the response could not be read.
+     */
+    void complete(DataInput input) throws IOException {
+      future.complete(response.read(input));
+    }
+  }
+
+  /** A page of the results of a query. */
+  private static final class Page {
+
+    /** The timestamps of the events. */
+    final long[] timestamps;
+
+    /** Indicates whether the cursor has more events. */
+    final boolean more;
+
+    /**
+     * Constructor. Creates a new instance of {@link Page}.
+     *
+     * @param timestamps The timestamps of the events.
+     * @param more Indicates whether the cursor has more events.
+     */
+    private Page(long[] timestamps, boolean more) {
+      this.timestamps = timestamps;
+      this.more = more;
+    }
+
+    /**
+     * Reads a page.
+     *
+     * @param input The source of the page.
+     * @return The page.
+     * @throws IOException if the page could not be read or is malformed.
+     */
+    static Page read(DataInput input) throws IOException {
+      long[] timestamps = new long[Protocol.readSize(input)];
+      for (int i = 0; i < timestamps.length; ++i) {
+        timestamps[i] = input.readLong();
+      }
+      return new Page(timestamps, input.readBoolean());
+    }
+  }
+
+  /** An iterator over the pages of a cursor of the server. */
+  private final class RemoteEventIterator implements EventIterator {
+
+    /** The type of the events. */
+    private final String type;
+
+    /** The id of the cursor. */
+    private final long cursor;
+
+    /** The current page. */
+    private Page page;
+
+    /** Index of the next event of the current page. */
+    private int index;
+
+    /** The next page, or <code>null</code> if the cursor has no more. */
+    private CompletableFuture<Page> next;
+
+    /** The current event, or <code>null</code> if there is none. */
+    private Event current;
+
+    /** Indicates whether the iterator is closed. */
+    private boolean closed;
+
+    /**
+     * Constructor. Creates a new instance of {@link RemoteEventIterator} and
+     * requests the second page, if any.
+     *
+     * @param type The type of the events.
+     * @param cursor The id of the cursor.
+     * @param first The first page.
+     */
+    private RemoteEventIterator(String type, long cursor, Page first) {
+      this.type = type;
+      this.cursor = cursor;
+      this.page = first;
+      this.next = first.more ? fetch(cursor) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean moveNext() {
+      current = null;
+      if (closed) {
+        return false;
+      }
+      while (index >= page.timestamps.length) {
+        if (next == null) {
+          return false;
+        }
+        page = await(next);
+        index = 0;
+        next = page.more ? fetch(cursor) : null;
+      }
+      current = new Event(type, page.timestamps[index++]);
+      return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Event current() {
+      checkState();
+      return current;
+    }
+
+    /**
+     * {@inheritDoc} The event is removed from the server right away.
+     */
+    @Override
+    public void remove() {
+      checkState();
+      long timestamp = current.timestamp();
+      await(submit(output -> {
+        output.writeByte(Protocol.REMOVE);
+        output.writeUTF(type);
+        output.writeLong(timestamp);
+      }, DataInput::readBoolean));
+      current = null;
+    }
+
+    /**
+     * {@inheritDoc} Releases the cursor of the server if it has more events.
+     */
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      current = null;
+      page = null;
+      if (next != null && !EventStoreClient.this.closed && failure == null) {
+        next = null;
+        submit(output -> {
+          output.writeByte(Protocol.CLOSE);
+          output.writeLong(cursor);
+        }, input -> null);
+      }
+    }
+
+    /**
+     * Checks the iteration state.
+     *
+     * @throws IllegalStateException if the iterator is closed or has no
+     *         current event.
+     */
+    private void checkState() {
+      if (closed) {
+        throw new IllegalStateException("The iteration is closed.");
+      }
+      if (current == null) {
+        throw new IllegalStateException("There is no current event in iteration.");
+      }
+    }
+  }
+
+}
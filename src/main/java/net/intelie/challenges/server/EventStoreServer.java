@@ -0,0 +1,409 @@
+package net.intelie.challenges.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.util.ThreadFactories;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Exposes an {@link EventStore} to the other processes of the host through
+ * the binary {@link Protocol}, so they can share the same instance.
+ * <p>
+ * Each connection is served by its own thread, virtual when the runtime
+ * supports it, which reads the requests in order and answers them in the same
+ * order. The responses are buffered and only flushed once there is no request
+ * left to read, so a client that pipelines its requests gets its responses in
+ * batches, and the cost of a system call is shared by all of them.
+ * <p>
+ * Queries are served by cursors kept by the connection: the first page comes
+ * with the response to the query and the following ones are fetched on
+ * demand. The cursors of a connection are closed with it.
+ */
+public class EventStoreServer implements AutoCloseable {
+
+  /** Size of the buffers of a connection. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Largest number of cursors open at once by a connection. */
+  static final int MAX_CURSORS = 1024;
+
+  /** First pause of the acceptor after a failed accept, in milliseconds. */
+  private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+
+  /** Longest pause of the acceptor after failed accepts, in milliseconds. */
+  private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+  /** The exposed store. */
+  private final EventStore store;
+
+  /** The listening socket. */
+  private final ServerSocket serverSocket;
+
+  /** Open connections, kept to be closed with the server. */
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+  /** Creates the threads that serve the connections. */
+  private final ThreadFactory connectionThreads = ThreadFactories.forBlockingWork("event-store-server-connection");
+
+  /**
+   * Constructor. Creates a new instance of {@link EventStoreServer} and starts
+   * listening on the loopback interface.
+   *
+   * @param store The exposed store.
+   * @param port The port to listen on, or zero for any free port.
+   * @throws IOException if the port could not be bound.
+   */
+  public EventStoreServer(EventStore store, int port) throws IOException {
+    Utils.requireNonNull(store, "Store cannot be null.");
+    this.store = store;
+    this.serverSocket = new ServerSocket();
+    serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+    ThreadFactories.forBlockingWork("event-store-server-acceptor").newThread(this::accept).start();
+  }
+
+  /**
+   * Gets the port the server listens on.
+   *
+   * @return The local port.
+   */
+  public int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Gets the number of open connections.
+   *
+   * @return The number of connections.
+   */
+  public int connections() {
+    return connections.size();
+  }
+
+  /**
+   * Accepts connections until the server is closed. An accept that fails
+   * while the socket is open, as when the process is out of file descriptors,
+   * usually fails again right away, so the acceptor pauses for a time that
+   * doubles with each consecutive failure instead of spinning.
+   */
+  private void accept() {
+    long backoffMillis = 0;
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        backoffMillis = 0;
+        connections.add(socket);
+        connectionThreads.newThread(new Connection(socket)::serve).start();
+      }
+      catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          backoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(MIN_ACCEPT_BACKOFF_MILLIS, 2 * backoffMillis));
+          LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoffMillis));
+        }
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc} Stops listening and closes all connections.
+   */
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    for (Socket socket : connections) {
+      socket.close();
+    }
+  }
+
+  /** A connection and the cursors it has open. */
+  private final class Connection {
+
+    /** The socket of the connection. */
+    private final Socket socket;
+
+    /** Open cursors, mapped by id. Only used by the thread of the connection. */
+    private final Map<Long, EventIterator> cursors = new HashMap<>();
+
+    /** Id of the last opened cursor. */
+    private long lastCursor;
+
+    /** Stream of the requests. */
+    private DataInputStream input;
+
+    /** Stream of the responses. */
+    private DataOutputStream output;
+
+    /**
+     * Constructor. Creates a new instance of {@link Connection}.
+     *
+     * @param socket The socket of the connection.
+     */
+    private Connection(Socket socket) {
+      this.socket = socket;
+    }
+
+    /**
+     * Answers the requests received through the connection, until it is
+     * closed.
+     */
+    private void serve() {
+      try {
+        socket.setTcpNoDelay(true);
+        input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        while (true) {
+          handle(input.readUnsignedByte());
+          if (input.available() == 0) {
+            output.flush();
+          }
+        }
+      }
+      catch (EOFException e) {
+        // The client closed the connection.
+      }
+      catch (IOException e) {
+        // The connection was broken or the request was malformed.
+      }
+      finally {
+        for (EventIterator cursor : cursors.values()) {
+          closeQuietly(cursor);
+        }
+        cursors.clear();
+        connections.remove(socket);
+        try {
+          socket.close();
+        }
+        catch (IOException e) {
+          // Nothing left to release.
+        }
+      }
+    }
+
+    /**
+     * Reads the arguments of a request, applies it to the store and writes
+     * the response. The arguments are read in full before the store is
+     * called, so a failed request leaves the stream ready for the next one.
+     *
+     * @param operation The operation code of the request.
+     * @throws IOException if the request could not be read or is malformed,
+     *         or the response could not be written.
+     */
+    private void handle(int operation) throws IOException {
+      switch (operation) {
+        case Protocol.INSERT: {
+          Event event = new Event(input.readUTF(), input.readLong());
+          respond(() -> store.insert(event));
+          break;
+        }
+        case Protocol.INSERT_ALL: {
+          int count = Protocol.readSize(input);
+          List<Event> events = new ArrayList<>(count);
+          for (int i = 0; i < count; ++i) {
+            events.add(new Event(input.readUTF(), input.readLong()));
+          }
+          respond(() -> {
+            for (Event event : events) {
+              store.insert(event);
+            }
+          });
+          break;
+        }
+        case Protocol.REMOVE_ALL: {
+          String type = input.readUTF();
+          respond(() -> store.removeAll(type));
+          break;
+        }
+        case Protocol.QUERY:
+          query(input.readUTF(), input.readLong(), input.readLong(), Protocol.readPageSize(input));
+          break;
+        case Protocol.FETCH:
+          fetch(input.readLong(), Protocol.readPageSize(input));
+          break;
+        case Protocol.REMOVE:
+          remove(input.readUTF(), input.readLong());
+          break;
+        case Protocol.CLOSE: {
+          EventIterator cursor = cursors.remove(input.readLong());
+          if (cursor != null) {
+            closeQuietly(cursor);
+          }
+          output.writeByte(Protocol.OK);
+          break;
+        }
+        default:
+          throw new IOException("Unknown operation " + operation + ".");
+      }
+    }
+
+    /**
+     * Applies a request that has no result and writes its response.
+     *
+     * @param operation The operation.
+     * @throws IOException if the response could not be written.
+     */
+    private void respond(Runnable operation) throws IOException {
+      try {
+        operation.run();
+      }
+      catch (RuntimeException e) {
+        Protocol.writeError(output, e);
+        return;
+      }
+      output.writeByte(Protocol.OK);
+    }
+
+    /**
+     * Opens a cursor and writes its first page.
+     *
+     * @param type The type of the events.
+     * @param startTime Start timestamp (inclusive).
+     * @param endTime End timestamp (exclusive).
+     * @param pageSize Maximum number of events of the page.
+     * @throws IOException if the response could not be written.
+     */
+    private void query(String type, long startTime, long endTime, int pageSize) throws IOException {
+      if (cursors.size() >= MAX_CURSORS) {
+        Protocol.writeError(output, new IllegalStateException("Too many open cursors."));
+        return;
+      }
+      EventIterator cursor;
+      try {
+        cursor = store.query(type, startTime, endTime);
+      }
+      catch (RuntimeException e) {
+        Protocol.writeError(output, e);
+        return;
+      }
+      long id = ++lastCursor;
+      cursors.put(id, cursor);
+      writePage(id, cursor, pageSize, true);
+    }
+
+    /**
+     * Writes the next page of a cursor.
+     *
+     * @param id The id of the cursor.
+     * @param pageSize Maximum number of events of the page.
+     * @throws IOException if the response could not be written.
+     */
+    private void fetch(long id, int pageSize) throws IOException {
+      EventIterator cursor = cursors.get(id);
+      if (cursor == null) {
+        Protocol.writeError(output, new IllegalStateException("The cursor is closed."));
+        return;
+      }
+      writePage(id, cursor, pageSize, false);
+    }
+
+    /**
+     * Writes the response with a page of a cursor, closing the cursor once it
+     * has no more events or fails.
+     *
+     * @param id The id of the cursor.
+     * @param cursor The cursor.
+     * @param pageSize Maximum number of events of the page.
+     * @param withId Indicates whether the response starts with the id of the
+     *        cursor, as the one of a query.
+     * @throws IOException if the response could not be written.
+     */
+    private void writePage(long id, EventIterator cursor, int pageSize, boolean withId) throws IOException {
+      long[] timestamps = new long[pageSize];
+      int count = 0;
+      boolean more = true;
+      try {
+        while (count < pageSize && (more = cursor.moveNext())) {
+          timestamps[count++] = cursor.current().timestamp();
+        }
+      }
+      catch (RuntimeException e) {
+        cursors.remove(id);
+        closeQuietly(cursor);
+        Protocol.writeError(output, e);
+        return;
+      }
+      if (!more) {
+        cursors.remove(id);
+        closeQuietly(cursor);
+      }
+      output.writeByte(Protocol.OK);
+      if (withId) {
+        output.writeLong(id);
+      }
+      output.writeInt(count);
+      for (int i = 0; i < count; ++i) {
+        output.writeLong(timestamps[i]);
+      }
+      output.writeBoolean(more);
+    }
+
+    /**
+     * Removes an event and writes whether it was found. An event at
+     * {@link Long#MAX_VALUE} is never found: no query range reaches it, since
+     * the end of a range is exclusive.
+     *
+     * @param type The type of the event.
+     * @param timestamp The timestamp of the event.
+     * @throws IOException if the response could not be written.
+     */
+    private void remove(String type, long timestamp) throws IOException {
+      boolean removed = false;
+      if (timestamp == Long.MAX_VALUE) {
+        output.writeByte(Protocol.OK);
+        output.writeBoolean(false);
+        return;
+      }
+      try (EventIterator iterator = store.query(type, timestamp, timestamp + 1)) {
+        if (iterator.moveNext()) {
+          iterator.remove();
+          removed = true;
+        }
+      }
+      catch (RuntimeException e) {
+        Protocol.writeError(output, e);
+        return;
+      }
+      catch (Exception e) {
+        Protocol.writeError(output, new IllegalStateException("Could not remove the event.", e));
+        return;
+      }
+      output.writeByte(Protocol.OK);
+      output.writeBoolean(removed);
+    }
+
+    /**
+     * Closes a cursor, ignoring its failures.
+     *
+     * @param cursor The cursor.
+     */
+    private void closeQuietly(EventIterator cursor) {
+      try {
+        cursor.close();
+      }
+      catch (Exception e) {
+        // The cursor holds no resource worth reporting.
+      }
+    }
+  }
+
+}
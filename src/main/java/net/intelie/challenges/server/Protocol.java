@@ -0,0 +1,125 @@
+package net.intelie.challenges.server;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary protocol spoken between {@link EventStoreServer} and
+ * {@link EventStoreClient}.
+ * <p>
+ * A request is its operation code followed by its arguments. Requests are
+ * pipelined: the client sends them without waiting for the responses, and the
+ * server answers them in the order they were sent. A response is a status
+ * followed, on success, by the result of the operation or, on failure, by the
+ * error message. Events are sent as their type and timestamp; pages of query
+ * results only carry the timestamps, since the type is the one of the query.
+ * <ul>
+ * <li>{@link #INSERT}: type, timestamp. No result.</li>
+ * <li>{@link #INSERT_ALL}: count, then the events. No result.</li>
+ * <li>{@link #REMOVE_ALL}: type. No result.</li>
+ * <li>{@link #QUERY}: type, start, end, page size. The cursor id and the first
+ * page.</li>
+ * <li>{@link #FETCH}: cursor id, page size. The next page.</li>
+ * <li>{@link #REMOVE}: type, timestamp. Whether the event was removed.</li>
+ * <li>{@link #CLOSE}: cursor id. No result.</li>
+ * </ul>
+ * A page is its number of timestamps, the timestamps and a flag telling
+ * whether the cursor has more events. The requested page size must be at
+ * least one. A cursor that has no more events is
+ * closed by the server.
+ */
+final class Protocol {
+
+  /** Inserts an event. */
+  static final int INSERT = 1;
+
+  /** Inserts a batch of events. */
+  static final int INSERT_ALL = 2;
+
+  /** Removes all events of a type. */
+  static final int REMOVE_ALL = 3;
+
+  /** Opens a cursor over the events of a type within a time range. */
+  static final int QUERY = 4;
+
+  /** Reads the next page of a cursor. */
+  static final int FETCH = 5;
+
+  /** Removes an event. */
+  static final int REMOVE = 6;
+
+  /** Closes a cursor before its end. */
+  static final int CLOSE = 7;
+
+  /** The request succeeded. */
+  static final int OK = 0;
+
+  /** The request had an invalid argument. */
+  static final int INVALID_ARGUMENT = 1;
+
+  /** The request could not be served in the current state. */
+  static final int INVALID_STATE = 2;
+
+  /** Largest number of events of a page or of a batch of insertions. */
+  static final int MAX_BATCH = 64 * 1024;
+
+  /** Constructor. This class only has constants and static methods. */
+  private Protocol() {
+  }
+
+  /**
+   * Reads the size of a page or of a batch, checking its bounds.
+   *
+   * @param input The source of the size.
+   * @return The size.
+   * @throws IOException if the size could not be read or is out of bounds.
+   */
+  static int readSize(DataInput input) throws IOException {
+    int size = input.readInt();
+    if (size < 0 || size > MAX_BATCH) {
+      throw new IOException("Malformed batch size " + size + ".");
+    }
+    return size;
+  }
+
+  /**
+   * Reads the size of a page, which must hold at least one event: an empty
+   * page of a cursor with more events would never make progress.
+   *
+   * @param input The source of the size.
+   * @return The size.
+   * @throws IOException if the size could not be read or is out of bounds.
+   */
+  static int readPageSize(DataInput input) throws IOException {
+    int size = readSize(input);
+    if (size == 0) {
+      throw new IOException("Malformed page size 0.");
+    }
+    return size;
+  }
+
+  /**
+   * Writes the error response of a failed request.
+   *
+   * @param output The destination of the response.
+   * @param e The failure.
+   * @throws IOException if the response could not be written.
+   */
+  static void writeError(DataOutput output, RuntimeException e) throws IOException {
+    output.writeByte(e instanceof IllegalArgumentException ? INVALID_ARGUMENT : INVALID_STATE);
+    output.writeUTF(String.valueOf(e.getMessage()));
+  }
+
+  /**
+   * Creates the exception thrown to the client for an error response.
+   *
+   * @param status The status of the response.
+   * @param message The error message.
+   * @return The exception.
+   */
+  static RuntimeException toException(int status, String message) {
+    return status == INVALID_ARGUMENT ? new IllegalArgumentException(message) : new IllegalStateException(message);
+  }
+
+}
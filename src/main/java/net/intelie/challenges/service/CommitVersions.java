@@ -0,0 +1,372 @@
+package net.intelie.challenges.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.intelie.challenges.model.Event;
+
+/**
+ * Keeps the commit versions of the write batches of a store, which make every
+ * batch visible to queries all at once.
+ * <p>
+ * A batch gets a version when it starts to commit and applies its changes to
+ * the store right away, but marks them first: every inserted event gets an
+ * insert marker and every removed event is kept in a removal record, both
+ * holding the version. A query reads the visible version when it starts, its
+ * snapshot, and hides the marked events of later versions, while it brings
+ * back the recorded events removed by them. The visible version only moves
+ * past a batch once all batches up to it are applied, so a query sees all of
+ * a batch or nothing of it.
+ * <p>
+ * Markers and records are dropped once no open query has a snapshot older
+ * than their batch. Queries register their snapshots for that, without locks:
+ * each snapshot has a striped counter, so queries that share a snapshot do
+ * not contend on it, and only the first query of a snapshot adds its entry.
+ * The pruning runs on the commit path alone, which also drops the counters
+ * of snapshots left behind. Only the allocation and the publication of
+ * versions are serialized, so the cost of a commit depends on the size of the
+ * batch alone.
+ */
+final class CommitVersions {
+
+  /** Snapshot of the queries made before the first batch: it sees all. */
+  static final long LATEST = Long.MAX_VALUE;
+
+  /** Serializes the allocation and the publication of versions. */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Last allocated version. Guarded by {@link #lock}. */
+  private long clock;
+
+  /** Versions allocated and not published yet. Guarded by {@link #lock}. */
+  private final TreeSet<Long> pending = new TreeSet<>();
+
+  /** Last version whose batch and all the earlier ones are applied. */
+  private volatile long visible;
+
+  /** Indicates whether a batch was ever committed. */
+  private volatile boolean active;
+
+  /**
+   * Number of open queries per snapshot. An entry may be left at zero; it is
+   * dropped by the pruning once its snapshot is older than the horizon.
+   */
+  private final ConcurrentSkipListMap<Long, LongAdder> readers = new ConcurrentSkipListMap<>();
+
+  /**
+   * Visible version read by the last pruning. A query whose snapshot is older
+   * may have been missed by it, and takes a new snapshot.
+   */
+  private volatile long horizon;
+
+  /** Serializes the pruning. */
+  private final ReentrantLock pruneLock = new ReentrantLock();
+
+  /** Published batches whose markers and records are still kept. */
+  private final ConcurrentLinkedQueue<Commit> committed = new ConcurrentLinkedQueue<>();
+
+  /** Insert markers of each type: the version that inserted a timestamp. */
+  private final Map<String, ConcurrentSkipListMap<Long, Long>> inserted = new ConcurrentHashMap<>();
+
+  /** Removal records of each type, mapped by timestamp. */
+  private final Map<String, ConcurrentSkipListMap<Long, RemovedEvent>> removed = new ConcurrentHashMap<>();
+
+  /**
+   * Starts the commit of a batch.
+   *
+   * @return The commit, which holds the new version.
+   */
+  Commit begin() {
+    lock.lock();
+    try {
+      active = true;
+      pending.add(++clock);
+      return new Commit(clock);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Finishes the commit of a batch, moving the visible version as far as the
+   * applied batches allow.
+   *
+   * @param commit The commit.
+   */
+  void publish(Commit commit) {
+    lock.lock();
+    try {
+      pending.remove(commit.version);
+      visible = pending.isEmpty() ? clock : pending.first() - 1;
+    }
+    finally {
+      lock.unlock();
+    }
+    committed.add(commit);
+    prune();
+  }
+
+  /**
+   * Takes and registers the snapshot of a query.
+   *
+   * @return The snapshot, or {@link #LATEST} if no batch was ever committed.
+   */
+  long openSnapshot() {
+    if (!active) {
+      return LATEST;
+    }
+    while (true) {
+      long snapshot = visible;
+      LongAdder count = readers.get(snapshot);
+      if (count == null) {
+        count = readers.computeIfAbsent(snapshot, key -> new LongAdder());
+      }
+      count.increment();
+      if (horizon <= snapshot && readers.get(snapshot) == count) {
+        return snapshot;
+      }
+      count.decrement();
+    }
+  }
+
+  /**
+   * Unregisters the snapshot of a query. The markers and records it kept are
+   * dropped by the next commit.
+   *
+   * @param snapshot The snapshot.
+   */
+  void closeSnapshot(long snapshot) {
+    if (snapshot != LATEST) {
+      readers.get(snapshot).decrement();
+    }
+  }
+
+  /**
+   * Checks whether an event of a query result was inserted by a batch that is
+   * not visible to the query.
+   *
+   * @param type The type of the event.
+   * @param timestamp The timestamp of the event.
+   * @param snapshot The snapshot of the query.
+   * @return <code>true</code> if the event must be hidden.
+   */
+  boolean hidden(String type, long timestamp, long snapshot) {
+    ConcurrentSkipListMap<Long, Long> markers = inserted.get(type);
+    if (markers == null || markers.isEmpty()) {
+      return false;
+    }
+    Long version = markers.get(timestamp);
+    return version != null && version > snapshot;
+  }
+
+  /**
+   * Checks whether events of a type were removed by batches that some query
+   * may not see yet.
+   *
+   * @param type The type of the events.
+   * @return <code>true</code> if the type has removal records.
+   */
+  boolean hasRemovals(String type) {
+    ConcurrentSkipListMap<Long, RemovedEvent> records = removed.get(type);
+    return records != null && !records.isEmpty();
+  }
+
+  /**
+   * Gets the removal records of a type. The map is created if needed, so
+   * that a query can follow the records added while it is iterated.
+   *
+   * @param type The type of the events.
+   * @return The records, mapped by timestamp.
+   */
+  ConcurrentSkipListMap<Long, RemovedEvent> removalsOf(String type) {
+    ConcurrentSkipListMap<Long, RemovedEvent> records = removed.get(type);
+    return records != null ? records : removed.computeIfAbsent(type, key -> new ConcurrentSkipListMap<>());
+  }
+
+  /**
+   * Forgets the markers and records of a type, whose events were all removed.
+   *
+   * @param type The type of the events.
+   */
+  void clear(String type) {
+    inserted.remove(type);
+    removed.remove(type);
+  }
+
+  /**
+   * Drops the markers and records of the published batches that are visible
+   * to every open query. The visible version is published as the horizon
+   * before the snapshots are read, so a query that registers meanwhile either
+   * is seen here or notices the horizon and takes a newer snapshot. The
+   * counters found at zero below the horizon are dropped on the way; a query
+   * that still finds one of them notices the horizon as well.
+   */
+  private void prune() {
+    if (committed.isEmpty() || !pruneLock.tryLock()) {
+      return;
+    }
+    try {
+      long limit = visible;
+      horizon = limit;
+      for (Map.Entry<Long, LongAdder> entry : readers.entrySet()) {
+        if (entry.getValue().sum() != 0) {
+          limit = Math.min(limit, entry.getKey());
+          break;
+        }
+        if (entry.getKey() < horizon) {
+          readers.remove(entry.getKey(), entry.getValue());
+        }
+      }
+      for (Iterator<Commit> iterator = committed.iterator(); iterator.hasNext();) {
+        Commit commit = iterator.next();
+        if (commit.version <= limit) {
+          commit.prune();
+          iterator.remove();
+        }
+      }
+    }
+    finally {
+      pruneLock.unlock();
+    }
+  }
+
+  /** An event removed by a batch, kept for the queries that do not see it. */
+  static final class RemovedEvent {
+
+    /** The removed event. */
+    final Event event;
+
+    /** Version of the batch that inserted the event, or zero. */
+    final long insertedAt;
+
+    /** Version of the batch that removed the event. */
+    final long removedAt;
+
+    /**
+     * Constructor. Creates a new instance of {@link RemovedEvent}.
+     *
+     * @param event The removed event.
+     * @param insertedAt Version of the batch that inserted the event, or zero.
+     * @param removedAt Version of the batch that removed the event.
+     */
+    RemovedEvent(Event event, long insertedAt, long removedAt) {
+      this.event = event;
+      this.insertedAt = insertedAt;
+      this.removedAt = removedAt;
+    }
+
+    /**
+     * Checks whether a query still sees the event.
+     *
+     * @param snapshot The snapshot of the query.
+     * @return <code>true</code> if the event was inserted and not removed
+     *         within the snapshot.
+     */
+    boolean visibleAt(long snapshot) {
+      return insertedAt <= snapshot && snapshot < removedAt;
+    }
+  }
+
+  /** The markers and records of a batch being committed. */
+  final class Commit {
+
+    /** The version of the batch. */
+    final long version;
+
+    /** Types and timestamps of the insert markers. */
+    private final List<Event> markers = new ArrayList<>();
+
+    /** The removal records. */
+    private final List<RemovedEvent> records = new ArrayList<>();
+
+    /**
+     * Constructor. Creates a new instance of {@link Commit}.
+     *
+     * @param version The version of the batch.
+     */
+    private Commit(long version) {
+      this.version = version;
+    }
+
+    /**
+     * Marks an event as inserted by the batch. It is called before the event
+     * is stored.
+     *
+     * @param event The event.
+     */
+    void markInserted(Event event) {
+      inserted.computeIfAbsent(event.type(), key -> new ConcurrentSkipListMap<>()).put(event.timestamp(), version);
+      markers.add(event);
+    }
+
+    /**
+     * Withdraws the marker of an event that was already stored.
+     *
+     * @param event The event.
+     */
+    void unmarkInserted(Event event) {
+      ConcurrentSkipListMap<Long, Long> typeMarkers = inserted.get(event.type());
+      if (typeMarkers != null) {
+        typeMarkers.remove(event.timestamp(), version);
+      }
+      markers.remove(markers.size() - 1);
+    }
+
+    /**
+     * Records an event as removed by the batch. It is called before the event
+     * is removed.
+     *
+     * @param event The event.
+     * @return The record.
+     */
+    RemovedEvent recordRemoval(Event event) {
+      ConcurrentSkipListMap<Long, Long> typeMarkers = inserted.get(event.type());
+      Long insertedAt = typeMarkers == null ? null : typeMarkers.get(event.timestamp());
+      RemovedEvent record = new RemovedEvent(event, insertedAt == null ? 0 : insertedAt, version);
+      removalsOf(event.type()).put(event.timestamp(), record);
+      records.add(record);
+      return record;
+    }
+
+    /**
+     * Withdraws the record of an event that was not stored.
+     *
+     * @param record The record.
+     */
+    void unrecordRemoval(RemovedEvent record) {
+      ConcurrentSkipListMap<Long, RemovedEvent> typeRecords = removed.get(record.event.type());
+      if (typeRecords != null) {
+        typeRecords.remove(record.event.timestamp(), record);
+      }
+      records.remove(records.size() - 1);
+    }
+
+    /**
+     * Drops the markers and records of the batch.
+     */
+    private void prune() {
+      for (Event event : markers) {
+        ConcurrentSkipListMap<Long, Long> typeMarkers = inserted.get(event.type());
+        if (typeMarkers != null) {
+          typeMarkers.remove(event.timestamp(), version);
+        }
+      }
+      for (RemovedEvent record : records) {
+        ConcurrentSkipListMap<Long, RemovedEvent> typeRecords = removed.get(record.event.type());
+        if (typeRecords != null) {
+          typeRecords.remove(record.event.timestamp(), record);
+        }
+      }
+    }
+  }
+
+}
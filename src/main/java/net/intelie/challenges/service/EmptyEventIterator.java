@@ -0,0 +1,49 @@
+package net.intelie.challenges.service;
+
+import net.intelie.challenges.model.Event;
+
+/**
+ * An iterator over no events. It has no state, so a single instance is shared
+ * by every query known to be empty, which then costs no allocation.
+ */
+final class EmptyEventIterator implements EventIterator {
+
+  /** The shared instance. */
+  static final EmptyEventIterator INSTANCE = new EmptyEventIterator();
+
+  /** Prevents instantiation. */
+  private EmptyEventIterator() {
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean moveNext() {
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Event current() {
+    throw new IllegalStateException("There is no current event in iteration.");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void remove() {
+    throw new IllegalStateException("There is no current event in iteration.");
+  }
+
+  /**
+   * {@inheritDoc} There is nothing to release.
+   */
+  @Override
+  public void close() {
+  }
+
+}
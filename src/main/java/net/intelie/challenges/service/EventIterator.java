@@ -30,4 +30,14 @@ public interface EventIterator extends AutoCloseable {
    *         last result was {@code false}.
    */
   void remove();
+
+  /**
+   * Gets an iterator over no events. The same instance is returned by every
+   * call, and closing it has no effect.
+   *
+   * @return The empty iterator.
+   */
+  static EventIterator empty() {
+    return EmptyEventIterator.INSTANCE;
+  }
 }
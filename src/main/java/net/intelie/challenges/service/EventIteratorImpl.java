@@ -2,6 +2,7 @@ package net.intelie.challenges.service;
 
 import java.util.Iterator;
 import java.util.Map;
+import java.util.function.LongPredicate;
 
 import net.intelie.challenges.model.Event;
 
@@ -12,8 +13,19 @@ import net.intelie.challenges.model.Event;
  */
 public class EventIteratorImpl implements EventIterator {
 
-  /** Event dataset. In this map, each event is mapped by its timestamp. */
-  private final Map<Long, Event> events;
+  /**
+   * Event dataset. In this map, each event is mapped by its timestamp. It is
+   * released on close, so that a closed iterator does not keep the dataset
+   * reachable.
+   */
+  private Map<Long, Event> events;
+
+  /**
+   * Removes an event from the underlying dataset, given its timestamp. It
+   * returns <code>true</code> if the event was removed by the call. It may be
+   * <code>null</code>, in which case the wrapped iterator removes the event.
+   */
+  private LongPredicate remover;
 
   /** The wrapped event iterator. This one iterates over the dataset keys. */
   private Iterator<Long> iterator;
@@ -29,7 +41,24 @@ public class EventIteratorImpl implements EventIterator {
    *        indicating it is closed.
    */
   public EventIteratorImpl(Map<Long, Event> events) {
+    this(events, null);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link EventIteratorImpl} whose
+   * removals are performed by a custom function instead of the dataset itself.
+   * It allows the owner of the dataset to keep track of removed events.
+   *
+   * @param events The underlying dataset to be visited by the iterator. If this
+   *        dataset is <code>null</code>, the iterator will also be null,
+   *        indicating it is closed.
+   * @param remover Function that removes an event from the dataset given its
+   *        timestamp. If it is <code>null</code>, events are removed through
+   *        the dataset iterator.
+   */
+  EventIteratorImpl(Map<Long, Event> events, LongPredicate remover) {
     this.events = events;
+    this.remover = remover;
     if (events != null) {
       iterator = this.events.keySet().iterator();
     }
@@ -64,7 +93,12 @@ public class EventIteratorImpl implements EventIterator {
   @Override
   public void remove() {
     checkState();
-    iterator.remove();
+    if (remover == null) {
+      iterator.remove();
+    }
+    else {
+      remover.test(currentEventKey);
+    }
     currentEventKey = null;
   }
 
@@ -75,6 +109,8 @@ public class EventIteratorImpl implements EventIterator {
   public void close() throws Exception {
     currentEventKey = null;
     iterator = null;
+    events = null;
+    remover = null;
   }
 
   /**
@@ -0,0 +1,737 @@
+package net.intelie.challenges.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.util.CoreGroups;
+
+/**
+ * Holds all the events of a single type, together with a continuously
+ * maintained count of them.
+ *
+ * The count is kept in a {@link LongAdder} because
+ * {@link ConcurrentSkipListMap#size()} traverses the whole map, which is not
+ * acceptable for callers (i.e. eviction) that check the store size often. The
+ * adder is only updated when the map really changes, so concurrent removals of
+ * the same event are counted once.
+ *
+ * Alongside the count, the partition keeps the bounds of its timestamps and a
+ * sketch of its insert rate, which make up its entry in the statistics catalog
+ * of the store. The bounds are widened by inserts and tightened by the removal
+ * of the event at a bound, so they never exclude a stored event; that is what
+ * allows the store to answer queries outside of them without reading the map.
+ *
+ * A partition can be frozen: its events move to a {@link FrozenLayer}, an
+ * immutable pair of sorted arrays that queries scan after a binary search and
+ * without locks, and the map becomes a delta that receives the later inserts.
+ * The delta is merged into a new layer once it grows past a fraction of the
+ * layer, by a task that the insert crossing the threshold hands to the common
+ * {@link ForkJoinPool}, or whenever the partition is frozen again. A merge
+ * copies the whole layer, so inserts never run it themselves. Merges and
+ * removals of frozen events are serialized by a lock; inserts and queries are
+ * not. The bounds are not tightened while the
+ * partition is frozen, which keeps them conservative.
+ *
+ * The frozen layer can be replicated per core group: each group reads its own
+ * copy of the arrays. A single reader of the group, the one that claims its
+ * slot for the published layer, makes the copy; the other readers of the
+ * group read the published layer meanwhile instead of copying it as well.
+ * Publishing a new layer is the only write readers have to wait for, and the
+ * copies share the removal set of the layer.
+ *
+ * The partition also counts the iterators reading it. Once a partition is
+ * retired by <code>removeAll</code>, only those readers keep it reachable, so
+ * the count tells the store whether its memory is still pinned. The count is
+ * striped, so readers on different cores do not contend on it.
+ */
+final class EventPartition {
+
+  /** Minimum number of delta events that triggers a merge. */
+  static final int MIN_MERGE_DELTA = 1024;
+
+  /**
+   * Events of the partition, mapped by their timestamps. Once the partition
+   * is frozen, it only holds the events that were not merged yet.
+   */
+  private final ConcurrentSkipListMap<Long, Event> events;
+
+  /** The frozen layer, or <code>null</code> if the partition is not frozen. */
+  private volatile FrozenLayer frozen;
+
+  /**
+   * Replicas of the frozen layer, one slot per core group, or
+   * <code>null</code> if the layer was never read through replicas.
+   */
+  private final AtomicReference<AtomicReferenceArray<FrozenLayer>> replicas = new AtomicReference<>();
+
+  /** Approximate number of events in the delta of a frozen partition. */
+  private final AtomicLong deltaSize = new AtomicLong();
+
+  /** Serializes merges and the removals of frozen events. */
+  private final ReentrantLock mergeLock = new ReentrantLock();
+
+  /** Indicates whether a background merge is scheduled and not started. */
+  private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+
+  /** Number of events currently stored in the partition. */
+  private final LongAdder size = new LongAdder();
+
+  /** Lower bound of the stored timestamps. */
+  private final AtomicLong first = new AtomicLong(Long.MAX_VALUE);
+
+  /** Upper bound of the stored timestamps. */
+  private final AtomicLong last = new AtomicLong(Long.MIN_VALUE);
+
+  /** Sketch of the insert rate. */
+  private final RateSketch insertRate = new RateSketch();
+
+  /** Number of open iterators reading the partition. */
+  private final LongAdder readers = new LongAdder();
+
+  /** Indicates whether the partition was removed from the store. */
+  private volatile boolean retired;
+
+  /** Indicates whether the partition was replaced by an imported one. */
+  private volatile boolean superseded;
+
+  /**
+   * Constructor. Creates a new empty instance of {@link EventPartition}.
+   */
+  EventPartition() {
+    this.events = new ConcurrentSkipListMap<>();
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link EventPartition} over an
+   * already built map.
+   *
+   * @param events The events map.
+   * @param size The number of events of the map.
+   */
+  private EventPartition(ConcurrentSkipListMap<Long, Event> events, long size) {
+    this.events = events;
+    this.size.add(size);
+    if (size > 0) {
+      first.set(events.firstKey());
+      last.set(events.lastKey());
+    }
+  }
+
+  /**
+   * Builds a partition from timestamps in strictly increasing order. The
+   * events are appended to a map that no other thread sees yet, and the size
+   * and the bounds are set once at the end, instead of being updated by every
+   * insert.
+   *
+   * @param type The type of the events.
+   * @param timestamps The timestamps, in strictly increasing order.
+   * @return The new partition.
+   * @throws IllegalArgumentException if the timestamps are out of order.
+   */
+  static EventPartition fromSorted(String type, PrimitiveIterator.OfLong timestamps) {
+    ConcurrentSkipListMap<Long, Event> events = new ConcurrentSkipListMap<>();
+    long count = 0;
+    long previous = 0;
+    while (timestamps.hasNext()) {
+      long timestamp = timestamps.nextLong();
+      if (count > 0 && timestamp <= previous) {
+        throw new IllegalArgumentException("Timestamps must be strictly increasing.");
+      }
+      events.put(timestamp, new Event(type, timestamp));
+      previous = timestamp;
+      ++count;
+    }
+    return new EventPartition(events, count);
+  }
+
+  /**
+   * Gets the underlying events map. Once the partition is frozen, it only
+   * holds the delta.
+   *
+   * @return The sorted events map of this partition.
+   */
+  ConcurrentSkipListMap<Long, Event> events() {
+    return events;
+  }
+
+  /**
+   * Stores an event in the partition. An event with the same timestamp is
+   * replaced and does not change the partition size; in a frozen partition,
+   * it is kept instead.
+   *
+   * @param event The event to be stored.
+   * @return <code>true</code> if the event was not stored yet.
+   */
+  boolean put(Event event) {
+    FrozenLayer layer = frozen;
+    if (layer != null && layer.contains(event.timestamp())) {
+      return false;
+    }
+    if (events.put(event.timestamp(), event) != null) {
+      return false;
+    }
+    size.increment();
+    if (layer != null || frozen != null) {
+      if (frozen != layer && !keepMerged(event)) {
+        return false;
+      }
+      if (deltaSize.incrementAndGet() > mergeThreshold() && mergeScheduled.compareAndSet(false, true)) {
+        ForkJoinPool.commonPool().execute(this::mergeInBackground);
+      }
+    }
+    insertRate.record();
+    widen(event.timestamp());
+    return true;
+  }
+
+  /**
+   * Gets the number of delta events past which the delta is merged.
+   *
+   * @return The merge threshold.
+   */
+  private long mergeThreshold() {
+    return Math.max(MIN_MERGE_DELTA, frozen.length() >>> 3);
+  }
+
+  /**
+   * Merges the delta, unless the partition was removed from the store or a
+   * merge already emptied the delta since this one was scheduled.
+   */
+  private void mergeInBackground() {
+    mergeLock.lock();
+    try {
+      mergeScheduled.set(false);
+      if (!retired && deltaSize.get() > mergeThreshold()) {
+        merge();
+      }
+    }
+    finally {
+      mergeLock.unlock();
+    }
+  }
+
+  /**
+   * Checks an event stored in the delta while the frozen layer was replaced.
+   * The new layer may already hold an event with the same timestamp, merged
+   * from the delta before this one was stored, in which case this one is
+   * dropped.
+   *
+   * @param event The event stored in the delta.
+   * @return <code>true</code> if the event is kept.
+   */
+  private boolean keepMerged(Event event) {
+    mergeLock.lock();
+    try {
+      if (frozen.contains(event.timestamp()) && events.remove(event.timestamp(), event)) {
+        size.decrement();
+        return false;
+      }
+      return true;
+    }
+    finally {
+      mergeLock.unlock();
+    }
+  }
+
+  /**
+   * Checks whether an event is stored.
+   *
+   * @param timestamp The timestamp of the event.
+   * @return <code>true</code> if the event is in the map or in the frozen
+   *         layer.
+   */
+  boolean contains(long timestamp) {
+    if (events.containsKey(timestamp)) {
+      return true;
+    }
+    FrozenLayer layer = frozen;
+    return layer != null && layer.contains(timestamp);
+  }
+
+  /**
+   * Removes the event mapped by a timestamp. In a frozen partition, the event
+   * may be in the delta, in the frozen layer or briefly in both.
+   *
+   * @param timestamp The timestamp of the event to be removed.
+   * @return The event removed by this call, or <code>null</code> if there was
+   *         no such event.
+   */
+  Event remove(long timestamp) {
+    Event removed = events.remove(timestamp);
+    if (frozen != null) {
+      if (removed != null) {
+        deltaSize.decrementAndGet();
+      }
+      mergeLock.lock();
+      try {
+        Event base = frozen.remove(timestamp);
+        removed = removed != null ? removed : base;
+      }
+      finally {
+        mergeLock.unlock();
+      }
+      if (removed != null) {
+        size.decrement();
+      }
+      return removed;
+    }
+    if (removed != null) {
+      size.decrement();
+      tighten(timestamp);
+    }
+    return removed;
+  }
+
+  /**
+   * Removes the events within a range that match a filter, in a single pass
+   * over the range. The filter is called without locks. In a frozen
+   * partition, the matching events of the frozen layer are collected first
+   * and then marked as removed under a single acquisition of the merge lock.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param filter Selects the events to be removed.
+   * @return The events removed by this call.
+   */
+  List<Event> removeIf(long startTime, long endTime, Predicate<? super Event> filter) {
+    List<Event> removed = new ArrayList<>();
+    for (Event event : events.subMap(startTime, endTime).values()) {
+      if (filter.test(event) && events.remove(event.timestamp(), event)) {
+        removed.add(event);
+      }
+    }
+    FrozenLayer layer = frozen;
+    if (layer != null) {
+      deltaSize.addAndGet(-removed.size());
+      int end = layer.lowerBound(endTime);
+      int[] matches = new int[16];
+      int count = 0;
+      for (int index = layer.lowerBound(startTime); index < end; ++index) {
+        if (!layer.isRemoved(index) && filter.test(layer.eventAt(index))) {
+          if (count == matches.length) {
+            matches = Arrays.copyOf(matches, count * 2);
+          }
+          matches[count++] = index;
+        }
+      }
+      if (count > 0) {
+        mergeLock.lock();
+        try {
+          FrozenLayer current = frozen;
+          for (int i = 0; i < count; ++i) {
+            Event event = current == layer ? layer.removeAt(matches[i]) : current.remove(layer.timestampAt(
+              matches[i]));
+            if (event != null) {
+              removed.add(event);
+            }
+          }
+        }
+        finally {
+          mergeLock.unlock();
+        }
+      }
+    }
+    else if (!removed.isEmpty()) {
+      tighten(removed.get(0).timestamp());
+      tighten(removed.get(removed.size() - 1).timestamp());
+    }
+    size.add(-removed.size());
+    return removed;
+  }
+
+  /**
+   * Freezes the partition, or merges its delta into a new frozen layer if it
+   * is already frozen.
+   */
+  void freeze() {
+    mergeLock.lock();
+    try {
+      merge();
+    }
+    finally {
+      mergeLock.unlock();
+    }
+  }
+
+  /**
+   * Checks whether the partition is frozen.
+   *
+   * @return <code>true</code> if the partition has a frozen layer.
+   */
+  boolean isFrozen() {
+    return frozen != null;
+  }
+
+  /**
+   * Merges the live events of the frozen layer and the events of the delta
+   * into a new layer, publishes it, and then drops the merged events from the
+   * delta. Each event is in the old layer, the delta or the new layer
+   * throughout; a reader that finds the delta changed under it resumes on the
+   * new layer. A delta event whose timestamp is live in the layer was
+   * stored by an insert that raced with the previous merge; it was counted
+   * twice, and is dropped here. The caller holds the merge lock.
+   */
+  private void merge() {
+    FrozenLayer base = frozen;
+    int baseLength = base == null ? 0 : base.length();
+    int capacity = (int) Math.min(Integer.MAX_VALUE - 8, size.sum() + 16);
+    long[] timestamps = new long[capacity];
+    Event[] merged = new Event[capacity];
+    List<Long> moved = new ArrayList<>();
+    Iterator<Event> delta = events.values().iterator();
+    Event pending = delta.hasNext() ? delta.next() : null;
+    int next = 0;
+    int count = 0;
+    while (true) {
+      while (next < baseLength && base.isRemoved(next)) {
+        ++next;
+      }
+      Event event;
+      if (next < baseLength && (pending == null || base.timestampAt(next) <= pending.timestamp())) {
+        if (pending != null && base.timestampAt(next) == pending.timestamp()) {
+          if (events.remove(pending.timestamp(), pending)) {
+            size.decrement();
+          }
+          pending = delta.hasNext() ? delta.next() : null;
+        }
+        event = base.eventAt(next++);
+      }
+      else if (pending != null) {
+        event = pending;
+        moved.add(pending.timestamp());
+        pending = delta.hasNext() ? delta.next() : null;
+      }
+      else {
+        break;
+      }
+      if (count == timestamps.length) {
+        timestamps = Arrays.copyOf(timestamps, count + (count >>> 1) + 16);
+        merged = Arrays.copyOf(merged, timestamps.length);
+      }
+      timestamps[count] = event.timestamp();
+      merged[count++] = event;
+    }
+    frozen = new FrozenLayer(base == null ? 1 : base.version() + 1, Arrays.copyOf(timestamps, count), Arrays.copyOf(
+      merged, count));
+    for (Long timestamp : moved) {
+      events.remove(timestamp);
+    }
+    deltaSize.set(events.size());
+  }
+
+  /**
+   * Creates an iterator over the events within a range.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param remover Removes an event from the store, given its timestamp.
+   * @return The iterator.
+   */
+  EventIterator iterator(long startTime, long endTime, LongPredicate remover) {
+    return iterator(startTime, endTime, remover, 1);
+  }
+
+  /**
+   * Creates an iterator over the events within a range that reads the frozen
+   * layer from the replica of the core group of the current thread.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param remover Removes an event from the store, given its timestamp.
+   * @param groups Number of core groups; one reads the published layer.
+   * @return The iterator.
+   * @see CoreGroups
+   */
+  EventIterator iterator(long startTime, long endTime, LongPredicate remover, int groups) {
+    if (frozen == null) {
+      return new EventIteratorImpl(events.subMap(startTime, endTime), remover);
+    }
+    return new FrozenEventIterator(this, groups, startTime, endTime, false, remover);
+  }
+
+  /**
+   * Gets the published frozen layer.
+   *
+   * @return The layer, or <code>null</code> if the partition is not frozen.
+   */
+  FrozenLayer frozenLayer() {
+    return frozen;
+  }
+
+  /**
+   * Gets the map of the partition, which holds the delta once it is frozen.
+   *
+   * @return The map, mutable and shared.
+   */
+  ConcurrentNavigableMap<Long, Event> delta() {
+    return events;
+  }
+
+  /**
+   * Gets the replica of a layer for the core group of the current thread. A
+   * replica older than the layer is replaced by a copy made by the thread
+   * that claims the slot of the group, by storing the layer itself there;
+   * until the copy is stored, the readers of the group get the layer.
+   *
+   * @param layer The published layer.
+   * @param groups Number of core groups.
+   * @return The replica, of the same version as the layer, or the layer
+   *         itself if the replica is not ready or the group already holds a
+   *         newer one.
+   */
+  FrozenLayer replicaOf(FrozenLayer layer, int groups) {
+    AtomicReferenceArray<FrozenLayer> slots = replicas.get();
+    if (slots == null || slots.length() != groups) {
+      AtomicReferenceArray<FrozenLayer> resized = new AtomicReferenceArray<>(groups);
+      if (!replicas.compareAndSet(slots, resized)) {
+        return layer;
+      }
+      slots = resized;
+    }
+    int group = CoreGroups.of(groups);
+    FrozenLayer replica = slots.get(group);
+    if (replica != null && replica.version() >= layer.version()) {
+      return replica.version() == layer.version() ? replica : layer;
+    }
+    if (!slots.compareAndSet(group, replica, layer)) {
+      return layer;
+    }
+    FrozenLayer copy = layer.replicate();
+    slots.compareAndSet(group, layer, copy);
+    return copy;
+  }
+
+  /**
+   * Gets the timestamps of all events, in increasing order.
+   *
+   * @return The timestamps.
+   */
+  PrimitiveIterator.OfLong timestamps() {
+    if (frozen == null) {
+      return events.keySet().stream().mapToLong(Long::longValue).iterator();
+    }
+    return timestamps(new FrozenEventIterator(this, 1, Long.MIN_VALUE, Long.MAX_VALUE, true, null));
+  }
+
+  /**
+   * Gets the timestamps of the events within a range, in increasing order.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The timestamps.
+   */
+  PrimitiveIterator.OfLong timestamps(long startTime, long endTime) {
+    if (frozen == null) {
+      return events.subMap(startTime, endTime).keySet().stream().mapToLong(Long::longValue).iterator();
+    }
+    return timestamps(iterator(startTime, endTime, null));
+  }
+
+  /**
+   * Adapts an event iterator to an iterator over the timestamps.
+   *
+   * @param iterator The event iterator.
+   * @return The timestamp iterator.
+   */
+  private static PrimitiveIterator.OfLong timestamps(EventIterator iterator) {
+    return new PrimitiveIterator.OfLong() {
+
+      /** Indicates whether the event iterator was moved ahead. */
+      private boolean ready;
+
+      /** The result of the last move. */
+      private boolean available;
+
+      @Override
+      public boolean hasNext() {
+        if (!ready) {
+          available = iterator.moveNext();
+          ready = true;
+        }
+        return available;
+      }
+
+      @Override
+      public long nextLong() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        ready = false;
+        return iterator.current().timestamp();
+      }
+    };
+  }
+
+  /**
+   * Widens the bounds to include a stored timestamp. It is called after the
+   * event is in the map, and retries until the bounds include it.
+   *
+   * @param timestamp The stored timestamp.
+   */
+  private void widen(long timestamp) {
+    long current = first.get();
+    while (timestamp < current && !first.compareAndSet(current, timestamp)) {
+      current = first.get();
+    }
+    current = last.get();
+    while (timestamp > current && !last.compareAndSet(current, timestamp)) {
+      current = last.get();
+    }
+  }
+
+  /**
+   * Tightens the bounds after the removal of the event at one of them. The
+   * new bound is read from the map and only replaces the removed timestamp.
+   * The map is read again afterwards, because an event inserted meanwhile may
+   * have seen the old bound and skipped widening it.
+   *
+   * @param timestamp The removed timestamp.
+   */
+  private void tighten(long timestamp) {
+    if (first.get() == timestamp) {
+      Map.Entry<Long, Event> lowest = events.firstEntry();
+      if (first.compareAndSet(timestamp, lowest == null ? Long.MAX_VALUE : lowest.getKey())) {
+        lowest = events.firstEntry();
+        if (lowest != null) {
+          widen(lowest.getKey());
+        }
+      }
+    }
+    if (last.get() == timestamp) {
+      Map.Entry<Long, Event> highest = events.lastEntry();
+      if (last.compareAndSet(timestamp, highest == null ? Long.MIN_VALUE : highest.getKey())) {
+        highest = events.lastEntry();
+        if (highest != null) {
+          widen(highest.getKey());
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks whether the partition may hold events within a range, using only
+   * its bounds.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return <code>false</code> if the partition surely holds no such event.
+   */
+  boolean mayContain(long startTime, long endTime) {
+    return startTime <= last.get() && endTime > first.get();
+  }
+
+  /**
+   * Takes a snapshot of the statistics of the partition.
+   *
+   * @param type The type of the events.
+   * @param bytesPerEvent Approximate heap footprint of an event.
+   * @return The statistics.
+   */
+  PartitionStats stats(String type, long bytesPerEvent) {
+    return new PartitionStats(type, size(), first.get(), last.get(), estimatedBytes(bytesPerEvent), insertRate
+      .perSecond());
+  }
+
+  /**
+   * Gets the approximate heap footprint of the events of the partition. The
+   * events of a frozen layer take less than those of the map.
+   *
+   * @param bytesPerEvent Approximate heap footprint of an event of the map.
+   * @return The estimated number of bytes.
+   */
+  long estimatedBytes(long bytesPerEvent) {
+    FrozenLayer layer = frozen;
+    if (layer == null) {
+      return size() * bytesPerEvent;
+    }
+    return layer.length() * FrozenLayer.BYTES_PER_EVENT + Math.max(0, size() - layer.liveCount()) * bytesPerEvent;
+  }
+
+  /**
+   * Gets the number of events stored in the partition.
+   *
+   * @return The partition size.
+   */
+  long size() {
+    return size.sum();
+  }
+
+  /**
+   * Registers a reader of the partition.
+   */
+  void pin() {
+    readers.increment();
+  }
+
+  /**
+   * Unregisters a reader of the partition.
+   *
+   * @return <code>true</code> if the partition is retired and this was its
+   *         last reader.
+   */
+  boolean unpin() {
+    readers.decrement();
+    return retired && readers.sum() == 0;
+  }
+
+  /**
+   * Gets the number of open iterators reading the partition.
+   *
+   * @return The number of readers.
+   */
+  int readers() {
+    return (int) readers.sum();
+  }
+
+  /**
+   * Marks the partition as removed from the store.
+   */
+  void retire() {
+    retired = true;
+  }
+
+  /**
+   * Checks whether the partition was removed from the store.
+   *
+   * @return <code>true</code> if the partition is retired.
+   */
+  boolean retired() {
+    return retired;
+  }
+
+  /**
+   * Marks the partition as replaced by an imported one. Its events are then
+   * copied to the new partition, and inserts that stored an event in it
+   * afterwards must store the event again in the new one.
+   */
+  void supersede() {
+    superseded = true;
+  }
+
+  /**
+   * Checks whether the partition was replaced by an imported one.
+   *
+   * @return <code>true</code> if the partition is superseded.
+   */
+  boolean superseded() {
+    return superseded;
+  }
+
+}
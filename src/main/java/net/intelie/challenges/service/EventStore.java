@@ -1,6 +1,9 @@
 package net.intelie.challenges.service;
 
+import java.util.function.Predicate;
+
 import net.intelie.challenges.model.Event;
+import net.intelie.challenges.util.Utils;
 
 /**
  * An abstraction of an event store.
@@ -34,4 +37,37 @@ public interface EventStore {
    *         {@param endTime} (exclusive).
    */
   EventIterator query(String type, long startTime, long endTime);
+
+  /**
+   * Removes the events of a type within a time range that match a filter.
+   * <p>
+   * The default implementation queries the range and removes the matching
+   * events through the iterator, one at a time. Stores override it to filter
+   * and compact the range in a single pass.
+   *
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param filter Selects the events to be removed.
+   * @return The number of events removed.
+   */
+  default long removeIf(String type, long startTime, long endTime, Predicate<? super Event> filter) {
+    Utils.requireNonNull(filter, "Filter cannot be null.");
+    long removed = 0;
+    try (EventIterator iterator = query(type, startTime, endTime)) {
+      while (iterator.moveNext()) {
+        if (filter.test(iterator.current())) {
+          iterator.remove();
+          ++removed;
+        }
+      }
+    }
+    catch (RuntimeException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Could not remove events of type " + type + ".", e);
+    }
+    return removed;
+  }
 }
@@ -1,24 +1,48 @@
 package net.intelie.challenges.service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.BitSet;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
 
 import net.intelie.challenges.model.Event;
-import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.io.ColumnarReader;
+import net.intelie.challenges.service.io.ColumnarWriter;
+import net.intelie.challenges.util.CoreGroups;
 import net.intelie.challenges.util.Utils;
 
 /**
  * Implements a concurrent {@link EventStore}. This class implements the
  * interface methods allowing concurrent access to its operations.
  */
-public class EventStoreImpl implements EventStore {
+public class EventStoreImpl implements SizedEventStore, ObservableEventStore {
+
+  /**
+   * Estimated heap footprint of a stored event: the skip list node (24 bytes),
+   * a share of its index nodes (~12 bytes), the boxed timestamp key (16 bytes)
+   * and the event itself (24 bytes), rounded up. The type string is shared by
+   * all events and is not accounted.
+   */
+  public static final long ESTIMATED_BYTES_PER_EVENT = 80;
 
   /**
    * Data structure to store all events. This map organizes the events according
    * to their types. All events of a type (the key of the map) are stored in a
    * inner map that uses their timestamp as keys and the events themselves as
-   * values.
+   * values. Each inner map is wrapped by an {@link EventPartition}, which also
+   * keeps the number of events of the type.
    * 
    * The {@link ConcurrentHashMap} provides fast and thread-safe operations,
    * which is crucial to support concurrent accesses.
@@ -28,48 +52,96 @@ public class EventStoreImpl implements EventStore {
    * keeps the entries sorted according to their keys, making easier the task of
    * filter by timestamp window.
    */
-  private final Map<String, ConcurrentSkipListMap<Long, Event>> events = new ConcurrentHashMap<>();
+  private final Map<String, EventPartition> events = new ConcurrentHashMap<>();
 
   /**
-   * Checks the validity of query time interval.
-   * 
-   * @param startTime Initial time (inclusive).
-   * @param endTime Final time (exclusive).
-   * @throws IllegalArgumentException if the initial time is bigger than final
-   *         time.
+   * Listeners notified about the changes of the store. Listeners are rarely
+   * registered and the list is read on every change, which is the case
+   * {@link CopyOnWriteArrayList} is made for.
+   */
+  private final List<EventStoreListener> listeners = new CopyOnWriteArrayList<>();
+
+  /** Tracks the iterators returned by queries until they are closed. */
+  private final IteratorRegistry iterators = new IteratorRegistry();
+
+  /**
+   * Partitions removed by <code>removeAll</code> that are still read by open
+   * iterators. A partition leaves this set when its last reader is closed,
+   * which is when its memory can be reclaimed.
+   */
+  private final Set<EventPartition> retired = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Types registered in advance, whose partitions always exist.
+   */
+  private final Set<String> registered = ConcurrentHashMap.newKeySet();
+
+  /** Number of core groups with their own replicas of the frozen layers. */
+  private volatile int readReplicas = 1;
+
+  /** Commit versions of the write batches. */
+  private final CommitVersions versions = new CommitVersions();
+
+  /** Indicates whether inserts of stored events are counted as duplicates. */
+  private volatile boolean dedup;
+
+  /** Number of inserts checked for duplicates. */
+  private final LongAdder dedupChecks = new LongAdder();
+
+  /** Number of inserts dropped as duplicates. */
+  private final LongAdder duplicates = new LongAdder();
+
+  /**
+   * Constructor. Creates a new empty instance of {@link EventStoreImpl}.
+   */
+  public EventStoreImpl() {
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link EventStoreImpl} with types
+   * registered in advance.
+   *
+   * @param types The types to be registered.
+   * @see #registerType(String)
    */
-  private static void checkQueryInterval(long startTime, long endTime) {
-    if (startTime > endTime) {
-      throw new IllegalArgumentException("Start time is bigger than end time.");
+  public EventStoreImpl(String... types) {
+    for (String type : types) {
+      registerType(type);
     }
   }
 
   /**
-   * Checks if an event is valid.
-   * 
-   * @param event The event to be checked.
-   * @throws IllegalArgumentException if the event is null or if it has invalid
-   *         type.
+   * Registers a type in advance. Its partition is created now, and replaced
+   * by an empty one on <code>removeAll</code> instead of being dropped, so
+   * inserts and queries of the type never go through partition creation.
+   *
+   * @param type The type to be registered.
    */
-  private static void checkEvent(Event event) {
-    Utils.requireNonNull(event, "Event cannot be null.");
-    checkEventType(event.type());
+  public void registerType(String type) {
+    Utils.checkEventType(type);
+    registered.add(type);
+    partitionOf(type);
   }
 
   /**
-   * Checks if an event type is valid.
-   * 
-   * @param eventType The type to be checked.
-   * @throws IllegalArgumentException if the type is null or not supported.
+   * Gets the partition of a type, creating it if needed.
+   * <p>
+   * The partition is looked up before <code>computeIfAbsent</code> is called,
+   * because the latter may lock the bin of the type even when the partition
+   * exists; once a type has its partition, inserts only read the map. A
+   * partition is only allocated by the thread that actually creates it.
+   *
+   * @param type The type.
+   * @return The partition of the type.
    */
-  private static void checkEventType(String eventType) {
-    Utils.requireNonNull(eventType, "Event type cannot be null.");
-    Utils.requireNonNull(EventType.getByName(eventType), String.format("Event type '%s' not supported.", eventType));
+  private EventPartition partitionOf(String type) {
+    EventPartition partition = events.get(type);
+    return partition != null ? partition : events.computeIfAbsent(type, key -> new EventPartition());
   }
 
   /**
    * {@inheritDoc}. If the event type is not present in the events map, a new
-   * {@link ConcurrentSkipListMap} is added to store events of this type. At the
+   * {@link EventPartition} is added to store events of this type. At the
    * end, the event is just stored in the correct type map.
    * 
    * The cost of this operation is the cost of insert an element in the
@@ -78,19 +150,105 @@ public class EventStoreImpl implements EventStore {
    */
   @Override
   public void insert(Event event) {
-    checkEvent(event);
-    events.putIfAbsent(event.type(), new ConcurrentSkipListMap<>());
-    events.get(event.type()).put(event.timestamp(), event);
+    Utils.checkEvent(event);
+    EventPartition partition = partitionOf(event.type());
+    boolean stored = store(partition, event);
+    if (dedup) {
+      dedupChecks.increment();
+      if (!stored) {
+        duplicates.increment();
+      }
+    }
+    if (!stored) {
+      return;
+    }
+    for (EventStoreListener listener : listeners) {
+      listener.onInsert(event);
+    }
+  }
+
+  /**
+   * Stores an event in a partition. A partition replaced by an import while
+   * the event was stored may have been copied before the event reached it, so
+   * the event is then stored again in the current partition of its type.
+   *
+   * @param partition The partition of the type of the event.
+   * @param event The event.
+   * @return <code>true</code> if the event was not stored yet.
+   */
+  private boolean store(EventPartition partition, Event event) {
+    boolean stored = partition.put(event);
+    while (partition.superseded()) {
+      partition = partitionOf(event.type());
+      partition.put(event);
+    }
+    return stored;
+  }
+
+  /**
+   * Enables the dedup mode, in which an insert of an event that is already
+   * stored is dropped and counted as a duplicate. Events are identified by
+   * their type and timestamp, as in {@link Event#equals(Object)}.
+   * <p>
+   * The check is the insert itself: storing an event already looks it up in
+   * the frozen layer and in the delta, and reports whether it was new, so the
+   * mode only adds the counting. A filter in front of the store could not
+   * save that lookup, since its negative answers would only cover a window of
+   * recent events.
+   */
+  public void enableDedup() {
+    dedup = true;
+  }
+
+  /**
+   * Disables the dedup mode. Inserts of stored events are then ignored
+   * without being counted.
+   */
+  public void disableDedup() {
+    dedup = false;
+  }
+
+  /**
+   * Gets the number of inserts dropped as duplicates while dedup was enabled.
+   *
+   * @return The number of duplicates.
+   */
+  public long duplicates() {
+    return duplicates.sum();
+  }
+
+  /**
+   * Gets the fraction of the inserts checked in dedup mode that were
+   * duplicates.
+   *
+   * @return The dedup hit rate, or zero if no insert was checked.
+   */
+  public double dedupHitRate() {
+    long checks = dedupChecks.sum();
+    return checks == 0 ? 0 : (double) duplicates.sum() / checks;
   }
 
   /**
    * {@inheritDoc} This operation is done in constant time because it just
-   * removes an entry from the <type,events> map.
+   * removes an entry from the <type,events> map. Open iterators over the type
+   * are not disturbed: they keep reading the removed partition, which is
+   * reclaimed when the last of them is closed.
    */
   @Override
   public void removeAll(String type) {
-    checkEventType(type);
-    events.remove(type);
+    Utils.checkEventType(type);
+    EventPartition removed = registered.contains(type) ? events.put(type, new EventPartition()) : events.remove(type);
+    versions.clear(type);
+    if (removed != null) {
+      removed.retire();
+      retired.add(removed);
+      if (removed.readers() == 0) {
+        retired.remove(removed);
+      }
+    }
+    for (EventStoreListener listener : listeners) {
+      listener.onRemoveAll(type);
+    }
   }
 
   /**
@@ -106,16 +264,528 @@ public class EventStoreImpl implements EventStore {
    * which has constant time cost. After that, it calls the <code>submap</code>
    * method which has time complexity equals to O(log n) in the average case. In
    * the worst case, it has O(n) complexity.
+   * 
+   * Absent types and ranges outside the bounds kept in the statistics catalog
+   * are answered with the shared {@link EventIterator#empty() empty
+   * iterator}, without reading the map or allocating. It holds nothing, so it
+   * is not listed by {@link #iterators()}; any other returned iterator is
+   * listed until it is closed.
+   * 
+   * On a {@link #freeze(String) frozen} type, the range is located by binary
+   * search on the frozen arrays and scanned sequentially, merged with the
+   * events inserted since the freeze, without locking. With
+   * {@link #setReadReplicas(int) read replicas}, the arrays are read from the
+   * copy of the core group of the calling thread.
    */
   @Override
   public EventIterator query(String type, long startTime, long endTime) {
-    checkEventType(type);
-    checkQueryInterval(startTime, endTime);
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+
+    EventPartition partition = events.get(type);
+    if (partition == null || !partition.mayContain(startTime, endTime) && !versions.hasRemovals(type)) {
+      return EventIterator.empty();
+    }
+    long snapshot = versions.openSnapshot();
+    LongPredicate remover = timestamp -> remove(partition, timestamp);
+    EventIterator selected = partition.iterator(startTime, endTime, remover, readReplicas);
+    if (snapshot != CommitVersions.LATEST) {
+      selected = new VersionedEventIterator(selected, versions, type, snapshot, startTime, endTime, remover);
+    }
+
+    partition.pin();
+    if (partition.retired()) {
+      retired.add(partition);
+    }
+    return iterators.track(selected, type, startTime, endTime, () -> {
+      unpin(partition);
+      versions.closeSnapshot(snapshot);
+    });
+  }
+
+  /**
+   * Creates a write batch, whose inserts and removals become visible to
+   * queries all at once when it is committed.
+   * <p>
+   * Each commit gets a version. Its changes are applied to the partitions
+   * right away, but marked with the version, and a query only sees the
+   * versions that were fully applied when it started: it hides the events
+   * inserted by later versions and still sees the events removed by them.
+   * Queries never lock for that; commits are serialized only while their
+   * versions are allocated and published, so their cost grows with their
+   * size and not with the size of the store. The marks are dropped once no
+   * open query needs them.
+   * <p>
+   * Size, statistics and listeners are not versioned: they follow the changes
+   * as they are applied. Iterators opened before the first commit of the store
+   * see the changes as they are applied, too.
+   *
+   * @return The new batch.
+   */
+  public WriteBatch newBatch() {
+    return new WriteBatch(this);
+  }
+
+  /**
+   * Applies the changes of a write batch under a new commit version.
+   *
+   * @param changes The events inserted or removed, in order.
+   * @param removals The positions of the removals within the changes.
+   * @return The commit version.
+   */
+  long commit(List<Event> changes, BitSet removals) {
+    CommitVersions.Commit commit = versions.begin();
+    try {
+      for (int i = 0; i < changes.size(); ++i) {
+        Event event = changes.get(i);
+        if (removals.get(i)) {
+          EventPartition partition = events.get(event.type());
+          if (partition != null && partition.contains(event.timestamp())) {
+            CommitVersions.RemovedEvent record = commit.recordRemoval(event);
+            if (!remove(partition, event.timestamp())) {
+              commit.unrecordRemoval(record);
+            }
+          }
+        }
+        else {
+          EventPartition partition = partitionOf(event.type());
+          if (!partition.contains(event.timestamp())) {
+            commit.markInserted(event);
+            if (store(partition, event)) {
+              for (EventStoreListener listener : listeners) {
+                listener.onInsert(event);
+              }
+            }
+            else {
+              commit.unmarkInserted(event);
+            }
+          }
+        }
+      }
+    }
+    finally {
+      versions.publish(commit);
+    }
+    return commit.version;
+  }
+
+  /**
+   * {@inheritDoc} The range of the partition is walked once, without creating
+   * an iterator, and each matching event is unlinked where it is found. The
+   * filter is called without locks, so readers are never blocked; on a
+   * {@link #freeze(String) frozen} type, the matching frozen events are marked
+   * as removed under a single short lock. Listeners are notified about every
+   * removed event.
+   */
+  @Override
+  public long removeIf(String type, long startTime, long endTime, Predicate<? super Event> filter) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    Utils.requireNonNull(filter, "Filter cannot be null.");
+    EventPartition partition = events.get(type);
+    if (partition == null || !partition.mayContain(startTime, endTime)) {
+      return 0;
+    }
+    List<Event> removed = partition.removeIf(startTime, endTime, filter);
+    for (Event event : removed) {
+      for (EventStoreListener listener : listeners) {
+        listener.onRemove(event);
+      }
+    }
+    return removed.size();
+  }
+
+  /**
+   * Freezes the events of a type into a compact, immutable layout: two
+   * arrays sorted by timestamp, which range scans read sequentially instead
+   * of chasing the nodes of the skip list. It suits types that are loaded
+   * once and then queried heavily.
+   * <p>
+   * Later inserts go to a small delta, which a background task merges into
+   * new arrays once it grows past an eighth of them, or which is merged when
+   * the type is frozen again.
+   * Removals of frozen events are marked in a bit set and the arrays are
+   * compacted by the next merge. A type stays frozen until
+   * <code>removeAll</code>.
+   *
+   * @param type The type of the events.
+   * @return <code>false</code> if the store has no partition of the type.
+   */
+  public boolean freeze(String type) {
+    Utils.checkEventType(type);
+    EventPartition partition = events.get(type);
+    if (partition == null) {
+      return false;
+    }
+    partition.freeze();
+    return true;
+  }
+
+  /**
+   * Checks whether the events of a type are frozen.
+   *
+   * @param type The type of the events.
+   * @return <code>true</code> if the type was frozen since its last
+   *         <code>removeAll</code>.
+   * @see #freeze(String)
+   */
+  public boolean isFrozen(String type) {
+    Utils.checkEventType(type);
+    EventPartition partition = events.get(type);
+    return partition != null && partition.isFrozen();
+  }
+
+  /**
+   * Sets the number of core groups, such as sockets, that read their own
+   * replicas of the {@link #freeze(String) frozen} arrays. Readers of a busy
+   * type on every core otherwise share the same arrays, which a multi-socket
+   * host serves across its interconnect.
+   * <p>
+   * The group of a reader is given by {@link CoreGroups}. Each replica is
+   * copied by a single reader of its group after a merge publishes new
+   * arrays, so the copy lives in the memory of that group on a NUMA-aware
+   * JVM, and is then read without any write shared with the other groups.
+   * The other readers of the group read the published arrays until the copy
+   * is ready.
+   * Replicas cost one copy of the arrays per group, and removals of frozen
+   * events are shared by all copies. Types that are not frozen are not
+   * replicated.
+   *
+   * @param groups Number of core groups; one turns replicas off.
+   */
+  public void setReadReplicas(int groups) {
+    if (groups <= 0) {
+      throw new IllegalArgumentException("Number of groups must be positive.");
+    }
+    readReplicas = groups;
+  }
 
-    Map<Long, Event> selectedEventsView = events.getOrDefault(type, new ConcurrentSkipListMap<>()).subMap(startTime,
-      endTime);
+  /**
+   * Gets the number of core groups that read their own replicas of the frozen
+   * arrays.
+   *
+   * @return The number of groups; one if replicas are off.
+   * @see #setReadReplicas(int)
+   */
+  public int readReplicas() {
+    return readReplicas;
+  }
+
+  /**
+   * Writes all events of a type to a channel, in the format of
+   * {@link ColumnarWriter}. The timestamps are read straight from the keys of
+   * the partition, or from the frozen arrays, without touching the events.
+   *
+   * @param type The type of the events.
+   * @param channel The destination channel. It is not closed.
+   * @return The number of exported events.
+   * @throws IOException if the channel could not be written.
+   */
+  public long exportPartition(String type, WritableByteChannel channel) throws IOException {
+    Utils.checkEventType(type);
+    EventPartition partition = events.get(type);
+    return export(type, partition == null ? null : partition.timestamps(), channel);
+  }
+
+  /**
+   * Writes the events of a type within a range to a channel, in the format of
+   * {@link ColumnarWriter}.
+   *
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param channel The destination channel. It is not closed.
+   * @return The number of exported events.
+   * @throws IOException if the channel could not be written.
+   */
+  public long exportPartition(String type, long startTime, long endTime, WritableByteChannel channel)
+    throws IOException {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    EventPartition partition = events.get(type);
+    return export(type, partition == null ? null : partition.timestamps(startTime, endTime), channel);
+  }
+
+  /**
+   * Writes timestamps to a channel.
+   *
+   * @param type The type of the events.
+   * @param selected The timestamps to be written, or <code>null</code> if
+   *        none.
+   * @param channel The destination channel.
+   * @return The number of exported events.
+   * @throws IOException if the channel could not be written.
+   */
+  private static long export(String type, PrimitiveIterator.OfLong selected, WritableByteChannel channel)
+    throws IOException {
+    try (ColumnarWriter writer = new ColumnarWriter(channel, type)) {
+      if (selected != null) {
+        while (selected.hasNext()) {
+          writer.write(selected.nextLong());
+        }
+      }
+      return writer.count();
+    }
+  }
+
+  /**
+   * Reads events written by {@link #exportPartition} and stores them.
+   *
+   * @param channel The source channel. It is not closed.
+   * @return The number of events that were not stored yet.
+   * @throws IOException if the channel could not be read or is not valid.
+   * @see #importPartition(ReadableByteChannel, long, long)
+   */
+  public long importPartition(ReadableByteChannel channel) throws IOException {
+    return importFrom(new ColumnarReader(channel));
+  }
+
+  /**
+   * Reads the events within a range from a channel written by
+   * {@link #exportPartition} and stores them.
+   * <p>
+   * When the store has no events of the type, a new partition is built from
+   * the sorted input by appending to a map no other thread sees, and then
+   * replaces the empty one; otherwise the events are merged into the existing
+   * partition. The events are not visible until the whole input is read.
+   * Events inserted concurrently into the replaced partition are carried over
+   * to the new one. Listeners are notified about every stored event, as with
+   * {@link #insert(Event)}, once the new partition holds all of them; an
+   * insert that races with the import of the same event may be reported by
+   * both.
+   *
+   * @param channel The source channel. It is not closed.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The number of events that were not stored yet.
+   * @throws IOException if the channel could not be read or is not valid.
+   */
+  public long importPartition(ReadableByteChannel channel, long startTime, long endTime) throws IOException {
+    return importFrom(new ColumnarReader(channel, startTime, endTime));
+  }
+
+  /**
+   * Stores the events read by a reader.
+   *
+   * @param reader The reader.
+   * @return The number of events that were not stored yet.
+   * @throws IOException if the channel could not be read or is not valid.
+   */
+  private long importFrom(ColumnarReader reader) throws IOException {
+    String type = reader.type();
+    Utils.checkEventType(type);
+    PrimitiveIterator.OfLong timestamps = timestamps(reader);
+    try {
+      EventPartition existing = events.get(type);
+      if (existing == null || existing.size() == 0) {
+        EventPartition built = EventPartition.fromSorted(type, timestamps);
+        Event[] imported = built.events().values().toArray(new Event[0]);
+        if (existing == null ? events.putIfAbsent(type, built) == null : events.replace(type, existing, built)) {
+          if (existing != null) {
+            /*
+             * Keeps the events inserted into the empty partition meanwhile.
+             * Inserts that reach it after the copy see the mark and store
+             * their events again, in the new partition.
+             */
+            existing.supersede();
+            for (Event event : existing.events().values()) {
+              built.put(event);
+            }
+          }
+          long stored = 0;
+          for (Event event : imported) {
+            if (existing == null || !existing.contains(event.timestamp())) {
+              ++stored;
+              for (EventStoreListener listener : listeners) {
+                listener.onInsert(event);
+              }
+            }
+          }
+          return stored;
+        }
+        timestamps = built.events().keySet().stream().mapToLong(Long::longValue).iterator();
+      }
+      long stored = 0;
+      while (timestamps.hasNext()) {
+        Event event = new Event(type, timestamps.nextLong());
+        if (partitionOf(type).put(event)) {
+          ++stored;
+          for (EventStoreListener listener : listeners) {
+            listener.onInsert(event);
+          }
+        }
+      }
+      return stored;
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Adapts a reader to a primitive iterator, for the partition builder.
+   *
+   * @param reader The reader.
+   * @return The iterator, which wraps read failures in
+   *         {@link UncheckedIOException}.
+   */
+  private static PrimitiveIterator.OfLong timestamps(ColumnarReader reader) {
+    return new PrimitiveIterator.OfLong() {
+
+      @Override
+      public boolean hasNext() {
+        try {
+          return reader.hasNext();
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+
+      @Override
+      public long nextLong() {
+        try {
+          return reader.next();
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Gets the statistics of a type from the catalog kept by the store. They
+   * are maintained by every insert and removal, so this operation does not
+   * depend on the amount of stored events.
+   *
+   * @param type The type of the events.
+   * @return The statistics of the type, which are empty if the store has no
+   *         events of the type.
+   */
+  public PartitionStats stats(String type) {
+    Utils.checkEventType(type);
+    EventPartition partition = events.get(type);
+    if (partition == null) {
+      return new PartitionStats(type, 0, Long.MAX_VALUE, Long.MIN_VALUE, 0, 0);
+    }
+    return partition.stats(type, ESTIMATED_BYTES_PER_EVENT);
+  }
+
+  /**
+   * Gets the statistics of all types held by the store.
+   *
+   * @return The statistics mapped by type, in type order.
+   */
+  public Map<String, PartitionStats> statsCatalog() {
+    Map<String, PartitionStats> catalog = new TreeMap<>();
+    for (Map.Entry<String, EventPartition> entry : events.entrySet()) {
+      catalog.put(entry.getKey(), entry.getValue().stats(entry.getKey(), ESTIMATED_BYTES_PER_EVENT));
+    }
+    return catalog;
+  }
+
+  /**
+   * Unregisters a reader of a partition, forgetting the partition if it was
+   * retired and this was its last reader.
+   *
+   * @param partition The partition.
+   */
+  private void unpin(EventPartition partition) {
+    if (partition.unpin()) {
+      retired.remove(partition);
+    }
+  }
 
-    return new EventIteratorImpl(selectedEventsView);
+  /**
+   * Gets the registry of the iterators returned by this store and not closed
+   * yet.
+   *
+   * @return The iterator registry.
+   */
+  public IteratorRegistry iterators() {
+    return iterators;
+  }
+
+  /**
+   * Gets the number of events removed by <code>removeAll</code> that are
+   * still kept in memory by open iterators.
+   *
+   * @return The number of pinned events.
+   */
+  public long pinnedEvents() {
+    long pinned = 0;
+    for (EventPartition partition : retired) {
+      pinned += partition.size();
+    }
+    return pinned;
+  }
+
+  /**
+   * Removes an event from a partition and notifies the listeners.
+   *
+   * @param partition The partition holding the event.
+   * @param timestamp The timestamp of the event.
+   * @return <code>true</code> if the event was removed by this call.
+   */
+  private boolean remove(EventPartition partition, long timestamp) {
+    Event removed = partition.remove(timestamp);
+    if (removed == null) {
+      return false;
+    }
+    for (EventStoreListener listener : listeners) {
+      listener.onRemove(removed);
+    }
+    return true;
+  }
+
+  /**
+   * {@inheritDoc} The size is read from a counter kept by the partition, so
+   * this operation does not depend on the amount of stored events.
+   */
+  @Override
+  public long size(String type) {
+    Utils.checkEventType(type);
+    EventPartition partition = events.get(type);
+    return partition == null ? 0 : partition.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long estimatedBytesPerEvent() {
+    return ESTIMATED_BYTES_PER_EVENT;
+  }
+
+  /**
+   * {@inheritDoc} The events of frozen types are accounted with the smaller
+   * footprint of the frozen layout.
+   */
+  @Override
+  public long estimatedBytes() {
+    long bytes = 0;
+    for (EventPartition partition : events.values()) {
+      bytes += partition.estimatedBytes(ESTIMATED_BYTES_PER_EVENT);
+    }
+    return bytes;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addListener(EventStoreListener listener) {
+    Utils.requireNonNull(listener, "Listener cannot be null.");
+    listeners.add(listener);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeListener(EventStoreListener listener) {
+    listeners.remove(listener);
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package net.intelie.challenges.service;
+
+import net.intelie.challenges.model.Event;
+
+/**
+ * Receives the changes applied to an {@link ObservableEventStore}.
+ * <p>
+ * Listeners are called synchronously, by the thread that changed the store and
+ * right after the change took effect, so they must be fast and thread-safe.
+ * Each method has an empty default implementation, so a listener only
+ * overrides the changes it cares about.
+ */
+public interface EventStoreListener {
+
+  /**
+   * Called after a new event is stored. Events that replace a stored one with
+   * the same timestamp are not reported.
+   *
+   * @param event The stored event.
+   */
+  default void onInsert(Event event) {
+  }
+
+  /**
+   * Called after an event is removed through an {@link EventIterator}.
+   *
+   * @param event The removed event.
+   */
+  default void onRemove(Event event) {
+  }
+
+  /**
+   * Called after all events of a type are removed.
+   *
+   * @param type The type of the removed events.
+   */
+  default void onRemoveAll(String type) {
+  }
+}
@@ -0,0 +1,205 @@
+package net.intelie.challenges.service;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.function.LongPredicate;
+
+import net.intelie.challenges.model.Event;
+
+/**
+ * Iterates the events of a frozen {@link EventPartition} within a range,
+ * merging a range of positions of its {@link FrozenLayer} with the matching
+ * events of its delta, in timestamp order.
+ * <p>
+ * The layer is read without locks. An event may briefly be in both the layer
+ * and the delta while they are merged; it is reported once. A merge publishes
+ * the new layer before it drops the merged events from the delta, so once the
+ * delta is read the iterator checks whether the published layer changed; if
+ * so, it resumes after the last event it reported, from the new layer and a
+ * new view of the delta, instead of missing the events that moved.
+ */
+final class FrozenEventIterator implements EventIterator {
+
+  /** The partition whose events are iterated. */
+  private EventPartition partition;
+
+  /** Number of core groups; one reads the published layer. */
+  private final int groups;
+
+  /** End timestamp (exclusive) of the range. */
+  private final long endTime;
+
+  /** Indicates whether the range runs through the last event. */
+  private final boolean unbounded;
+
+  /** The published layer the iteration started from or resumed on. */
+  private FrozenLayer published;
+
+  /** The layer read: the published one or its replica. */
+  private FrozenLayer layer;
+
+  /** Position after the range of the layer. */
+  private int end;
+
+  /** The events of the delta within the range, in timestamp order. */
+  private Iterator<Event> delta;
+
+  /**
+   * Removes an event from the store, given its timestamp. It may be
+   * <code>null</code> if the iterator is only read.
+   */
+  private LongPredicate remover;
+
+  /** Position of the next event of the layer. */
+  private int next;
+
+  /** The next event of the delta, read ahead, or <code>null</code>. */
+  private Event pending;
+
+  /** The current event, or <code>null</code> if there is none. */
+  private Event current;
+
+  /** Start timestamp, or the timestamp of the last event reported. */
+  private long from;
+
+  /** Indicates whether an event was reported. */
+  private boolean started;
+
+  /** Indicates whether the iterator is closed. */
+  private boolean closed;
+
+  /**
+   * Constructor. Creates a new instance of {@link FrozenEventIterator}.
+   *
+   * @param partition The frozen partition.
+   * @param groups Number of core groups; one reads the published layer.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive), ignored if the range is
+   *        unbounded.
+   * @param unbounded Indicates whether the range runs through the last event.
+   * @param remover Removes an event from the store, or <code>null</code>.
+   */
+  FrozenEventIterator(EventPartition partition, int groups, long startTime, long endTime, boolean unbounded,
+    LongPredicate remover) {
+    this.partition = partition;
+    this.groups = groups;
+    this.endTime = endTime;
+    this.unbounded = unbounded;
+    this.remover = remover;
+    this.from = startTime;
+    open(partition.frozenLayer());
+  }
+
+  /**
+   * Positions the iteration on a published layer and on a new view of the
+   * delta, after the last event reported or from the start of the range.
+   *
+   * @param layer The published layer.
+   */
+  private void open(FrozenLayer layer) {
+    published = layer;
+    this.layer = groups > 1 ? partition.replicaOf(layer, groups) : layer;
+    if (!started) {
+      next = this.layer.lowerBound(from);
+    }
+    else {
+      next = from == Long.MAX_VALUE ? this.layer.length() : this.layer.lowerBound(from + 1);
+    }
+    end = unbounded ? this.layer.length() : this.layer.lowerBound(endTime);
+    ConcurrentNavigableMap<Long, Event> events = partition.delta();
+    delta = (unbounded ? events.tailMap(from, !started) : events.subMap(from, !started, endTime, false)).values()
+      .iterator();
+    pending = null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean moveNext() {
+    current = null;
+    if (closed) {
+      return false;
+    }
+    if (pending == null && delta.hasNext()) {
+      pending = delta.next();
+    }
+    for (FrozenLayer latest = partition.frozenLayer(); latest != published; latest = partition.frozenLayer()) {
+      open(latest);
+      if (delta.hasNext()) {
+        pending = delta.next();
+      }
+    }
+    while (next < end && layer.isRemoved(next)) {
+      ++next;
+    }
+    if (next < end && (pending == null || layer.timestampAt(next) <= pending.timestamp())) {
+      if (pending != null && layer.timestampAt(next) == pending.timestamp()) {
+        pending = null;
+      }
+      current = layer.eventAt(next++);
+    }
+    else {
+      current = pending;
+      pending = null;
+    }
+    if (current != null) {
+      started = true;
+      from = current.timestamp();
+    }
+    return current != null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Event current() {
+    checkState();
+    return current;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void remove() {
+    checkState();
+    if (remover == null) {
+      throw new UnsupportedOperationException("The iteration is read-only.");
+    }
+    remover.test(current.timestamp());
+    current = null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    closed = true;
+    current = null;
+    pending = null;
+    partition = null;
+    published = null;
+    layer = null;
+    delta = null;
+    remover = null;
+  }
+
+  /**
+   * Checks the iteration state.
+   *
+   * @throws IllegalStateException if the iterator is closed or has no current
+   *         event.
+   */
+  private void checkState() {
+    if (closed) {
+      throw new IllegalStateException("The iteration is closed.");
+    }
+    if (current == null) {
+      throw new IllegalStateException("There is no current event in iteration.");
+    }
+  }
+
+}
@@ -0,0 +1,216 @@
+package net.intelie.challenges.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.intelie.challenges.model.Event;
+
+/**
+ * The immutable base of a frozen {@link EventPartition}: its events laid out
+ * in two parallel arrays sorted by timestamp. Range scans walk the arrays
+ * sequentially after a binary search, instead of chasing the nodes of a skip
+ * list.
+ * <p>
+ * The arrays never change. A removed event is marked in a bit set, which is
+ * updated with compare-and-set so readers never lock; the events inserted
+ * after the freeze live in the delta of the partition until they are merged
+ * into a new layer.
+ * <p>
+ * Each layer published by a partition gets a higher version. A replica of a
+ * layer copies its arrays, to be read from the memory of another core group,
+ * and shares its version and its removal set, so a removal made through any
+ * copy is seen through all of them.
+ */
+final class FrozenLayer {
+
+  /**
+   * Estimated heap footprint of a frozen event: its timestamp (8 bytes), its
+   * reference (4 to 8 bytes), the event itself (24 bytes) and a bit of the
+   * removal set, rounded up.
+   */
+  static final long BYTES_PER_EVENT = 40;
+
+  /** Version of the layer within its partition. */
+  private final long version;
+
+  /** The timestamps, in strictly increasing order. */
+  private final long[] timestamps;
+
+  /** The events, in the order of their timestamps. */
+  private final Event[] events;
+
+  /** One bit per event, set when the event is removed. */
+  private final AtomicLongArray removed;
+
+  /** Number of removed events. */
+  private final AtomicInteger removedCount;
+
+  /**
+   * Constructor. Creates a new instance of {@link FrozenLayer}. The arrays are
+   * owned by the layer afterwards.
+   *
+   * @param version Version of the layer within its partition.
+   * @param timestamps The timestamps, in strictly increasing order.
+   * @param events The events, in the order of their timestamps.
+   */
+  FrozenLayer(long version, long[] timestamps, Event[] events) {
+    this(version, timestamps, events, new AtomicLongArray((timestamps.length + 63) >>> 6), new AtomicInteger());
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link FrozenLayer} that shares
+   * its removals with another one.
+   *
+   * @param version Version of the layer within its partition.
+   * @param timestamps The timestamps, in strictly increasing order.
+   * @param events The events, in the order of their timestamps.
+   * @param removed One bit per event, set when the event is removed.
+   * @param removedCount Number of removed events.
+   */
+  private FrozenLayer(long version, long[] timestamps, Event[] events, AtomicLongArray removed,
+    AtomicInteger removedCount) {
+    this.version = version;
+    this.timestamps = timestamps;
+    this.events = events;
+    this.removed = removed;
+    this.removedCount = removedCount;
+  }
+
+  /**
+   * Copies the layer for the current thread. The copy is allocated by the
+   * calling thread, which places it in the memory of its core group when the
+   * JVM is NUMA-aware.
+   *
+   * @return The replica.
+   */
+  FrozenLayer replicate() {
+    return new FrozenLayer(version, timestamps.clone(), events.clone(), removed, removedCount);
+  }
+
+  /**
+   * Gets the version of the layer within its partition.
+   *
+   * @return The version.
+   */
+  long version() {
+    return version;
+  }
+
+  /**
+   * Gets the number of positions of the layer, removed or not.
+   *
+   * @return The length of the arrays.
+   */
+  int length() {
+    return timestamps.length;
+  }
+
+  /**
+   * Gets the number of events of the layer that were not removed.
+   *
+   * @return The number of live events.
+   */
+  int liveCount() {
+    return timestamps.length - removedCount.get();
+  }
+
+  /**
+   * Gets a timestamp by its position.
+   *
+   * @param index The position.
+   * @return The timestamp.
+   */
+  long timestampAt(int index) {
+    return timestamps[index];
+  }
+
+  /**
+   * Gets an event by its position.
+   *
+   * @param index The position.
+   * @return The event.
+   */
+  Event eventAt(int index) {
+    return events[index];
+  }
+
+  /**
+   * Checks whether the event at a position was removed.
+   *
+   * @param index The position.
+   * @return <code>true</code> if the event was removed.
+   */
+  boolean isRemoved(int index) {
+    return (removed.get(index >>> 6) & (1L << index)) != 0;
+  }
+
+  /**
+   * Gets the position of the first timestamp that is not lower than a given
+   * one.
+   *
+   * @param timestamp The timestamp.
+   * @return The position, or {@link #length()} if all timestamps are lower.
+   */
+  int lowerBound(long timestamp) {
+    int low = 0;
+    int high = timestamps.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (timestamps[middle] < timestamp) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Checks whether the layer holds a live event.
+   *
+   * @param timestamp The timestamp of the event.
+   * @return <code>true</code> if the event is in the layer and not removed.
+   */
+  boolean contains(long timestamp) {
+    int index = lowerBound(timestamp);
+    return index < timestamps.length && timestamps[index] == timestamp && !isRemoved(index);
+  }
+
+  /**
+   * Removes an event from the layer.
+   *
+   * @param timestamp The timestamp of the event.
+   * @return The event removed by this call, or <code>null</code> if there was
+   *         no such live event.
+   */
+  Event remove(long timestamp) {
+    int index = lowerBound(timestamp);
+    if (index == timestamps.length || timestamps[index] != timestamp) {
+      return null;
+    }
+    return removeAt(index);
+  }
+
+  /**
+   * Removes the event at a position.
+   *
+   * @param index The position.
+   * @return The event removed by this call, or <code>null</code> if it was
+   *         already removed.
+   */
+  Event removeAt(int index) {
+    int word = index >>> 6;
+    long bit = 1L << index;
+    long current = removed.get(word);
+    while ((current & bit) == 0) {
+      if (removed.compareAndSet(word, current, current | bit)) {
+        removedCount.incrementAndGet();
+        return events[index];
+      }
+      current = removed.get(word);
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,484 @@
+package net.intelie.challenges.service;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import net.intelie.challenges.model.Event;
+
+/**
+ * Keeps track of the iterators a store has handed out and not yet seen closed.
+ * <p>
+ * An open iterator keeps its dataset reachable, and with it everything the
+ * dataset references, even after the data was removed from the store. The
+ * registry makes those iterators visible: each one is listed with its query,
+ * the thread that opened it and its age, so that iterators held open for too
+ * long can be found and fixed at their call site.
+ * <p>
+ * Stores wrap the iterators they return with {@link #track}. The wrapper
+ * unregisters the iterator when it is closed, and runs a release action given
+ * by the store, which is how stores learn that a reader has finished.
+ * <p>
+ * Iterators that are dropped without being closed are detected as leaks: each
+ * wrapper is watched by a phantom reference, which the garbage collector
+ * enqueues once the wrapper is unreachable. The queue is drained on every
+ * registration and on every query of the registry; each leaked iterator is
+ * then released like a closed one, counted and reported to the leak handler.
+ * To tell where leaks come from, the stack of one in every
+ * {@link #sampleAllocationSites(int) n} registrations is recorded.
+ * <p>
+ * Every query registers its iterator, so the registry is split into stripes
+ * picked by the id of the registering thread. Each stripe has its own
+ * identifier counter, map of open iterators and reference queue, so readers
+ * on different threads seldom write to the same memory when they register or
+ * release an iterator, and a registration only drains the queue of its own
+ * stripe. Phantom references are used instead of a
+ * <code>java.lang.ref.Cleaner</code> because a cleaner links every
+ * registration into a single synchronized list.
+ */
+public final class IteratorRegistry {
+
+  /** Default number of registrations per recorded allocation site. */
+  public static final int DEFAULT_ALLOCATION_SAMPLE_RATE = 64;
+
+  /** Number of bits of an identifier that hold the index of its stripe. */
+  private static final int STRIPE_BITS = 6;
+
+  /** Number of stripes. */
+  private static final int STRIPES = 1 << STRIPE_BITS;
+
+  /** The stripes of the registry. */
+  private final Stripe[] stripes = new Stripe[STRIPES];
+
+  /** Number of iterators released without being closed. */
+  private final AtomicLong leaked = new AtomicLong();
+
+  /** Number of registrations per recorded allocation site; 0 disables it. */
+  private volatile int allocationSampleRate = DEFAULT_ALLOCATION_SAMPLE_RATE;
+
+  /** Receives the leaked iterators, if set. */
+  private volatile Consumer<OpenIterator> leakHandler;
+
+  /**
+   * Constructor. Creates a new empty instance of {@link IteratorRegistry}.
+   */
+  public IteratorRegistry() {
+    for (int i = 0; i < STRIPES; ++i) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Registers an iterator and wraps it so that closing it unregisters it.
+   *
+   * @param iterator The iterator to be tracked.
+   * @param type The queried type.
+   * @param startTime Start timestamp of the query (inclusive).
+   * @param endTime End timestamp of the query (exclusive).
+   * @param onRelease Action run once, when the iterator is closed. It may be
+   *        <code>null</code>.
+   * @return The tracked iterator.
+   */
+  public EventIterator track(EventIterator iterator, String type, long startTime, long endTime,
+    Runnable onRelease) {
+    Thread thread = Thread.currentThread();
+    int index = (int) (thread.getId() & (STRIPES - 1));
+    Stripe stripe = stripes[index];
+    expungeLeaks(stripe);
+    long sequence = stripe.ids.incrementAndGet();
+    int sampleRate = allocationSampleRate;
+    StackTraceElement[] allocationSite = sampleRate > 0 && sequence % sampleRate == 0 ? new Throwable()
+      .getStackTrace() : null;
+    OpenIterator registration = new OpenIterator(sequence << STRIPE_BITS | index, stripe, type, startTime, endTime,
+      thread.getName(), allocationSite, onRelease);
+    TrackedEventIterator tracked = new TrackedEventIterator(iterator, registration);
+    registration.reference = new IteratorReference(tracked, registration, stripe.collected);
+    stripe.open.put(registration.id, registration);
+    return tracked;
+  }
+
+  /**
+   * Unregisters an iterator and runs its release action, unless it was already
+   * released.
+   *
+   * @param registration The registration of the iterator.
+   * @return <code>true</code> if the iterator was released by this call.
+   */
+  private boolean release(OpenIterator registration) {
+    if (!registration.released.compareAndSet(false, true)) {
+      return false;
+    }
+    registration.stripe.open.remove(registration.id);
+    registration.reference.clear();
+    if (registration.onRelease != null) {
+      registration.onRelease.run();
+    }
+    return true;
+  }
+
+  /**
+   * Releases the iterators that became unreachable without being closed, and
+   * reports them as leaks. It is called by the other operations of the
+   * registry, so it only needs to be called directly to reclaim leaks while
+   * the registry is idle.
+   *
+   * @return The number of leaks found by this call.
+   */
+  public int expungeLeaks() {
+    int found = 0;
+    for (Stripe stripe : stripes) {
+      found += expungeLeaks(stripe);
+    }
+    return found;
+  }
+
+  /**
+   * Releases the leaked iterators of a stripe.
+   *
+   * @param stripe The stripe.
+   * @return The number of leaks found by this call.
+   */
+  private int expungeLeaks(Stripe stripe) {
+    int found = 0;
+    Reference<? extends EventIterator> reference;
+    while ((reference = stripe.collected.poll()) != null) {
+      OpenIterator registration = ((IteratorReference) reference).registration;
+      if (release(registration)) {
+        ++found;
+        leaked.incrementAndGet();
+        Consumer<OpenIterator> handler = leakHandler;
+        if (handler != null) {
+          handler.accept(registration);
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Sets the number of registrations per recorded allocation site. Recording
+   * a site captures the stack of the thread, so it is sampled.
+   *
+   * @param everyN Number of registrations per recorded site: 1 records all
+   *        of them and 0 disables the recording.
+   */
+  public void sampleAllocationSites(int everyN) {
+    if (everyN < 0) {
+      throw new IllegalArgumentException("Sample rate cannot be negative.");
+    }
+    allocationSampleRate = everyN;
+  }
+
+  /**
+   * Sets the handler that receives the leaked iterators. It is called by the
+   * thread that finds the leak, so it should be quick.
+   *
+   * @param handler The leak handler, or <code>null</code> to remove it.
+   */
+  public void onLeak(Consumer<OpenIterator> handler) {
+    leakHandler = handler;
+  }
+
+  /**
+   * Gets the number of iterators released without being closed.
+   *
+   * @return The number of leaked iterators.
+   */
+  public long leakedCount() {
+    expungeLeaks();
+    return leaked.get();
+  }
+
+  /**
+   * Gets the number of open iterators.
+   *
+   * @return The number of iterators not closed yet.
+   */
+  public int openCount() {
+    expungeLeaks();
+    int count = 0;
+    for (Stripe stripe : stripes) {
+      count += stripe.open.size();
+    }
+    return count;
+  }
+
+  /**
+   * Gets the age of the oldest open iterator.
+   *
+   * @param unit Unit of the returned age.
+   * @return The maximum age of the open iterators, or 0 if there is none.
+   */
+  public long maxAge(TimeUnit unit) {
+    List<OpenIterator> iterators = openIterators();
+    return iterators.isEmpty() ? 0 : iterators.get(0).age(unit);
+  }
+
+  /**
+   * Lists the open iterators, oldest first.
+   *
+   * @return The open iterators.
+   */
+  public List<OpenIterator> openIterators() {
+    expungeLeaks();
+    List<OpenIterator> iterators = new ArrayList<>();
+    for (Stripe stripe : stripes) {
+      iterators.addAll(stripe.open.values());
+    }
+    iterators.sort(Comparator.comparingLong((OpenIterator iterator) -> iterator.openedAtNanos).thenComparingLong(
+      OpenIterator::id));
+    return iterators;
+  }
+
+  /**
+   * Lists the iterators open for at least a given time, oldest first.
+   *
+   * @param age Minimum age of the listed iterators.
+   * @param unit Unit of the age.
+   * @return The iterators open for at least the given time.
+   */
+  public List<OpenIterator> openLongerThan(long age, TimeUnit unit) {
+    long ageNanos = unit.toNanos(age);
+    long now = System.nanoTime();
+    List<OpenIterator> iterators = new ArrayList<>();
+    for (OpenIterator iterator : openIterators()) {
+      if (now - iterator.openedAtNanos >= ageNanos) {
+        iterators.add(iterator);
+      }
+    }
+    return iterators;
+  }
+
+  /** The registrations of the threads that share a stripe. */
+  private static final class Stripe {
+
+    /** Open iterators, mapped by their identifiers. */
+    private final Map<Long, OpenIterator> open = new ConcurrentHashMap<>();
+
+    /** Number of registrations made in the stripe. */
+    private final AtomicLong ids = new AtomicLong();
+
+    /** Receives the wrappers of iterators that became unreachable. */
+    private final ReferenceQueue<EventIterator> collected = new ReferenceQueue<>();
+  }
+
+  /** Describes an open iterator. */
+  public static final class OpenIterator {
+
+    /** Identifier of the iterator, unique within the registry. */
+    private final long id;
+
+    /** The stripe the iterator is registered in. */
+    private final Stripe stripe;
+
+    /** The queried type. */
+    private final String type;
+
+    /** Start timestamp of the query (inclusive). */
+    private final long startTime;
+
+    /** End timestamp of the query (exclusive). */
+    private final long endTime;
+
+    /** Name of the thread that opened the iterator. */
+    private final String threadName;
+
+    /** Stack of the opening thread, if it was sampled. */
+    private final StackTraceElement[] allocationSite;
+
+    /** Value of {@link System#nanoTime()} when the iterator was opened. */
+    private final long openedAtNanos = System.nanoTime();
+
+    /** Action run when the iterator is released. */
+    private final Runnable onRelease;
+
+    /** Indicates whether the iterator was released. */
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /** Watches the wrapper of the iterator. It is set right after creation. */
+    private IteratorReference reference;
+
+    /**
+     * Constructor. Creates a new instance of {@link OpenIterator}.
+     *
+     * @param id Identifier of the iterator.
+     * @param stripe The stripe the iterator is registered in.
+     * @param type The queried type.
+     * @param startTime Start timestamp of the query (inclusive).
+     * @param endTime End timestamp of the query (exclusive).
+     * @param threadName Name of the thread that opened the iterator.
+     * @param allocationSite Stack of the opening thread, or <code>null</code>.
+     * @param onRelease Action run when the iterator is released.
+     */
+    private OpenIterator(long id, Stripe stripe, String type, long startTime, long endTime, String threadName,
+      StackTraceElement[] allocationSite, Runnable onRelease) {
+      this.id = id;
+      this.stripe = stripe;
+      this.type = type;
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.threadName = threadName;
+      this.allocationSite = allocationSite;
+      this.onRelease = onRelease;
+    }
+
+    /**
+     * Gets the identifier of the iterator. Identifiers are unique within the
+     * registry and increase with the opening order of the iterators of a
+     * thread.
+     *
+     * @return The iterator identifier.
+     */
+    public long id() {
+      return id;
+    }
+
+    /**
+     * Gets the queried type.
+     *
+     * @return The type.
+     */
+    public String type() {
+      return type;
+    }
+
+    /**
+     * Gets the start timestamp of the query.
+     *
+     * @return The start timestamp (inclusive).
+     */
+    public long startTime() {
+      return startTime;
+    }
+
+    /**
+     * Gets the end timestamp of the query.
+     *
+     * @return The end timestamp (exclusive).
+     */
+    public long endTime() {
+      return endTime;
+    }
+
+    /**
+     * Gets the name of the thread that opened the iterator.
+     *
+     * @return The thread name.
+     */
+    public String threadName() {
+      return threadName;
+    }
+
+    /**
+     * Gets the stack of the thread that opened the iterator, if it was
+     * sampled.
+     *
+     * @return The allocation site, or <code>null</code> if it was not
+     *         recorded.
+     */
+    public StackTraceElement[] allocationSite() {
+      return allocationSite == null ? null : allocationSite.clone();
+    }
+
+    /**
+     * Gets the time the iterator has been open.
+     *
+     * @param unit Unit of the returned age.
+     * @return The age of the iterator.
+     */
+    public long age(TimeUnit unit) {
+      return unit.convert(System.nanoTime() - openedAtNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return "Iterator #" + id + " over " + type + " [" + startTime + ", " + endTime + "), opened by " + threadName
+        + " " + age(TimeUnit.MILLISECONDS) + " ms ago" + (allocationSite == null ? "" : " at " + Arrays.toString(
+          allocationSite));
+    }
+  }
+
+  /**
+   * Watches the wrapper of an iterator. It must not reference the wrapper, or
+   * the wrapper would never become unreachable.
+   */
+  private static final class IteratorReference extends PhantomReference<EventIterator> {
+
+    /** The registration of the watched iterator. */
+    private final OpenIterator registration;
+
+    /**
+     * Constructor. Creates a new instance of {@link IteratorReference}.
+     *
+     * @param iterator The watched wrapper.
+     * @param registration The registration of the iterator.
+     * @param queue The queue that receives the reference once the wrapper is
+     *        unreachable.
+     */
+    private IteratorReference(EventIterator iterator, OpenIterator registration,
+      ReferenceQueue<EventIterator> queue) {
+      super(iterator, queue);
+      this.registration = registration;
+    }
+  }
+
+  /** An iterator that unregisters itself when closed. */
+  private final class TrackedEventIterator implements EventIterator {
+
+    /** The wrapped iterator. */
+    private final EventIterator iterator;
+
+    /** The registration of the iterator. */
+    private final OpenIterator registration;
+
+    /**
+     * Constructor. Creates a new instance of {@link TrackedEventIterator}.
+     *
+     * @param iterator The wrapped iterator.
+     * @param registration The registration of the iterator.
+     */
+    private TrackedEventIterator(EventIterator iterator, OpenIterator registration) {
+      this.iterator = iterator;
+      this.registration = registration;
+    }
+
+    @Override
+    public boolean moveNext() {
+      return iterator.moveNext();
+    }
+
+    @Override
+    public Event current() {
+      return iterator.current();
+    }
+
+    @Override
+    public void remove() {
+      iterator.remove();
+    }
+
+    @Override
+    public void close() throws Exception {
+      try {
+        iterator.close();
+      }
+      finally {
+        release(registration);
+      }
+    }
+  }
+
+}
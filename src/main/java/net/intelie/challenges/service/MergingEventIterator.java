@@ -0,0 +1,135 @@
+package net.intelie.challenges.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import net.intelie.challenges.model.Event;
+
+/**
+ * Merges several event iterators, each one sorted by timestamp, into a single
+ * iterator sorted by timestamp.
+ * <p>
+ * The sources are kept in a priority queue ordered by their current events, so
+ * each step costs O(log k), where k is the number of sources. A source is only
+ * advanced when the merged iterator moves past its current event, which keeps
+ * it positioned on that event while it is the current one, so
+ * {@link #remove()} can be delegated to it.
+ */
+public class MergingEventIterator implements EventIterator {
+
+  /** All the merged sources, kept to be closed. */
+  private final List<EventIterator> sources;
+
+  /** Sources that have a current event, ordered by its timestamp. */
+  private final PriorityQueue<EventIterator> queue;
+
+  /** The source positioned on the current event of this iterator. */
+  private EventIterator currentSource;
+
+  /** The current event. It is <code>null</code> when there is none. */
+  private Event current;
+
+  /** Indicates whether the sources have been positioned on their first events. */
+  private boolean started;
+
+  /** Indicates whether the iterator is closed. */
+  private boolean closed;
+
+  /**
+   * Constructor. Creates a new instance of {@link MergingEventIterator}.
+   *
+   * @param sources The iterators to be merged. They must not have been moved
+   *        yet.
+   */
+  public MergingEventIterator(List<? extends EventIterator> sources) {
+    this.sources = new ArrayList<>(sources);
+    this.queue = new PriorityQueue<>(Math.max(1, sources.size()), Comparator.comparingLong(source -> source.current()
+      .timestamp()));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean moveNext() {
+    if (closed) {
+      current = null;
+      return false;
+    }
+    if (!started) {
+      started = true;
+      for (EventIterator source : sources) {
+        if (source.moveNext()) {
+          queue.add(source);
+        }
+      }
+    }
+    else if (currentSource != null && currentSource.moveNext()) {
+      queue.add(currentSource);
+    }
+
+    currentSource = queue.poll();
+    current = currentSource == null ? null : currentSource.current();
+    return current != null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Event current() {
+    checkState();
+    return current;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void remove() {
+    checkState();
+    currentSource.remove();
+    current = null;
+  }
+
+  /**
+   * {@inheritDoc} Closes all the sources.
+   */
+  @Override
+  public void close() throws Exception {
+    closed = true;
+    current = null;
+    currentSource = null;
+    queue.clear();
+    Exception failure = null;
+    for (EventIterator source : sources) {
+      try {
+        source.close();
+      }
+      catch (Exception e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Checks the iteration state.
+   *
+   * @throws IllegalStateException if the iterator is closed or has no current
+   *         event.
+   */
+  private void checkState() {
+    if (closed) {
+      throw new IllegalStateException("The iteration is closed.");
+    }
+    if (current == null) {
+      throw new IllegalStateException("There is no current event in iteration.");
+    }
+  }
+
+}
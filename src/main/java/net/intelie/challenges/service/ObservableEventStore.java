@@ -0,0 +1,24 @@
+package net.intelie.challenges.service;
+
+/**
+ * An {@link EventStore} that reports its changes to
+ * {@link EventStoreListener}s. It is the extension point used by the
+ * components that keep derived data (i.e. rollups) in sync with the store.
+ */
+public interface ObservableEventStore extends EventStore {
+
+  /**
+   * Registers a listener. Changes made before the registration are not
+   * reported.
+   *
+   * @param listener The listener to be registered.
+   */
+  void addListener(EventStoreListener listener);
+
+  /**
+   * Unregisters a listener.
+   *
+   * @param listener The listener to be unregistered.
+   */
+  void removeListener(EventStoreListener listener);
+}
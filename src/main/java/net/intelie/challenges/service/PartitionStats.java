@@ -0,0 +1,138 @@
+package net.intelie.challenges.service;
+
+/**
+ * Statistics of the events of a type, as kept by the catalog of
+ * {@link EventStoreImpl}. An instance is an immutable snapshot; its values are
+ * read from counters updated by concurrent operations, so they may be slightly
+ * off while those operations are in progress.
+ */
+public final class PartitionStats {
+
+  /** The type of the events. */
+  private final String type;
+
+  /** Number of stored events. */
+  private final long count;
+
+  /** Lower bound of the stored timestamps. */
+  private final long firstTimestamp;
+
+  /** Upper bound of the stored timestamps. */
+  private final long lastTimestamp;
+
+  /** Approximate heap footprint of the events. */
+  private final long estimatedBytes;
+
+  /** Approximate number of inserts per second over the last minute. */
+  private final double insertsPerSecond;
+
+  /**
+   * Constructor. Creates a new instance of {@link PartitionStats}.
+   *
+   * @param type The type of the events.
+   * @param count Number of stored events.
+   * @param firstTimestamp Lower bound of the stored timestamps.
+   * @param lastTimestamp Upper bound of the stored timestamps.
+   * @param estimatedBytes Approximate heap footprint of the events.
+   * @param insertsPerSecond Approximate insert rate over the last minute.
+   */
+  PartitionStats(String type, long count, long firstTimestamp, long lastTimestamp, long estimatedBytes,
+    double insertsPerSecond) {
+    this.type = type;
+    this.count = count;
+    this.firstTimestamp = firstTimestamp;
+    this.lastTimestamp = lastTimestamp;
+    this.estimatedBytes = estimatedBytes;
+    this.insertsPerSecond = insertsPerSecond;
+  }
+
+  /**
+   * Gets the type of the events.
+   *
+   * @return The event type.
+   */
+  public String type() {
+    return type;
+  }
+
+  /**
+   * Gets the number of stored events.
+   *
+   * @return The event count.
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * Checks whether there are no stored events.
+   *
+   * @return <code>true</code> if the count is zero.
+   */
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  /**
+   * Gets a lower bound of the stored timestamps. It is exact after inserts,
+   * and may be lower than the first timestamp while removals race with
+   * inserts.
+   *
+   * @return The first timestamp, or {@link Long#MAX_VALUE} if empty.
+   */
+  public long firstTimestamp() {
+    return firstTimestamp;
+  }
+
+  /**
+   * Gets an upper bound of the stored timestamps, in the same sense as
+   * {@link #firstTimestamp()}.
+   *
+   * @return The last timestamp, or {@link Long#MIN_VALUE} if empty.
+   */
+  public long lastTimestamp() {
+    return lastTimestamp;
+  }
+
+  /**
+   * Gets the approximate heap footprint of the events.
+   *
+   * @return The estimated number of bytes.
+   */
+  public long estimatedBytes() {
+    return estimatedBytes;
+  }
+
+  /**
+   * Gets the approximate number of inserts per second over the last minute.
+   *
+   * @return The insert rate.
+   */
+  public double insertsPerSecond() {
+    return insertsPerSecond;
+  }
+
+  /**
+   * Gets the average number of events per unit of time between the first and
+   * the last timestamps, which tells how many events a query range is likely
+   * to hold.
+   *
+   * @return The density, or zero if empty.
+   */
+  public double density() {
+    if (count == 0) {
+      return 0;
+    }
+    return count / ((double) lastTimestamp - firstTimestamp + 1);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PartitionStats[type=" + type + ", count=" + count + ", first=" + firstTimestamp + ", last="
+      + lastTimestamp + ", bytes=" + estimatedBytes + ", insertsPerSecond=" + insertsPerSecond + "]";
+  }
+
+}
@@ -0,0 +1,209 @@
+package net.intelie.challenges.service;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import net.intelie.challenges.model.Event;
+
+/**
+ * Reads a source iterator ahead, in blocks, on an {@link Executor}.
+ * <p>
+ * The first block is requested as soon as the iterator is created, and each
+ * following block is requested when the previous one is handed to the reader.
+ * When several of these iterators are created at once, their sources are
+ * therefore scanned in parallel while the reader consumes the results.
+ * <p>
+ * As the source runs ahead of the reader, removals cannot be delegated to it.
+ * They are made through a point query on the owner store instead, which costs
+ * one extra lookup per removed event. Events removed from the store after
+ * their block was read may still be returned, which is allowed by the weakly
+ * consistent semantics of the store iterators.
+ */
+public class PrefetchingEventIterator implements EventIterator {
+
+  /** Block returned when the source is exhausted. */
+  private static final Event[] NO_EVENTS = new Event[0];
+
+  /** The iterator read ahead. */
+  private final EventIterator source;
+
+  /** The store that owns the events of the source. */
+  private final EventStore store;
+
+  /** The executor that reads the blocks. */
+  private final Executor executor;
+
+  /** The maximum number of events in a block. */
+  private final int blockSize;
+
+  /** The block being read, if any. */
+  private CompletableFuture<Event[]> pending;
+
+  /** The block being consumed. */
+  private Event[] block = NO_EVENTS;
+
+  /** Position of the current event in the block. */
+  private int position = -1;
+
+  /** The current event. It is <code>null</code> when there is none. */
+  private Event current;
+
+  /** Indicates whether the iterator is closed. */
+  private boolean closed;
+
+  /**
+   * Constructor. Creates a new instance of {@link PrefetchingEventIterator} and
+   * starts reading the first block.
+   *
+   * @param source The iterator to be read ahead. It must not have been moved
+   *        yet.
+   * @param store The store that owns the events of the source.
+   * @param executor The executor that reads the blocks.
+   * @param blockSize The maximum number of events in a block.
+   */
+  public PrefetchingEventIterator(EventIterator source, EventStore store, Executor executor, int blockSize) {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("Block size must be positive.");
+    }
+    this.source = source;
+    this.store = store;
+    this.executor = executor;
+    this.blockSize = blockSize;
+    this.pending = CompletableFuture.supplyAsync(this::readBlock, executor);
+  }
+
+  /**
+   * Reads the next block from the source. Only one block is read at a time, so
+   * the source is never accessed concurrently.
+   *
+   * @return The events of the block. A block shorter than the block size is
+   *         the last one.
+   */
+  private Event[] readBlock() {
+    Event[] events = new Event[blockSize];
+    int count = 0;
+    while (count < blockSize && source.moveNext()) {
+      events[count++] = source.current();
+    }
+    return count == blockSize ? events : Arrays.copyOf(events, count);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean moveNext() {
+    if (closed) {
+      current = null;
+      return false;
+    }
+    if (position + 1 >= block.length) {
+      if (pending == null) {
+        current = null;
+        return false;
+      }
+      block = join(pending);
+      position = -1;
+      pending = block.length == blockSize ? CompletableFuture.supplyAsync(this::readBlock, executor) : null;
+    }
+    if (position + 1 >= block.length) {
+      current = null;
+      return false;
+    }
+    current = block[++position];
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Event current() {
+    checkState();
+    return current;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void remove() {
+    checkState();
+    try (EventIterator iterator = store.query(current.type(), current.timestamp(), current.timestamp() + 1)) {
+      if (iterator.moveNext()) {
+        iterator.remove();
+      }
+    }
+    catch (RuntimeException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Could not remove the event.", e);
+    }
+    current = null;
+  }
+
+  /**
+   * {@inheritDoc} The source is closed as soon as the block being read, if
+   * any, is complete.
+   */
+  @Override
+  public void close() throws Exception {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    current = null;
+    block = NO_EVENTS;
+    if (pending == null) {
+      source.close();
+    }
+    else {
+      pending.whenComplete((events, failure) -> {
+        try {
+          source.close();
+        }
+        catch (Exception e) {
+          // The events were already read, there is nothing left to release.
+        }
+      });
+      pending = null;
+    }
+  }
+
+  /**
+   * Waits for a block to be read.
+   *
+   * @param future The block being read.
+   * @return The block.
+   */
+  private static Event[] join(CompletableFuture<Event[]> future) {
+    try {
+      return future.join();
+    }
+    catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Could not read the events.", e.getCause());
+    }
+  }
+
+  /**
+   * Checks the iteration state.
+   *
+   * @throws IllegalStateException if the iterator is closed or has no current
+   *         event.
+   */
+  private void checkState() {
+    if (closed) {
+      throw new IllegalStateException("The iteration is closed.");
+    }
+    if (current == null) {
+      throw new IllegalStateException("There is no current event in iteration.");
+    }
+  }
+
+}
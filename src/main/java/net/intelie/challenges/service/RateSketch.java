@@ -0,0 +1,64 @@
+package net.intelie.challenges.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximates the rate of an event stream over the last minute.
+ * <p>
+ * Events are counted in one-second buckets of a ring. Each bucket remembers
+ * the second it counts, so a bucket left from an earlier turn of the ring is
+ * reset by the first event that lands on it, and ignored by readers. Recording
+ * is an array increment without locks; two threads resetting the same bucket
+ * at once may lose a few counts, which is acceptable for a sketch.
+ */
+final class RateSketch {
+
+  /** Number of seconds covered by the sketch. */
+  static final int WINDOW_SECONDS = 60;
+
+  /** Number of events counted in each bucket. */
+  private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+
+  /** Second counted by each bucket. */
+  private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+
+  /**
+   * Records an event at the current time.
+   */
+  void record() {
+    long second = currentSecond();
+    int bucket = (int) Math.floorMod(second, (long) WINDOW_SECONDS);
+    long counted = seconds.get(bucket);
+    if (counted != second && seconds.compareAndSet(bucket, counted, second)) {
+      counts.set(bucket, 0);
+    }
+    counts.incrementAndGet(bucket);
+  }
+
+  /**
+   * Gets the average number of events per second over the last minute.
+   *
+   * @return The approximate event rate.
+   */
+  double perSecond() {
+    long now = currentSecond();
+    long total = 0;
+    for (int bucket = 0; bucket < WINDOW_SECONDS; ++bucket) {
+      if (now - seconds.get(bucket) < WINDOW_SECONDS) {
+        total += counts.get(bucket);
+      }
+    }
+    return (double) total / WINDOW_SECONDS;
+  }
+
+  /**
+   * Gets the current second of a monotonic clock.
+   *
+   * @return The current second.
+   */
+  private static long currentSecond() {
+    return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+  }
+
+}
@@ -0,0 +1,196 @@
+package net.intelie.challenges.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Implements an {@link EventStore} that partitions the events of each type
+ * across several independent inner stores (shards).
+ * <p>
+ * Events are routed by a hash of their timestamps. The hash spreads
+ * consecutive timestamps over all shards, so a burst of recent events of the
+ * busiest type is split among them instead of hitting a single skip list. The
+ * routing is a pure function of the event, so inserts need no coordination
+ * among threads beyond the shard they land on. The price is paid by queries,
+ * which must visit every shard.
+ * <p>
+ * Queries fan out to all shards at once: each shard iterator is wrapped by a
+ * {@link PrefetchingEventIterator}, which scans it ahead on a
+ * {@link ForkJoinPool}, and the results are merged in timestamp order by a
+ * {@link MergingEventIterator}.
+ */
+public class ShardedEventStore implements SizedEventStore {
+
+  /** Default number of events read ahead from each shard at a time. */
+  public static final int DEFAULT_PREFETCH_SIZE = 256;
+
+  /** The inner stores. */
+  private final EventStore[] shards;
+
+  /** The pool that scans the shards during queries. */
+  private final ForkJoinPool pool;
+
+  /** Number of events read ahead from each shard at a time. */
+  private final int prefetchSize;
+
+  /**
+   * Constructor. Creates a new instance of {@link ShardedEventStore} with one
+   * {@link EventStoreImpl} per available processor, using the common pool to
+   * scan them.
+   */
+  public ShardedEventStore() {
+    this(Runtime.getRuntime().availableProcessors(), EventStoreImpl::new, ForkJoinPool.commonPool(),
+      DEFAULT_PREFETCH_SIZE);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link ShardedEventStore}.
+   *
+   * @param shardCount Number of shards.
+   * @param shardFactory Creates the inner stores.
+   * @param pool The pool that scans the shards during queries.
+   * @param prefetchSize Number of events read ahead from each shard at a time.
+   */
+  public ShardedEventStore(int shardCount, Supplier<? extends EventStore> shardFactory, ForkJoinPool pool,
+    int prefetchSize) {
+    if (shardCount <= 0) {
+      throw new IllegalArgumentException("Shard count must be positive.");
+    }
+    if (prefetchSize <= 0) {
+      throw new IllegalArgumentException("Prefetch size must be positive.");
+    }
+    Utils.requireNonNull(shardFactory, "Shard factory cannot be null.");
+    Utils.requireNonNull(pool, "Pool cannot be null.");
+    this.shards = new EventStore[shardCount];
+    for (int i = 0; i < shardCount; ++i) {
+      shards[i] = shardFactory.get();
+    }
+    this.pool = pool;
+    this.prefetchSize = prefetchSize;
+  }
+
+  /**
+   * Gets the shard that holds the events with a timestamp. The timestamp is
+   * mixed with the finalizer of MurmurHash3, so that regular spacing between
+   * timestamps does not map them all to the same shard.
+   *
+   * @param timestamp The timestamp.
+   * @return The shard of the timestamp.
+   */
+  private EventStore shardOf(long timestamp) {
+    long hash = timestamp;
+    hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+    hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return shards[(int) Math.floorMod(hash, (long) shards.length)];
+  }
+
+  /**
+   * {@inheritDoc} The event is stored in a single shard.
+   */
+  @Override
+  public void insert(Event event) {
+    Utils.checkEvent(event);
+    shardOf(event.timestamp()).insert(event);
+  }
+
+  /**
+   * {@inheritDoc} The events are removed from every shard, one after the
+   * other, so a concurrent query may see the type partially removed.
+   */
+  @Override
+  public void removeAll(String type) {
+    Utils.checkEventType(type);
+    for (EventStore shard : shards) {
+      shard.removeAll(type);
+    }
+  }
+
+  /**
+   * {@inheritDoc} The shards are scanned in parallel and their events are
+   * merged in timestamp order. Each step of the iterator costs O(log k), where
+   * k is the number of shards.
+   */
+  @Override
+  public EventIterator query(String type, long startTime, long endTime) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+
+    List<EventIterator> iterators = new ArrayList<>(shards.length);
+    for (EventStore shard : shards) {
+      iterators.add(new PrefetchingEventIterator(shard.query(type, startTime, endTime), shard, pool, prefetchSize));
+    }
+    return new MergingEventIterator(iterators);
+  }
+
+  /**
+   * {@inheritDoc} Every shard filters its own events, one shard after the
+   * other.
+   */
+  @Override
+  public long removeIf(String type, long startTime, long endTime, Predicate<? super Event> filter) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    Utils.requireNonNull(filter, "Filter cannot be null.");
+    long removed = 0;
+    for (EventStore shard : shards) {
+      removed += shard.removeIf(type, startTime, endTime, filter);
+    }
+    return removed;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws UnsupportedOperationException if the shards are not sized stores.
+   */
+  @Override
+  public long size(String type) {
+    Utils.checkEventType(type);
+    long total = 0;
+    for (EventStore shard : shards) {
+      total += sized(shard).size(type);
+    }
+    return total;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws UnsupportedOperationException if the shards are not sized stores.
+   */
+  @Override
+  public long estimatedBytesPerEvent() {
+    return sized(shards[0]).estimatedBytesPerEvent();
+  }
+
+  /**
+   * Gets the number of shards.
+   *
+   * @return The number of shards.
+   */
+  public int shardCount() {
+    return shards.length;
+  }
+
+  /**
+   * Casts a shard to a sized store.
+   *
+   * @param shard The shard.
+   * @return The shard as a sized store.
+   * @throws UnsupportedOperationException if the shard is not a sized store.
+   */
+  private static SizedEventStore sized(EventStore shard) {
+    if (!(shard instanceof SizedEventStore)) {
+      throw new UnsupportedOperationException("The shards do not keep their sizes.");
+    }
+    return (SizedEventStore) shard;
+  }
+
+}
@@ -0,0 +1,50 @@
+package net.intelie.challenges.service;
+
+import net.intelie.challenges.model.EventType;
+
+/**
+ * An {@link EventStore} that keeps a cheap estimate of how many events it
+ * holds. The estimate is what allows a store to be kept under a memory budget
+ * without scanning its contents.
+ */
+public interface SizedEventStore extends EventStore {
+
+  /**
+   * Gets the number of stored events of a type. The value may be slightly off
+   * while concurrent operations are in progress.
+   *
+   * @param type The type of events to be counted.
+   * @return The number of stored events of the type.
+   */
+  long size(String type);
+
+  /**
+   * Gets the number of stored events of all supported types.
+   *
+   * @return The number of stored events.
+   */
+  default long size() {
+    long total = 0;
+    for (EventType type : EventType.values()) {
+      total += size(type.toString());
+    }
+    return total;
+  }
+
+  /**
+   * Gets the approximate heap footprint of a single stored event, including
+   * the indexing overhead of the store.
+   *
+   * @return The estimated number of bytes used per stored event.
+   */
+  long estimatedBytesPerEvent();
+
+  /**
+   * Gets the approximate heap footprint of all stored events.
+   *
+   * @return The estimated number of bytes used by the store.
+   */
+  default long estimatedBytes() {
+    return size() * estimatedBytesPerEvent();
+  }
+}
@@ -0,0 +1,132 @@
+package net.intelie.challenges.service;
+
+import net.intelie.challenges.model.Event;
+
+/**
+ * An immutable record of a change applied to an {@link EventStore}. Changes
+ * are numbered by the component that orders them (i.e. a replication log), so
+ * they can be replayed in the same order elsewhere.
+ */
+public final class StoreChange {
+
+  /** Kinds of changes. */
+  public enum Kind {
+
+    /** An event was inserted. */
+    INSERT,
+
+    /** An event was removed through an {@link EventIterator}. */
+    REMOVE,
+
+    /** All events of a type were removed. */
+    REMOVE_ALL
+  }
+
+  /** Position of the change in its log. Zero if the change is not ordered yet. */
+  private final long sequence;
+
+  /** Kind of the change. */
+  private final Kind kind;
+
+  /** Type of the changed events. */
+  private final String type;
+
+  /** Timestamp of the changed event. Unused by {@link Kind#REMOVE_ALL}. */
+  private final long timestamp;
+
+  /**
+   * Constructor. Creates a new instance of {@link StoreChange}.
+   *
+   * @param sequence Position of the change in its log.
+   * @param kind Kind of the change.
+   * @param type Type of the changed events.
+   * @param timestamp Timestamp of the changed event.
+   */
+  public StoreChange(long sequence, Kind kind, String type, long timestamp) {
+    this.sequence = sequence;
+    this.kind = kind;
+    this.type = type;
+    this.timestamp = timestamp;
+  }
+
+  /**
+   * Creates a change that is not ordered yet.
+   *
+   * @param kind Kind of the change.
+   * @param type Type of the changed events.
+   * @param timestamp Timestamp of the changed event.
+   * @return The change.
+   */
+  public static StoreChange of(Kind kind, String type, long timestamp) {
+    return new StoreChange(0, kind, type, timestamp);
+  }
+
+  /**
+   * Creates a copy of this change at a position of a log.
+   *
+   * @param position Position of the change in the log.
+   * @return The ordered change.
+   */
+  public StoreChange withSequence(long position) {
+    return new StoreChange(position, kind, type, timestamp);
+  }
+
+  public long sequence() {
+    return sequence;
+  }
+
+  public Kind kind() {
+    return kind;
+  }
+
+  public String type() {
+    return type;
+  }
+
+  public long timestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Gets the changed event.
+   *
+   * @return The event, or <code>null</code> for {@link Kind#REMOVE_ALL}.
+   */
+  public Event event() {
+    return kind == Kind.REMOVE_ALL ? null : new Event(type, timestamp);
+  }
+
+  /**
+   * Applies this change to a store.
+   *
+   * @param store The store to be changed.
+   */
+  public void applyTo(EventStore store) {
+    switch (kind) {
+      case INSERT:
+        store.insert(new Event(type, timestamp));
+        break;
+      case REMOVE:
+        try (EventIterator iterator = store.query(type, timestamp, timestamp + 1)) {
+          if (iterator.moveNext()) {
+            iterator.remove();
+          }
+        }
+        catch (Exception e) {
+          throw new IllegalStateException("Could not remove the event.", e);
+        }
+        break;
+      case REMOVE_ALL:
+        store.removeAll(type);
+        break;
+      default:
+        throw new IllegalStateException("Unknown change " + kind + ".");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return sequence + ":" + kind + "(" + type + (kind == Kind.REMOVE_ALL ? "" : ", " + timestamp) + ")";
+  }
+
+}
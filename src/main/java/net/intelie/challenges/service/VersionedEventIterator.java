@@ -0,0 +1,187 @@
+package net.intelie.challenges.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongPredicate;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.CommitVersions.RemovedEvent;
+
+/**
+ * Restricts the events of a query to the ones visible at its snapshot: the
+ * events inserted by later batches are hidden, and the events removed by
+ * later batches are brought back from their removal records, in timestamp
+ * order.
+ */
+final class VersionedEventIterator implements EventIterator {
+
+  /** The iterator over the stored events. */
+  private EventIterator stored;
+
+  /** The commit versions of the store. */
+  private final CommitVersions versions;
+
+  /** The type of the events. */
+  private final String type;
+
+  /** The snapshot of the query. */
+  private final long snapshot;
+
+  /** The removal records of the type. */
+  private ConcurrentSkipListMap<Long, RemovedEvent> removals;
+
+  /** End timestamp of the query (exclusive). */
+  private final long endTime;
+
+  /** Timestamp of the last returned event, or the start of the query. */
+  private long position;
+
+  /** Indicates whether an event was returned yet. */
+  private boolean started;
+
+  /** Removes an event from the store, given its timestamp. */
+  private LongPredicate remover;
+
+  /** The next stored event, read ahead, or <code>null</code>. */
+  private Event nextStored;
+
+  /** Indicates whether {@link #nextStored} was read. */
+  private boolean storedReady;
+
+  /** The current event, or <code>null</code> if there is none. */
+  private Event current;
+
+  /** Indicates whether the iterator is closed. */
+  private boolean closed;
+
+  /**
+   * Constructor. Creates a new instance of {@link VersionedEventIterator}.
+   *
+   * @param stored The iterator over the stored events.
+   * @param versions The commit versions of the store.
+   * @param type The type of the events.
+   * @param snapshot The snapshot of the query.
+   * @param startTime Start timestamp of the query (inclusive).
+   * @param endTime End timestamp of the query (exclusive).
+   * @param remover Removes an event from the store, given its timestamp.
+   */
+  VersionedEventIterator(EventIterator stored, CommitVersions versions, String type, long snapshot, long startTime,
+    long endTime, LongPredicate remover) {
+    this.stored = stored;
+    this.versions = versions;
+    this.type = type;
+    this.snapshot = snapshot;
+    this.removals = versions.removalsOf(type);
+    this.position = startTime;
+    this.endTime = endTime;
+    this.remover = remover;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean moveNext() {
+    current = null;
+    if (closed) {
+      return false;
+    }
+    while (!storedReady) {
+      if (stored.moveNext()) {
+        nextStored = stored.current();
+        storedReady = nextStored != null && (!started || nextStored.timestamp() > position) && !versions.hidden(
+          type, nextStored.timestamp(), snapshot);
+      }
+      else {
+        nextStored = null;
+        storedReady = true;
+      }
+    }
+    Event nextRemoved = nextRemoved();
+    if (nextStored != null && (nextRemoved == null || nextStored.timestamp() <= nextRemoved.timestamp())) {
+      current = nextStored;
+      storedReady = false;
+    }
+    else {
+      current = nextRemoved;
+    }
+    if (current != null) {
+      position = current.timestamp();
+      started = true;
+    }
+    return current != null;
+  }
+
+  /**
+   * Finds the first removed event after the last returned one that is
+   * visible at the snapshot. The records are searched by key on every step,
+   * so the ones added while iterating are found as well.
+   *
+   * @return The event, or <code>null</code> if there is none.
+   */
+  private Event nextRemoved() {
+    if (removals.isEmpty()) {
+      return null;
+    }
+    Map.Entry<Long, RemovedEvent> entry = started ? removals.higherEntry(position) : removals.ceilingEntry(position);
+    while (entry != null && entry.getKey() < endTime) {
+      if (entry.getValue().visibleAt(snapshot)) {
+        return entry.getValue().event;
+      }
+      entry = removals.higherEntry(entry.getKey());
+    }
+    return null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Event current() {
+    checkState();
+    return current;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void remove() {
+    checkState();
+    remover.test(current.timestamp());
+    current = null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws Exception {
+    closed = true;
+    current = null;
+    nextStored = null;
+    removals = null;
+    remover = null;
+    EventIterator wrapped = stored;
+    stored = null;
+    if (wrapped != null) {
+      wrapped.close();
+    }
+  }
+
+  /**
+   * Checks the iteration state.
+   *
+   * @throws IllegalStateException if the iterator is closed or has no current
+   *         event.
+   */
+  private void checkState() {
+    if (closed) {
+      throw new IllegalStateException("The iteration is closed.");
+    }
+    if (current == null) {
+      throw new IllegalStateException("There is no current event in iteration.");
+    }
+  }
+
+}
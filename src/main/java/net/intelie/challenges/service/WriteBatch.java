@@ -0,0 +1,101 @@
+package net.intelie.challenges.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * A group of inserts and removals that become visible to the queries of an
+ * {@link EventStoreImpl} all at once. The changes are only collected until
+ * {@link #commit()} is called, and are applied in the order they were added.
+ * A batch is meant to be filled and committed by a single thread.
+ *
+ * @see EventStoreImpl#newBatch()
+ */
+public final class WriteBatch {
+
+  /** The store the batch is committed to. */
+  private final EventStoreImpl store;
+
+  /** The events inserted or removed, in order. */
+  private final List<Event> changes = new ArrayList<>();
+
+  /** The positions of the removals within the changes. */
+  private final BitSet removals = new BitSet();
+
+  /** The commit version, or zero if the batch was not committed yet. */
+  private long version;
+
+  /**
+   * Constructor. Creates a new instance of {@link WriteBatch}.
+   *
+   * @param store The store the batch is committed to.
+   */
+  WriteBatch(EventStoreImpl store) {
+    this.store = store;
+  }
+
+  /**
+   * Adds the insert of an event to the batch.
+   *
+   * @param event The event to be stored.
+   * @return This batch.
+   */
+  public WriteBatch insert(Event event) {
+    Utils.checkEvent(event);
+    checkOpen();
+    changes.add(event);
+    return this;
+  }
+
+  /**
+   * Adds the removal of an event to the batch.
+   *
+   * @param event The event to be removed.
+   * @return This batch.
+   */
+  public WriteBatch remove(Event event) {
+    Utils.checkEvent(event);
+    checkOpen();
+    removals.set(changes.size());
+    changes.add(event);
+    return this;
+  }
+
+  /**
+   * Gets the number of changes of the batch.
+   *
+   * @return The number of inserts and removals.
+   */
+  public int size() {
+    return changes.size();
+  }
+
+  /**
+   * Applies the changes of the batch to the store and makes them visible. A
+   * query started before the batch is published sees none of them, however
+   * long it is iterated; a query started afterwards sees all of them.
+   *
+   * @return The commit version of the batch.
+   */
+  public long commit() {
+    checkOpen();
+    version = store.commit(changes, removals);
+    return version;
+  }
+
+  /**
+   * Checks that the batch was not committed yet.
+   *
+   * @throws IllegalStateException if the batch was already committed.
+   */
+  private void checkOpen() {
+    if (version != 0) {
+      throw new IllegalStateException("The batch was already committed.");
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+package net.intelie.challenges.service.cache;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The cached result of a query: the timestamps of the events of a type within
+ * <code>[start, end)</code>, kept sorted and up to date with the store.
+ * <p>
+ * A window tracks a range that may be wider than the range it serves: while
+ * it is being filled or extended, changes up to {@link #trackedEnd} are
+ * already applied to it, but only <code>[start, end)</code> is complete and
+ * may answer queries.
+ */
+final class CachedWindow {
+
+  /** The type of the events. */
+  final String type;
+
+  /** Start timestamp of the window (inclusive). */
+  final long start;
+
+  /** End timestamp of the complete part of the window (exclusive). */
+  volatile long end;
+
+  /** End timestamp up to which changes are applied (exclusive). */
+  volatile long trackedEnd;
+
+  /** The cached timestamps. */
+  final ConcurrentSkipListSet<Long> timestamps = new ConcurrentSkipListSet<>();
+
+  /** Number of cached timestamps, kept apart because counting a set is slow. */
+  private final LongAdder size = new LongAdder();
+
+  /** Access tick of the last query served by the window. */
+  volatile long lastAccess;
+
+  /** Serializes the extensions of the window. */
+  final ReentrantLock extensionLock = new ReentrantLock();
+
+  /**
+   * Constructor. Creates a new, empty instance of {@link CachedWindow}.
+   *
+   * @param type The type of the events.
+   * @param start Start timestamp of the window (inclusive).
+   * @param end End timestamp of the window (exclusive). Changes up to it are
+   *        tracked, but the window serves nothing until it is filled.
+   */
+  CachedWindow(String type, long start, long end) {
+    this.type = type;
+    this.start = start;
+    this.end = start;
+    this.trackedEnd = end;
+  }
+
+  /**
+   * Checks whether the window serves a range.
+   *
+   * @param startTime Start timestamp of the range (inclusive).
+   * @param endTime End timestamp of the range (exclusive).
+   * @return <code>true</code> if the range is within the complete part.
+   */
+  boolean covers(long startTime, long endTime) {
+    return start <= startTime && endTime <= end;
+  }
+
+  /**
+   * Adds a timestamp, if it is within the tracked range.
+   *
+   * @param timestamp The timestamp.
+   * @return <code>true</code> if the timestamp was added by this call.
+   */
+  boolean add(long timestamp) {
+    if (timestamp >= start && timestamp < trackedEnd && timestamps.add(timestamp)) {
+      size.increment();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Removes a timestamp.
+   *
+   * @param timestamp The timestamp.
+   * @return <code>true</code> if the timestamp was removed by this call.
+   */
+  boolean remove(long timestamp) {
+    if (timestamps.remove(timestamp)) {
+      size.decrement();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Gets the number of cached timestamps.
+   *
+   * @return The window size.
+   */
+  long size() {
+    return size.sum();
+  }
+
+}
@@ -0,0 +1,629 @@
+package net.intelie.challenges.service.cache;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.service.EventStoreListener;
+import net.intelie.challenges.service.ObservableEventStore;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * An {@link EventStore} that caches the results of repeated queries in front
+ * of an {@link ObservableEventStore}.
+ * <p>
+ * Results are cached as windows: the sorted timestamps of a type within a
+ * range. A window answers any query within its range (a hit), and a query
+ * that starts within a window and ends after it extends the window with just
+ * the missing part (a partial hit), which is how a sliding "last N minutes"
+ * query is served. When a window has slid so far that most of it lies before
+ * the queries, it is rebuilt from its own live part. Windows are kept up to
+ * date by listening to the store: inserted and removed events within a cached
+ * range are applied to the window, and <code>removeAll</code> drops the
+ * windows of its type.
+ * <p>
+ * A window is being filled while other threads change the store, so a removal
+ * could be read by the fill and applied to the window in the wrong order. Each
+ * type keeps a generation that every removal increments; a fill that sees the
+ * generation move discards its window instead of caching a stale result.
+ * Inserts need no such care, since a timestamp added twice is kept once.
+ * <p>
+ * The cache is bounded by the number of cached events. The least recently
+ * used windows are evicted first. To keep one-off queries from flushing hot
+ * windows, a window is only admitted after a query of the same type and range
+ * width has missed a number of times.
+ */
+public class CachingEventStore implements EventStore, AutoCloseable {
+
+  /** Default maximum number of cached events. */
+  public static final long DEFAULT_MAX_CACHED_EVENTS = 1 << 20;
+
+  /** Default number of misses of a query shape before its window is cached. */
+  public static final int DEFAULT_ADMISSION_THRESHOLD = 2;
+
+  /** Number of query shapes whose misses are remembered. */
+  private static final int MISS_HISTORY = 256;
+
+  /** Empty window list. */
+  private static final CachedWindow[] NO_WINDOWS = new CachedWindow[0];
+
+  /** The cached store. */
+  private final ObservableEventStore delegate;
+
+  /** Maximum number of cached events. */
+  private final long maxCachedEvents;
+
+  /** Number of misses of a query shape before its window is cached. */
+  private final int admissionThreshold;
+
+  /**
+   * Cached windows of each type. Arrays are replaced, never changed, so the
+   * listener reads them without locks.
+   */
+  private final Map<String, CachedWindow[]> windows = new ConcurrentHashMap<>();
+
+  /** Generation of each type, incremented by every removal. */
+  private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+  /** Guards the changes of the windows and of the miss history. */
+  private final ReentrantLock indexLock = new ReentrantLock();
+
+  /** Recent misses of each query shape (type and range width). */
+  private final Map<String, Integer> missHistory = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+
+    /** Serial version. */
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+      return size() > MISS_HISTORY;
+    }
+  };
+
+  /** Source of access ticks. */
+  private final AtomicLong ticks = new AtomicLong();
+
+  /** Number of queries answered by a window. */
+  private final LongAdder hits = new LongAdder();
+
+  /** Number of queries answered by extending a window. */
+  private final LongAdder partialHits = new LongAdder();
+
+  /** Number of queries answered by the store. */
+  private final LongAdder misses = new LongAdder();
+
+  /** Number of windows evicted to respect the bound. */
+  private final LongAdder evictions = new LongAdder();
+
+  /** Number of fills discarded because of concurrent removals. */
+  private final LongAdder invalidations = new LongAdder();
+
+  /** Keeps the windows up to date. */
+  private final EventStoreListener listener = new WindowUpdater();
+
+  /**
+   * Constructor. Creates a new instance of {@link CachingEventStore} using the
+   * default limits.
+   *
+   * @param delegate The cached store.
+   */
+  public CachingEventStore(ObservableEventStore delegate) {
+    this(delegate, DEFAULT_MAX_CACHED_EVENTS, DEFAULT_ADMISSION_THRESHOLD);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link CachingEventStore} and starts
+   * listening to the cached store.
+   *
+   * @param delegate The cached store.
+   * @param maxCachedEvents Maximum number of cached events.
+   * @param admissionThreshold Number of misses of a query shape before its
+   *        window is cached; 1 caches every query.
+   */
+  public CachingEventStore(ObservableEventStore delegate, long maxCachedEvents, int admissionThreshold) {
+    Utils.requireNonNull(delegate, "Delegate cannot be null.");
+    if (maxCachedEvents <= 0 || admissionThreshold <= 0) {
+      throw new IllegalArgumentException("Cache limits must be positive.");
+    }
+    this.delegate = delegate;
+    this.maxCachedEvents = maxCachedEvents;
+    this.admissionThreshold = admissionThreshold;
+    delegate.addListener(listener);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void insert(Event event) {
+    delegate.insert(event);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeAll(String type) {
+    delegate.removeAll(type);
+  }
+
+  /**
+   * {@inheritDoc} The delegate removes the events, and the cached windows of
+   * the type are invalidated by its removal notifications.
+   */
+  @Override
+  public long removeIf(String type, long startTime, long endTime, Predicate<? super Event> filter) {
+    return delegate.removeIf(type, startTime, endTime, filter);
+  }
+
+  /**
+   * {@inheritDoc} Cached results are visited like the store itself: changes
+   * made while iterating may or may not be seen, and removals made through the
+   * iterator are applied to the store.
+   */
+  @Override
+  public EventIterator query(String type, long startTime, long endTime) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    long tick = ticks.incrementAndGet();
+
+    CachedWindow[] cached = windows.getOrDefault(type, NO_WINDOWS);
+    for (CachedWindow window : cached) {
+      if (window.covers(startTime, endTime)) {
+        window.lastAccess = tick;
+        hits.increment();
+        return new WindowIterator(type, window.timestamps.subSet(startTime, endTime));
+      }
+    }
+    for (CachedWindow window : cached) {
+      if (window.start <= startTime && startTime < window.end && window.end < endTime) {
+        CachedWindow extended = startTime - window.start > endTime - startTime ? rebuild(window, startTime,
+          endTime) : extend(window, endTime);
+        if (extended != null) {
+          extended.lastAccess = tick;
+          partialHits.increment();
+          evictIfNeeded(extended);
+          return new WindowIterator(type, extended.timestamps.subSet(startTime, endTime));
+        }
+      }
+    }
+
+    misses.increment();
+    if (admit(type, endTime - startTime)) {
+      CachedWindow window = new CachedWindow(type, startTime, endTime);
+      if (fill(window, null)) {
+        window.lastAccess = tick;
+        evictIfNeeded(window);
+        return new WindowIterator(type, window.timestamps.subSet(startTime, endTime));
+      }
+    }
+    return delegate.query(type, startTime, endTime);
+  }
+
+  /**
+   * Records a miss of a query shape and checks whether its window should be
+   * cached.
+   *
+   * @param type The queried type.
+   * @param width The width of the queried range.
+   * @return <code>true</code> if the window should be cached.
+   */
+  private boolean admit(String type, long width) {
+    indexLock.lock();
+    try {
+      return missHistory.merge(type + '/' + width, 1, Integer::sum) >= admissionThreshold;
+    }
+    finally {
+      indexLock.unlock();
+    }
+  }
+
+  /**
+   * Publishes a window and fills it. Once published, the window receives the
+   * changes of its range, so the fill may run concurrently with them.
+   *
+   * @param window The window, not published yet.
+   * @param source A published window whose timestamps from the start of the
+   *        new window are copied instead of queried, or <code>null</code>.
+   * @return <code>true</code> if the window was filled; otherwise, it was
+   *         discarded.
+   */
+  private boolean fill(CachedWindow window, CachedWindow source) {
+    publish(window, source);
+    long generation = generationOf(window.type).get();
+    long from = window.start;
+    if (source != null) {
+      for (Long timestamp : source.timestamps.subSet(window.start, source.end)) {
+        window.add(timestamp);
+      }
+      from = source.end;
+    }
+    if (!load(window, from, window.trackedEnd, generation)) {
+      return false;
+    }
+    window.end = window.trackedEnd;
+    return true;
+  }
+
+  /**
+   * Extends a window up to a new end, querying only the missing part.
+   *
+   * @param window The window.
+   * @param endTime The new end timestamp (exclusive).
+   * @return The window, or <code>null</code> if it was discarded.
+   */
+  private CachedWindow extend(CachedWindow window, long endTime) {
+    window.extensionLock.lock();
+    try {
+      long from = window.end;
+      if (from >= endTime) {
+        return window;
+      }
+      window.trackedEnd = Math.max(window.trackedEnd, endTime);
+      long generation = generationOf(window.type).get();
+      if (!load(window, from, endTime, generation)) {
+        return null;
+      }
+      window.end = endTime;
+      return window;
+    }
+    finally {
+      window.extensionLock.unlock();
+    }
+  }
+
+  /**
+   * Replaces a window by a new one covering a later range, built from the
+   * live part of the old one plus the missing part.
+   *
+   * @param window The window.
+   * @param startTime The new start timestamp (inclusive).
+   * @param endTime The new end timestamp (exclusive).
+   * @return The new window, or <code>null</code> if it was discarded.
+   */
+  private CachedWindow rebuild(CachedWindow window, long startTime, long endTime) {
+    CachedWindow replacement = new CachedWindow(window.type, startTime, endTime);
+    return fill(replacement, window) ? replacement : null;
+  }
+
+  /**
+   * Adds the events of a range to a window, unless a removal happened since a
+   * generation was read, in which case the window is discarded.
+   *
+   * @param window The window, already tracking the range.
+   * @param from Start timestamp of the range (inclusive).
+   * @param to End timestamp of the range (exclusive).
+   * @param generation Generation of the type read after the window started
+   *        tracking the range.
+   * @return <code>true</code> if the window is consistent.
+   */
+  private boolean load(CachedWindow window, long from, long to, long generation) {
+    if (from < to) {
+      try (EventIterator iterator = delegate.query(window.type, from, to)) {
+        while (iterator.moveNext()) {
+          window.add(iterator.current().timestamp());
+        }
+      }
+      catch (Exception e) {
+        throw new IllegalStateException("Could not fill the cache.", e);
+      }
+    }
+    if (generationOf(window.type).get() != generation) {
+      invalidations.increment();
+      unpublish(window);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Gets the removal generation of a type.
+   *
+   * @param type The type.
+   * @return The generation counter.
+   */
+  private AtomicLong generationOf(String type) {
+    return generations.computeIfAbsent(type, key -> new AtomicLong());
+  }
+
+  /**
+   * Adds a window to the cache, replacing another one.
+   *
+   * @param window The window.
+   * @param replaced The replaced window, or <code>null</code>.
+   */
+  private void publish(CachedWindow window, CachedWindow replaced) {
+    indexLock.lock();
+    try {
+      CachedWindow[] current = windows.getOrDefault(window.type, NO_WINDOWS);
+      CachedWindow[] updated = Arrays.copyOf(current, current.length + 1);
+      updated[current.length] = window;
+      windows.put(window.type, updated);
+      if (replaced != null) {
+        unpublish(replaced);
+      }
+    }
+    finally {
+      indexLock.unlock();
+    }
+  }
+
+  /**
+   * Removes a window from the cache. Iterators already over it keep working,
+   * but it is no longer kept up to date.
+   *
+   * @param window The window.
+   */
+  private void unpublish(CachedWindow window) {
+    indexLock.lock();
+    try {
+      CachedWindow[] current = windows.getOrDefault(window.type, NO_WINDOWS);
+      int index = Arrays.asList(current).indexOf(window);
+      if (index < 0) {
+        return;
+      }
+      CachedWindow[] updated = new CachedWindow[current.length - 1];
+      System.arraycopy(current, 0, updated, 0, index);
+      System.arraycopy(current, index + 1, updated, index, updated.length - index);
+      windows.put(window.type, updated);
+    }
+    finally {
+      indexLock.unlock();
+    }
+  }
+
+  /**
+   * Evicts the least recently used windows until the cache respects its
+   * bound. The window just used is evicted last.
+   *
+   * @param used The window just used.
+   */
+  private void evictIfNeeded(CachedWindow used) {
+    indexLock.lock();
+    try {
+      long total = cachedEvents();
+      while (total > maxCachedEvents) {
+        CachedWindow victim = null;
+        for (CachedWindow[] cached : windows.values()) {
+          for (CachedWindow window : cached) {
+            if (window != used && (victim == null || window.lastAccess < victim.lastAccess)) {
+              victim = window;
+            }
+          }
+        }
+        if (victim == null) {
+          victim = used;
+        }
+        unpublish(victim);
+        evictions.increment();
+        total -= victim.size();
+        if (victim == used) {
+          return;
+        }
+      }
+    }
+    finally {
+      indexLock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of queries answered by a cached window.
+   *
+   * @return The number of hits.
+   */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of queries answered by extending a cached window.
+   *
+   * @return The number of partial hits.
+   */
+  public long partialHits() {
+    return partialHits.sum();
+  }
+
+  /**
+   * Gets the number of queries answered by the cached store.
+   *
+   * @return The number of misses.
+   */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the fraction of the queries answered, fully or partially, by the
+   * cache.
+   *
+   * @return The hit rate, between 0 and 1.
+   */
+  public double hitRate() {
+    long served = hits.sum() + partialHits.sum();
+    long total = served + misses.sum();
+    return total == 0 ? 0 : (double) served / total;
+  }
+
+  /**
+   * Gets the number of windows evicted to respect the bound.
+   *
+   * @return The number of evictions.
+   */
+  public long evictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * Gets the number of windows discarded because of concurrent removals.
+   *
+   * @return The number of invalidations.
+   */
+  public long invalidations() {
+    return invalidations.sum();
+  }
+
+  /**
+   * Gets the number of cached windows.
+   *
+   * @return The number of windows.
+   */
+  public int cachedWindows() {
+    int count = 0;
+    for (CachedWindow[] cached : windows.values()) {
+      count += cached.length;
+    }
+    return count;
+  }
+
+  /**
+   * Gets the number of cached events.
+   *
+   * @return The number of events held by the windows.
+   */
+  public long cachedEvents() {
+    long total = 0;
+    for (CachedWindow[] cached : windows.values()) {
+      for (CachedWindow window : cached) {
+        total += window.size();
+      }
+    }
+    return total;
+  }
+
+  /**
+   * {@inheritDoc} Stops listening to the cached store and drops the windows.
+   */
+  @Override
+  public void close() {
+    delegate.removeListener(listener);
+    indexLock.lock();
+    try {
+      windows.clear();
+    }
+    finally {
+      indexLock.unlock();
+    }
+  }
+
+  /** Applies the changes of the store to the windows. */
+  private final class WindowUpdater implements EventStoreListener {
+
+    @Override
+    public void onInsert(Event event) {
+      for (CachedWindow window : windows.getOrDefault(event.type(), NO_WINDOWS)) {
+        window.add(event.timestamp());
+      }
+    }
+
+    @Override
+    public void onRemove(Event event) {
+      generationOf(event.type()).incrementAndGet();
+      for (CachedWindow window : windows.getOrDefault(event.type(), NO_WINDOWS)) {
+        window.remove(event.timestamp());
+      }
+    }
+
+    @Override
+    public void onRemoveAll(String type) {
+      generationOf(type).incrementAndGet();
+      indexLock.lock();
+      try {
+        windows.remove(type);
+      }
+      finally {
+        indexLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Iterates over a cached window. Removals are made through a point query on
+   * the cached store, whose listener then updates the window.
+   */
+  private final class WindowIterator implements EventIterator {
+
+    /** The type of the events. */
+    private final String type;
+
+    /** The visited timestamps, or <code>null</code> once closed. */
+    private Iterator<Long> timestamps;
+
+    /** The current event. It is <code>null</code> when there is none. */
+    private Event current;
+
+    /**
+     * Constructor. Creates a new instance of {@link WindowIterator}.
+     *
+     * @param type The type of the events.
+     * @param timestamps The visited timestamps.
+     */
+    private WindowIterator(String type, NavigableSet<Long> timestamps) {
+      this.type = type;
+      this.timestamps = timestamps.iterator();
+    }
+
+    @Override
+    public boolean moveNext() {
+      if (timestamps == null || !timestamps.hasNext()) {
+        current = null;
+        return false;
+      }
+      current = new Event(type, timestamps.next());
+      return true;
+    }
+
+    @Override
+    public Event current() {
+      checkState();
+      return current;
+    }
+
+    @Override
+    public void remove() {
+      checkState();
+      try (EventIterator iterator = delegate.query(type, current.timestamp(), current.timestamp() + 1)) {
+        if (iterator.moveNext()) {
+          iterator.remove();
+        }
+      }
+      catch (Exception e) {
+        throw new IllegalStateException("Could not remove the event.", e);
+      }
+      current = null;
+    }
+
+    @Override
+    public void close() {
+      timestamps = null;
+      current = null;
+    }
+
+    /**
+     * Checks the iteration state.
+     *
+     * @throws IllegalStateException if the iterator is closed or has no
+     *         current event.
+     */
+    private void checkState() {
+      if (timestamps == null) {
+        throw new IllegalStateException("The iteration is closed.");
+      }
+      if (current == null) {
+        throw new IllegalStateException("There is no current event in iteration.");
+      }
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+package net.intelie.challenges.service.chunked;
+
+/**
+ * An immutable, sorted block of distinct timestamps of a single type.
+ * <p>
+ * Events of a partition share their type, and the store keeps a single event
+ * per timestamp, so an event is fully described by its timestamp. Changes
+ * never modify a chunk, they build new ones, so readers can keep using a chunk
+ * without locks. Every chunk keeps its bounds and size at hand, so a range
+ * query can skip it without reading its contents.
+ */
+interface Chunk {
+
+  /**
+   * Gets the smallest timestamp of the chunk.
+   *
+   * @return The first timestamp.
+   */
+  long min();
+
+  /**
+   * Gets the largest timestamp of the chunk.
+   *
+   * @return The last timestamp.
+   */
+  long max();
+
+  /**
+   * Gets the number of timestamps of the chunk.
+   *
+   * @return The chunk size.
+   */
+  int size();
+
+  /**
+   * Checks whether the chunk holds a timestamp.
+   *
+   * @param timestamp The timestamp.
+   * @return <code>true</code> if the timestamp is in the chunk.
+   */
+  boolean contains(long timestamp);
+
+  /**
+   * Gets the number of timestamps of the chunk lower than a timestamp.
+   *
+   * @param timestamp The timestamp.
+   * @return The rank of the timestamp, from zero to the chunk size.
+   */
+  int rank(long timestamp);
+
+  /**
+   * Gets the timestamp at a position of the chunk.
+   *
+   * @param position The position, from zero to the chunk size minus one.
+   * @return The timestamp.
+   */
+  long get(int position);
+
+  /**
+   * Gets the rank sketch of the chunk, which bounds and estimates ranks and
+   * positions without reading the chunk.
+   *
+   * @return The sketch.
+   */
+  RankSketch sketch();
+
+  /**
+   * Builds a copy of this chunk without a timestamp, in the same layout.
+   *
+   * @param timestamp The timestamp to be left out. It must be in the chunk.
+   * @return The new chunk, or <code>null</code> if it would be empty.
+   */
+  Chunk without(long timestamp);
+
+  /**
+   * Gets all timestamps of the chunk as a new array.
+   *
+   * @return The sorted timestamps.
+   */
+  long[] toArray();
+
+  /**
+   * Opens a cursor over the timestamps of the chunk.
+   *
+   * @param from The smallest timestamp to be visited.
+   * @return A cursor positioned at the first timestamp not smaller than
+   *         <code>from</code>.
+   */
+  TimestampCursor cursor(long from);
+
+  /**
+   * Gets the approximate heap footprint of the chunk.
+   *
+   * @return The estimated number of bytes used by the chunk.
+   */
+  long estimatedBytes();
+
+}
@@ -0,0 +1,157 @@
+package net.intelie.challenges.service.chunked;
+
+import java.util.function.LongPredicate;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventIterator;
+
+/**
+ * Iterates over a {@link ChunkedPartition.Snapshot}, merging its chunks and
+ * tail with its late timestamps. Chunks are opened one at a time, as the
+ * iteration reaches them, so compressed chunks are decoded while streaming
+ * and never as a whole. Events are materialized on demand from the timestamps
+ * and the partition type.
+ */
+final class ChunkedEventIterator implements EventIterator {
+
+  /** The type of the events. */
+  private final String type;
+
+  /** The visited snapshot. */
+  private ChunkedPartition.Snapshot snapshot;
+
+  /** Start timestamp of the range (inclusive). */
+  private final long startTime;
+
+  /** End timestamp of the range (exclusive). */
+  private final long endTime;
+
+  /** Removes an event from the store, given its timestamp. */
+  private LongPredicate remover;
+
+  /** Index of the next chunk to be opened; past the chunks, the tail. */
+  private int segment;
+
+  /** Cursor over the current chunk or the tail. */
+  private TimestampCursor cursor;
+
+  /** Position of the next late timestamp. */
+  private int latePosition;
+
+  /** The current event. It is <code>null</code> when there is none. */
+  private Event current;
+
+  /**
+   * Constructor. Creates a new instance of {@link ChunkedEventIterator}.
+   *
+   * @param type The type of the events.
+   * @param snapshot The snapshot to be visited.
+   * @param startTime Start timestamp of the range (inclusive).
+   * @param endTime End timestamp of the range (exclusive).
+   * @param remover Removes an event from the store, given its timestamp.
+   */
+  ChunkedEventIterator(String type, ChunkedPartition.Snapshot snapshot, long startTime, long endTime,
+    LongPredicate remover) {
+    this.type = type;
+    this.snapshot = snapshot;
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.remover = remover;
+  }
+
+  /**
+   * Gets the next timestamp of the chunks and the tail within the range,
+   * opening the next segment when the current one is exhausted.
+   *
+   * @return The next timestamp, or <code>null</code> if there is none.
+   */
+  private Long peekSegments() {
+    while (cursor == null || !cursor.hasCurrent()) {
+      if (segment < snapshot.chunks.size()) {
+        cursor = snapshot.chunks.get(segment++).cursor(startTime);
+      }
+      else if (segment == snapshot.chunks.size() && snapshot.tail != null) {
+        cursor = TimestampCursor.of(snapshot.tail, snapshot.tailCount, startTime);
+        ++segment;
+      }
+      else {
+        return null;
+      }
+    }
+    long timestamp = cursor.current();
+    return timestamp < endTime ? timestamp : null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean moveNext() {
+    if (snapshot == null) {
+      current = null;
+      return false;
+    }
+    Long next = peekSegments();
+    boolean hasLate = latePosition < snapshot.late.length;
+    long timestamp;
+    if (next != null && (!hasLate || next < snapshot.late[latePosition])) {
+      timestamp = next;
+      cursor.advance();
+    }
+    else if (hasLate) {
+      timestamp = snapshot.late[latePosition++];
+    }
+    else {
+      current = null;
+      return false;
+    }
+    current = new Event(type, timestamp);
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Event current() {
+    checkState();
+    return current;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void remove() {
+    checkState();
+    remover.test(current.timestamp());
+    current = null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    snapshot = null;
+    cursor = null;
+    remover = null;
+    current = null;
+  }
+
+  /**
+   * Checks the iteration state.
+   *
+   * @throws IllegalStateException if the iterator is closed or has no current
+   *         event.
+   */
+  private void checkState() {
+    if (snapshot == null) {
+      throw new IllegalStateException("The iteration is closed.");
+    }
+    if (current == null) {
+      throw new IllegalStateException("There is no current event in iteration.");
+    }
+  }
+
+}
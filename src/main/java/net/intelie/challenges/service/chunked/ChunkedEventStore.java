@@ -0,0 +1,425 @@
+package net.intelie.challenges.service.chunked;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.service.EventStoreListener;
+import net.intelie.challenges.service.IteratorRegistry;
+import net.intelie.challenges.service.ObservableEventStore;
+import net.intelie.challenges.service.SizedEventStore;
+import net.intelie.challenges.util.ThreadFactories;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Implements an {@link EventStore} optimized for events that arrive almost in
+ * timestamp order.
+ * <p>
+ * Each type is kept in a {@link ChunkedPartition}: an event newer than all
+ * stored ones is appended to a tail array in O(1), instead of the O(log n)
+ * random insertion of a skip list. Late events go to a small, bounded reorder
+ * buffer, which a background thread merges into the sorted chunks. When the
+ * buffer fills up between two merges, the insert that fills it runs the merge
+ * itself, so the buffer never grows beyond its capacity. Queries merge the
+ * chunks with the buffer and always return events in timestamp order.
+ * <p>
+ * The costs are paid by out-of-order events, which need a duplicate check and
+ * a later chunk rewrite, and by removals, which copy the affected chunk. How
+ * late the events arrive is reported by {@link #ingestMetrics()}.
+ * <p>
+ * By default, sealed chunks are compressed with a delta-of-delta encoding
+ * (see {@link CompressedChunk}): events arriving at a steady rate take about
+ * one byte each, against roughly 80 bytes in a skip list. Scans decode them
+ * on the fly, and range queries skip the chunks out of the range by their
+ * bounds, without decoding them.
+ */
+public class ChunkedEventStore implements SizedEventStore, ObservableEventStore, AutoCloseable {
+
+  /** Default number of events of a full chunk. */
+  public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+  /** Default number of late events that forces a merge. */
+  public static final int DEFAULT_REORDER_CAPACITY = 4096;
+
+  /** Default time between two background merges, in milliseconds. */
+  public static final long DEFAULT_MERGE_PERIOD_MILLIS = 100;
+
+  /**
+   * Estimated heap footprint of a stored event in an uncompressed chunk,
+   * reported while the store is empty.
+   */
+  public static final long ESTIMATED_BYTES_PER_EVENT = 8;
+
+  /** Partitions of each type, mapped by type name. */
+  private final Map<String, ChunkedPartition> partitions = new ConcurrentHashMap<>();
+
+  /** Listeners notified about the changes of the store. */
+  private final List<EventStoreListener> listeners = new CopyOnWriteArrayList<>();
+
+  /** Metrics of the arrival order of the events. */
+  private final IngestMetrics metrics = new IngestMetrics();
+
+  /** Tracks the iterators returned by queries until they are closed. */
+  private final IteratorRegistry iterators = new IteratorRegistry();
+
+  /** Number of events of a full chunk. */
+  private final int chunkSize;
+
+  /** Number of late events that forces a merge. */
+  private final int reorderCapacity;
+
+  /** Indicates whether sealed chunks are compressed. */
+  private final boolean compress;
+
+  /** Runs the background merges, if enabled. */
+  private final ScheduledExecutorService merger;
+
+  /** Number of background merges of a type that failed. */
+  private final LongAdder mergeFailures = new LongAdder();
+
+  /**
+   * Constructor. Creates a new instance of {@link ChunkedEventStore} with the
+   * default settings.
+   */
+  public ChunkedEventStore() {
+    this(DEFAULT_CHUNK_SIZE, DEFAULT_REORDER_CAPACITY, DEFAULT_MERGE_PERIOD_MILLIS);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link ChunkedEventStore} that
+   * compresses its sealed chunks.
+   *
+   * @param chunkSize Number of events of a full chunk.
+   * @param reorderCapacity Number of late events of a type that forces a
+   *        merge.
+   * @param mergePeriodMillis Time between two background merges. If it is not
+   *        positive, late events are only merged when a buffer is full or
+   *        {@link #mergeLateEvents()} is called.
+   */
+  public ChunkedEventStore(int chunkSize, int reorderCapacity, long mergePeriodMillis) {
+    this(chunkSize, reorderCapacity, mergePeriodMillis, true);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link ChunkedEventStore}.
+   *
+   * @param chunkSize Number of events of a full chunk.
+   * @param reorderCapacity Number of late events of a type that forces a
+   *        merge.
+   * @param mergePeriodMillis Time between two background merges. If it is not
+   *        positive, late events are only merged when a buffer is full or
+   *        {@link #mergeLateEvents()} is called.
+   * @param compress Indicates whether sealed chunks are compressed, trading
+   *        some scan speed for memory.
+   */
+  public ChunkedEventStore(int chunkSize, int reorderCapacity, long mergePeriodMillis, boolean compress) {
+    if (chunkSize <= 0 || reorderCapacity <= 0) {
+      throw new IllegalArgumentException("Chunk size and reorder capacity must be positive.");
+    }
+    this.chunkSize = chunkSize;
+    this.reorderCapacity = reorderCapacity;
+    this.compress = compress;
+    if (mergePeriodMillis > 0) {
+      merger = Executors.newSingleThreadScheduledExecutor(ThreadFactories.daemon("event-store-chunk-merger"));
+      merger.scheduleWithFixedDelay(this::mergeInBackground, mergePeriodMillis, mergePeriodMillis,
+        TimeUnit.MILLISECONDS);
+    }
+    else {
+      merger = null;
+    }
+  }
+
+  /**
+   * {@inheritDoc} In-order events cost O(1); late events cost O(log n) for the
+   * duplicate check, plus their share of a later merge.
+   */
+  @Override
+  public void insert(Event event) {
+    Utils.checkEvent(event);
+    ChunkedPartition partition = partitions.computeIfAbsent(event.type(), type -> new ChunkedPartition(chunkSize,
+      reorderCapacity, compress, metrics));
+    if (partition.insert(event.timestamp())) {
+      for (EventStoreListener listener : listeners) {
+        listener.onInsert(event);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc} This operation is done in constant time because it just
+   * unlinks the partition of the type.
+   */
+  @Override
+  public void removeAll(String type) {
+    Utils.checkEventType(type);
+    partitions.remove(type);
+    for (EventStoreListener listener : listeners) {
+      listener.onRemoveAll(type);
+    }
+  }
+
+  /**
+   * {@inheritDoc} The iterator visits a snapshot taken when the query is made:
+   * it does not see later changes, and removals made through it are applied to
+   * the store. The snapshot pins the chunks it references, including chunks
+   * later replaced or removed, until the iterator is closed; open iterators are
+   * listed by {@link #iterators()}.
+   */
+  @Override
+  public EventIterator query(String type, long startTime, long endTime) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    ChunkedPartition partition = partitions.get(type);
+    if (partition == null) {
+      return EventIterator.empty();
+    }
+    return iterators.track(new ChunkedEventIterator(type, partition.snapshot(startTime, endTime), startTime,
+      endTime, timestamp -> remove(partition, type, timestamp)), type, startTime, endTime, null);
+  }
+
+  /**
+   * {@inheritDoc} Each chunk that overlaps the range is filtered and rebuilt
+   * once, instead of being copied for every removed event, and queries are
+   * only held while the rebuilt chunks are swapped in. Listeners are notified
+   * about every removed event.
+   */
+  @Override
+  public long removeIf(String type, long startTime, long endTime, Predicate<? super Event> filter) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    Utils.requireNonNull(filter, "Filter cannot be null.");
+    ChunkedPartition partition = partitions.get(type);
+    if (partition == null) {
+      return 0;
+    }
+    List<Event> removed = partition.removeIf(type, startTime, endTime, filter);
+    for (Event event : removed) {
+      for (EventStoreListener listener : listeners) {
+        listener.onRemove(event);
+      }
+    }
+    return removed.size();
+  }
+
+  /**
+   * Draws a uniform random sample of the events of a type within a range,
+   * without replacement. The chunk sizes locate the bounds of the range, so
+   * only the chunks holding the bounds and the sampled events are read,
+   * whatever the size of the range.
+   *
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param size Number of events to be drawn.
+   * @return The sampled events, in timestamp order. All the events of the
+   *         range if it holds no more than <code>size</code>.
+   */
+  public List<Event> sample(String type, long startTime, long endTime, int size) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    if (size <= 0) {
+      throw new IllegalArgumentException("Sample size must be positive.");
+    }
+    ChunkedPartition partition = partitions.get(type);
+    if (partition == null) {
+      return Collections.emptyList();
+    }
+    long[] timestamps = partition.sample(startTime, endTime, size, ThreadLocalRandom.current());
+    List<Event> sample = new ArrayList<>(timestamps.length);
+    for (long timestamp : timestamps) {
+      sample.add(new Event(type, timestamp));
+    }
+    return sample;
+  }
+
+  /**
+   * Estimates the number of events of a type within a range without reading
+   * the events. The chunks within the range are counted by their sizes; the
+   * chunks holding the bounds are estimated from their rank sketches, so the
+   * error is at most a few dozen events per bound, and it is zero for the
+   * plain layout.
+   *
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The estimated count, with bounds that hold the exact count.
+   */
+  public Estimate approximateCount(String type, long startTime, long endTime) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    ChunkedPartition partition = partitions.get(type);
+    if (partition == null) {
+      return new Estimate(0, 0, 0);
+    }
+    return partition.approximateCount(startTime, endTime);
+  }
+
+  /**
+   * Estimates a quantile of the timestamps of the events of a type within a
+   * range without reading the events, from the chunk sizes and their rank
+   * sketches.
+   *
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param quantile The quantile, from zero (the first event) to one (the
+   *        last one); 0.5 is the median.
+   * @return The estimated timestamp, with bounds that hold the exact one, or
+   *         <code>null</code> if the range is empty.
+   */
+  public Estimate approximateQuantile(String type, long startTime, long endTime, double quantile) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    if (!(quantile >= 0 && quantile <= 1)) {
+      throw new IllegalArgumentException("Quantile must be between 0 and 1.");
+    }
+    ChunkedPartition partition = partitions.get(type);
+    if (partition == null) {
+      return null;
+    }
+    return partition.approximateQuantile(startTime, endTime, quantile);
+  }
+
+  /**
+   * Gets the registry of the iterators returned by this store and not closed
+   * yet.
+   *
+   * @return The iterator registry.
+   */
+  public IteratorRegistry iterators() {
+    return iterators;
+  }
+
+  /**
+   * Removes an event from a partition and notifies the listeners.
+   *
+   * @param partition The partition holding the event.
+   * @param type The type of the event.
+   * @param timestamp The timestamp of the event.
+   * @return <code>true</code> if the event was removed by this call.
+   */
+  private boolean remove(ChunkedPartition partition, String type, long timestamp) {
+    if (!partition.remove(timestamp)) {
+      return false;
+    }
+    Event removed = new Event(type, timestamp);
+    for (EventStoreListener listener : listeners) {
+      listener.onRemove(removed);
+    }
+    return true;
+  }
+
+  /**
+   * Merges the reorder buffers of all types into their sorted chunks. It is
+   * called periodically by the background merger, if enabled.
+   *
+   * @return The number of events merged.
+   */
+  public long mergeLateEvents() {
+    long merged = 0;
+    for (ChunkedPartition partition : partitions.values()) {
+      merged += partition.mergeLate();
+    }
+    return merged;
+  }
+
+  /**
+   * Merges the reorder buffers for the background merger. An exception
+   * escaping a periodic task would cancel all the next runs, so failures are
+   * counted here instead, and the other types are still merged.
+   */
+  private void mergeInBackground() {
+    for (ChunkedPartition partition : partitions.values()) {
+      try {
+        partition.mergeLate();
+      }
+      catch (RuntimeException e) {
+        mergeFailures.increment();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of background merges of a type that failed. A failed
+   * merge is retried on the next run.
+   *
+   * @return The number of failed merges.
+   */
+  public long mergeFailures() {
+    return mergeFailures.sum();
+  }
+
+  /**
+   * Gets the metrics of the arrival order of the events.
+   *
+   * @return The ingest metrics.
+   */
+  public IngestMetrics ingestMetrics() {
+    return metrics;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long size(String type) {
+    Utils.checkEventType(type);
+    ChunkedPartition partition = partitions.get(type);
+    return partition == null ? 0 : partition.size();
+  }
+
+  /**
+   * {@inheritDoc} It is measured from the actual chunks, so it reflects how
+   * well the timestamps compress.
+   */
+  @Override
+  public long estimatedBytesPerEvent() {
+    long bytes = 0;
+    long events = 0;
+    for (ChunkedPartition partition : partitions.values()) {
+      bytes += partition.estimatedBytes();
+      events += partition.size();
+    }
+    return events == 0 ? ESTIMATED_BYTES_PER_EVENT : Math.max(1, (bytes + events - 1) / events);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addListener(EventStoreListener listener) {
+    Utils.requireNonNull(listener, "Listener cannot be null.");
+    listeners.add(listener);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeListener(EventStoreListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * {@inheritDoc} Stops the background merges, if enabled.
+   */
+  @Override
+  public void close() {
+    if (merger != null) {
+      merger.shutdownNow();
+    }
+  }
+
+}
@@ -0,0 +1,857 @@
+package net.intelie.challenges.service.chunked;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import net.intelie.challenges.model.Event;
+
+/**
+ * Holds the timestamps of the events of a single type, laid out as:
+ * <ul>
+ * <li>sealed chunks: immutable sorted blocks, indexed by their first
+ * timestamp, optionally compressed;</li>
+ * <li>the tail: an array that receives in-order timestamps by a plain append,
+ * and becomes a chunk when full;</li>
+ * <li>the reorder buffer: a small sorted set that receives late timestamps
+ * until they are merged into the chunks.</li>
+ * </ul>
+ * Every timestamp of the chunks is smaller than every timestamp of the tail,
+ * so both form a single sorted sequence, and a query only has to merge it with
+ * the reorder buffer. When compression is enabled, chunks are encoded as they
+ * are sealed or rebuilt, so only the tail and the reorder buffer, which hold
+ * the recent events, stay in plain form.
+ * <p>
+ * Changes are serialized by the write side of a lock; its critical section is
+ * a few array stores for an in-order insert. Queries hold the read side just
+ * long enough to take a snapshot: the chunks are immutable, the tail is never
+ * changed below its count (removals copy it) and the part of the reorder
+ * buffer within the range is copied. The snapshot is then iterated without
+ * locks.
+ */
+final class ChunkedPartition {
+
+  /** Estimated heap footprint of a timestamp in the reorder buffer. */
+  private static final long LATE_ENTRY_BYTES = 64;
+
+  /** Number of timestamps of a full chunk. */
+  private final int chunkSize;
+
+  /** Number of late timestamps that forces a merge. */
+  private final int reorderCapacity;
+
+  /** Indicates whether sealed chunks are compressed. */
+  private final boolean compress;
+
+  /** Metrics shared by all partitions of the store. */
+  private final IngestMetrics metrics;
+
+  /** Guards the state of the partition. */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** Sealed chunks, mapped by their first timestamp. */
+  private final TreeMap<Long, Chunk> chunks = new TreeMap<>();
+
+  /** Estimated heap footprint of the sealed chunks. */
+  private long chunkBytes;
+
+  /** The tail array. Slots below the tail count are never changed. */
+  private long[] tail;
+
+  /** Number of timestamps in the tail. */
+  private int tailCount;
+
+  /** Late timestamps waiting to be merged. */
+  private final TreeSet<Long> late = new TreeSet<>();
+
+  /** Largest timestamp stored so far. */
+  private long newest = Long.MIN_VALUE;
+
+  /** Number of timestamps of the partition. */
+  private volatile long size;
+
+  /**
+   * Constructor. Creates a new instance of {@link ChunkedPartition}.
+   *
+   * @param chunkSize Number of timestamps of a full chunk.
+   * @param reorderCapacity Number of late timestamps that forces a merge.
+   * @param compress Indicates whether sealed chunks are compressed.
+   * @param metrics Metrics shared by all partitions of the store.
+   */
+  ChunkedPartition(int chunkSize, int reorderCapacity, boolean compress, IngestMetrics metrics) {
+    this.chunkSize = chunkSize;
+    this.reorderCapacity = reorderCapacity;
+    this.compress = compress;
+    this.metrics = metrics;
+    this.tail = new long[chunkSize];
+  }
+
+  /**
+   * Stores a timestamp. Timestamps newer than all stored ones are appended to
+   * the tail in constant time; the others are checked for duplicates and sent
+   * to the reorder buffer.
+   *
+   * @param timestamp The timestamp.
+   * @return <code>true</code> if the timestamp was not stored yet.
+   */
+  boolean insert(long timestamp) {
+    Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      if (timestamp > newest) {
+        if (tailCount == tail.length) {
+          sealTail();
+        }
+        tail[tailCount++] = timestamp;
+        newest = timestamp;
+        metrics.recordInOrder();
+      }
+      else {
+        if (contains(timestamp)) {
+          return false;
+        }
+        late.add(timestamp);
+        metrics.recordLate(newest - timestamp);
+        if (late.size() >= reorderCapacity) {
+          merge(true);
+        }
+      }
+      ++size;
+      return true;
+    }
+    finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Removes a timestamp.
+   *
+   * @param timestamp The timestamp.
+   * @return <code>true</code> if the timestamp was removed by this call.
+   */
+  boolean remove(long timestamp) {
+    Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      return removeLocked(timestamp);
+    }
+    finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Removes the timestamps within a range whose events match a filter.
+   * <p>
+   * Each chunk that overlaps the range is decoded once, filtered and rebuilt
+   * into a single new chunk, instead of being copied for every removed
+   * timestamp. The chunks are rebuilt without the lock, so queries are not
+   * held meanwhile; the write lock is only taken to swap the rebuilt chunks in
+   * and to filter the tail and the reorder buffer. A chunk replaced by a
+   * concurrent change is not swapped. Instead, once the rebuilt chunks are in,
+   * every chunk that overlaps the range and was not filtered already is
+   * filtered under the lock: that covers the chunks replaced by a merge of
+   * the reorder buffer and those sealed from the tail meanwhile.
+   *
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param filter Selects the events to be removed.
+   * @return The events removed by this call.
+   */
+  List<Event> removeIf(String type, long startTime, long endTime, Predicate<? super Event> filter) {
+    List<Chunk> candidates;
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      candidates = overlapping(startTime, endTime);
+    }
+    finally {
+      readLock.unlock();
+    }
+
+    List<Chunk> originals = new ArrayList<>();
+    List<Chunk> rebuilt = new ArrayList<>();
+    List<List<Event>> matches = new ArrayList<>();
+    Set<Chunk> filtered = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Chunk chunk : candidates) {
+      List<Event> chunkMatches = new ArrayList<>();
+      Chunk remaining = filter(chunk, type, startTime, endTime, filter, chunkMatches);
+      if (remaining == chunk) {
+        filtered.add(chunk);
+      }
+      else {
+        originals.add(chunk);
+        rebuilt.add(remaining);
+        matches.add(chunkMatches);
+      }
+    }
+
+    List<Event> removed = new ArrayList<>();
+    Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      for (int i = 0; i < originals.size(); ++i) {
+        Chunk original = originals.get(i);
+        if (chunks.get(original.min()) == original) {
+          replaceChunk(original, rebuilt.get(i), matches.get(i).size());
+          removed.addAll(matches.get(i));
+          filtered.add(rebuilt.get(i));
+        }
+      }
+      for (Chunk chunk : overlapping(startTime, endTime)) {
+        if (!filtered.contains(chunk)) {
+          List<Event> chunkMatches = new ArrayList<>();
+          Chunk remaining = filter(chunk, type, startTime, endTime, filter, chunkMatches);
+          if (remaining != chunk) {
+            replaceChunk(chunk, remaining, chunkMatches.size());
+            removed.addAll(chunkMatches);
+          }
+        }
+      }
+
+      for (Iterator<Long> iterator = late.subSet(startTime, true, endTime, false).iterator(); iterator.hasNext();) {
+        Event event = new Event(type, iterator.next());
+        if (filter.test(event)) {
+          iterator.remove();
+          removed.add(event);
+          --size;
+        }
+      }
+
+      int start = lowerBound(tail, tailCount, startTime);
+      int end = lowerBound(tail, tailCount, endTime);
+      long[] copy = null;
+      int kept = start;
+      for (int i = start; i < end; ++i) {
+        Event event = new Event(type, tail[i]);
+        if (filter.test(event)) {
+          if (copy == null) {
+            copy = new long[tail.length];
+            System.arraycopy(tail, 0, copy, 0, kept);
+          }
+          removed.add(event);
+          --size;
+        }
+        else {
+          if (copy != null) {
+            copy[kept] = tail[i];
+          }
+          ++kept;
+        }
+      }
+      if (copy != null) {
+        System.arraycopy(tail, end, copy, kept, tailCount - end);
+        tailCount = kept + tailCount - end;
+        tail = copy;
+      }
+      return removed;
+    }
+    finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Filters the timestamps of a chunk within a range.
+   *
+   * @param chunk The chunk.
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param filter Selects the events to be removed.
+   * @param matched Receives the events selected by the filter.
+   * @return The chunk itself if no event was selected, a rebuilt chunk
+   *         without the selected ones, or <code>null</code> if all of them
+   *         were.
+   */
+  private Chunk filter(Chunk chunk, String type, long startTime, long endTime, Predicate<? super Event> filter,
+    List<Event> matched) {
+    long[] timestamps = chunk.toArray();
+    int kept = 0;
+    for (long timestamp : timestamps) {
+      if (timestamp >= startTime && timestamp < endTime) {
+        Event event = new Event(type, timestamp);
+        if (filter.test(event)) {
+          matched.add(event);
+          continue;
+        }
+      }
+      timestamps[kept++] = timestamp;
+    }
+    if (kept == timestamps.length) {
+      return chunk;
+    }
+    if (kept == 0) {
+      return null;
+    }
+    return compress ? CompressedChunk.encode(timestamps, kept) : new SortedChunk(Arrays.copyOf(timestamps, kept));
+  }
+
+  /**
+   * Replaces a sealed chunk by its filtered version. Must be called with the
+   * write lock held.
+   *
+   * @param original The chunk.
+   * @param remaining The filtered chunk, or <code>null</code> if it is empty.
+   * @param removed Number of timestamps filtered out.
+   */
+  private void replaceChunk(Chunk original, Chunk remaining, int removed) {
+    removeChunk(original.min());
+    if (remaining != null) {
+      putChunk(remaining);
+    }
+    size -= removed;
+  }
+
+  /**
+   * Removes a timestamp. Must be called with the write lock held.
+   *
+   * @param timestamp The timestamp.
+   * @return <code>true</code> if the timestamp was removed by this call.
+   */
+  private boolean removeLocked(long timestamp) {
+    if (late.remove(timestamp)) {
+      --size;
+      return true;
+    }
+    int index = Arrays.binarySearch(tail, 0, tailCount, timestamp);
+    if (index >= 0) {
+      long[] copy = new long[tail.length];
+      System.arraycopy(tail, 0, copy, 0, index);
+      System.arraycopy(tail, index + 1, copy, index, tailCount - index - 1);
+      tail = copy;
+      --tailCount;
+      --size;
+      return true;
+    }
+    Map.Entry<Long, Chunk> entry = chunks.floorEntry(timestamp);
+    if (entry != null && entry.getValue().contains(timestamp)) {
+      removeChunk(entry.getKey());
+      Chunk remaining = entry.getValue().without(timestamp);
+      if (remaining != null) {
+        putChunk(remaining);
+      }
+      --size;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Gets the position of the first timestamp of a sorted array that is not
+   * lower than a given one.
+   *
+   * @param timestamps The sorted timestamps.
+   * @param length Number of valid timestamps of the array.
+   * @param timestamp The timestamp.
+   * @return The position, or <code>length</code> if all timestamps are lower.
+   */
+  private static int lowerBound(long[] timestamps, int length, long timestamp) {
+    int index = Arrays.binarySearch(timestamps, 0, length, timestamp);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  /**
+   * Merges the reorder buffer into the sorted chunks.
+   *
+   * @return The number of timestamps merged.
+   */
+  int mergeLate() {
+    Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      return merge(false);
+    }
+    finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of timestamps of the partition.
+   *
+   * @return The partition size.
+   */
+  long size() {
+    return size;
+  }
+
+  /**
+   * Gets the approximate heap footprint of the partition.
+   *
+   * @return The estimated number of bytes used by the partition.
+   */
+  long estimatedBytes() {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      return chunkBytes + 16 + 8L * tail.length + LATE_ENTRY_BYTES * late.size();
+    }
+    finally {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Draws a uniform random sample of the timestamps within a range, without
+   * replacement and without scanning the range.
+   * <p>
+   * The chunks and the tail form a sorted sequence whose chunk sizes are
+   * known, so the timestamps within the range are the positions between the
+   * ranks of its bounds, and only the chunks that hold a bound are read to
+   * find them. The sample is drawn as positions of that sequence, plus the
+   * late timestamps, and each picked position is read from its chunk alone.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param count Number of timestamps to be drawn.
+   * @param random The source of randomness.
+   * @return The sampled timestamps, sorted. All of them if the range holds
+   *         no more than <code>count</code>.
+   */
+  long[] sample(long startTime, long endTime, int count, Random random) {
+    Snapshot snapshot = snapshot(startTime, endTime);
+    List<Chunk> sequence = snapshot.sequence();
+    long[] offsets = offsets(sequence);
+    long first = rank(sequence, offsets, startTime);
+    long inSequence = rank(sequence, offsets, endTime) - first;
+    long total = inSequence + snapshot.late.length;
+
+    long[] picked = pick(total, count, random);
+    long[] sample = new long[picked.length];
+    for (int i = 0; i < picked.length; ++i) {
+      if (picked[i] < inSequence) {
+        long position = first + picked[i];
+        int chunk = chunkAt(offsets, position);
+        sample[i] = sequence.get(chunk).get((int) (position - offsets[chunk]));
+      }
+      else {
+        sample[i] = snapshot.late[(int) (picked[i] - inSequence)];
+      }
+    }
+    Arrays.sort(sample);
+    return sample;
+  }
+
+  /**
+   * Estimates the number of timestamps within a range from the chunk sizes
+   * and the rank sketches of the chunks that hold the bounds, without reading
+   * any chunk. Only those two chunks make the estimate inexact, each by at
+   * most one step of its sketch.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The estimated count.
+   */
+  Estimate approximateCount(long startTime, long endTime) {
+    Snapshot snapshot = snapshot(startTime, endTime);
+    List<Chunk> sequence = snapshot.sequence();
+    long[] offsets = offsets(sequence);
+    Rank start = estimateRank(sequence, offsets, startTime);
+    Rank end = estimateRank(sequence, offsets, endTime);
+    int late = snapshot.late.length;
+    return new Estimate(Math.round(end.estimate - start.estimate) + late, Math.max(0, end.lower - start.upper)
+      + late, end.upper - start.lower + late);
+  }
+
+  /**
+   * Estimates a quantile of the timestamps within a range from the chunk
+   * sizes and the rank sketches, reading no chunk. The position of the
+   * quantile is bounded by the sketches of the chunks that hold the bounds of
+   * the range, widened by the late timestamps, which may fall anywhere; the
+   * bounds of the estimate are the marks around those positions.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param quantile The quantile, from zero (the first timestamp) to one (the
+   *        last one).
+   * @return The estimated timestamp, or <code>null</code> if the range is
+   *         empty.
+   */
+  Estimate approximateQuantile(long startTime, long endTime, double quantile) {
+    Snapshot snapshot = snapshot(startTime, endTime);
+    List<Chunk> sequence = snapshot.sequence();
+    long[] offsets = offsets(sequence);
+    Rank start = estimateRank(sequence, offsets, startTime);
+    Rank end = estimateRank(sequence, offsets, endTime);
+    long[] late = snapshot.late;
+    if (end.upper - start.lower == 0) {
+      if (late.length == 0) {
+        return null;
+      }
+      long value = late[(int) Math.round(quantile * (late.length - 1))];
+      return new Estimate(value, value, value);
+    }
+
+    double estimate = start.estimate + quantile * Math.max(0, end.estimate - start.estimate - 1);
+    double lowest = (1 - quantile) * start.lower + quantile * (end.lower - 1) - (late.length == 0 ? 0 : late.length
+      + 1);
+    double highest = (1 - quantile) * start.upper + quantile * (end.upper - 1) + late.length;
+    long first = Math.max(start.lower, (long) Math.floor(lowest));
+    long last = Math.min(end.upper - 1, (long) Math.ceil(highest));
+    estimate = Math.max(first, Math.min(last, estimate));
+
+    int lowChunk = chunkAt(offsets, first);
+    int highChunk = chunkAt(offsets, last);
+    int estimateChunk = chunkAt(offsets, (long) estimate);
+    long lower = sequence.get(lowChunk).sketch().lowerValue((int) (first - offsets[lowChunk]));
+    long upper = sequence.get(highChunk).sketch().upperValue((int) (last - offsets[highChunk]));
+    double value = sequence.get(estimateChunk).sketch().estimateValue(estimate - offsets[estimateChunk]);
+    if (late.length > 0) {
+      lower = Math.min(lower, late[0]);
+      upper = Math.max(upper, late[late.length - 1]);
+    }
+    lower = Math.max(lower, startTime);
+    upper = Math.min(upper, endTime - 1);
+    return new Estimate(Math.round(value), lower, upper);
+  }
+
+  /**
+   * Gets the position of the first timestamp of each chunk of a sequence.
+   *
+   * @param sequence The chunks, in order.
+   * @return The offsets, followed by the size of the sequence.
+   */
+  private static long[] offsets(List<Chunk> sequence) {
+    long[] offsets = new long[sequence.size() + 1];
+    for (int i = 0; i < sequence.size(); ++i) {
+      offsets[i + 1] = offsets[i] + sequence.get(i).size();
+    }
+    return offsets;
+  }
+
+  /**
+   * Gets the chunk of a sequence that holds a position.
+   *
+   * @param offsets The offsets of the chunks.
+   * @param position The position.
+   * @return The index of the chunk.
+   */
+  private static int chunkAt(long[] offsets, long position) {
+    int index = Arrays.binarySearch(offsets, 0, offsets.length - 1, position);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  /**
+   * Gets the number of timestamps of a sequence lower than a timestamp,
+   * reading the chunk that holds it.
+   *
+   * @param sequence The chunks, in order.
+   * @param offsets The offsets of the chunks.
+   * @param timestamp The timestamp.
+   * @return The exact rank.
+   */
+  private static long rank(List<Chunk> sequence, long[] offsets, long timestamp) {
+    for (int i = 0; i < sequence.size(); ++i) {
+      Chunk chunk = sequence.get(i);
+      if (timestamp <= chunk.min()) {
+        return offsets[i];
+      }
+      if (timestamp <= chunk.max()) {
+        return offsets[i] + chunk.rank(timestamp);
+      }
+    }
+    return offsets[sequence.size()];
+  }
+
+  /**
+   * Bounds and estimates the number of timestamps of a sequence lower than a
+   * timestamp from the sketch of the chunk that holds it.
+   *
+   * @param sequence The chunks, in order.
+   * @param offsets The offsets of the chunks.
+   * @param timestamp The timestamp.
+   * @return The estimated rank.
+   */
+  private static Rank estimateRank(List<Chunk> sequence, long[] offsets, long timestamp) {
+    for (int i = 0; i < sequence.size(); ++i) {
+      Chunk chunk = sequence.get(i);
+      if (timestamp <= chunk.min()) {
+        return new Rank(offsets[i], offsets[i], offsets[i]);
+      }
+      if (timestamp <= chunk.max()) {
+        RankSketch sketch = chunk.sketch();
+        return new Rank(offsets[i] + sketch.lowerRank(timestamp), offsets[i] + sketch.upperRank(timestamp),
+          offsets[i] + sketch.estimateRank(timestamp));
+      }
+    }
+    long size = offsets[sequence.size()];
+    return new Rank(size, size, size);
+  }
+
+  /**
+   * Picks distinct positions uniformly at random, by Floyd's algorithm,
+   * which takes one random number per picked position.
+   *
+   * @param total Number of positions to pick from.
+   * @param count Number of positions to be picked.
+   * @param random The source of randomness.
+   * @return The picked positions, sorted. All of them if there are no more
+   *         than <code>count</code>.
+   */
+  private static long[] pick(long total, int count, Random random) {
+    if (total <= count) {
+      long[] all = new long[(int) total];
+      for (int i = 0; i < all.length; ++i) {
+        all[i] = i;
+      }
+      return all;
+    }
+    Set<Long> picked = new HashSet<>(count * 2);
+    for (long j = total - count; j < total; ++j) {
+      long candidate = (long) (random.nextDouble() * (j + 1));
+      picked.add(picked.contains(candidate) ? j : candidate);
+    }
+    long[] positions = new long[count];
+    int i = 0;
+    for (Long position : picked) {
+      positions[i++] = position;
+    }
+    Arrays.sort(positions);
+    return positions;
+  }
+
+  /**
+   * Takes a snapshot of the timestamps within a range. Chunks are picked by
+   * their bounds alone, without being read.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The snapshot.
+   */
+  Snapshot snapshot(long startTime, long endTime) {
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      List<Chunk> selected = overlapping(startTime, endTime);
+      boolean tailInRange = tailCount > 0 && tail[0] < endTime && tail[tailCount - 1] >= startTime;
+
+      NavigableSet<Long> lateInRange = late.subSet(startTime, true, endTime, false);
+      long[] lateCopy = new long[lateInRange.size()];
+      int i = 0;
+      for (Long timestamp : lateInRange) {
+        lateCopy[i++] = timestamp;
+      }
+      return new Snapshot(selected, tailInRange ? tail : null, tailInRange ? tailCount : 0, lateCopy);
+    }
+    finally {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Gets the chunks that overlap a range, picked by their bounds alone. Must
+   * be called with the lock held.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The chunks, in order.
+   */
+  private List<Chunk> overlapping(long startTime, long endTime) {
+    List<Chunk> selected = new ArrayList<>();
+    Long first = chunks.floorKey(startTime);
+    NavigableMap<Long, Chunk> candidates = first == null ? chunks.headMap(endTime, false) : chunks.subMap(first,
+      true, endTime, false);
+    for (Chunk chunk : candidates.values()) {
+      if (chunk.max() >= startTime) {
+        selected.add(chunk);
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Checks whether a timestamp is stored. Must be called with the lock held.
+   *
+   * @param timestamp The timestamp.
+   * @return <code>true</code> if the timestamp is stored.
+   */
+  private boolean contains(long timestamp) {
+    if (late.contains(timestamp) || Arrays.binarySearch(tail, 0, tailCount, timestamp) >= 0) {
+      return true;
+    }
+    Map.Entry<Long, Chunk> entry = chunks.floorEntry(timestamp);
+    return entry != null && entry.getValue().contains(timestamp);
+  }
+
+  /**
+   * Turns the tail into a sealed chunk. A full tail is handed over as is; a
+   * partial one is trimmed. Must be called with the write lock held.
+   */
+  private void sealTail() {
+    if (tailCount == 0) {
+      return;
+    }
+    if (compress) {
+      putChunk(CompressedChunk.encode(tail, tailCount));
+    }
+    else {
+      putChunk(new SortedChunk(tailCount == tail.length ? tail : Arrays.copyOf(tail, tailCount)));
+    }
+    tail = new long[chunkSize];
+    tailCount = 0;
+  }
+
+  /**
+   * Merges the reorder buffer into the sorted chunks. If a late timestamp
+   * falls within the range of the tail, the tail is sealed first, so that the
+   * merge only deals with immutable chunks. Each affected chunk is rebuilt
+   * once, with all the late timestamps that belong to it. Must be called with
+   * the write lock held.
+   *
+   * @param forced Indicates whether the merge was forced by a full buffer.
+   * @return The number of timestamps merged.
+   */
+  private int merge(boolean forced) {
+    if (late.isEmpty()) {
+      return 0;
+    }
+    if (tailCount > 0 && late.last() > tail[0]) {
+      sealTail();
+    }
+
+    long[] pending = new long[late.size()];
+    int count = 0;
+    for (Long timestamp : late) {
+      pending[count++] = timestamp;
+    }
+    late.clear();
+
+    int from = 0;
+    while (from < pending.length) {
+      Map.Entry<Long, Chunk> target = chunks.floorEntry(pending[from]);
+      if (target == null) {
+        target = chunks.firstEntry();
+      }
+      Long next = target == null ? null : chunks.higherKey(target.getKey());
+      int to = from;
+      while (to < pending.length && (next == null || pending[to] < next)) {
+        ++to;
+      }
+      if (target != null) {
+        removeChunk(target.getKey());
+      }
+      for (SortedChunk chunk : SortedChunk.merge(target == null ? null : target.getValue(), pending, from, to,
+        chunkSize)) {
+        putChunk(compress ? CompressedChunk.encode(chunk) : chunk);
+      }
+      from = to;
+    }
+    metrics.recordMerge(forced);
+    return pending.length;
+  }
+
+  /**
+   * Adds a sealed chunk. Must be called with the write lock held.
+   *
+   * @param chunk The chunk.
+   */
+  private void putChunk(Chunk chunk) {
+    chunks.put(chunk.min(), chunk);
+    chunkBytes += chunk.estimatedBytes();
+  }
+
+  /**
+   * Removes a sealed chunk. Must be called with the write lock held.
+   *
+   * @param min The first timestamp of the chunk.
+   */
+  private void removeChunk(long min) {
+    chunkBytes -= chunks.remove(min).estimatedBytes();
+  }
+
+  /**
+   * An immutable view of the timestamps of a partition within a range: the
+   * chunks that overlap the range and the tail, which together form a sorted
+   * sequence, plus the sorted late timestamps.
+   */
+  static final class Snapshot {
+
+    /** Chunks that overlap the range, in order. */
+    final List<Chunk> chunks;
+
+    /** The tail, or <code>null</code> if it does not overlap the range. */
+    final long[] tail;
+
+    /** Number of valid timestamps of the tail. */
+    final int tailCount;
+
+    /** Late timestamps within the range, sorted. */
+    final long[] late;
+
+    /**
+     * Constructor. Creates a new instance of {@link Snapshot}.
+     *
+     * @param chunks Chunks that overlap the range, in order.
+     * @param tail The tail, or <code>null</code> if it does not overlap the
+     *        range.
+     * @param tailCount Number of valid timestamps of the tail.
+     * @param late Late timestamps within the range, sorted.
+     */
+    private Snapshot(List<Chunk> chunks, long[] tail, int tailCount, long[] late) {
+      this.chunks = chunks;
+      this.tail = tail;
+      this.tailCount = tailCount;
+      this.late = late;
+    }
+
+    /**
+     * Gets the chunks and the tail as a single sorted sequence of chunks. The
+     * tail is copied into a plain chunk.
+     *
+     * @return The chunks, in order.
+     */
+    List<Chunk> sequence() {
+      if (tail == null) {
+        return chunks;
+      }
+      List<Chunk> sequence = new ArrayList<>(chunks.size() + 1);
+      sequence.addAll(chunks);
+      sequence.add(new SortedChunk(Arrays.copyOf(tail, tailCount)));
+      return sequence;
+    }
+  }
+
+  /** Bounds and estimate of the rank of a timestamp in a sequence. */
+  private static final class Rank {
+
+    /** The lowest possible rank. */
+    final long lower;
+
+    /** The highest possible rank. */
+    final long upper;
+
+    /** The estimated rank. */
+    final double estimate;
+
+    /**
+     * Constructor. Creates a new instance of {@link Rank}.
+     *
+     * @param lower The lowest possible rank.
+     * @param upper The highest possible rank.
+     * @param estimate The estimated rank.
+     */
+    Rank(long lower, long upper, double estimate) {
+      this.lower = lower;
+      this.upper = upper;
+      this.estimate = estimate;
+    }
+  }
+
+}
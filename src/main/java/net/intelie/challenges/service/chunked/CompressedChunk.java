@@ -0,0 +1,337 @@
+package net.intelie.challenges.service.chunked;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Chunk} that stores its timestamps as a delta-of-delta stream.
+ * <p>
+ * The first timestamp is kept in the header, together with the last one and
+ * the size. Each following timestamp is encoded as the difference between its
+ * delta to the previous timestamp and the previous delta, zigzag-mapped so
+ * that small negative values stay small, and written as a variable-length
+ * integer of 7 bits per byte. Events produced at a steady rate have a
+ * delta-of-delta of zero or close to it, which takes a single byte instead of
+ * the 8 bytes of a <code>long</code>. Arithmetic wraps around, so any sorted
+ * sequence round-trips, even one spanning the whole <code>long</code> range,
+ * at worst taking 10 bytes per timestamp.
+ * <p>
+ * The stream can only be read forward. To keep point lookups, seeks and
+ * positional reads from decoding the whole chunk, the encoder saves the state
+ * of the decoder at evenly spaced positions, its checkpoints; a read starts
+ * from the closest checkpoint before it, so it decodes at most one step. The
+ * timestamps of the checkpoints double as the marks of the {@link RankSketch}
+ * of the chunk.
+ */
+final class CompressedChunk implements Chunk {
+
+  /** Maximum number of bytes of an encoded timestamp. */
+  private static final int MAX_ENCODED_BYTES = 10;
+
+  /** Number of checkpoints of a large chunk. */
+  private static final int CHECKPOINTS = 16;
+
+  /** Smallest distance between two checkpoints, which bounds their overhead. */
+  private static final int MIN_CHECKPOINT_STEP = 16;
+
+  /** Smallest timestamp of the chunk. */
+  private final long min;
+
+  /** Largest timestamp of the chunk. */
+  private final long max;
+
+  /** Number of timestamps of the chunk. */
+  private final int size;
+
+  /** Encoded timestamps after the first one. */
+  private final byte[] data;
+
+  /** Distance between the positions of two checkpoints. */
+  private final int step;
+
+  /** Timestamps of the checkpoints. */
+  private final long[] marks;
+
+  /** Position in the stream after the timestamp of each checkpoint. */
+  private final int[] offsets;
+
+  /** Delta of the timestamp of each checkpoint to the previous one. */
+  private final long[] deltas;
+
+  /** The rank sketch, built on the checkpoints. */
+  private final RankSketch sketch;
+
+  /**
+   * Constructor. Creates a new instance of {@link CompressedChunk}.
+   *
+   * @param size Number of timestamps of the chunk.
+   * @param max Largest timestamp of the chunk.
+   * @param data Encoded timestamps after the first one.
+   * @param step Distance between the positions of two checkpoints.
+   * @param marks Timestamps of the checkpoints.
+   * @param offsets Position in the stream after each checkpoint.
+   * @param deltas Delta of each checkpoint to the previous timestamp.
+   */
+  private CompressedChunk(int size, long max, byte[] data, int step, long[] marks, int[] offsets, long[] deltas) {
+    this.min = marks[0];
+    this.max = max;
+    this.size = size;
+    this.data = data;
+    this.step = step;
+    this.marks = marks;
+    this.offsets = offsets;
+    this.deltas = deltas;
+    this.sketch = new RankSketch(marks, marks.length, step, size, max);
+  }
+
+  /**
+   * Encodes a sorted array of distinct timestamps.
+   *
+   * @param timestamps The timestamps. It must not be empty.
+   * @param length Number of timestamps to be encoded.
+   * @return The compressed chunk.
+   */
+  static CompressedChunk encode(long[] timestamps, int length) {
+    if (length == 0) {
+      throw new IllegalArgumentException("Chunks cannot be empty.");
+    }
+    int step = Math.max(MIN_CHECKPOINT_STEP, (length + CHECKPOINTS - 1) / CHECKPOINTS);
+    int checkpoints = (length + step - 1) / step;
+    long[] marks = new long[checkpoints];
+    int[] offsets = new int[checkpoints];
+    long[] deltas = new long[checkpoints];
+    marks[0] = timestamps[0];
+
+    byte[] buffer = new byte[(length - 1) * MAX_ENCODED_BYTES];
+    int position = 0;
+    long previous = timestamps[0];
+    long previousDelta = 0;
+    for (int i = 1; i < length; ++i) {
+      long delta = timestamps[i] - previous;
+      long deltaOfDelta = delta - previousDelta;
+      long zigzag = (deltaOfDelta << 1) ^ (deltaOfDelta >> 63);
+      while ((zigzag & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+        zigzag >>>= 7;
+      }
+      buffer[position++] = (byte) zigzag;
+      previous = timestamps[i];
+      previousDelta = delta;
+      if (i % step == 0) {
+        marks[i / step] = timestamps[i];
+        offsets[i / step] = position;
+        deltas[i / step] = delta;
+      }
+    }
+    return new CompressedChunk(length, timestamps[length - 1], Arrays.copyOf(buffer, position), step, marks,
+      offsets, deltas);
+  }
+
+  /**
+   * Encodes the timestamps of a chunk.
+   *
+   * @param chunk The chunk.
+   * @return The compressed chunk.
+   */
+  static CompressedChunk encode(SortedChunk chunk) {
+    return encode(chunk.timestamps(), chunk.size());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long min() {
+    return min;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long max() {
+    return max;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * {@inheritDoc} The header answers for timestamps out of the bounds;
+   * otherwise the stream is decoded from the checkpoint before the timestamp.
+   */
+  @Override
+  public boolean contains(long timestamp) {
+    if (timestamp < min || timestamp > max) {
+      return false;
+    }
+    TimestampCursor cursor = cursor(timestamp);
+    return cursor.hasCurrent() && cursor.current() == timestamp;
+  }
+
+  /**
+   * {@inheritDoc} The stream is decoded from the checkpoint before the
+   * timestamp.
+   */
+  @Override
+  public int rank(long timestamp) {
+    if (timestamp <= min) {
+      return 0;
+    }
+    if (timestamp > max) {
+      return size;
+    }
+    int checkpoint = sketch.marksBelow(timestamp) - 1;
+    int rank = checkpoint * step;
+    Decoder decoder = new Decoder(checkpoint);
+    while (decoder.hasCurrent() && decoder.current() < timestamp) {
+      decoder.advance();
+      ++rank;
+    }
+    return rank;
+  }
+
+  /**
+   * {@inheritDoc} The stream is decoded from the checkpoint before the
+   * position.
+   */
+  @Override
+  public long get(int position) {
+    int checkpoint = position / step;
+    Decoder decoder = new Decoder(checkpoint);
+    for (int i = checkpoint * step; i < position; ++i) {
+      decoder.advance();
+    }
+    return decoder.current();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public RankSketch sketch() {
+    return sketch;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompressedChunk without(long timestamp) {
+    if (size == 1) {
+      return null;
+    }
+    long[] timestamps = toArray();
+    int index = Arrays.binarySearch(timestamps, timestamp);
+    System.arraycopy(timestamps, index + 1, timestamps, index, size - index - 1);
+    return encode(timestamps, size - 1);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long[] toArray() {
+    long[] timestamps = new long[size];
+    Decoder decoder = new Decoder(0);
+    for (int i = 0; i < size; ++i, decoder.advance()) {
+      timestamps[i] = decoder.current();
+    }
+    return timestamps;
+  }
+
+  /**
+   * {@inheritDoc} The cursor starts at the checkpoint before the timestamp
+   * and decodes the stream as it moves.
+   */
+  @Override
+  public TimestampCursor cursor(long from) {
+    Decoder decoder = new Decoder(from > min ? sketch.marksBelow(from) - 1 : 0);
+    if (from > min) {
+      while (decoder.hasCurrent() && decoder.current() < from) {
+        decoder.advance();
+      }
+    }
+    return decoder;
+  }
+
+  /**
+   * {@inheritDoc} It is the encoded stream and the checkpoints plus the
+   * header and the object and array headers.
+   */
+  @Override
+  public long estimatedBytes() {
+    return 136 + data.length + 20L * marks.length;
+  }
+
+  /** Decodes the stream of the chunk, one timestamp at a time. */
+  private final class Decoder implements TimestampCursor {
+
+    /** Position of the next byte to be read. */
+    private int position;
+
+    /** Number of timestamps visited so far, including the current one. */
+    private int visited;
+
+    /** The current timestamp. */
+    private long current;
+
+    /** Delta between the current timestamp and the previous one. */
+    private long delta;
+
+    /**
+     * Constructor. Creates a new instance of {@link Decoder} positioned at a
+     * checkpoint.
+     *
+     * @param checkpoint The index of the checkpoint.
+     */
+    private Decoder(int checkpoint) {
+      this.position = offsets[checkpoint];
+      this.visited = checkpoint * step + 1;
+      this.current = marks[checkpoint];
+      this.delta = deltas[checkpoint];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasCurrent() {
+      return visited <= size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long current() {
+      return current;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void advance() {
+      if (++visited > size) {
+        return;
+      }
+      long zigzag = 0;
+      int shift = 0;
+      byte next;
+      do {
+        next = data[position++];
+        zigzag |= (long) (next & 0x7F) << shift;
+        shift += 7;
+      }
+      while (next < 0);
+      delta += (zigzag >>> 1) ^ -(zigzag & 1);
+      current += delta;
+    }
+  }
+
+}
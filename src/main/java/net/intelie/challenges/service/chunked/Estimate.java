@@ -0,0 +1,75 @@
+package net.intelie.challenges.service.chunked;
+
+/**
+ * An approximate answer with guaranteed bounds: the exact answer is never
+ * lower than {@link #lower()} nor higher than {@link #upper()}.
+ */
+public final class Estimate {
+
+  /** The estimated value. */
+  private final long value;
+
+  /** The lowest possible exact value. */
+  private final long lower;
+
+  /** The highest possible exact value. */
+  private final long upper;
+
+  /**
+   * Constructor. Creates a new instance of {@link Estimate}.
+   *
+   * @param value The estimated value.
+   * @param lower The lowest possible exact value.
+   * @param upper The highest possible exact value.
+   */
+  Estimate(long value, long lower, long upper) {
+    this.value = Math.max(lower, Math.min(upper, value));
+    this.lower = lower;
+    this.upper = upper;
+  }
+
+  /**
+   * Gets the estimated value.
+   *
+   * @return The estimated value.
+   */
+  public long value() {
+    return value;
+  }
+
+  /**
+   * Gets the lowest possible exact value.
+   *
+   * @return The lowest possible exact value.
+   */
+  public long lower() {
+    return lower;
+  }
+
+  /**
+   * Gets the highest possible exact value.
+   *
+   * @return The highest possible exact value.
+   */
+  public long upper() {
+    return upper;
+  }
+
+  /**
+   * Checks whether the estimate is exact.
+   *
+   * @return <code>true</code> if the bounds are the same.
+   */
+  public boolean isExact() {
+    return lower == upper;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return value + " [" + lower + ", " + upper + "]";
+  }
+
+}
@@ -0,0 +1,110 @@
+package net.intelie.challenges.service.chunked;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Describes how out of order the events arrive at a {@link ChunkedEventStore}.
+ * <p>
+ * The lateness of an event is how far its timestamp is behind the newest
+ * timestamp of its type when it arrives. Late events are counted in a
+ * histogram with power-of-two buckets: bucket <code>i</code> counts the events
+ * whose lateness is in <code>[2^i, 2^(i+1))</code>.
+ */
+public class IngestMetrics {
+
+  /** Number of events appended to the tail of their partitions. */
+  private final LongAdder inOrderEvents = new LongAdder();
+
+  /** Number of events routed to the reorder buffer. */
+  private final LongAdder lateEvents = new LongAdder();
+
+  /** Largest lateness seen so far. */
+  private final LongAccumulator maxLateness = new LongAccumulator(Math::max, 0);
+
+  /** Lateness histogram, with power-of-two buckets. */
+  private final AtomicLongArray latenessHistogram = new AtomicLongArray(Long.SIZE);
+
+  /** Number of merges of the reorder buffers into the sorted chunks. */
+  private final LongAdder merges = new LongAdder();
+
+  /** Number of merges run by inserts because a reorder buffer was full. */
+  private final LongAdder forcedMerges = new LongAdder();
+
+  /**
+   * Accounts an event appended to the tail of its partition.
+   */
+  void recordInOrder() {
+    inOrderEvents.increment();
+  }
+
+  /**
+   * Accounts an event routed to the reorder buffer.
+   *
+   * @param lateness How far the event is behind the newest timestamp.
+   */
+  void recordLate(long lateness) {
+    lateEvents.increment();
+    maxLateness.accumulate(lateness);
+    latenessHistogram.incrementAndGet(Long.SIZE - 1 - Long.numberOfLeadingZeros(Math.max(1, lateness)));
+  }
+
+  /**
+   * Accounts a merge of a reorder buffer.
+   *
+   * @param forced Indicates whether the merge was run because the buffer was
+   *        full.
+   */
+  void recordMerge(boolean forced) {
+    merges.increment();
+    if (forced) {
+      forcedMerges.increment();
+    }
+  }
+
+  public long inOrderEvents() {
+    return inOrderEvents.sum();
+  }
+
+  public long lateEvents() {
+    return lateEvents.sum();
+  }
+
+  /**
+   * Gets the fraction of events that arrived late.
+   *
+   * @return The late event ratio, between zero and one.
+   */
+  public double lateRatio() {
+    long late = lateEvents();
+    long total = late + inOrderEvents();
+    return total == 0 ? 0 : (double) late / total;
+  }
+
+  public long maxLateness() {
+    return maxLateness.get();
+  }
+
+  /**
+   * Gets a copy of the lateness histogram.
+   *
+   * @return The number of late events per power-of-two bucket of lateness.
+   */
+  public long[] latenessHistogram() {
+    long[] histogram = new long[latenessHistogram.length()];
+    for (int i = 0; i < histogram.length; ++i) {
+      histogram[i] = latenessHistogram.get(i);
+    }
+    return histogram;
+  }
+
+  public long merges() {
+    return merges.sum();
+  }
+
+  public long forcedMerges() {
+    return forcedMerges.sum();
+  }
+
+}
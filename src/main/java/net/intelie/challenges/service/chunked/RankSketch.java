@@ -0,0 +1,184 @@
+package net.intelie.challenges.service.chunked;
+
+import java.util.Arrays;
+
+/**
+ * A sketch of the ranks of the timestamps of a {@link Chunk}: the timestamps
+ * at evenly spaced positions, its marks. It bounds the rank of a timestamp
+ * (how many timestamps of the chunk are lower) and the timestamp at a
+ * position within one step between marks, and estimates both by linear
+ * interpolation, without reading the chunk.
+ * <p>
+ * A plain chunk uses its own array as the marks, with a step of one, so its
+ * sketch is exact.
+ */
+final class RankSketch {
+
+  /** The timestamps at positions 0, step, 2 step and so on. */
+  private final long[] marks;
+
+  /** Number of valid marks. */
+  private final int count;
+
+  /** Distance between the positions of two marks. */
+  private final int step;
+
+  /** Number of timestamps of the chunk. */
+  private final int size;
+
+  /** Largest timestamp of the chunk. */
+  private final long max;
+
+  /**
+   * Constructor. Creates a new instance of {@link RankSketch}.
+   *
+   * @param marks The timestamps at positions 0, step, 2 step and so on. The
+   *        array is owned by the sketch and must not be changed.
+   * @param count Number of valid marks.
+   * @param step Distance between the positions of two marks.
+   * @param size Number of timestamps of the chunk.
+   * @param max Largest timestamp of the chunk.
+   */
+  RankSketch(long[] marks, int count, int step, int size, long max) {
+    this.marks = marks;
+    this.count = count;
+    this.step = step;
+    this.size = size;
+    this.max = max;
+  }
+
+  /**
+   * Gets the number of marks lower than a timestamp.
+   *
+   * @param timestamp The timestamp.
+   * @return The number of marks.
+   */
+  int marksBelow(long timestamp) {
+    int index = Arrays.binarySearch(marks, 0, count, timestamp);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  /**
+   * Gets the position of a mark.
+   *
+   * @param mark The index of the mark.
+   * @return The position of the mark in the chunk.
+   */
+  int positionOf(int mark) {
+    return mark * step;
+  }
+
+  /**
+   * Gets the lowest possible rank of a timestamp.
+   *
+   * @param timestamp The timestamp.
+   * @return The least number of timestamps of the chunk that may be lower.
+   */
+  int lowerRank(long timestamp) {
+    int below = marksBelow(timestamp);
+    return below == 0 ? 0 : positionOf(below - 1) + 1;
+  }
+
+  /**
+   * Gets the highest possible rank of a timestamp.
+   *
+   * @param timestamp The timestamp.
+   * @return The most number of timestamps of the chunk that may be lower.
+   */
+  int upperRank(long timestamp) {
+    int below = marksBelow(timestamp);
+    if (below < count) {
+      return positionOf(below);
+    }
+    return timestamp > max ? size : size - 1;
+  }
+
+  /**
+   * Estimates the rank of a timestamp, assuming the timestamps are evenly
+   * spread between two marks.
+   *
+   * @param timestamp The timestamp.
+   * @return The estimated number of timestamps of the chunk that are lower.
+   */
+  double estimateRank(long timestamp) {
+    int lower = lowerRank(timestamp);
+    int upper = upperRank(timestamp);
+    if (lower >= upper) {
+      return lower;
+    }
+    int below = marksBelow(timestamp);
+    long left = marks[below - 1];
+    long right = below < count ? marks[below] : max;
+    int leftPosition = positionOf(below - 1);
+    int rightPosition = below < count ? positionOf(below) : size - 1;
+    double fraction = ((double) timestamp - left) / ((double) right - left);
+    return clamp(leftPosition + fraction * (rightPosition - leftPosition), lower, upper);
+  }
+
+  /**
+   * Gets the lowest possible timestamp at a position.
+   *
+   * @param position The position, from zero to the size minus one.
+   * @return The mark at or before the position.
+   */
+  long lowerValue(int position) {
+    return marks[position / step];
+  }
+
+  /**
+   * Gets the highest possible timestamp at a position.
+   *
+   * @param position The position, from zero to the size minus one.
+   * @return The mark at or after the position, or the largest timestamp.
+   */
+  long upperValue(int position) {
+    int mark = (position + step - 1) / step;
+    return mark < count ? marks[mark] : max;
+  }
+
+  /**
+   * Estimates the timestamp at a position, assuming the timestamps are evenly
+   * spread between two marks.
+   *
+   * @param position The position, which may be fractional.
+   * @return The estimated timestamp.
+   */
+  double estimateValue(double position) {
+    int floor = (int) Math.floor(position);
+    long lower = lowerValue(floor);
+    long upper = upperValue(Math.min(size - 1, floor + 1));
+    if (lower == upper) {
+      return lower;
+    }
+    int leftPosition = (floor / step) * step;
+    int mark = (floor + step) / step;
+    int rightPosition = mark < count ? positionOf(mark) : size - 1;
+    if (rightPosition <= leftPosition) {
+      return lower;
+    }
+    double fraction = (position - leftPosition) / (rightPosition - leftPosition);
+    return clamp((double) lower + fraction * ((double) upper - lower), lower, upper);
+  }
+
+  /**
+   * Gets the largest error of the ranks estimated by the sketch.
+   *
+   * @return The distance between two marks.
+   */
+  int step() {
+    return step;
+  }
+
+  /**
+   * Clamps a value to a range.
+   *
+   * @param value The value.
+   * @param lower The lower bound.
+   * @param upper The upper bound.
+   * @return The clamped value.
+   */
+  private static double clamp(double value, double lower, double upper) {
+    return Math.max(lower, Math.min(upper, value));
+  }
+
+}
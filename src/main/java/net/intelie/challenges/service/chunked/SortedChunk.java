@@ -0,0 +1,178 @@
+package net.intelie.challenges.service.chunked;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link Chunk} that stores a plain <code>long[]</code>: 8 bytes per event,
+ * against roughly 80 bytes per event in a skip list, and a contiguous layout
+ * for scans. It is the layout of freshly sealed and merged chunks.
+ */
+final class SortedChunk implements Chunk {
+
+  /** The timestamps, sorted and distinct. */
+  private final long[] timestamps;
+
+  /**
+   * Constructor. Creates a new instance of {@link SortedChunk}.
+   *
+   * @param timestamps The timestamps, sorted and distinct. The array is owned
+   *        by the chunk from now on and must not be changed.
+   */
+  SortedChunk(long[] timestamps) {
+    if (timestamps.length == 0) {
+      throw new IllegalArgumentException("Chunks cannot be empty.");
+    }
+    this.timestamps = timestamps;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long min() {
+    return timestamps[0];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long max() {
+    return timestamps[timestamps.length - 1];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int size() {
+    return timestamps.length;
+  }
+
+  /**
+   * Gets the underlying timestamps, which must not be changed.
+   *
+   * @return The sorted timestamps.
+   */
+  long[] timestamps() {
+    return timestamps;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean contains(long timestamp) {
+    return Arrays.binarySearch(timestamps, timestamp) >= 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int rank(long timestamp) {
+    int index = Arrays.binarySearch(timestamps, timestamp);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long get(int position) {
+    return timestamps[position];
+  }
+
+  /**
+   * {@inheritDoc} The marks are the timestamps themselves, so the sketch is
+   * exact.
+   */
+  @Override
+  public RankSketch sketch() {
+    return new RankSketch(timestamps, timestamps.length, 1, timestamps.length, max());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SortedChunk without(long timestamp) {
+    int index = Arrays.binarySearch(timestamps, timestamp);
+    if (timestamps.length == 1) {
+      return null;
+    }
+    long[] remaining = new long[timestamps.length - 1];
+    System.arraycopy(timestamps, 0, remaining, 0, index);
+    System.arraycopy(timestamps, index + 1, remaining, index, remaining.length - index);
+    return new SortedChunk(remaining);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long[] toArray() {
+    return timestamps.clone();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public TimestampCursor cursor(long from) {
+    return TimestampCursor.of(timestamps, timestamps.length, from);
+  }
+
+  /**
+   * {@inheritDoc} It is the array plus the object and array headers.
+   */
+  @Override
+  public long estimatedBytes() {
+    return 32 + 8L * timestamps.length;
+  }
+
+  /**
+   * Merges sorted timestamps into a chunk and splits the result into chunks of
+   * at most <code>maxSize</code> timestamps.
+   *
+   * @param base The chunk that receives the timestamps, or <code>null</code>.
+   *        It may be in any layout; the results are always plain arrays.
+   * @param additions Sorted timestamps, none of them in the base chunk.
+   * @param from Index of the first addition (inclusive).
+   * @param to Index of the last addition (exclusive).
+   * @param maxSize Maximum size of the resulting chunks.
+   * @return The resulting chunks, in order.
+   */
+  static List<SortedChunk> merge(Chunk base, long[] additions, int from, int to, int maxSize) {
+    long[] existing = base == null ? new long[0] : base instanceof SortedChunk ? ((SortedChunk) base).timestamps
+      : base.toArray();
+    long[] merged = new long[existing.length + to - from];
+    int i = 0;
+    int j = from;
+    int k = 0;
+    while (i < existing.length && j < to) {
+      merged[k++] = existing[i] < additions[j] ? existing[i++] : additions[j++];
+    }
+    while (i < existing.length) {
+      merged[k++] = existing[i++];
+    }
+    while (j < to) {
+      merged[k++] = additions[j++];
+    }
+
+    List<SortedChunk> chunks = new ArrayList<>();
+    int pieces = (merged.length + maxSize - 1) / maxSize;
+    if (pieces == 1) {
+      chunks.add(new SortedChunk(merged));
+      return chunks;
+    }
+    int pieceSize = (merged.length + pieces - 1) / pieces;
+    for (int start = 0; start < merged.length; start += pieceSize) {
+      chunks.add(new SortedChunk(Arrays.copyOfRange(merged, start, Math.min(merged.length, start + pieceSize))));
+    }
+    return chunks;
+  }
+
+}
@@ -0,0 +1,96 @@
+package net.intelie.challenges.service.chunked;
+
+import java.util.Arrays;
+
+/**
+ * A forward-only cursor over a sorted sequence of timestamps. The current
+ * timestamp can be inspected any number of times before moving on, which is
+ * what a merge of several sorted sequences needs.
+ */
+interface TimestampCursor {
+
+  /**
+   * Checks whether there is a current timestamp.
+   *
+   * @return <code>true</code> if the cursor is not exhausted.
+   */
+  boolean hasCurrent();
+
+  /**
+   * Gets the current timestamp. Must only be called while
+   * {@link #hasCurrent()} holds.
+   *
+   * @return The current timestamp.
+   */
+  long current();
+
+  /**
+   * Moves to the next timestamp.
+   */
+  void advance();
+
+  /**
+   * Opens a cursor over a slice of a sorted array.
+   *
+   * @param timestamps The sorted timestamps.
+   * @param length Number of valid timestamps of the array.
+   * @param from The smallest timestamp to be visited.
+   * @return A cursor positioned at the first timestamp of the slice not
+   *         smaller than <code>from</code>.
+   */
+  static TimestampCursor of(long[] timestamps, int length, long from) {
+    int index = Arrays.binarySearch(timestamps, 0, length, from);
+    return new ArrayCursor(timestamps, index >= 0 ? index : -index - 1, length);
+  }
+
+  /** A cursor over a slice of a sorted array. */
+  final class ArrayCursor implements TimestampCursor {
+
+    /** The sorted timestamps. */
+    private final long[] timestamps;
+
+    /** Position of the current timestamp. */
+    private int position;
+
+    /** Position after the last timestamp of the slice. */
+    private final int end;
+
+    /**
+     * Constructor. Creates a new instance of {@link ArrayCursor}.
+     *
+     * @param timestamps The sorted timestamps.
+     * @param position Position of the first timestamp to be visited.
+     * @param end Position after the last timestamp to be visited.
+     */
+    private ArrayCursor(long[] timestamps, int position, int end) {
+      this.timestamps = timestamps;
+      this.position = position;
+      this.end = end;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasCurrent() {
+      return position < end;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long current() {
+      return timestamps[position];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void advance() {
+      ++position;
+    }
+  }
+
+}
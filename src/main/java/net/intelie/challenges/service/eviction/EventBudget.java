@@ -0,0 +1,74 @@
+package net.intelie.challenges.service.eviction;
+
+import net.intelie.challenges.service.SizedEventStore;
+
+/**
+ * Defines how much a {@link SizedEventStore} is allowed to hold. The budget is
+ * expressed as a maximum number of events, a maximum amount of memory, or
+ * both, in which case the tighter one wins.
+ */
+public final class EventBudget {
+
+  /** Maximum number of events. */
+  private final long maxEvents;
+
+  /** Maximum amount of memory, in bytes. */
+  private final long maxBytes;
+
+  /**
+   * Constructor. Creates a new instance of {@link EventBudget}.
+   *
+   * @param maxEvents Maximum number of events.
+   * @param maxBytes Maximum amount of memory, in bytes.
+   */
+  private EventBudget(long maxEvents, long maxBytes) {
+    if (maxEvents < 0 || maxBytes < 0) {
+      throw new IllegalArgumentException("Budget cannot be negative.");
+    }
+    this.maxEvents = maxEvents;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Creates a budget limited by the number of events.
+   *
+   * @param maxEvents Maximum number of events.
+   * @return The budget.
+   */
+  public static EventBudget ofEvents(long maxEvents) {
+    return new EventBudget(maxEvents, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a budget limited by the estimated memory used by the events.
+   *
+   * @param maxBytes Maximum amount of memory, in bytes.
+   * @return The budget.
+   */
+  public static EventBudget ofBytes(long maxBytes) {
+    return new EventBudget(Long.MAX_VALUE, maxBytes);
+  }
+
+  /**
+   * Creates a budget limited by both the number of events and the estimated
+   * memory used by them.
+   *
+   * @param maxEvents Maximum number of events.
+   * @param maxBytes Maximum amount of memory, in bytes.
+   * @return The budget.
+   */
+  public static EventBudget of(long maxEvents, long maxBytes) {
+    return new EventBudget(maxEvents, maxBytes);
+  }
+
+  /**
+   * Gets the number of events a store can hold without exceeding this budget.
+   *
+   * @param store The store the budget applies to.
+   * @return The maximum number of events of the store.
+   */
+  public long capacity(SizedEventStore store) {
+    return Math.min(maxEvents, maxBytes / Math.max(1, store.estimatedBytesPerEvent()));
+  }
+
+}
@@ -0,0 +1,158 @@
+package net.intelie.challenges.service.eviction;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.intelie.challenges.service.SizedEventStore;
+import net.intelie.challenges.util.ThreadFactories;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Keeps a {@link SizedEventStore} within an {@link EventBudget} by running an
+ * {@link EvictionPolicy} in the background.
+ *
+ * Inserts are never blocked or slowed down by the budget: the store only keeps
+ * its size counters up to date, and this class periodically compares them with
+ * the budget. Eviction is done in small batches, each one using fresh
+ * iterators, so the evictor competes with readers and writers as any other
+ * client of the store would. The downside is that the store may briefly exceed
+ * its budget between two runs, by as many events as are inserted during the
+ * period.
+ */
+public class EventStoreEvictor implements AutoCloseable {
+
+  /** Default number of events removed per batch. */
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  /** The store to be kept within the budget. */
+  private final SizedEventStore store;
+
+  /** The budget of the store. */
+  private final EventBudget budget;
+
+  /** The policy that chooses the evicted events. */
+  private final EvictionPolicy policy;
+
+  /** Maximum number of events removed per batch. */
+  private final int batchSize;
+
+  /** Number of events evicted since the creation of the evictor. */
+  private final LongAdder evicted = new LongAdder();
+
+  /** Number of background runs that failed. */
+  private final LongAdder evictionFailures = new LongAdder();
+
+  /** Executor of the background runs. It is created by {@link #start}. */
+  private ScheduledExecutorService executor;
+
+  /**
+   * Constructor. Creates a new instance of {@link EventStoreEvictor} using the
+   * default batch size.
+   *
+   * @param store The store to be kept within the budget.
+   * @param budget The budget of the store.
+   * @param policy The policy that chooses the evicted events.
+   */
+  public EventStoreEvictor(SizedEventStore store, EventBudget budget, EvictionPolicy policy) {
+    this(store, budget, policy, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link EventStoreEvictor}.
+   *
+   * @param store The store to be kept within the budget.
+   * @param budget The budget of the store.
+   * @param policy The policy that chooses the evicted events.
+   * @param batchSize Maximum number of events removed per batch.
+   */
+  public EventStoreEvictor(SizedEventStore store, EventBudget budget, EvictionPolicy policy, int batchSize) {
+    Utils.requireNonNull(store, "Store cannot be null.");
+    Utils.requireNonNull(budget, "Budget cannot be null.");
+    Utils.requireNonNull(policy, "Eviction policy cannot be null.");
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive.");
+    }
+    this.store = store;
+    this.budget = budget;
+    this.policy = policy;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Starts running the eviction periodically, in a background daemon thread.
+   * A run that fails is counted and the eviction is retried on the next run.
+   *
+   * @param period Time between the end of a run and the start of the next one.
+   * @param unit Unit of the period.
+   * @throws IllegalStateException if the evictor has already been started.
+   */
+  public void start(long period, TimeUnit unit) {
+    if (executor != null) {
+      throw new IllegalStateException("The evictor has already been started.");
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(ThreadFactories.daemon("event-store-evictor"));
+    executor.scheduleWithFixedDelay(this::evictInBackground, period, period, unit);
+  }
+
+  /**
+   * Evicts events, batch by batch, until the store fits its budget or the
+   * policy cannot remove anything else.
+   *
+   * @return The number of events evicted by this call.
+   */
+  public long evict() {
+    long total = 0;
+    long removed;
+    do {
+      removed = policy.evict(store, budget.capacity(store), batchSize);
+      total += removed;
+      evicted.add(removed);
+    } while (removed > 0);
+    return total;
+  }
+
+  /**
+   * Runs the eviction for the background executor. An exception escaping a
+   * periodic task would cancel all the next runs, so failures are counted
+   * here instead.
+   */
+  private void evictInBackground() {
+    try {
+      evict();
+    }
+    catch (RuntimeException e) {
+      evictionFailures.increment();
+    }
+  }
+
+  /**
+   * Gets the number of events evicted since the creation of the evictor.
+   *
+   * @return The number of evicted events.
+   */
+  public long evictedCount() {
+    return evicted.sum();
+  }
+
+  /**
+   * Gets the number of background runs that failed.
+   *
+   * @return The number of failed runs.
+   */
+  public long evictionFailures() {
+    return evictionFailures.sum();
+  }
+
+  /**
+   * {@inheritDoc} Stops the background runs, if they were started.
+   */
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+}
@@ -0,0 +1,51 @@
+package net.intelie.challenges.service.eviction;
+
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.service.SizedEventStore;
+
+/**
+ * Decides which events leave a {@link SizedEventStore} that is over its
+ * capacity. Policies are invoked repeatedly by the {@link EventStoreEvictor},
+ * and each invocation removes at most a small batch of events, so the store is
+ * never held busy for long.
+ */
+public interface EvictionPolicy {
+
+  /**
+   * Removes events from a store until it fits its capacity or until a batch of
+   * events has been removed, whichever comes first.
+   *
+   * @param store The store to be trimmed.
+   * @param capacity Maximum number of events of the store.
+   * @param maxEvents Maximum number of events to be removed by this call.
+   * @return The number of events removed.
+   */
+  long evict(SizedEventStore store, long capacity, long maxEvents);
+
+  /**
+   * Removes the oldest events of a type.
+   *
+   * @param store The store the events are removed from.
+   * @param type The type of the events.
+   * @param count The number of events to be removed.
+   * @return The number of events removed, which may be less than
+   *         <code>count</code> if the type has fewer events.
+   */
+  static long removeOldest(EventStore store, String type, long count) {
+    long removed = 0;
+    if (count <= 0) {
+      return removed;
+    }
+    try (EventIterator iterator = store.query(type, Long.MIN_VALUE, Long.MAX_VALUE)) {
+      while (removed < count && iterator.moveNext()) {
+        iterator.remove();
+        ++removed;
+      }
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Could not evict events of type " + type + ".", e);
+    }
+    return removed;
+  }
+}
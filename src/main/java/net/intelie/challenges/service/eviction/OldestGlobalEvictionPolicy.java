@@ -0,0 +1,94 @@
+package net.intelie.challenges.service.eviction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.SizedEventStore;
+
+/**
+ * Evicts the oldest events of the store, regardless of their types.
+ *
+ * One iterator is opened per type and the events are removed in timestamp
+ * order by always advancing the iterator with the smallest current timestamp,
+ * as in a merge. The number of types is small, so a linear scan over the
+ * iterators is cheaper than a priority queue.
+ */
+public class OldestGlobalEvictionPolicy implements EvictionPolicy {
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long evict(SizedEventStore store, long capacity, long maxEvents) {
+    List<String> types = new ArrayList<>();
+    for (EventType type : EventType.values()) {
+      types.add(type.toString());
+    }
+    return removeOldest(store, types, Math.min(store.size() - capacity, maxEvents));
+  }
+
+  /**
+   * Removes the oldest events among some types, regardless of which of them
+   * each event belongs to.
+   *
+   * @param store The store the events are removed from.
+   * @param types The types of the events.
+   * @param toRemove The number of events to be removed.
+   * @return The number of events removed, which may be less than
+   *         <code>toRemove</code> if the types have fewer events.
+   */
+  static long removeOldest(SizedEventStore store, Collection<String> types, long toRemove) {
+    if (toRemove <= 0) {
+      return 0;
+    }
+
+    List<EventIterator> iterators = new ArrayList<>();
+    try {
+      for (String type : types) {
+        EventIterator iterator = store.query(type, Long.MIN_VALUE, Long.MAX_VALUE);
+        iterators.add(iterator);
+        if (!iterator.moveNext()) {
+          closeQuietly(iterators.remove(iterators.size() - 1));
+        }
+      }
+
+      long removed = 0;
+      while (removed < toRemove && !iterators.isEmpty()) {
+        int oldest = 0;
+        for (int i = 1; i < iterators.size(); ++i) {
+          if (iterators.get(i).current().timestamp() < iterators.get(oldest).current().timestamp()) {
+            oldest = i;
+          }
+        }
+        EventIterator iterator = iterators.get(oldest);
+        iterator.remove();
+        ++removed;
+        if (!iterator.moveNext()) {
+          closeQuietly(iterators.remove(oldest));
+        }
+      }
+      return removed;
+    }
+    finally {
+      iterators.forEach(OldestGlobalEvictionPolicy::closeQuietly);
+    }
+  }
+
+  /**
+   * Closes an iterator, ignoring failures.
+   *
+   * @param iterator The iterator to be closed.
+   */
+  private static void closeQuietly(EventIterator iterator) {
+    try {
+      iterator.close();
+    }
+    catch (Exception e) {
+      // Closing an eviction iterator has no effect on the evicted events.
+    }
+  }
+
+}
@@ -0,0 +1,57 @@
+package net.intelie.challenges.service.eviction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.SizedEventStore;
+
+/**
+ * Splits the capacity evenly among the types that hold events and evicts the
+ * oldest events of each type that exceeds its share. The share a type does not
+ * use is split among the others, as in water filling, so the store is only
+ * trimmed down to its capacity. Unlike {@link OldestGlobalEvictionPolicy}, a
+ * burst of one type cannot push all the events of the other types out of the
+ * store.
+ */
+public class OldestPerTypeEvictionPolicy implements EvictionPolicy {
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long evict(SizedEventStore store, long capacity, long maxEvents) {
+    if (store.size() <= capacity) {
+      return 0;
+    }
+
+    List<String> used = new ArrayList<>();
+    Map<String, Long> sizes = new HashMap<>();
+    for (EventType type : EventType.values()) {
+      long size = store.size(type.toString());
+      if (size > 0) {
+        used.add(type.toString());
+        sizes.put(type.toString(), size);
+      }
+    }
+    used.sort(Comparator.comparing(sizes::get));
+
+    long left = capacity;
+    int small = 0;
+    while (small < used.size() && sizes.get(used.get(small)) <= left / (used.size() - small)) {
+      left -= sizes.get(used.get(small++));
+    }
+    int large = used.size() - small;
+    long removed = 0;
+    for (int i = small; i < used.size(); ++i) {
+      long share = left / large + (i - small < left % large ? 1 : 0);
+      long excess = sizes.get(used.get(i)) - share;
+      removed += EvictionPolicy.removeOldest(store, used.get(i), Math.min(excess, maxEvents - removed));
+    }
+    return removed;
+  }
+
+}
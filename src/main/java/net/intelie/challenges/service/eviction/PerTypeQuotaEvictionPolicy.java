@@ -0,0 +1,61 @@
+package net.intelie.challenges.service.eviction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.SizedEventStore;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Evicts the oldest events of each type that exceeds its own quota, and then,
+ * while the store is still over its capacity, the oldest events among the
+ * types without an explicit quota, regardless of which of them each event
+ * belongs to. If the quotas add up to more than the capacity, the oldest
+ * events of all types are evicted once the types without a quota are empty,
+ * so the capacity of the whole store always holds.
+ */
+public class PerTypeQuotaEvictionPolicy implements EvictionPolicy {
+
+  /** Maximum number of events of each type. */
+  private final Map<String, Long> quotas;
+
+  /**
+   * Constructor. Creates a new instance of {@link PerTypeQuotaEvictionPolicy}.
+   *
+   * @param quotas Maximum number of events of each type, mapped by type name.
+   */
+  public PerTypeQuotaEvictionPolicy(Map<String, Long> quotas) {
+    Utils.requireNonNull(quotas, "Quotas cannot be null.");
+    this.quotas = new HashMap<>(quotas);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long evict(SizedEventStore store, long capacity, long maxEvents) {
+    long removed = 0;
+    List<String> all = new ArrayList<>();
+    List<String> unbounded = new ArrayList<>();
+    for (EventType type : EventType.values()) {
+      String name = type.toString();
+      all.add(name);
+      Long quota = quotas.get(name);
+      if (quota == null) {
+        unbounded.add(name);
+      }
+      else {
+        removed += EvictionPolicy.removeOldest(store, name, Math.min(store.size(name) - quota, maxEvents - removed));
+      }
+    }
+    removed += OldestGlobalEvictionPolicy.removeOldest(store, unbounded, Math.min(store.size() - capacity, maxEvents
+      - removed));
+    removed += OldestGlobalEvictionPolicy.removeOldest(store, all, Math.min(store.size() - capacity, maxEvents
+      - removed));
+    return removed;
+  }
+
+}
@@ -0,0 +1,237 @@
+package net.intelie.challenges.service.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Reads the timestamps written by a {@link ColumnarWriter}, optionally
+ * restricted to a range.
+ * <p>
+ * Blocks are read whole into a direct buffer and visited through a
+ * {@link LongBuffer} view. Blocks out of the range are skipped by their
+ * header: on a {@link SeekableByteChannel} by moving its position, on other
+ * channels by reading past them. Since blocks are sorted, reading stops at the
+ * first block after the range.
+ */
+public final class ColumnarReader {
+
+  /** The source channel. */
+  private final ReadableByteChannel channel;
+
+  /** The type of the events. */
+  private final String type;
+
+  /** Start timestamp of the range (inclusive). */
+  private final long startTime;
+
+  /** End timestamp of the range (exclusive). */
+  private final long endTime;
+
+  /** Indicates whether the range is the whole column. */
+  private final boolean unbounded;
+
+  /** Holds the block being visited. */
+  private final ByteBuffer block = ByteBuffer.allocateDirect(ColumnarWriter.BLOCK_SIZE * Long.BYTES);
+
+  /** Holds a block header. */
+  private final ByteBuffer header = ByteBuffer.allocate(ColumnarWriter.BLOCK_HEADER_BYTES);
+
+  /** View of the timestamps of the block being visited. */
+  private LongBuffer timestamps = LongBuffer.allocate(0);
+
+  /** The next timestamp within the range, if already found. */
+  private long next;
+
+  /** Indicates whether {@link #next} holds a timestamp. */
+  private boolean hasNext;
+
+  /** Indicates whether the end of the column, or of the range, was reached. */
+  private boolean finished;
+
+  /**
+   * Constructor. Creates a new instance of {@link ColumnarReader} over the
+   * whole column.
+   *
+   * @param channel The source channel. It is not closed by the reader.
+   * @throws IOException if the header could not be read or is invalid.
+   */
+  public ColumnarReader(ReadableByteChannel channel) throws IOException {
+    this(channel, Long.MIN_VALUE, Long.MAX_VALUE, true);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link ColumnarReader} over a
+   * range.
+   *
+   * @param channel The source channel. It is not closed by the reader.
+   * @param startTime Start timestamp of the range (inclusive).
+   * @param endTime End timestamp of the range (exclusive).
+   * @throws IOException if the header could not be read or is invalid.
+   */
+  public ColumnarReader(ReadableByteChannel channel, long startTime, long endTime) throws IOException {
+    this(channel, startTime, endTime, false);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link ColumnarReader} and reads
+   * the header of the format.
+   *
+   * @param channel The source channel.
+   * @param startTime Start timestamp of the range (inclusive).
+   * @param endTime End timestamp of the range (exclusive).
+   * @param unbounded Indicates whether the range is the whole column.
+   * @throws IOException if the header could not be read or is invalid.
+   */
+  private ColumnarReader(ReadableByteChannel channel, long startTime, long endTime, boolean unbounded)
+    throws IOException {
+    Utils.requireNonNull(channel, "Channel cannot be null.");
+    Utils.checkQueryInterval(startTime, endTime);
+    this.channel = channel;
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.unbounded = unbounded;
+
+    ByteBuffer prefix = ByteBuffer.allocate(3 * Integer.BYTES);
+    readFully(prefix);
+    if (prefix.getInt(0) != ColumnarWriter.MAGIC || prefix.getInt(Integer.BYTES) != ColumnarWriter.VERSION) {
+      throw new IOException("Not a columnar event stream.");
+    }
+    int typeLength = prefix.getInt(2 * Integer.BYTES);
+    if (typeLength < 0 || typeLength > Short.MAX_VALUE) {
+      throw new IOException("Invalid type length: " + typeLength);
+    }
+    ByteBuffer typeBytes = ByteBuffer.allocate(typeLength);
+    readFully(typeBytes);
+    this.type = new String(typeBytes.array(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets the type of the events.
+   *
+   * @return The type read from the header.
+   */
+  public String type() {
+    return type;
+  }
+
+  /**
+   * Checks whether there is another timestamp within the range.
+   *
+   * @return <code>true</code> if {@link #next()} will return a timestamp.
+   * @throws IOException if a block could not be read.
+   */
+  public boolean hasNext() throws IOException {
+    while (!hasNext && !finished) {
+      if (timestamps.hasRemaining()) {
+        long timestamp = timestamps.get();
+        if (unbounded || timestamp >= startTime && timestamp < endTime) {
+          next = timestamp;
+          hasNext = true;
+        }
+        else if (timestamp >= endTime) {
+          finished = true;
+        }
+      }
+      else {
+        readBlock();
+      }
+    }
+    return hasNext;
+  }
+
+  /**
+   * Gets the next timestamp within the range.
+   *
+   * @return The timestamp.
+   * @throws IOException if a block could not be read.
+   * @throws NoSuchElementException if there are no more timestamps.
+   */
+  public long next() throws IOException {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    hasNext = false;
+    return next;
+  }
+
+  /**
+   * Reads the next block that overlaps the range, or marks the reader as
+   * finished.
+   *
+   * @throws IOException if a block could not be read.
+   */
+  private void readBlock() throws IOException {
+    while (true) {
+      header.clear();
+      header.limit(Integer.BYTES);
+      readFully(header);
+      int count = header.getInt(0);
+      if (count == 0) {
+        finished = true;
+        return;
+      }
+      if (count < 0 || count > ColumnarWriter.BLOCK_SIZE) {
+        throw new IOException("Invalid block size: " + count);
+      }
+      header.limit(header.capacity());
+      readFully(header);
+      long min = header.getLong(Integer.BYTES);
+      long max = header.getLong(Integer.BYTES + Long.BYTES);
+      if (!unbounded && min >= endTime) {
+        finished = true;
+        return;
+      }
+      long bytes = (long) count * Long.BYTES;
+      if (!unbounded && max < startTime) {
+        skip(bytes);
+        continue;
+      }
+      block.clear();
+      block.limit((int) bytes);
+      readFully(block);
+      block.flip();
+      timestamps = block.asLongBuffer();
+      return;
+    }
+  }
+
+  /**
+   * Skips bytes of the channel.
+   *
+   * @param bytes Number of bytes to skip.
+   * @throws IOException if the bytes could not be skipped.
+   */
+  private void skip(long bytes) throws IOException {
+    if (channel instanceof SeekableByteChannel) {
+      SeekableByteChannel seekable = (SeekableByteChannel) channel;
+      seekable.position(seekable.position() + bytes);
+      return;
+    }
+    block.clear();
+    block.limit((int) bytes);
+    readFully(block);
+  }
+
+  /**
+   * Fills a buffer from the channel, looping over partial reads.
+   *
+   * @param buffer The buffer to be filled up to its limit.
+   * @throws IOException if the channel ends first.
+   */
+  private void readFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("Truncated columnar event stream.");
+      }
+    }
+  }
+
+}
@@ -0,0 +1,162 @@
+package net.intelie.challenges.service.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Writes the events of a type to a channel in a columnar binary format.
+ * <p>
+ * Events of a type are fully described by their timestamps, so the format is
+ * a single column of timestamps, split into blocks:
+ *
+ * <pre>
+ * header: int magic, int version, int type length, type bytes (UTF-8)
+ * block:  int count, long min, long max, count x long timestamp
+ * end:    int 0
+ * </pre>
+ *
+ * All values are big-endian. Timestamps must be written in strictly increasing
+ * order, so each block is sorted and every block starts after the previous
+ * one. The bounds in the block header let a reader skip whole blocks out of a
+ * range. Blocks are written straight from a direct buffer, one channel write
+ * per block, so the cost per event is a buffer store.
+ */
+public final class ColumnarWriter implements AutoCloseable {
+
+  /** Identifies the format: "EVC1" in ASCII. */
+  static final int MAGIC = 0x45564331;
+
+  /** Version of the format. */
+  static final int VERSION = 1;
+
+  /** Maximum number of timestamps per block. */
+  static final int BLOCK_SIZE = 8192;
+
+  /** Size of a block header, in bytes. */
+  static final int BLOCK_HEADER_BYTES = Integer.BYTES + 2 * Long.BYTES;
+
+  /** The destination channel. */
+  private final WritableByteChannel channel;
+
+  /** Holds the block being written, after room for its header. */
+  private final ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_HEADER_BYTES + BLOCK_SIZE * Long.BYTES);
+
+  /** Number of timestamps of the block being written. */
+  private int blockCount;
+
+  /** First timestamp of the block being written. */
+  private long blockMin;
+
+  /** Last timestamp written. */
+  private long last;
+
+  /** Number of timestamps written. */
+  private long count;
+
+  /** Indicates whether the writer was closed. */
+  private boolean closed;
+
+  /**
+   * Constructor. Creates a new instance of {@link ColumnarWriter} and writes
+   * the header of the format.
+   *
+   * @param channel The destination channel. It is not closed by the writer.
+   * @param type The type of the written events.
+   * @throws IOException if the header could not be written.
+   */
+  public ColumnarWriter(WritableByteChannel channel, String type) throws IOException {
+    Utils.requireNonNull(channel, "Channel cannot be null.");
+    Utils.requireNonNull(type, "Event type cannot be null.");
+    this.channel = channel;
+    byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES + typeBytes.length);
+    header.putInt(MAGIC).putInt(VERSION).putInt(typeBytes.length).put(typeBytes);
+    header.flip();
+    writeFully(header);
+    block.position(BLOCK_HEADER_BYTES);
+  }
+
+  /**
+   * Writes a timestamp.
+   *
+   * @param timestamp The timestamp. It must be greater than the previous one.
+   * @throws IOException if a block could not be written.
+   * @throws IllegalArgumentException if the timestamp is out of order.
+   */
+  public void write(long timestamp) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("The writer is closed.");
+    }
+    if (count > 0 && timestamp <= last) {
+      throw new IllegalArgumentException("Timestamps must be strictly increasing.");
+    }
+    if (blockCount == 0) {
+      blockMin = timestamp;
+    }
+    block.putLong(timestamp);
+    last = timestamp;
+    ++count;
+    if (++blockCount == BLOCK_SIZE) {
+      flushBlock();
+    }
+  }
+
+  /**
+   * Gets the number of timestamps written so far.
+   *
+   * @return The number of written timestamps.
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * Writes the pending block, if any.
+   *
+   * @throws IOException if the block could not be written.
+   */
+  private void flushBlock() throws IOException {
+    if (blockCount == 0) {
+      return;
+    }
+    block.putInt(0, blockCount).putLong(Integer.BYTES, blockMin).putLong(Integer.BYTES + Long.BYTES, last);
+    block.flip();
+    writeFully(block);
+    block.clear();
+    block.position(BLOCK_HEADER_BYTES);
+    blockCount = 0;
+  }
+
+  /**
+   * Writes a buffer to the channel, looping over partial writes.
+   *
+   * @param buffer The buffer, ready to be read.
+   * @throws IOException if the buffer could not be written.
+   */
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * {@inheritDoc} Writes the pending block and the end mark. The channel is
+   * left open.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    flushBlock();
+    ByteBuffer end = ByteBuffer.allocate(Integer.BYTES);
+    end.putInt(0).flip();
+    writeFully(end);
+    closed = true;
+  }
+
+}
@@ -0,0 +1,190 @@
+package net.intelie.challenges.service.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Gives random access to the timestamps of a file written by a
+ * {@link ColumnarWriter}, through a read-only memory mapping.
+ * <p>
+ * The block headers are scanned once when the file is opened, to locate the
+ * data of each block; afterwards, every read is an absolute read of the
+ * mapping, so the instance can be shared by any number of threads. The
+ * timestamps are not copied to the heap: the operating system pages them in as
+ * they are read and may page them out under memory pressure.
+ * <p>
+ * Java offers no public way to unmap a file, so the mapping is released when the
+ * instance is garbage collected. Deleting the file meanwhile is safe on POSIX
+ * systems, where the mapping keeps the data alive.
+ */
+public final class MappedColumnarFile {
+
+  /** The mapped file. */
+  private final MappedByteBuffer buffer;
+
+  /** The type of the events. */
+  private final String type;
+
+  /** Offset of the timestamps of each block within the mapping. */
+  private final int[] blockOffsets;
+
+  /** Number of timestamps before each block, plus the total at the end. */
+  private final long[] blockStarts;
+
+  /**
+   * Constructor. Creates a new instance of {@link MappedColumnarFile}.
+   *
+   * @param buffer The mapped file.
+   * @param type The type of the events.
+   * @param blockOffsets Offset of the timestamps of each block.
+   * @param blockStarts Number of timestamps before each block, plus the total.
+   */
+  private MappedColumnarFile(MappedByteBuffer buffer, String type, int[] blockOffsets, long[] blockStarts) {
+    this.buffer = buffer;
+    this.type = type;
+    this.blockOffsets = blockOffsets;
+    this.blockStarts = blockStarts;
+  }
+
+  /**
+   * Maps a file and scans its block headers.
+   *
+   * @param file The file, written by a {@link ColumnarWriter}.
+   * @return The mapped file.
+   * @throws IOException if the file could not be mapped or is not valid.
+   */
+  public static MappedColumnarFile open(Path file) throws IOException {
+    Utils.requireNonNull(file, "File cannot be null.");
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Columnar file is too large to be mapped: " + file);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (buffer.limit() < 3 * Integer.BYTES || buffer.getInt(0) != ColumnarWriter.MAGIC || buffer.getInt(
+      Integer.BYTES) != ColumnarWriter.VERSION) {
+      throw new IOException("Not a columnar event file: " + file);
+    }
+    int typeLength = buffer.getInt(2 * Integer.BYTES);
+    int position = 3 * Integer.BYTES + typeLength;
+    if (typeLength < 0 || position > buffer.limit()) {
+      throw new IOException("Invalid type length: " + typeLength);
+    }
+    byte[] typeBytes = new byte[typeLength];
+    ByteBuffer typeView = buffer.duplicate();
+    typeView.position(3 * Integer.BYTES);
+    typeView.get(typeBytes);
+
+    int[] offsets = new int[16];
+    long[] starts = new long[17];
+    int blocks = 0;
+    while (true) {
+      if (position + Integer.BYTES > buffer.limit()) {
+        throw new IOException("Truncated columnar event file: " + file);
+      }
+      int count = buffer.getInt(position);
+      if (count == 0) {
+        break;
+      }
+      int data = position + ColumnarWriter.BLOCK_HEADER_BYTES;
+      if (count < 0 || count > ColumnarWriter.BLOCK_SIZE || data + (long) count * Long.BYTES > buffer.limit()) {
+        throw new IOException("Invalid block in columnar event file: " + file);
+      }
+      if (blocks == offsets.length) {
+        offsets = Arrays.copyOf(offsets, blocks * 2);
+        starts = Arrays.copyOf(starts, blocks * 2 + 1);
+      }
+      offsets[blocks] = data;
+      starts[blocks + 1] = starts[blocks] + count;
+      ++blocks;
+      position = data + count * Long.BYTES;
+    }
+    return new MappedColumnarFile(buffer, new String(typeBytes, StandardCharsets.UTF_8), Arrays.copyOf(offsets,
+      blocks), Arrays.copyOf(starts, blocks + 1));
+  }
+
+  /**
+   * Gets the type of the events.
+   *
+   * @return The type read from the header.
+   */
+  public String type() {
+    return type;
+  }
+
+  /**
+   * Gets the number of timestamps in the file.
+   *
+   * @return The number of timestamps.
+   */
+  public long size() {
+    return blockStarts[blockOffsets.length];
+  }
+
+  /**
+   * Gets a timestamp by its position.
+   *
+   * @param index The position, from zero to {@link #size()} (exclusive).
+   * @return The timestamp.
+   */
+  public long timestampAt(long index) {
+    int block = Arrays.binarySearch(blockStarts, index);
+    if (block < 0) {
+      block = -block - 2;
+    }
+    return buffer.getLong(blockOffsets[block] + (int) (index - blockStarts[block]) * Long.BYTES);
+  }
+
+  /**
+   * Gets the position of the first timestamp that is not lower than a given
+   * one.
+   *
+   * @param timestamp The timestamp.
+   * @return The position, or {@link #size()} if all timestamps are lower.
+   */
+  public long lowerBound(long timestamp) {
+    long low = 0;
+    long high = size();
+    while (low < high) {
+      long middle = (low + high) >>> 1;
+      if (timestampAt(middle) < timestamp) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Checks whether the file holds a timestamp.
+   *
+   * @param timestamp The timestamp.
+   * @return <code>true</code> if the timestamp is in the file.
+   */
+  public boolean contains(long timestamp) {
+    long index = lowerBound(timestamp);
+    return index < size() && timestampAt(index) == timestamp;
+  }
+
+  /**
+   * Gets the number of bytes of the mapping.
+   *
+   * @return The mapped size.
+   */
+  public long mappedBytes() {
+    return buffer.capacity();
+  }
+
+}
@@ -0,0 +1,236 @@
+package net.intelie.challenges.service.jfr;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * An {@link EventStore} that reports its operations to Java Flight Recorder,
+ * so the latency of the store can be profiled in production by starting a
+ * recording, without a restart.
+ * <p>
+ * The store emits the following events, in the "Event Store" category:
+ * <ul>
+ * <li><code>net.intelie.challenges.Insert</code>: inserts slower than the
+ * threshold of the recording, 1 ms by default.</li>
+ * <li><code>net.intelie.challenges.Query</code>: queries, with their type,
+ * range and result count, committed when the iterator is closed. The duration
+ * of the event is the lifetime of the iterator and its scan time is the part
+ * spent within the store, which tells a slow scan from a slow caller.</li>
+ * <li><code>net.intelie.challenges.RemoveAll</code>: every
+ * <code>removeAll</code>.</li>
+ * </ul>
+ * Events that are not enabled by a recording cost a flag check per
+ * operation. Inserts and queries are frequent, so only one of every
+ * <i>n</i> of them is timed, picked at random, with <i>n</i> set per
+ * operation; the others go straight to the store.
+ * <p>
+ * The events use the <code>jdk.jfr</code> API, which is why the project
+ * targets Java 11.
+ */
+public class FlightRecorderEventStore implements EventStore {
+
+  /** The recorded store. */
+  private final EventStore delegate;
+
+  /** One of every this many inserts is timed. */
+  private final int insertSampling;
+
+  /** One of every this many queries is timed. */
+  private final int querySampling;
+
+  /**
+   * Constructor. Creates a new instance of {@link FlightRecorderEventStore}
+   * that times every operation.
+   *
+   * @param delegate The recorded store.
+   */
+  public FlightRecorderEventStore(EventStore delegate) {
+    this(delegate, 1, 1);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link FlightRecorderEventStore}.
+   *
+   * @param delegate The recorded store.
+   * @param insertSampling One of every this many inserts is timed.
+   * @param querySampling One of every this many queries is timed.
+   */
+  public FlightRecorderEventStore(EventStore delegate, int insertSampling, int querySampling) {
+    Utils.requireNonNull(delegate, "Delegate cannot be null.");
+    if (insertSampling <= 0 || querySampling <= 0) {
+      throw new IllegalArgumentException("Sampling rates must be positive.");
+    }
+    this.delegate = delegate;
+    this.insertSampling = insertSampling;
+    this.querySampling = querySampling;
+  }
+
+  /**
+   * Picks an operation to be timed.
+   *
+   * @param sampling One of every this many operations is timed.
+   * @return <code>true</code> if the operation must be timed.
+   */
+  private static boolean sampled(int sampling) {
+    return sampling == 1 || ThreadLocalRandom.current().nextInt(sampling) == 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void insert(Event event) {
+    if (!sampled(insertSampling)) {
+      delegate.insert(event);
+      return;
+    }
+    InsertEvent recorded = new InsertEvent();
+    if (!recorded.isEnabled()) {
+      delegate.insert(event);
+      return;
+    }
+    recorded.begin();
+    delegate.insert(event);
+    recorded.end();
+    if (recorded.shouldCommit()) {
+      recorded.type = event.type();
+      recorded.timestamp = event.timestamp();
+      recorded.commit();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeAll(String type) {
+    RemoveAllEvent recorded = new RemoveAllEvent();
+    if (!recorded.isEnabled()) {
+      delegate.removeAll(type);
+      return;
+    }
+    recorded.begin();
+    delegate.removeAll(type);
+    recorded.end();
+    if (recorded.shouldCommit()) {
+      recorded.type = type;
+      recorded.commit();
+    }
+  }
+
+  /**
+   * {@inheritDoc} A timed query is committed when the returned iterator is
+   * closed.
+   */
+  @Override
+  public EventIterator query(String type, long startTime, long endTime) {
+    if (!sampled(querySampling)) {
+      return delegate.query(type, startTime, endTime);
+    }
+    QueryEvent recorded = new QueryEvent();
+    if (!recorded.isEnabled()) {
+      return delegate.query(type, startTime, endTime);
+    }
+    recorded.begin();
+    long started = System.nanoTime();
+    EventIterator iterator = delegate.query(type, startTime, endTime);
+    recorded.scanTime = System.nanoTime() - started;
+    recorded.type = type;
+    recorded.rangeStart = startTime;
+    recorded.rangeEnd = endTime;
+    return new RecordedIterator(iterator, recorded);
+  }
+
+  /**
+   * {@inheritDoc} The removal is not recorded; it is delegated so the store
+   * can apply its own bulk removal.
+   */
+  @Override
+  public long removeIf(String type, long startTime, long endTime, Predicate<? super Event> filter) {
+    return delegate.removeIf(type, startTime, endTime, filter);
+  }
+
+  /** An iterator that times its steps and commits its query when closed. */
+  private static final class RecordedIterator implements EventIterator {
+
+    /** The iterator of the store. */
+    private final EventIterator iterator;
+
+    /** The event of the query, or <code>null</code> once committed. */
+    private QueryEvent recorded;
+
+    /**
+     * Constructor. Creates a new instance of {@link RecordedIterator}.
+     *
+     * @param iterator The iterator of the store.
+     * @param recorded The event of the query.
+     */
+    private RecordedIterator(EventIterator iterator, QueryEvent recorded) {
+      this.iterator = iterator;
+      this.recorded = recorded;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean moveNext() {
+      long started = System.nanoTime();
+      boolean moved = iterator.moveNext();
+      if (recorded != null) {
+        recorded.scanTime += System.nanoTime() - started;
+        if (moved) {
+          ++recorded.resultCount;
+        }
+      }
+      return moved;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Event current() {
+      return iterator.current();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+      long started = System.nanoTime();
+      iterator.remove();
+      if (recorded != null) {
+        recorded.scanTime += System.nanoTime() - started;
+        ++recorded.removedCount;
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws Exception {
+      try {
+        iterator.close();
+      }
+      finally {
+        QueryEvent committed = recorded;
+        recorded = null;
+        if (committed != null) {
+          committed.end();
+          if (committed.shouldCommit()) {
+            committed.commit();
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,30 @@
+package net.intelie.challenges.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** An insert that took longer than the threshold of the recording. */
+@Name(InsertEvent.NAME)
+@Label("Insert")
+@Category("Event Store")
+@Description("An insert slower than the threshold")
+@Threshold("1 ms")
+@StackTrace(false)
+final class InsertEvent extends jdk.jfr.Event {
+
+  /** Name of the event in the recordings. */
+  static final String NAME = "net.intelie.challenges.Insert";
+
+  /** Type of the inserted event. */
+  @Label("Type")
+  String type;
+
+  /** Timestamp of the inserted event. */
+  @Label("Event Timestamp")
+  long timestamp;
+
+}
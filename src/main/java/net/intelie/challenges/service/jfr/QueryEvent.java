@@ -0,0 +1,54 @@
+package net.intelie.challenges.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A query, from the call to <code>query</code> to the close of its iterator.
+ * The duration of the event is the lifetime of the iterator, and the scan
+ * time is the part of it spent within the store; the rest was spent by the
+ * caller between two steps.
+ */
+@Name(QueryEvent.NAME)
+@Label("Query")
+@Category("Event Store")
+@Description("A query and the lifetime of its iterator")
+@StackTrace(false)
+final class QueryEvent extends jdk.jfr.Event {
+
+  /** Name of the event in the recordings. */
+  static final String NAME = "net.intelie.challenges.Query";
+
+  /** Type of the queried events. */
+  @Label("Type")
+  String type;
+
+  /**
+   * Start timestamp of the query (inclusive). It is not named after the
+   * parameter of the query, since JFR reserves <code>startTime</code>.
+   */
+  @Label("Range Start")
+  long rangeStart;
+
+  /** End timestamp of the query (exclusive). */
+  @Label("Range End")
+  long rangeEnd;
+
+  /** Number of events returned by the iterator. */
+  @Label("Result Count")
+  long resultCount;
+
+  /** Number of events removed through the iterator. */
+  @Label("Removed Count")
+  long removedCount;
+
+  /** Time spent within the store, opening and stepping the iterator. */
+  @Label("Scan Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long scanTime;
+
+}
@@ -0,0 +1,24 @@
+package net.intelie.challenges.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A <code>removeAll</code> of a type. */
+@Name(RemoveAllEvent.NAME)
+@Label("Remove All")
+@Category("Event Store")
+@Description("All events of a type were removed")
+@StackTrace(false)
+final class RemoveAllEvent extends jdk.jfr.Event {
+
+  /** Name of the event in the recordings. */
+  static final String NAME = "net.intelie.challenges.RemoveAll";
+
+  /** Type of the removed events. */
+  @Label("Type")
+  String type;
+
+}
@@ -0,0 +1,229 @@
+package net.intelie.challenges.service.replication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.intelie.challenges.service.StoreChange;
+
+/**
+ * A change feed: the tail of the replication log of a
+ * {@link ReplicatingEventStore}, kept in memory for downstream consumers that
+ * would otherwise rescan the store to find out what changed.
+ * <p>
+ * The feed is plugged into the leader as its transport, so it gets every
+ * change (insertions, removals through iterators and <code>removeAll</code>)
+ * in the order of the log and numbered by it. Each consumer keeps the
+ * sequence of the last change it has processed, its offset, and reads the
+ * following changes in batches, possibly after a restart (see
+ * {@link ConsumerOffsets}).
+ * <p>
+ * The changes are kept in a ring of fixed capacity, so the memory of the feed
+ * is bounded and the leader never waits for the consumers. A consumer that
+ * falls behind by more than the capacity loses the changes it has not read:
+ * the feed reports it, and the consumer must resynchronize with a query.
+ * <p>
+ * The ring is written by the shipper thread of the leader alone and read
+ * without locks; the lock of the feed is only taken to wake up the consumers
+ * waiting for new changes.
+ */
+public class ChangeFeed implements ReplicationTransport {
+
+  /** Default number of changes kept by the feed. */
+  public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+  /** The ring of changes, indexed by sequence. */
+  private final AtomicReferenceArray<StoreChange> ring;
+
+  /** Mask that maps a sequence to a slot of the ring. */
+  private final int mask;
+
+  /** Sequence of the last change added to the feed. */
+  private volatile long lastSequence;
+
+  /** Indicates whether the feed is closed. */
+  private volatile boolean closed;
+
+  /** Wakes up the consumers waiting for changes. */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Signaled when changes are added or the feed is closed. */
+  private final Condition appended = lock.newCondition();
+
+  /**
+   * Constructor. Creates a new instance of {@link ChangeFeed} with the
+   * default capacity.
+   */
+  public ChangeFeed() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link ChangeFeed}.
+   *
+   * @param capacity Minimum number of changes kept by the feed. It is rounded
+   *        up to a power of two.
+   */
+  public ChangeFeed(int capacity) {
+    if (capacity <= 0 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("Capacity must be positive and at most 2^30.");
+    }
+    int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.ring = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /**
+   * {@inheritDoc} The changes are added to the feed, overwriting the oldest
+   * ones once the ring is full. Changes already in the feed are ignored. The
+   * epoch is not used, since a feed is plugged into a single leader.
+   */
+  @Override
+  public void send(long epoch, List<StoreChange> batch) {
+    if (closed) {
+      throw new IllegalStateException("The feed is closed.");
+    }
+    long last = lastSequence;
+    for (StoreChange change : batch) {
+      if (change.sequence() > last) {
+        last = change.sequence();
+        ring.set((int) last & mask, change);
+      }
+    }
+    if (last == lastSequence) {
+      return;
+    }
+    lastSequence = last;
+    lock.lock();
+    try {
+      appended.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reads the changes that follow an offset, without waiting.
+   *
+   * @param offset Sequence of the last change already processed by the
+   *        consumer, or zero to read from the start of the log.
+   * @param maxBatch Maximum number of changes to be read.
+   * @return The changes, ordered by sequence. It is empty if there are no
+   *         changes after the offset.
+   * @throws IllegalArgumentException if the offset is negative or ahead of
+   *         the feed.
+   * @throws IllegalStateException if the changes that follow the offset were
+   *         overwritten.
+   */
+  public List<StoreChange> read(long offset, int maxBatch) {
+    if (offset < 0) {
+      throw new IllegalArgumentException("Offset cannot be negative.");
+    }
+    if (maxBatch <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive.");
+    }
+    long last = lastSequence;
+    if (offset > last) {
+      throw new IllegalArgumentException("Offset " + offset + " is ahead of the feed, which ends at " + last + ".");
+    }
+    if (offset == last) {
+      return Collections.emptyList();
+    }
+
+    long end = Math.min(last, offset + maxBatch);
+    List<StoreChange> batch = new ArrayList<>((int) (end - offset));
+    for (long sequence = offset + 1; sequence <= end; ++sequence) {
+      StoreChange change = ring.get((int) sequence & mask);
+      if (change == null || change.sequence() != sequence) {
+        if (batch.isEmpty()) {
+          throw new IllegalStateException("The changes after offset " + offset
+            + " were overwritten; the oldest change kept is " + firstSequence() + ".");
+        }
+        break;
+      }
+      batch.add(change);
+    }
+    return batch;
+  }
+
+  /**
+   * Reads the changes that follow an offset, waiting for them if there are
+   * none yet.
+   *
+   * @param offset Sequence of the last change already processed by the
+   *        consumer, or zero to read from the start of the log.
+   * @param maxBatch Maximum number of changes to be read.
+   * @param timeout Maximum time to wait.
+   * @param unit Unit of the timeout.
+   * @return The changes, ordered by sequence. It is empty if no change came
+   *         in time or the feed was closed.
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   * @see #read(long, int)
+   */
+  public List<StoreChange> poll(long offset, int maxBatch, long timeout, TimeUnit unit) throws InterruptedException {
+    if (lastSequence <= offset && !closed) {
+      long remaining = unit.toNanos(timeout);
+      lock.lock();
+      try {
+        while (lastSequence <= offset && !closed && remaining > 0) {
+          remaining = appended.awaitNanos(remaining);
+        }
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+    return read(offset, maxBatch);
+  }
+
+  /**
+   * Gets the sequence of the oldest change that may still be read. The
+   * writer may overwrite it at any time, so it is a hint for the consumers
+   * that lost changes.
+   *
+   * @return The oldest sequence kept, or one if the feed is empty.
+   */
+  public long firstSequence() {
+    return Math.max(1, lastSequence - mask);
+  }
+
+  /**
+   * Gets the sequence of the last change added to the feed.
+   *
+   * @return The last sequence, or zero if the feed is empty.
+   */
+  public long lastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   * Gets the number of changes kept by the feed.
+   *
+   * @return The capacity of the ring.
+   */
+  public int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * {@inheritDoc} The changes still in the feed can be read, and the
+   * consumers waiting for new ones are woken up.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    lock.lock();
+    try {
+      appended.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+}
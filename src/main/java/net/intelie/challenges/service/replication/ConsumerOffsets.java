@@ -0,0 +1,184 @@
+package net.intelie.challenges.service.replication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.intelie.challenges.util.Utils;
+
+/**
+ * The offsets of the consumers of a {@link ChangeFeed}, kept in a file so a
+ * consumer can resume where it stopped after a restart.
+ * <p>
+ * A consumer commits its offset once it has processed the changes up to it.
+ * Every commit rewrites the file through a temporary one that is forced to
+ * the device and then moved over it, so a crash leaves either the previous
+ * offsets or the new ones. The directory is forced after the move where the
+ * platform allows it, so the new name survives a power loss too. Changes
+ * processed after the last commit are read again on resume, so consumers must
+ * tolerate seeing a change more than once.
+ */
+public class ConsumerOffsets {
+
+  /** Suffix of the temporary file written by a commit. */
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  /** The file of the offsets. */
+  private final Path file;
+
+  /** The offsets, mapped by consumer. */
+  private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+
+  /** Serializes the writes to the file. */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Constructor. Creates a new instance of {@link ConsumerOffsets}, loading
+   * the offsets of the file if it exists.
+   *
+   * @param file The file of the offsets.
+   * @throws IOException if the file could not be read or is not valid.
+   */
+  public ConsumerOffsets(Path file) throws IOException {
+    Utils.requireNonNull(file, "File cannot be null.");
+    this.file = file;
+    if (Files.exists(file)) {
+      Properties properties = new Properties();
+      try (InputStream input = Files.newInputStream(file)) {
+        properties.load(input);
+      }
+      for (String consumer : properties.stringPropertyNames()) {
+        try {
+          offsets.put(consumer, Long.parseLong(properties.getProperty(consumer)));
+        }
+        catch (NumberFormatException e) {
+          throw new IOException("Malformed offset of consumer " + consumer + ".", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the offset of a consumer.
+   *
+   * @param consumer The name of the consumer.
+   * @return The last committed offset, or zero if the consumer never
+   *         committed one.
+   */
+  public long offset(String consumer) {
+    Utils.requireNonNull(consumer, "Consumer cannot be null.");
+    return offsets.getOrDefault(consumer, 0L);
+  }
+
+  /**
+   * Commits the offset of a consumer and writes it to the file before
+   * returning. Offsets only move forward: an older one is ignored.
+   *
+   * @param consumer The name of the consumer.
+   * @param offset Sequence of the last change processed by the consumer.
+   * @throws IOException if the file could not be written.
+   */
+  public void commit(String consumer, long offset) throws IOException {
+    Utils.requireNonNull(consumer, "Consumer cannot be null.");
+    if (offset < 0) {
+      throw new IllegalArgumentException("Offset cannot be negative.");
+    }
+    lock.lock();
+    try {
+      if (offset <= offset(consumer)) {
+        return;
+      }
+      Long previous = offsets.put(consumer, offset);
+      try {
+        write();
+      }
+      catch (IOException | RuntimeException e) {
+        if (previous == null) {
+          offsets.remove(consumer);
+        }
+        else {
+          offsets.put(consumer, previous);
+        }
+        throw e;
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Forgets the offset of a consumer, which will resume from the start of
+   * the feed.
+   *
+   * @param consumer The name of the consumer.
+   * @throws IOException if the file could not be written.
+   */
+  public void reset(String consumer) throws IOException {
+    Utils.requireNonNull(consumer, "Consumer cannot be null.");
+    lock.lock();
+    try {
+      if (offsets.remove(consumer) != null) {
+        write();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes all offsets to a temporary file, forces it to the device, moves it
+   * over the file of the offsets and forces the directory.
+   *
+   * @throws IOException if the file could not be written.
+   */
+  private void write() throws IOException {
+    Properties properties = new Properties();
+    for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+      properties.setProperty(entry.getKey(), Long.toString(entry.getValue()));
+    }
+    Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+      StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      properties.store(Channels.newOutputStream(channel), null);
+      channel.force(true);
+    }
+    try {
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+    forceDirectory();
+  }
+
+  /**
+   * Forces the directory of the file to the device, which makes the move
+   * durable. Some platforms, such as Windows, cannot open a directory for
+   * that; the move is then left to the file system.
+   */
+  private void forceDirectory() {
+    Path directory = file.toAbsolutePath().getParent();
+    if (directory == null) {
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+    catch (IOException e) {
+      // Not supported by the platform.
+    }
+  }
+
+}
@@ -0,0 +1,184 @@
+package net.intelie.challenges.service.replication;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.service.EventStoreImpl;
+import net.intelie.challenges.service.StoreChange;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * A read-only replica of the store of a {@link ReplicatingEventStore}. It
+ * serves queries from its own local store, which is only changed by the
+ * batches received from the leader.
+ * <p>
+ * Sequences are only compared within the epoch of a leader. A batch of another
+ * epoch comes from a restarted leader, which starts from an empty store and
+ * numbers its changes from one again, so the replica is cleared and the
+ * applied sequence is reset before the batch is applied.
+ */
+public class FollowerEventStore implements EventStore {
+
+  /** The local copy of the data. */
+  private final EventStore replica;
+
+  /** Serializes the batches, in case a leader reconnects before the old connection is gone. */
+  private final ReentrantLock applyLock = new ReentrantLock();
+
+  /** Epoch of the leader whose changes are applied. */
+  private volatile long epoch;
+
+  /** Indicates whether a batch has been applied, so the epoch is known. */
+  private boolean started;
+
+  /** Sequence of the last change applied. */
+  private volatile long appliedSequence;
+
+  /**
+   * Constructor. Creates a new instance of {@link FollowerEventStore} backed
+   * by an {@link EventStoreImpl}.
+   */
+  public FollowerEventStore() {
+    this(new EventStoreImpl());
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link FollowerEventStore}.
+   *
+   * @param replica The local store that holds the replicated data. It should
+   *        be empty and not be changed by anyone else.
+   */
+  public FollowerEventStore(EventStore replica) {
+    Utils.requireNonNull(replica, "Replica cannot be null.");
+    this.replica = replica;
+  }
+
+  /**
+   * Applies a batch of changes received from the leader. Changes already
+   * applied, which are sent again when a delivery is retried, are skipped.
+   * Batches are applied by a single thread at a time.
+   *
+   * @param leaderEpoch Epoch of the leader that numbered the changes.
+   * @param batch The changes, ordered by sequence.
+   * @return The sequence of the last change applied.
+   */
+  public long apply(long leaderEpoch, List<StoreChange> batch) {
+    applyLock.lock();
+    try {
+      if (!started || leaderEpoch != epoch) {
+        for (EventType type : EventType.values()) {
+          replica.removeAll(type.toString());
+        }
+        appliedSequence = 0;
+        epoch = leaderEpoch;
+        started = true;
+      }
+      for (StoreChange change : batch) {
+        if (change.sequence() > appliedSequence) {
+          change.applyTo(replica);
+          appliedSequence = change.sequence();
+        }
+      }
+      return appliedSequence;
+    }
+    finally {
+      applyLock.unlock();
+    }
+  }
+
+  /**
+   * Gets the epoch of the leader whose changes are applied.
+   *
+   * @return The epoch, or zero if no batch has been applied.
+   */
+  public long epoch() {
+    return epoch;
+  }
+
+  /**
+   * Gets the sequence of the last change applied. Comparing it with
+   * {@link ReplicatingEventStore#lastSequence()} gives the replication lag.
+   *
+   * @return The last applied sequence.
+   */
+  public long appliedSequence() {
+    return appliedSequence;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws UnsupportedOperationException always, since followers are
+   *         read-only.
+   */
+  @Override
+  public void insert(Event event) {
+    throw new UnsupportedOperationException("Followers are read-only.");
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws UnsupportedOperationException always, since followers are
+   *         read-only.
+   */
+  @Override
+  public void removeAll(String type) {
+    throw new UnsupportedOperationException("Followers are read-only.");
+  }
+
+  /**
+   * {@inheritDoc} The returned iterator does not support removals.
+   */
+  @Override
+  public EventIterator query(String type, long startTime, long endTime) {
+    return new ReadOnlyIterator(replica.query(type, startTime, endTime));
+  }
+
+  /** An iterator that rejects removals. */
+  private static final class ReadOnlyIterator implements EventIterator {
+
+    /** The wrapped iterator. */
+    private final EventIterator iterator;
+
+    /**
+     * Constructor. Creates a new instance of {@link ReadOnlyIterator}.
+     *
+     * @param iterator The wrapped iterator.
+     */
+    private ReadOnlyIterator(EventIterator iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean moveNext() {
+      return iterator.moveNext();
+    }
+
+    @Override
+    public Event current() {
+      return iterator.current();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException always, since followers are
+     *         read-only.
+     */
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Followers are read-only.");
+    }
+
+    @Override
+    public void close() throws Exception {
+      iterator.close();
+    }
+  }
+
+}
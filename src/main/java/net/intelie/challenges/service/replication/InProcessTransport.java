@@ -0,0 +1,46 @@
+package net.intelie.challenges.service.replication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.intelie.challenges.service.StoreChange;
+
+/**
+ * Delivers the changes directly to followers living in the same process. It
+ * is meant for tests and for read replicas that only need to be isolated from
+ * the contention of the leader.
+ */
+public class InProcessTransport implements ReplicationTransport {
+
+  /** The followers. */
+  private final List<FollowerEventStore> followers;
+
+  /**
+   * Constructor. Creates a new instance of {@link InProcessTransport}.
+   *
+   * @param followers The followers that receive the changes.
+   */
+  public InProcessTransport(FollowerEventStore... followers) {
+    this.followers = new ArrayList<>(Arrays.asList(followers));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void send(long epoch, List<StoreChange> batch) {
+    for (FollowerEventStore follower : followers) {
+      follower.apply(epoch, batch);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() {
+    followers.clear();
+  }
+
+}
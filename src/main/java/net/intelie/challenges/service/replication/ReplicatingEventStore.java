@@ -0,0 +1,456 @@
+package net.intelie.challenges.service.replication;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.service.StoreChange;
+import net.intelie.challenges.util.ThreadFactories;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * The leader side of the replication. It wraps the store that takes the writes
+ * and ships every change (insertions, removals through iterators and
+ * <code>removeAll</code>) to the followers as an ordered stream of batches.
+ * <p>
+ * Changes are appended to a bounded queue by the writing threads and drained
+ * by a single shipper thread, which numbers them and hands them to a
+ * {@link ReplicationTransport} in batches of whatever has accumulated since
+ * the last delivery. When followers fall behind and the queue fills up,
+ * writers block until there is room again, which bounds the replication lag
+ * by the queue capacity.
+ * <p>
+ * The log must list the changes of each event in the order they were applied
+ * to the leader. Changes of the same event are serialized by a striped lock
+ * held while the store is changed and the change is queued. A
+ * <code>removeAll</code> must also be ordered against every change of its
+ * type, so it takes the write side of a per-type lock whose read side is taken
+ * by the other changes. Changes of distinct events commute, so they need no
+ * ordering among themselves. A writer waits for room in the queue before it
+ * takes those locks, so a full queue never blocks the writers of other events
+ * behind a lock.
+ * <p>
+ * Each instance draws a random epoch, sent along with every batch. The log of
+ * a restarted leader starts over from sequence one, and the new epoch tells
+ * the followers to drop the data of the previous one.
+ */
+public class ReplicatingEventStore implements EventStore, AutoCloseable {
+
+  /** Default maximum number of changes waiting to be shipped. */
+  public static final int DEFAULT_MAX_PENDING = 64 * 1024;
+
+  /** Default maximum number of changes per batch. */
+  public static final int DEFAULT_MAX_BATCH = 1024;
+
+  /** Number of locks that serialize the changes of the same event. */
+  private static final int STRIPES = 64;
+
+  /** Time the shipper waits before retrying a failed delivery. */
+  private static final long RETRY_DELAY_MILLIS = 100;
+
+  /** The store that takes the writes. */
+  private final EventStore delegate;
+
+  /** Delivers the batches to the followers. */
+  private final ReplicationTransport transport;
+
+  /** Changes waiting to be shipped. */
+  private final BlockingQueue<StoreChange> pending;
+
+  /**
+   * Free slots of the queue. A writer reserves its slot before it takes its
+   * locks, so queuing the change under the locks never waits.
+   */
+  private final Semaphore room;
+
+  /** Maximum number of changes per batch. */
+  private final int maxBatch;
+
+  /** Locks that order <code>removeAll</code> against the other changes. */
+  private final Map<String, ReadWriteLock> typeLocks = new HashMap<>();
+
+  /** Locks that serialize the changes of the same event. */
+  private final Lock[] stripes = new Lock[STRIPES];
+
+  /** Identifier of this leader instance, sent along with the batches. */
+  private final long epoch = ThreadLocalRandom.current().nextLong();
+
+  /** Number of changes queued so far. */
+  private final AtomicLong lastSequence = new AtomicLong();
+
+  /** Sequence of the last change delivered to the followers. */
+  private volatile long shippedSequence;
+
+  /** Number of failed deliveries. */
+  private final AtomicLong failedDeliveries = new AtomicLong();
+
+  /** Indicates whether the store is being closed. */
+  private volatile boolean closed;
+
+  /** The thread that ships the changes. */
+  private final Thread shipper;
+
+  /**
+   * Constructor. Creates a new instance of {@link ReplicatingEventStore} using
+   * the default limits.
+   *
+   * @param delegate The store that takes the writes.
+   * @param transport Delivers the batches to the followers.
+   */
+  public ReplicatingEventStore(EventStore delegate, ReplicationTransport transport) {
+    this(delegate, transport, DEFAULT_MAX_PENDING, DEFAULT_MAX_BATCH);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link ReplicatingEventStore} and
+   * starts shipping its changes.
+   *
+   * @param delegate The store that takes the writes. It should be empty and
+   *        only be changed through this instance.
+   * @param transport Delivers the batches to the followers.
+   * @param maxPending Maximum number of changes waiting to be shipped.
+   * @param maxBatch Maximum number of changes per batch.
+   */
+  public ReplicatingEventStore(EventStore delegate, ReplicationTransport transport, int maxPending, int maxBatch) {
+    Utils.requireNonNull(delegate, "Delegate cannot be null.");
+    Utils.requireNonNull(transport, "Transport cannot be null.");
+    if (maxPending <= 0 || maxBatch <= 0) {
+      throw new IllegalArgumentException("Replication limits must be positive.");
+    }
+    this.delegate = delegate;
+    this.transport = transport;
+    this.pending = new ArrayBlockingQueue<>(maxPending);
+    this.room = new Semaphore(maxPending);
+    this.maxBatch = maxBatch;
+    for (EventType type : EventType.values()) {
+      typeLocks.put(type.toString(), new ReentrantReadWriteLock());
+    }
+    for (int i = 0; i < STRIPES; ++i) {
+      stripes[i] = new ReentrantLock();
+    }
+
+    shipper = ThreadFactories.forBlockingWork("event-store-replication-shipper").newThread(this::ship);
+    shipper.start();
+  }
+
+  /**
+   * Gets the lock that serializes the changes of an event.
+   *
+   * @param type The type of the event.
+   * @param timestamp The timestamp of the event.
+   * @return The lock of the event.
+   */
+  private Lock stripeOf(String type, long timestamp) {
+    int hash = 31 * type.hashCode() + Long.hashCode(timestamp);
+    return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+  }
+
+  /**
+   * Reserves a slot of the queue for a change, waiting for room if the
+   * followers are behind. It must be called before the locks of the change are
+   * taken, and the slot must then be either used by {@link #log} or given back
+   * by {@link #release}.
+   */
+  private void reserve() {
+    if (closed) {
+      throw new IllegalStateException("The store is closed.");
+    }
+    try {
+      room.acquire();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the followers.", e);
+    }
+  }
+
+  /**
+   * Gives back a reserved slot that was not used.
+   */
+  private void release() {
+    room.release();
+  }
+
+  /**
+   * Queues a change to be shipped, in a slot reserved by {@link #reserve}.
+   *
+   * @param change The change.
+   */
+  private void log(StoreChange change) {
+    pending.add(change);
+    lastSequence.incrementAndGet();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void insert(Event event) {
+    Utils.checkEvent(event);
+    Lock typeLock = typeLocks.get(event.type()).readLock();
+    Lock stripe = stripeOf(event.type(), event.timestamp());
+    reserve();
+    boolean logged = false;
+    typeLock.lock();
+    stripe.lock();
+    try {
+      delegate.insert(event);
+      log(StoreChange.of(StoreChange.Kind.INSERT, event.type(), event.timestamp()));
+      logged = true;
+    }
+    finally {
+      if (!logged) {
+        release();
+      }
+      stripe.unlock();
+      typeLock.unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeAll(String type) {
+    Utils.checkEventType(type);
+    Lock typeLock = typeLocks.get(type).writeLock();
+    reserve();
+    boolean logged = false;
+    typeLock.lock();
+    try {
+      delegate.removeAll(type);
+      log(StoreChange.of(StoreChange.Kind.REMOVE_ALL, type, 0));
+      logged = true;
+    }
+    finally {
+      if (!logged) {
+        release();
+      }
+      typeLock.unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc} Removals made through the returned iterator are replicated.
+   */
+  @Override
+  public EventIterator query(String type, long startTime, long endTime) {
+    return new ReplicatingIterator(delegate.query(type, startTime, endTime));
+  }
+
+  /**
+   * Checks whether the store holds an event. The caller holds the locks of
+   * the event, so the answer stays valid until they are released.
+   *
+   * @param event The event.
+   * @return <code>true</code> if the store has an event of the same type and
+   *         timestamp.
+   */
+  private boolean contains(Event event) {
+    try (EventIterator iterator = delegate.query(event.type(), event.timestamp(), event.timestamp() + 1)) {
+      return iterator.moveNext();
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Could not read the event " + event + ".", e);
+    }
+  }
+
+  /**
+   * Ships the queued changes until the store is closed and the queue is empty.
+   */
+  private void ship() {
+    List<StoreChange> drained = new ArrayList<>(maxBatch);
+    long sequence = 0;
+    while (!closed || !pending.isEmpty()) {
+      try {
+        StoreChange first = pending.poll(RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        drained.add(first);
+        pending.drainTo(drained, maxBatch - 1);
+        room.release(drained.size());
+      }
+      catch (InterruptedException e) {
+        continue;
+      }
+
+      List<StoreChange> batch = new ArrayList<>(drained.size());
+      for (StoreChange change : drained) {
+        batch.add(change.withSequence(++sequence));
+      }
+      drained.clear();
+      deliver(batch);
+    }
+  }
+
+  /**
+   * Delivers a batch, retrying until it succeeds or the store is closed.
+   *
+   * @param batch The changes.
+   */
+  private void deliver(List<StoreChange> batch) {
+    while (true) {
+      try {
+        transport.send(epoch, batch);
+        shippedSequence = batch.get(batch.size() - 1).sequence();
+        return;
+      }
+      catch (IOException | RuntimeException e) {
+        failedDeliveries.incrementAndGet();
+        if (closed) {
+          return;
+        }
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MILLIS));
+      }
+    }
+  }
+
+  /**
+   * Gets the epoch of this leader, which identifies the instance that numbered
+   * the changes.
+   *
+   * @return The epoch.
+   */
+  public long epoch() {
+    return epoch;
+  }
+
+  /**
+   * Gets the sequence of the last change queued.
+   *
+   * @return The last sequence of the log.
+   */
+  public long lastSequence() {
+    return lastSequence.get();
+  }
+
+  /**
+   * Gets the sequence of the last change delivered to the followers.
+   *
+   * @return The last shipped sequence.
+   */
+  public long shippedSequence() {
+    return shippedSequence;
+  }
+
+  /**
+   * Gets the number of failed deliveries. Each failed delivery is retried.
+   *
+   * @return The number of failed deliveries.
+   */
+  public long failedDeliveries() {
+    return failedDeliveries.get();
+  }
+
+  /**
+   * Waits until all changes queued before the call have been delivered.
+   *
+   * @param timeout Maximum time to wait.
+   * @param unit Unit of the timeout.
+   * @return <code>true</code> if the changes were delivered in time.
+   */
+  public boolean awaitShipped(long timeout, TimeUnit unit) {
+    long target = lastSequence.get();
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (shippedSequence < target) {
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    return true;
+  }
+
+  /**
+   * {@inheritDoc} Ships the changes still queued, then closes the transport.
+   */
+  @Override
+  public void close() throws Exception {
+    closed = true;
+    shipper.join();
+    transport.close();
+  }
+
+  /** An iterator that replicates the removals made through it. */
+  private final class ReplicatingIterator implements EventIterator {
+
+    /** The wrapped iterator. */
+    private final EventIterator iterator;
+
+    /**
+     * Constructor. Creates a new instance of {@link ReplicatingIterator}.
+     *
+     * @param iterator The wrapped iterator.
+     */
+    private ReplicatingIterator(EventIterator iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean moveNext() {
+      return iterator.moveNext();
+    }
+
+    @Override
+    public Event current() {
+      return iterator.current();
+    }
+
+    /**
+     * {@inheritDoc} The removal is only logged if it really removed the event
+     * from the store. It may not: an iterator opened before a
+     * <code>removeAll</code> still returns the removed events, and removing
+     * one of them leaves alone an event inserted at the same timestamp since
+     * then, which the followers must keep as well.
+     */
+    @Override
+    public void remove() {
+      Event event = iterator.current();
+      Lock typeLock = typeLocks.get(event.type()).readLock();
+      Lock stripe = stripeOf(event.type(), event.timestamp());
+      reserve();
+      boolean logged = false;
+      typeLock.lock();
+      stripe.lock();
+      try {
+        boolean stored = contains(event);
+        iterator.remove();
+        if (stored && !contains(event)) {
+          log(StoreChange.of(StoreChange.Kind.REMOVE, event.type(), event.timestamp()));
+          logged = true;
+        }
+      }
+      finally {
+        if (!logged) {
+          release();
+        }
+        stripe.unlock();
+        typeLock.unlock();
+      }
+    }
+
+    @Override
+    public void close() throws Exception {
+      iterator.close();
+    }
+  }
+
+}
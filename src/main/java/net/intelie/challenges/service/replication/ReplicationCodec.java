@@ -0,0 +1,79 @@
+package net.intelie.challenges.service.replication;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.intelie.challenges.service.StoreChange;
+
+/**
+ * Binary encoding of the batches sent over sockets. A batch is written as the
+ * epoch of its leader and its number of changes, followed by the changes, each
+ * one as its sequence, kind, type and timestamp.
+ */
+final class ReplicationCodec {
+
+  /** Kinds of changes, indexed by their ordinal. */
+  private static final StoreChange.Kind[] KINDS = StoreChange.Kind.values();
+
+  /** Constructor. This class only has static methods. */
+  private ReplicationCodec() {
+  }
+
+  /**
+   * Writes a batch of changes.
+   *
+   * @param output The destination of the batch.
+   * @param epoch Identifier of the leader instance that numbered the changes.
+   * @param batch The changes.
+   * @throws IOException if the batch could not be written.
+   */
+  static void writeBatch(DataOutput output, long epoch, List<StoreChange> batch) throws IOException {
+    output.writeLong(epoch);
+    output.writeInt(batch.size());
+    for (StoreChange change : batch) {
+      output.writeLong(change.sequence());
+      output.writeByte(change.kind().ordinal());
+      output.writeUTF(change.type());
+      output.writeLong(change.timestamp());
+    }
+  }
+
+  /**
+   * Reads the epoch of a batch, which precedes its changes.
+   *
+   * @param input The source of the batch.
+   * @return The epoch of the leader that sent the batch.
+   * @throws IOException if the epoch could not be read.
+   */
+  static long readEpoch(DataInput input) throws IOException {
+    return input.readLong();
+  }
+
+  /**
+   * Reads the changes of a batch, after its epoch.
+   *
+   * @param input The source of the batch.
+   * @return The changes.
+   * @throws IOException if the batch could not be read or is malformed.
+   */
+  static List<StoreChange> readBatch(DataInput input) throws IOException {
+    int size = input.readInt();
+    if (size < 0) {
+      throw new IOException("Malformed batch size " + size + ".");
+    }
+    List<StoreChange> batch = new ArrayList<>(size);
+    for (int i = 0; i < size; ++i) {
+      long sequence = input.readLong();
+      int kind = input.readUnsignedByte();
+      if (kind >= KINDS.length) {
+        throw new IOException("Malformed change kind " + kind + ".");
+      }
+      batch.add(new StoreChange(sequence, KINDS[kind], input.readUTF(), input.readLong()));
+    }
+    return batch;
+  }
+
+}
@@ -0,0 +1,143 @@
+package net.intelie.challenges.service.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import net.intelie.challenges.util.ThreadFactories;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Accepts connections from {@link SocketTransport}s and applies the received
+ * batches to a {@link FollowerEventStore}. Each connection is served by its
+ * own thread, virtual when the runtime supports it, and every batch is
+ * acknowledged with the sequence applied by the follower.
+ */
+public class ReplicationReceiver implements AutoCloseable {
+
+  /** First pause of the acceptor after a failed accept, in milliseconds. */
+  private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+
+  /** Longest pause of the acceptor after failed accepts, in milliseconds. */
+  private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+  /** The follower that applies the batches. */
+  private final FollowerEventStore follower;
+
+  /** The listening socket. */
+  private final ServerSocket serverSocket;
+
+  /** Open connections, kept to be closed with the receiver. */
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+  /** Creates the threads that serve the connections. */
+  private final ThreadFactory connectionThreads = ThreadFactories.forBlockingWork(
+    "event-store-replication-connection");
+
+  /**
+   * Constructor. Creates a new instance of {@link ReplicationReceiver} and
+   * starts listening on the loopback interface.
+   *
+   * @param follower The follower that applies the batches.
+   * @param port The port to listen on, or zero for any free port.
+   * @throws IOException if the port could not be bound.
+   */
+  public ReplicationReceiver(FollowerEventStore follower, int port) throws IOException {
+    Utils.requireNonNull(follower, "Follower cannot be null.");
+    this.follower = follower;
+    this.serverSocket = new ServerSocket();
+    serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+    ThreadFactories.forBlockingWork("event-store-replication-receiver").newThread(this::accept).start();
+  }
+
+  /**
+   * Gets the port the receiver listens on.
+   *
+   * @return The local port.
+   */
+  public int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Accepts connections until the receiver is closed. After a failed accept
+   * while the socket is open, the acceptor pauses for a time that doubles
+   * with each consecutive failure instead of spinning.
+   */
+  private void accept() {
+    long backoffMillis = 0;
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        backoffMillis = 0;
+        connections.add(socket);
+        connectionThreads.newThread(() -> serve(socket)).start();
+      }
+      catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          backoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(MIN_ACCEPT_BACKOFF_MILLIS, 2 * backoffMillis));
+          LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoffMillis));
+        }
+      }
+    }
+  }
+
+  /**
+   * Applies the batches received through a connection, until it is closed.
+   *
+   * @param socket The connection.
+   */
+  private void serve(Socket socket) {
+    try {
+      socket.setTcpNoDelay(true);
+      DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      while (true) {
+        long epoch = ReplicationCodec.readEpoch(input);
+        long applied = follower.apply(epoch, ReplicationCodec.readBatch(input));
+        output.writeLong(applied);
+        output.flush();
+      }
+    }
+    catch (EOFException e) {
+      // The leader closed the connection.
+    }
+    catch (IOException e) {
+      // The connection was broken; the leader will connect again.
+    }
+    finally {
+      connections.remove(socket);
+      try {
+        socket.close();
+      }
+      catch (IOException e) {
+        // Nothing left to release.
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc} Stops listening and closes all connections.
+   */
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    for (Socket socket : connections) {
+      socket.close();
+    }
+  }
+
+}
@@ -0,0 +1,34 @@
+package net.intelie.challenges.service.replication;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.intelie.challenges.service.StoreChange;
+
+/**
+ * Delivers batches of ordered changes from a {@link ReplicatingEventStore} to
+ * its followers. Batches are sent by a single thread, one at a time and in
+ * log order.
+ */
+public interface ReplicationTransport extends AutoCloseable {
+
+  /**
+   * Delivers a batch of changes. The call returns once the batch is applied
+   * by the followers or fails. A failed batch is sent again, so followers must
+   * ignore the changes they have already applied.
+   * <p>
+   * The sequences are only meaningful within an epoch: a restarted leader
+   * numbers its changes from one again under a new epoch.
+   *
+   * @param epoch Identifier of the leader instance that numbered the changes.
+   * @param batch The changes, ordered by sequence.
+   * @throws IOException if the batch could not be delivered.
+   */
+  void send(long epoch, List<StoreChange> batch) throws IOException;
+
+  /**
+   * {@inheritDoc} Releases the resources of the transport.
+   */
+  @Override
+  void close() throws IOException;
+}
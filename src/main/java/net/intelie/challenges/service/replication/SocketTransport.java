@@ -0,0 +1,133 @@
+package net.intelie.challenges.service.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+import net.intelie.challenges.service.StoreChange;
+
+/**
+ * Sends the changes to a {@link ReplicationReceiver} over a TCP connection.
+ * <p>
+ * Each batch is written in a single flush and acknowledged by the receiver
+ * with the sequence it has applied, so a batch is only considered delivered
+ * once the follower has it. A broken connection is dropped and opened again
+ * on the next attempt.
+ * <p>
+ * Connecting and waiting for an acknowledgement are bounded by timeouts, so an
+ * unreachable or stalled receiver fails the delivery, which the leader retries,
+ * instead of blocking the shipper forever.
+ */
+public class SocketTransport implements ReplicationTransport {
+
+  /** Default maximum time to open a connection, in milliseconds. */
+  public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+  /** Default maximum time to wait for an acknowledgement, in milliseconds. */
+  public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30_000;
+
+  /** Address of the receiver. */
+  private final InetSocketAddress address;
+
+  /** Maximum time to open a connection, in milliseconds. */
+  private final int connectTimeoutMillis;
+
+  /** Maximum time to wait for an acknowledgement, in milliseconds. */
+  private final int readTimeoutMillis;
+
+  /** Connection to the receiver, opened on demand. */
+  private Socket socket;
+
+  /** Stream to the receiver. */
+  private DataOutputStream output;
+
+  /** Stream from the receiver. */
+  private DataInputStream input;
+
+  /**
+   * Constructor. Creates a new instance of {@link SocketTransport} using the
+   * default timeouts.
+   *
+   * @param host Host of the receiver.
+   * @param port Port of the receiver.
+   */
+  public SocketTransport(String host, int port) {
+    this(host, port, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link SocketTransport}.
+   *
+   * @param host Host of the receiver.
+   * @param port Port of the receiver.
+   * @param connectTimeoutMillis Maximum time to open a connection.
+   * @param readTimeoutMillis Maximum time to wait for an acknowledgement.
+   */
+  public SocketTransport(String host, int port, int connectTimeoutMillis, int readTimeoutMillis) {
+    if (connectTimeoutMillis <= 0 || readTimeoutMillis <= 0) {
+      throw new IllegalArgumentException("Timeouts must be positive.");
+    }
+    this.address = new InetSocketAddress(host, port);
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  /**
+   * {@inheritDoc} A timeout fails the delivery and closes the connection,
+   * since a late acknowledgement would otherwise be taken for the one of the
+   * next batch.
+   */
+  @Override
+  public void send(long epoch, List<StoreChange> batch) throws IOException {
+    try {
+      if (socket == null) {
+        connect();
+      }
+      ReplicationCodec.writeBatch(output, epoch, batch);
+      output.flush();
+      long acknowledged = input.readLong();
+      long expected = batch.get(batch.size() - 1).sequence();
+      if (acknowledged < expected) {
+        throw new IOException("Receiver acknowledged " + acknowledged + " instead of " + expected + ".");
+      }
+    }
+    catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens the connection to the receiver.
+   *
+   * @throws IOException if the connection could not be opened.
+   */
+  private void connect() throws IOException {
+    socket = new Socket();
+    socket.setTcpNoDelay(true);
+    socket.setSoTimeout(readTimeoutMillis);
+    socket.connect(address, connectTimeoutMillis);
+    output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    Socket current = socket;
+    socket = null;
+    output = null;
+    input = null;
+    if (current != null) {
+      current.close();
+    }
+  }
+
+}
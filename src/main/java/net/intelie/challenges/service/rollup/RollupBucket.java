@@ -0,0 +1,82 @@
+package net.intelie.challenges.service.rollup;
+
+/**
+ * An immutable snapshot of the summary of the events that fall into a bucket
+ * of a {@link RollupTier}.
+ */
+public final class RollupBucket {
+
+  /** Tier of the bucket. */
+  private final RollupTier tier;
+
+  /** Start time of the bucket (inclusive). */
+  private final long start;
+
+  /** Number of events in the bucket. */
+  private final long count;
+
+  /** Lower bound of the timestamps of the events in the bucket. */
+  private final long firstTimestamp;
+
+  /** Upper bound of the timestamps of the events in the bucket. */
+  private final long lastTimestamp;
+
+  /**
+   * Constructor. Creates a new instance of {@link RollupBucket}.
+   *
+   * @param tier Tier of the bucket.
+   * @param start Start time of the bucket (inclusive).
+   * @param count Number of events in the bucket.
+   * @param firstTimestamp Lower bound of the timestamps of the events.
+   * @param lastTimestamp Upper bound of the timestamps of the events.
+   */
+  RollupBucket(RollupTier tier, long start, long count, long firstTimestamp, long lastTimestamp) {
+    this.tier = tier;
+    this.start = start;
+    this.count = count;
+    this.firstTimestamp = firstTimestamp;
+    this.lastTimestamp = lastTimestamp;
+  }
+
+  public RollupTier tier() {
+    return tier;
+  }
+
+  public long start() {
+    return start;
+  }
+
+  /**
+   * Gets the end time of the bucket.
+   *
+   * @return The end time (exclusive).
+   */
+  public long end() {
+    return start + tier.width();
+  }
+
+  public long count() {
+    return count;
+  }
+
+  /**
+   * Gets the timestamp of the first event of the bucket. Removals do not
+   * tighten this value, so it is a lower bound once events are removed.
+   *
+   * @return The lower bound of the timestamps in the bucket.
+   */
+  public long firstTimestamp() {
+    return firstTimestamp;
+  }
+
+  /**
+   * Gets the timestamp of the last event of the bucket. Removals do not
+   * tighten this value, so it is an upper bound once events are removed.
+   *
+   * @return The upper bound of the timestamps in the bucket.
+   */
+  public long lastTimestamp() {
+    return lastTimestamp;
+  }
+
+}
@@ -0,0 +1,450 @@
+package net.intelie.challenges.service.rollup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStoreListener;
+import net.intelie.challenges.service.ObservableEventStore;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Keeps per-second, per-minute and per-hour summaries of the events of an
+ * {@link ObservableEventStore}, so range counts are answered from a few
+ * buckets instead of a walk over every raw event.
+ * <p>
+ * The index listens to the store and updates one bucket per tier on every
+ * insertion and removal, which adds three map lookups to each change. Buckets
+ * are never unlinked when they become empty: keeping them avoids a race between
+ * a removal that empties a bucket and an insertion that fills it again, at the
+ * cost of a few empty buckets until the type is cleared.
+ * <p>
+ * Insertions widen the first and last timestamps of a bucket without locks. A
+ * removal cannot narrow them safely against a concurrent insertion, so the
+ * bucket is only marked as loose when the removed event was at one of them.
+ * The bounds of a loose bucket are recomputed from its finer buckets, and from
+ * the raw events for the finest tier, whenever the bucket is read.
+ * <p>
+ * Raw events may be aged out of the store with {@link #ageRawEvents}, while
+ * their summaries are kept. The aged events are also accounted in a second set
+ * of tiers, so their summaries survive a later <code>removeAll</code> of the
+ * type, at the cost of up to twice the buckets over the aged range. Events
+ * stored before the index is created are not accounted, so the index should be
+ * attached to an empty store.
+ */
+public class RollupIndex implements EventStoreListener, AutoCloseable {
+
+  /** Tiers ordered from the finest to the coarsest. */
+  private static final RollupTier[] TIERS = RollupTier.values();
+
+  /** The summarized store. */
+  private final ObservableEventStore store;
+
+  /** Summaries of each type, mapped by type name. */
+  private final Map<String, TypeRollups> rollups = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor. Creates a new instance of {@link RollupIndex} and attaches it
+   * to a store.
+   *
+   * @param store The store to be summarized.
+   */
+  public RollupIndex(ObservableEventStore store) {
+    Utils.requireNonNull(store, "Store cannot be null.");
+    this.store = store;
+    store.addListener(this);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onInsert(Event event) {
+    rollups.computeIfAbsent(event.type(), type -> new TypeRollups()).add(event.timestamp());
+  }
+
+  /**
+   * {@inheritDoc} Removals of aged events are ignored, because their
+   * summaries must outlive the raw data.
+   */
+  @Override
+  public void onRemove(Event event) {
+    TypeRollups typeRollups = rollups.get(event.type());
+    if (typeRollups != null && event.timestamp() >= typeRollups.rawHorizon.get()) {
+      typeRollups.subtract(event.timestamp());
+    }
+  }
+
+  /**
+   * {@inheritDoc} The summaries of the events aged by {@link #ageRawEvents}
+   * are kept, since they no longer have raw events to be removed.
+   */
+  @Override
+  public void onRemoveAll(String type) {
+    TypeRollups typeRollups = rollups.get(type);
+    if (typeRollups == null) {
+      return;
+    }
+    if (typeRollups.rawHorizon.get() == Long.MIN_VALUE) {
+      rollups.remove(type, typeRollups);
+    }
+    else {
+      rollups.replace(type, typeRollups, typeRollups.agedOnly());
+    }
+  }
+
+  /**
+   * Counts the events of a type within a time window.
+   * <p>
+   * The window is split into whole buckets of the coarsest tier that fits and
+   * into edges, which are recursively answered by the finer tiers and, below
+   * one second, by the raw events. A week-long window is thus answered from
+   * about 170 hour buckets, plus at most 59 minute buckets, 59 second buckets
+   * and two sub-second walks over raw events.
+   * <p>
+   * Sub-second edges that fall before the raw horizon of the type are answered
+   * from the whole second buckets, since their raw events are gone.
+   *
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The number of events within the window.
+   */
+  public long count(String type, long startTime, long endTime) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    TypeRollups typeRollups = rollups.get(type);
+    if (typeRollups == null) {
+      return 0;
+    }
+    return count(type, typeRollups, startTime, endTime, TIERS.length - 1);
+  }
+
+  /**
+   * Counts the events of a window using a tier and the ones finer than it.
+   *
+   * @param type The type of the events.
+   * @param typeRollups The summaries of the type.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param tier Index of the coarsest tier to be used.
+   * @return The number of events within the window.
+   */
+  private long count(String type, TypeRollups typeRollups, long startTime, long endTime, int tier) {
+    if (startTime >= endTime) {
+      return 0;
+    }
+    if (tier < 0) {
+      return countRaw(type, typeRollups, startTime, endTime);
+    }
+
+    RollupTier rollupTier = TIERS[tier];
+    long firstBucket = rollupTier.bucketOf(startTime);
+    if (Math.floorMod(startTime, rollupTier.width()) != 0) {
+      ++firstBucket;
+    }
+    long lastBucket = rollupTier.bucketOf(endTime);
+    if (firstBucket >= lastBucket) {
+      return count(type, typeRollups, startTime, endTime, tier - 1);
+    }
+
+    long total = 0;
+    for (Bucket bucket : typeRollups.tiers.get(tier).subMap(firstBucket, lastBucket).values()) {
+      total += bucket.count.sum();
+    }
+    return total + count(type, typeRollups, startTime, firstBucket * rollupTier.width(), tier - 1)
+      + count(type, typeRollups, lastBucket * rollupTier.width(), endTime, tier - 1);
+  }
+
+  /**
+   * Counts the events of a window shorter than the finest tier.
+   *
+   * @param type The type of the events.
+   * @param typeRollups The summaries of the type.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The number of events within the window.
+   */
+  private long countRaw(String type, TypeRollups typeRollups, long startTime, long endTime) {
+    long total = 0;
+    if (startTime < typeRollups.rawHorizon.get()) {
+      for (Bucket bucket : typeRollups.tiers.get(0).subMap(TIERS[0].bucketOf(startTime), true, TIERS[0].bucketOf(
+        endTime - 1), true).values()) {
+        total += bucket.count.sum();
+      }
+      return total;
+    }
+    try (EventIterator iterator = store.query(type, startTime, endTime)) {
+      while (iterator.moveNext()) {
+        ++total;
+      }
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Could not count raw events.", e);
+    }
+    return total;
+  }
+
+  /**
+   * Gets the summaries of a tier whose buckets start within a time window.
+   *
+   * @param type The type of the events.
+   * @param tier The tier of the buckets.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The buckets, in time order. Empty buckets are omitted.
+   */
+  public List<RollupBucket> buckets(String type, RollupTier tier, long startTime, long endTime) {
+    Utils.checkEventType(type);
+    Utils.requireNonNull(tier, "Tier cannot be null.");
+    List<RollupBucket> result = new ArrayList<>();
+    TypeRollups typeRollups = rollups.get(type);
+    if (typeRollups == null || startTime >= endTime) {
+      return result;
+    }
+
+    long firstBucket = tier.bucketOf(startTime) + (Math.floorMod(startTime, tier.width()) == 0 ? 0 : 1);
+    long lastBucket = tier.bucketOf(endTime) + (Math.floorMod(endTime, tier.width()) == 0 ? 0 : 1);
+    for (Map.Entry<Long, Bucket> entry : typeRollups.tiers.get(tier.ordinal()).subMap(firstBucket, lastBucket)
+      .entrySet()) {
+      Bucket bucket = entry.getValue();
+      long count = bucket.count.sum();
+      if (count > 0) {
+        long[] bounds = bounds(type, typeRollups, tier.ordinal(), entry.getKey(), bucket);
+        result.add(new RollupBucket(tier, entry.getKey() * tier.width(), count, bounds[0], bounds[1]));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the first and last timestamps of a bucket, recomputing them when an
+   * event at one of them was removed.
+   *
+   * @param type The type of the events.
+   * @param typeRollups The summaries of the type.
+   * @param tier Index of the tier of the bucket.
+   * @param index Index of the bucket within its tier.
+   * @param bucket The bucket.
+   * @return The first and last timestamps, or <code>{Long.MAX_VALUE,
+   *         Long.MIN_VALUE}</code> when the bucket holds no event.
+   */
+  private long[] bounds(String type, TypeRollups typeRollups, int tier, long index, Bucket bucket) {
+    long[] bounds = { Long.MAX_VALUE, Long.MIN_VALUE };
+    if (!bucket.loose) {
+      bounds[0] = bucket.first.get();
+      bounds[1] = bucket.last.get();
+      return bounds;
+    }
+
+    long start = index * TIERS[tier].width();
+    long end = start > Long.MAX_VALUE - TIERS[tier].width() ? Long.MAX_VALUE : start + TIERS[tier].width();
+    if (tier == 0) {
+      Bucket aged = typeRollups.aged.get(0).get(index);
+      if (aged != null && aged.count.sum() > 0) {
+        bounds[0] = aged.first.get();
+        bounds[1] = aged.last.get();
+      }
+      try (EventIterator iterator = store.query(type, start, end)) {
+        while (iterator.moveNext()) {
+          bounds[0] = Math.min(bounds[0], iterator.current().timestamp());
+          bounds[1] = Math.max(bounds[1], iterator.current().timestamp());
+        }
+      }
+      catch (Exception e) {
+        throw new IllegalStateException("Could not read raw events.", e);
+      }
+      return bounds;
+    }
+
+    RollupTier finer = TIERS[tier - 1];
+    for (Map.Entry<Long, Bucket> entry : typeRollups.tiers.get(tier - 1).subMap(finer.bucketOf(start), true, finer
+      .bucketOf(end - 1), true).entrySet()) {
+      if (entry.getValue().count.sum() > 0) {
+        long[] child = bounds(type, typeRollups, tier - 1, entry.getKey(), entry.getValue());
+        bounds[0] = Math.min(bounds[0], child[0]);
+        bounds[1] = Math.max(bounds[1], child[1]);
+      }
+    }
+    return bounds;
+  }
+
+  /**
+   * Removes the raw events of a type older than a timestamp from the store,
+   * keeping their summaries. After this call, counts over the aged range are
+   * answered with one second of resolution.
+   *
+   * @param type The type of the events.
+   * @param before Timestamp before which raw events are removed (exclusive).
+   * @return The number of raw events removed.
+   */
+  public long ageRawEvents(String type, long before) {
+    Utils.checkEventType(type);
+    TypeRollups typeRollups = rollups.get(type);
+    if (typeRollups == null) {
+      return 0;
+    }
+    typeRollups.rawHorizon.accumulateAndGet(before, Math::max);
+
+    long removed = 0;
+    try (EventIterator iterator = store.query(type, Long.MIN_VALUE, before)) {
+      while (iterator.moveNext()) {
+        long timestamp = iterator.current().timestamp();
+        iterator.remove();
+        typeRollups.age(timestamp);
+        ++removed;
+      }
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Could not age raw events.", e);
+    }
+    return removed;
+  }
+
+  /**
+   * {@inheritDoc} Detaches the index from the store.
+   */
+  @Override
+  public void close() {
+    store.removeListener(this);
+  }
+
+  /** Summaries of all tiers of a single type. */
+  private static final class TypeRollups {
+
+    /** Buckets of each tier, mapped by bucket index. */
+    private final List<ConcurrentSkipListMap<Long, Bucket>> tiers;
+
+    /** Buckets of each tier accounting only the aged events. */
+    private final List<ConcurrentSkipListMap<Long, Bucket>> aged;
+
+    /** Raw events before this timestamp have been aged out of the store. */
+    private final AtomicLong rawHorizon;
+
+    /** Constructor. Creates the empty tiers. */
+    private TypeRollups() {
+      this(emptyTiers(), emptyTiers(), Long.MIN_VALUE);
+    }
+
+    /**
+     * Constructor. Creates the summaries from existing tiers.
+     *
+     * @param tiers Buckets of each tier.
+     * @param aged Buckets of each tier accounting only the aged events.
+     * @param rawHorizon Timestamp before which raw events were aged.
+     */
+    private TypeRollups(List<ConcurrentSkipListMap<Long, Bucket>> tiers, List<ConcurrentSkipListMap<Long, Bucket>> aged,
+      long rawHorizon) {
+      this.tiers = tiers;
+      this.aged = aged;
+      this.rawHorizon = new AtomicLong(rawHorizon);
+    }
+
+    /**
+     * Creates a list of empty tiers.
+     *
+     * @return The tiers, from the finest to the coarsest.
+     */
+    private static List<ConcurrentSkipListMap<Long, Bucket>> emptyTiers() {
+      List<ConcurrentSkipListMap<Long, Bucket>> tiers = new ArrayList<>(TIERS.length);
+      for (int i = 0; i < TIERS.length; ++i) {
+        tiers.add(new ConcurrentSkipListMap<>());
+      }
+      return tiers;
+    }
+
+    /**
+     * Creates the summaries that remain after the raw events are removed:
+     * those of the aged events.
+     *
+     * @return The new summaries, with the same raw horizon.
+     */
+    private TypeRollups agedOnly() {
+      List<ConcurrentSkipListMap<Long, Bucket>> copy = emptyTiers();
+      for (int i = 0; i < TIERS.length; ++i) {
+        for (Map.Entry<Long, Bucket> entry : aged.get(i).entrySet()) {
+          Bucket bucket = new Bucket();
+          bucket.count.add(entry.getValue().count.sum());
+          bucket.first.accumulate(entry.getValue().first.get());
+          bucket.last.accumulate(entry.getValue().last.get());
+          copy.get(i).put(entry.getKey(), bucket);
+        }
+      }
+      return new TypeRollups(copy, aged, rawHorizon.get());
+    }
+
+    /**
+     * Accounts a new event in all tiers.
+     *
+     * @param timestamp The timestamp of the event.
+     */
+    private void add(long timestamp) {
+      add(tiers, timestamp);
+    }
+
+    /**
+     * Accounts an event whose raw data was aged out of the store.
+     *
+     * @param timestamp The timestamp of the event.
+     */
+    private void age(long timestamp) {
+      add(aged, timestamp);
+    }
+
+    /**
+     * Accounts an event in all tiers of a list.
+     *
+     * @param tiers The tiers.
+     * @param timestamp The timestamp of the event.
+     */
+    private static void add(List<ConcurrentSkipListMap<Long, Bucket>> tiers, long timestamp) {
+      for (int i = 0; i < tiers.size(); ++i) {
+        Bucket bucket = tiers.get(i).computeIfAbsent(TIERS[i].bucketOf(timestamp), index -> new Bucket());
+        bucket.count.increment();
+        bucket.first.accumulate(timestamp);
+        bucket.last.accumulate(timestamp);
+      }
+    }
+
+    /**
+     * Discounts a removed event from all tiers.
+     *
+     * @param timestamp The timestamp of the event.
+     */
+    private void subtract(long timestamp) {
+      for (int i = 0; i < tiers.size(); ++i) {
+        Bucket bucket = tiers.get(i).get(TIERS[i].bucketOf(timestamp));
+        if (bucket != null) {
+          bucket.count.decrement();
+          if (timestamp <= bucket.first.get() || timestamp >= bucket.last.get()) {
+            bucket.loose = true;
+          }
+        }
+      }
+    }
+  }
+
+  /** Mutable summary of a bucket, updated without locks. */
+  private static final class Bucket {
+
+    /** Number of events in the bucket. */
+    private final LongAdder count = new LongAdder();
+
+    /** Smallest timestamp seen in the bucket. */
+    private final LongAccumulator first = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+    /** Largest timestamp seen in the bucket. */
+    private final LongAccumulator last = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    /** Indicates whether an event at one of the bounds has been removed. */
+    private volatile boolean loose;
+  }
+
+}
@@ -0,0 +1,50 @@
+package net.intelie.challenges.service.rollup;
+
+/**
+ * Granularities of the pre-aggregated summaries kept by a {@link RollupIndex}.
+ * Event timestamps are assumed to be expressed in milliseconds.
+ */
+public enum RollupTier {
+
+  /** One bucket per second. */
+  SECOND(1000L),
+
+  /** One bucket per minute. */
+  MINUTE(60 * 1000L),
+
+  /** One bucket per hour. */
+  HOUR(60 * 60 * 1000L);
+
+  /** Width of the buckets, in milliseconds. */
+  private final long width;
+
+  /**
+   * Constructor. Creates a new instance of {@link RollupTier}.
+   *
+   * @param width Width of the buckets, in milliseconds.
+   */
+  private RollupTier(long width) {
+    this.width = width;
+  }
+
+  /**
+   * Gets the width of the buckets of this tier.
+   *
+   * @return The bucket width, in milliseconds.
+   */
+  public long width() {
+    return width;
+  }
+
+  /**
+   * Gets the index of the bucket holding a timestamp. Buckets are identified
+   * by index instead of start time because the index never overflows.
+   *
+   * @param timestamp The timestamp.
+   * @return The index of the bucket.
+   */
+  long bucketOf(long timestamp) {
+    return Math.floorDiv(timestamp, width);
+  }
+
+}
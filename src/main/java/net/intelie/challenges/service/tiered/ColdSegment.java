@@ -0,0 +1,268 @@
+package net.intelie.challenges.service.tiered;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongPredicate;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.io.MappedColumnarFile;
+
+/**
+ * An immutable, memory-mapped range of events of a type, sealed from the hot
+ * tier. The file never changes: removed events are recorded as tombstones on
+ * the heap and skipped by readers.
+ */
+final class ColdSegment {
+
+  /** Estimated heap footprint of a tombstone, in bytes. */
+  static final long TOMBSTONE_BYTES = 64;
+
+  /** The segment file. */
+  private final Path file;
+
+  /** The mapped timestamps. */
+  private final MappedColumnarFile column;
+
+  /** First timestamp of the segment. */
+  private final long first;
+
+  /** Last timestamp of the segment. */
+  private final long last;
+
+  /** Timestamps removed from the segment. */
+  private final Set<Long> tombstones = ConcurrentHashMap.newKeySet();
+
+  /** Number of tombstones, kept apart since the set size is not constant. */
+  private final LongAdder removed = new LongAdder();
+
+  /**
+   * Constructor. Creates a new instance of {@link ColdSegment} and maps its
+   * file.
+   *
+   * @param file The segment file, written by a columnar writer. It must hold
+   *        at least one timestamp.
+   * @throws IOException if the file could not be mapped.
+   */
+  ColdSegment(Path file) throws IOException {
+    this.file = file;
+    this.column = MappedColumnarFile.open(file);
+    this.first = column.timestampAt(0);
+    this.last = column.timestampAt(column.size() - 1);
+  }
+
+  /**
+   * Gets the first timestamp of the segment.
+   *
+   * @return The first timestamp.
+   */
+  long first() {
+    return first;
+  }
+
+  /**
+   * Gets the last timestamp of the segment.
+   *
+   * @return The last timestamp.
+   */
+  long last() {
+    return last;
+  }
+
+  /**
+   * Checks whether the segment may hold events within a range.
+   *
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return <code>false</code> if the range is outside the segment.
+   */
+  boolean overlaps(long startTime, long endTime) {
+    return startTime <= last && endTime > first;
+  }
+
+  /**
+   * Gets the number of events of the segment that were not removed.
+   *
+   * @return The number of live events.
+   */
+  long size() {
+    return column.size() - removed.sum();
+  }
+
+  /**
+   * Gets the number of mapped timestamps, removed or not.
+   *
+   * @return The number of timestamps in the file.
+   */
+  long mappedSize() {
+    return column.size();
+  }
+
+  /**
+   * Gets a mapped timestamp by its position.
+   *
+   * @param index The position.
+   * @return The timestamp.
+   */
+  long timestampAt(long index) {
+    return column.timestampAt(index);
+  }
+
+  /**
+   * Gets the approximate heap footprint of the segment. The mapped data is
+   * off the heap and is not accounted.
+   *
+   * @return The estimated number of bytes.
+   */
+  long estimatedBytes() {
+    return 128 + removed.sum() * TOMBSTONE_BYTES;
+  }
+
+  /**
+   * Checks whether the segment holds a live event.
+   *
+   * @param timestamp The timestamp of the event.
+   * @return <code>true</code> if the event is in the file and not removed.
+   */
+  boolean contains(long timestamp) {
+    return timestamp >= first && timestamp <= last && column.contains(timestamp) && !tombstones.contains(timestamp);
+  }
+
+  /**
+   * Removes an event from the segment.
+   *
+   * @param timestamp The timestamp of the event.
+   * @return <code>true</code> if the event was removed by this call.
+   */
+  boolean remove(long timestamp) {
+    if (timestamp >= first && timestamp <= last && column.contains(timestamp) && tombstones.add(timestamp)) {
+      removed.increment();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Creates an iterator over the live events within a range.
+   *
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @param remover Removes an event from the store, given its timestamp.
+   * @return The iterator.
+   */
+  EventIterator iterator(String type, long startTime, long endTime, LongPredicate remover) {
+    return new SegmentIterator(type, column.lowerBound(startTime), column.lowerBound(endTime), remover);
+  }
+
+  /**
+   * Deletes the segment file. The mapping stays readable by open iterators.
+   *
+   * @throws IOException if the file could not be deleted.
+   */
+  void delete() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  /** Iterates the live events of a range of positions of the segment. */
+  private final class SegmentIterator implements EventIterator {
+
+    /** The type of the events. */
+    private final String type;
+
+    /** Position after the range. */
+    private final long end;
+
+    /** Removes an event from the store. */
+    private LongPredicate remover;
+
+    /** Position of the next timestamp to be read. */
+    private long next;
+
+    /** The current event, or <code>null</code> if there is none. */
+    private Event current;
+
+    /** Indicates whether the iterator is closed. */
+    private boolean closed;
+
+    /**
+     * Constructor. Creates a new instance of {@link SegmentIterator}.
+     *
+     * @param type The type of the events.
+     * @param start Position of the first timestamp (inclusive).
+     * @param end Position after the last timestamp (exclusive).
+     * @param remover Removes an event from the store.
+     */
+    SegmentIterator(String type, long start, long end, LongPredicate remover) {
+      this.type = type;
+      this.next = start;
+      this.end = end;
+      this.remover = remover;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean moveNext() {
+      current = null;
+      while (!closed && next < end) {
+        long timestamp = column.timestampAt(next++);
+        if (removed.sum() == 0 || !tombstones.contains(timestamp)) {
+          current = new Event(type, timestamp);
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Event current() {
+      checkState();
+      return current;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+      checkState();
+      remover.test(current.timestamp());
+      current = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+      closed = true;
+      current = null;
+      remover = null;
+    }
+
+    /**
+     * Checks the iteration state.
+     *
+     * @throws IllegalStateException if the iterator is closed or has no
+     *         current event.
+     */
+    private void checkState() {
+      if (closed) {
+        throw new IllegalStateException("The iteration is closed.");
+      }
+      if (current == null) {
+        throw new IllegalStateException("There is no current event in iteration.");
+      }
+    }
+  }
+
+}
@@ -0,0 +1,739 @@
+package net.intelie.challenges.service.tiered;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStoreImpl;
+import net.intelie.challenges.service.MergingEventIterator;
+import net.intelie.challenges.service.PartitionStats;
+import net.intelie.challenges.service.SizedEventStore;
+import net.intelie.challenges.util.ThreadFactories;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Implements a {@link SizedEventStore} with two tiers: recent events are kept
+ * in a mutable {@link EventStoreImpl} on the heap, and older ones in
+ * immutable, memory-mapped segment files on local disk.
+ * <p>
+ * A background job seals, for each type, the events older than the newest
+ * one minus the hot retention: they are exported to a new segment file in
+ * the columnar format, the file is mapped, and the events are dropped from
+ * the hot tier. The mapped data lives off the heap and is paged in by the
+ * operating system on demand, so the heap only holds the recent events, the
+ * segment indexes and the tombstones of removed cold events.
+ * <p>
+ * Queries that only reach the hot tier read it directly. Queries that reach
+ * cold segments merge all overlapping sources in timestamp order; while a
+ * segment is being sealed, its events are briefly in both tiers, so merged
+ * iterators skip repeated timestamps. Removals through merged iterators are
+ * applied to both tiers.
+ * <p>
+ * A seal drops events from the hot tier under the iterators reading it, so
+ * every seal bumps a counter of its type once its segment is published and
+ * before any event is dropped. Iterators check the counter after each step;
+ * when it moved, the step may have missed sealed events, so they reopen their
+ * sources right after the last event they returned and take the step again.
+ * <p>
+ * Segments are not merged with each other. The tiers are process-scoped: the
+ * store does not recover its segments on restart, and deletes them when it is
+ * closed. Reopening them would not bring back a consistent store, since the
+ * hot tier and the tombstones of removed cold events only live on the heap, so
+ * removed events would come back and recent ones would be missing. Segment
+ * files left behind by a store that was not closed are deleted when a new
+ * store is created on the same directory, which therefore must not be shared
+ * by two live stores.
+ */
+public class TieredEventStore implements SizedEventStore, AutoCloseable {
+
+  /** Default period between two migrations, in milliseconds. */
+  public static final long DEFAULT_SEAL_PERIOD_MILLIS = 1000;
+
+  /** Names of the segment files: the type, a sequential id and the extension. */
+  private static final Pattern SEGMENT_NAME = Pattern.compile("(" + Arrays.stream(EventType.values()).map(
+    type -> Pattern.quote(type.toString())).collect(Collectors.joining("|")) + ")-\\d+\\.col");
+
+  /** Directory of the segment files. */
+  private final Path directory;
+
+  /** How far behind the newest event of a type an event is moved to disk. */
+  private final long hotRetention;
+
+  /** The hot tier. */
+  private final EventStoreImpl hot = new EventStoreImpl();
+
+  /** The cold tier of each type, mapped by type name. */
+  private final Map<String, ColdTier> cold = new ConcurrentHashMap<>();
+
+  /** Generates the names of the segment files. */
+  private final AtomicLong segmentIds = new AtomicLong();
+
+  /** Number of migrations that failed. */
+  private final LongAdder migrationFailures = new LongAdder();
+
+  /** Runs the migrations, or <code>null</code> if they are only manual. */
+  private final ScheduledExecutorService migrator;
+
+  /**
+   * Constructor. Creates a new instance of {@link TieredEventStore} that
+   * migrates events once per second.
+   *
+   * @param directory Directory of the segment files. It must exist.
+   * @param hotRetention How far behind the newest event of a type an event is
+   *        moved to disk, in the unit of the timestamps.
+   */
+  public TieredEventStore(Path directory, long hotRetention) {
+    this(directory, hotRetention, DEFAULT_SEAL_PERIOD_MILLIS);
+  }
+
+  /**
+   * Constructor. Creates a new instance of {@link TieredEventStore}.
+   *
+   * @param directory Directory of the segment files. It must exist, and
+   *        segment files left in it by a previous store are deleted.
+   * @param hotRetention How far behind the newest event of a type an event is
+   *        moved to disk, in the unit of the timestamps.
+   * @param sealPeriodMillis Period between two migrations, in milliseconds.
+   *        If it is not positive, events are only migrated by
+   *        {@link #sealBefore}.
+   */
+  public TieredEventStore(Path directory, long hotRetention, long sealPeriodMillis) {
+    Utils.requireNonNull(directory, "Directory cannot be null.");
+    if (hotRetention < 0) {
+      throw new IllegalArgumentException("Hot retention cannot be negative.");
+    }
+    this.directory = directory;
+    this.hotRetention = hotRetention;
+    deleteStaleSegments();
+    if (sealPeriodMillis > 0) {
+      migrator = Executors.newSingleThreadScheduledExecutor(ThreadFactories.daemon("event-store-tier-migrator"));
+      migrator.scheduleWithFixedDelay(this::migrate, sealPeriodMillis, sealPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+    else {
+      migrator = null;
+    }
+  }
+
+  /**
+   * Deletes the segment files left in the directory by a store that was not
+   * closed. They cannot be read back consistently, and their names would
+   * collide with the new segments.
+   */
+  private void deleteStaleSegments() {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.col")) {
+      for (Path file : files) {
+        if (SEGMENT_NAME.matcher(file.getFileName().toString()).matches()) {
+          Files.delete(file);
+        }
+      }
+    }
+    catch (IOException e) {
+      throw new IllegalStateException("Could not delete the stale segments of " + directory + ".", e);
+    }
+  }
+
+  /**
+   * Gets the cold tier of a type, creating it if needed.
+   *
+   * @param type The type.
+   * @return The cold tier.
+   */
+  private ColdTier tierOf(String type) {
+    ColdTier tier = cold.get(type);
+    return tier != null ? tier : cold.computeIfAbsent(type, key -> new ColdTier());
+  }
+
+  /**
+   * {@inheritDoc} Events are always inserted into the hot tier, unless an
+   * event with the same timestamp is already in a cold segment.
+   */
+  @Override
+  public void insert(Event event) {
+    Utils.checkEvent(event);
+    ColdTier tier = cold.get(event.type());
+    if (tier != null && event.timestamp() < tier.horizon && tier.contains(event.timestamp())) {
+      return;
+    }
+    hot.insert(event);
+  }
+
+  /**
+   * {@inheritDoc} The segments of the type are deleted; open iterators keep
+   * reading their mappings.
+   */
+  @Override
+  public void removeAll(String type) {
+    Utils.checkEventType(type);
+    hot.removeAll(type);
+    ColdTier tier = cold.remove(type);
+    if (tier == null) {
+      return;
+    }
+    tier.lock.lock();
+    try {
+      for (ColdSegment segment : tier.segments) {
+        deleteQuietly(segment);
+      }
+      tier.segments = ColdTier.NO_SEGMENTS;
+    }
+    finally {
+      tier.lock.unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public EventIterator query(String type, long startTime, long endTime) {
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    return new SealAwareEventIterator(type, tierOf(type), startTime, endTime);
+  }
+
+  /**
+   * Opens the sources of a query: the overlapping segments of the type and
+   * the hot tier.
+   *
+   * @param type The type of the events.
+   * @param tier The cold tier of the type.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The hot iterator, if no segment overlaps the range, or the merged
+   *         iterator over all sources.
+   */
+  private EventIterator openSources(String type, ColdTier tier, long startTime, long endTime) {
+    List<EventIterator> sources = new ArrayList<>();
+    for (ColdSegment segment : tier.segments) {
+      if (segment.overlaps(startTime, endTime)) {
+        sources.add(segment.iterator(type, startTime, endTime, timestamp -> remove(type, timestamp)));
+      }
+    }
+    if (sources.isEmpty()) {
+      return hot.query(type, startTime, endTime);
+    }
+    sources.add(hot.query(type, startTime, endTime));
+    return new DistinctEventIterator(new MergingEventIterator(sources), timestamp -> remove(type, timestamp));
+  }
+
+  /**
+   * Removes an event from both tiers.
+   *
+   * @param type The type of the event.
+   * @param timestamp The timestamp of the event.
+   * @return <code>true</code> if the event was removed from any tier.
+   */
+  private boolean remove(String type, long timestamp) {
+    boolean removed = false;
+    ColdTier tier = cold.get(type);
+    if (tier != null) {
+      for (ColdSegment segment : tier.segments) {
+        removed |= segment.remove(timestamp);
+      }
+    }
+    if (timestamp == Long.MAX_VALUE) {
+      return removed;
+    }
+    try (EventIterator iterator = hot.query(type, timestamp, timestamp + 1)) {
+      if (iterator.moveNext()) {
+        iterator.remove();
+        removed = true;
+      }
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Could not remove event.", e);
+    }
+    return removed;
+  }
+
+  /**
+   * Moves the events of a type older than a timestamp to a new cold segment.
+   * <p>
+   * The events are exported from the hot tier, and the segment is published
+   * before they are dropped from it. Open iterators notice the seal and add
+   * the segment to their sources, so the events are never missing from
+   * queries. An event removed from the hot tier between the export and the
+   * drop was removed by a caller, so it is recorded as a tombstone in the
+   * segment.
+   *
+   * @param type The type of the events.
+   * @param cutoff Events before this timestamp are moved (exclusive).
+   * @return The number of moved events.
+   * @throws IOException if the segment could not be written or mapped.
+   */
+  public long sealBefore(String type, long cutoff) throws IOException {
+    Utils.checkEventType(type);
+    ColdTier tier = tierOf(type);
+    tier.lock.lock();
+    try {
+      Path file = directory.resolve(type + "-" + segmentIds.incrementAndGet() + ".col");
+      long count;
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        count = hot.exportPartition(type, Long.MIN_VALUE, cutoff, channel);
+      }
+      if (count == 0) {
+        Files.delete(file);
+        return 0;
+      }
+      ColdSegment segment = new ColdSegment(file);
+      ColdSegment[] segments = Arrays.copyOf(tier.segments, tier.segments.length + 1);
+      segments[segments.length - 1] = segment;
+      tier.segments = segments;
+      tier.horizon = Math.max(tier.horizon, cutoff);
+      tier.seals.incrementAndGet();
+      dropMigrated(type, segment, cutoff);
+      return count;
+    }
+    finally {
+      tier.lock.unlock();
+    }
+  }
+
+  /**
+   * Drops from the hot tier the events that were moved to a segment, walking
+   * both in timestamp order.
+   *
+   * @param type The type of the events.
+   * @param segment The new segment.
+   * @param cutoff The end of the sealed range (exclusive).
+   */
+  private void dropMigrated(String type, ColdSegment segment, long cutoff) {
+    long size = segment.mappedSize();
+    long index = 0;
+    try (EventIterator iterator = hot.query(type, segment.first(), cutoff)) {
+      while (index < size && iterator.moveNext()) {
+        long timestamp = iterator.current().timestamp();
+        while (index < size && segment.timestampAt(index) < timestamp) {
+          segment.remove(segment.timestampAt(index++));
+        }
+        if (index < size && segment.timestampAt(index) == timestamp) {
+          iterator.remove();
+          ++index;
+        }
+      }
+      for (; index < size; ++index) {
+        segment.remove(segment.timestampAt(index));
+      }
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Could not drop migrated events.", e);
+    }
+  }
+
+  /**
+   * Seals, for every type, the events older than its newest event minus the
+   * hot retention. Failures are counted and the migration is retried on the
+   * next run.
+   */
+  private void migrate() {
+    for (Map.Entry<String, PartitionStats> entry : hot.statsCatalog().entrySet()) {
+      PartitionStats stats = entry.getValue();
+      if (stats.isEmpty() || stats.lastTimestamp() < Long.MIN_VALUE + hotRetention) {
+        continue;
+      }
+      long cutoff = stats.lastTimestamp() - hotRetention;
+      if (stats.firstTimestamp() < cutoff) {
+        try {
+          sealBefore(entry.getKey(), cutoff);
+        }
+        catch (IOException | RuntimeException e) {
+          migrationFailures.increment();
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the number of migrations that failed.
+   *
+   * @return The number of failed migrations.
+   */
+  public long migrationFailures() {
+    return migrationFailures.sum();
+  }
+
+  /**
+   * Gets the number of events of a type held by the hot tier.
+   *
+   * @param type The type of the events.
+   * @return The number of hot events.
+   */
+  public long hotSize(String type) {
+    return hot.size(type);
+  }
+
+  /**
+   * Gets the number of cold segments of a type.
+   *
+   * @param type The type of the events.
+   * @return The number of segments.
+   */
+  public int coldSegments(String type) {
+    Utils.checkEventType(type);
+    ColdTier tier = cold.get(type);
+    return tier == null ? 0 : tier.segments.length;
+  }
+
+  /**
+   * {@inheritDoc} The value is off while a segment is being sealed, since its
+   * events are briefly counted in both tiers.
+   */
+  @Override
+  public long size(String type) {
+    long size = hot.size(type);
+    ColdTier tier = cold.get(type);
+    if (tier != null) {
+      for (ColdSegment segment : tier.segments) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * {@inheritDoc} Cold events cost almost no heap, so the estimate is the heap
+   * footprint of both tiers divided by the number of events.
+   */
+  @Override
+  public long estimatedBytesPerEvent() {
+    long size = size();
+    if (size == 0) {
+      return EventStoreImpl.ESTIMATED_BYTES_PER_EVENT;
+    }
+    return (estimatedBytes() + size - 1) / size;
+  }
+
+  /**
+   * {@inheritDoc} Only the heap is accounted: the hot events, the indexes of
+   * the segments and their tombstones.
+   */
+  @Override
+  public long estimatedBytes() {
+    long bytes = hot.estimatedBytes();
+    for (ColdTier tier : cold.values()) {
+      for (ColdSegment segment : tier.segments) {
+        bytes += segment.estimatedBytes();
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Deletes a segment file, ignoring failures: the file is only garbage once
+   * the segment is unlinked.
+   *
+   * @param segment The segment.
+   */
+  private static void deleteQuietly(ColdSegment segment) {
+    try {
+      segment.delete();
+    }
+    catch (IOException e) {
+      /* The file is left behind; it is never read again. */
+    }
+  }
+
+  /**
+   * {@inheritDoc} Stops the migrations and deletes the segment files.
+   */
+  @Override
+  public void close() {
+    if (migrator != null) {
+      migrator.shutdownNow();
+    }
+    for (ColdTier tier : cold.values()) {
+      for (ColdSegment segment : tier.segments) {
+        deleteQuietly(segment);
+      }
+    }
+  }
+
+  /** The cold segments of a type. */
+  private static final class ColdTier {
+
+    /** Shared empty array of segments. */
+    private static final ColdSegment[] NO_SEGMENTS = new ColdSegment[0];
+
+    /** The segments, replaced as a whole under {@link #lock}. */
+    private volatile ColdSegment[] segments = NO_SEGMENTS;
+
+    /** All sealed events are before this timestamp. */
+    private volatile long horizon = Long.MIN_VALUE;
+
+    /**
+     * Number of segments published. It is bumped after the segments are
+     * replaced and before the sealed events leave the hot tier.
+     */
+    private final AtomicLong seals = new AtomicLong();
+
+    /** Serializes the changes of the segments. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Checks whether any segment holds a live event.
+     *
+     * @param timestamp The timestamp of the event.
+     * @return <code>true</code> if the event is in a segment.
+     */
+    private boolean contains(long timestamp) {
+      for (ColdSegment segment : segments) {
+        if (segment.contains(timestamp)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Reads the sources of a query, and reopens them after the last returned
+   * event whenever a seal of the type may have dropped events from under the
+   * hot iterator.
+   */
+  private final class SealAwareEventIterator implements EventIterator {
+
+    /** The type of the events. */
+    private final String type;
+
+    /** The cold tier of the type. */
+    private final ColdTier tier;
+
+    /** Start timestamp (inclusive). */
+    private final long startTime;
+
+    /** End timestamp (exclusive). */
+    private final long endTime;
+
+    /** The open sources. */
+    private EventIterator sources;
+
+    /** Number of seals of the tier when the sources were opened. */
+    private long seals;
+
+    /** Indicates whether there is a current event. */
+    private boolean hasCurrent;
+
+    /** Indicates whether an event was returned. */
+    private boolean started;
+
+    /** Timestamp of the last returned event. */
+    private long last;
+
+    /**
+     * Constructor. Creates a new instance of {@link SealAwareEventIterator}.
+     *
+     * @param type The type of the events.
+     * @param tier The cold tier of the type.
+     * @param startTime Start timestamp (inclusive).
+     * @param endTime End timestamp (exclusive).
+     */
+    private SealAwareEventIterator(String type, ColdTier tier, long startTime, long endTime) {
+      this.type = type;
+      this.tier = tier;
+      this.startTime = startTime;
+      this.endTime = endTime;
+      open(startTime);
+    }
+
+    /**
+     * Opens the sources from a timestamp on.
+     *
+     * @param from Start timestamp (inclusive).
+     */
+    private void open(long from) {
+      seals = tier.seals.get();
+      sources = openSources(type, tier, from, endTime);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean moveNext() {
+      while (true) {
+        boolean moved = sources.moveNext();
+        if (tier.seals.get() == seals) {
+          hasCurrent = moved;
+          if (moved) {
+            started = true;
+            last = sources.current().timestamp();
+          }
+          return moved;
+        }
+        closeSources();
+        if (started && last + 1 >= endTime) {
+          sources = EventIterator.empty();
+        }
+        else {
+          open(started ? last + 1 : startTime);
+        }
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Event current() {
+      checkState();
+      return sources.current();
+    }
+
+    /**
+     * {@inheritDoc} If a seal ran since the event was read, the event may
+     * have moved to a segment, so it is removed from both tiers.
+     */
+    @Override
+    public void remove() {
+      checkState();
+      sources.remove();
+      hasCurrent = false;
+      if (tier.seals.get() != seals) {
+        TieredEventStore.this.remove(type, last);
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws Exception {
+      hasCurrent = false;
+      sources.close();
+    }
+
+    /**
+     * Closes the current sources before they are replaced.
+     */
+    private void closeSources() {
+      try {
+        sources.close();
+      }
+      catch (Exception e) {
+        throw new IllegalStateException("Could not close the sources of the query.", e);
+      }
+    }
+
+    /**
+     * Checks the iteration state.
+     *
+     * @throws IllegalStateException if there is no current event.
+     */
+    private void checkState() {
+      if (!hasCurrent) {
+        throw new IllegalStateException("There is no current event in iteration.");
+      }
+    }
+  }
+
+  /**
+   * Skips the repeated timestamps of a merged iteration, and removes events
+   * from both tiers.
+   */
+  private static final class DistinctEventIterator implements EventIterator {
+
+    /** The merged iterator. */
+    private final EventIterator merged;
+
+    /** Removes an event from both tiers. */
+    private final LongPredicate remover;
+
+    /** Indicates whether there is a current event. */
+    private boolean hasCurrent;
+
+    /** Indicates whether an event was visited. */
+    private boolean started;
+
+    /** Timestamp of the last visited event. */
+    private long previous;
+
+    /**
+     * Constructor. Creates a new instance of {@link DistinctEventIterator}.
+     *
+     * @param merged The merged iterator.
+     * @param remover Removes an event from both tiers.
+     */
+    private DistinctEventIterator(EventIterator merged, LongPredicate remover) {
+      this.merged = merged;
+      this.remover = remover;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean moveNext() {
+      while (merged.moveNext()) {
+        long timestamp = merged.current().timestamp();
+        if (!started || timestamp != previous) {
+          started = true;
+          previous = timestamp;
+          hasCurrent = true;
+          return true;
+        }
+      }
+      hasCurrent = false;
+      return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Event current() {
+      checkState();
+      return merged.current();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+      checkState();
+      remover.test(previous);
+      hasCurrent = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws Exception {
+      hasCurrent = false;
+      merged.close();
+    }
+
+    /**
+     * Checks the iteration state.
+     *
+     * @throws IllegalStateException if there is no current event.
+     */
+    private void checkState() {
+      if (!hasCurrent) {
+        throw new IllegalStateException("There is no current event in iteration.");
+      }
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+package net.intelie.challenges.service.window;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assembles tumbling and sliding windows from pane counts.
+ * <p>
+ * Every window is a whole number of panes (see {@link WindowSpec#pane()}), so
+ * the count of a window is a difference of prefix sums over the sorted panes.
+ * Only the windows that hold at least one non-empty pane are visited, which
+ * makes the work proportional to the number of panes plus the number of
+ * reported windows, and independent of the width of the range.
+ */
+final class PaneWindows {
+
+  /** Indexes of the non-empty panes, in increasing order. */
+  private long[] panes;
+
+  /** Number of events before each pane, plus the total at the end. */
+  private long[] prefix;
+
+  /** Number of panes. */
+  private int length;
+
+  /**
+   * Constructor. Creates a new instance of {@link PaneWindows}.
+   *
+   * @param capacity Expected number of panes.
+   */
+  PaneWindows(int capacity) {
+    panes = new long[Math.max(capacity, 1)];
+    prefix = new long[panes.length + 1];
+  }
+
+  /**
+   * Appends a pane. Panes must be appended in increasing order.
+   *
+   * @param pane The index of the pane.
+   * @param count The number of events in the pane. It must be positive.
+   */
+  void append(long pane, long count) {
+    if (length == panes.length) {
+      panes = Arrays.copyOf(panes, length * 2);
+      prefix = Arrays.copyOf(prefix, length * 2 + 1);
+    }
+    panes[length] = pane;
+    prefix[length + 1] = prefix[length] + count;
+    ++length;
+  }
+
+  /**
+   * Gets the index of the first pane at or after a pane index.
+   *
+   * @param pane The pane index.
+   * @return The position of the first such pane, or the number of panes.
+   */
+  private int lowerBound(long pane) {
+    int position = Arrays.binarySearch(panes, 0, length, pane);
+    return position >= 0 ? position : -position - 1;
+  }
+
+  /**
+   * Reports the windows that start within a range and hold events.
+   *
+   * @param spec The window specification.
+   * @param startTime Start of the range of window starts (inclusive).
+   * @param endTime End of the range of window starts (exclusive).
+   * @return The windows, in time order.
+   */
+  List<WindowResult> windows(WindowSpec spec, long startTime, long endTime) {
+    long pane = spec.pane();
+    long step = spec.slide() / pane;
+    long span = spec.size() / pane;
+    long next = ceilDiv(startTime, spec.slide());
+    long last = ceilDiv(endTime, spec.slide()) - 1;
+
+    List<WindowResult> windows = new ArrayList<>();
+    for (int i = 0; i < length && next <= last; ++i) {
+      long from = Math.max(ceilDiv(panes[i] - span + 1, step), next);
+      long to = Math.min(Math.floorDiv(panes[i], step), last);
+      for (long window = from; window <= to; ++window) {
+        long count = prefix[lowerBound(window * step + span)] - prefix[lowerBound(window * step)];
+        long start = window * spec.slide();
+        windows.add(new WindowResult(start, start + spec.size(), count));
+      }
+      next = Math.max(next, to + 1);
+    }
+    return windows;
+  }
+
+  /**
+   * Divides rounding towards positive infinity.
+   *
+   * @param dividend The dividend.
+   * @param divisor The divisor. It must be positive.
+   * @return The quotient, rounded up.
+   */
+  static long ceilDiv(long dividend, long divisor) {
+    return -Math.floorDiv(-dividend, divisor);
+  }
+
+}
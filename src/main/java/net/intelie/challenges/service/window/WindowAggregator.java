@@ -0,0 +1,155 @@
+package net.intelie.challenges.service.window;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Computes windowed aggregates of the events of a type in a single pass over a
+ * range of an {@link EventStore}.
+ * <p>
+ * Counting each window with its own query visits every event once per window
+ * that holds it. Here the events are read by one query, in time order: for
+ * tumbling and sliding windows they are folded into pane counts, from which
+ * every window is assembled, and sessions are closed as soon as the next event
+ * comes after the gap. To keep the results up to date as events arrive, use a
+ * {@link WindowedAggregation} instead.
+ */
+public final class WindowAggregator {
+
+  /** Prevents instantiation. */
+  private WindowAggregator() {
+  }
+
+  /**
+   * Aggregates the events of a type into the windows that start within a
+   * range. Windows are reported with all of their events, even the ones after
+   * the end of the range, and windows without events are omitted. Events
+   * before the start of the range are not read, so a session is never
+   * reported as starting before it.
+   *
+   * @param store The store to be read.
+   * @param type The type of the events.
+   * @param startTime Start of the range of window starts (inclusive).
+   * @param endTime End of the range of window starts (exclusive).
+   * @param spec The window specification.
+   * @return The windows, in time order.
+   */
+  public static List<WindowResult> aggregate(EventStore store, String type, long startTime, long endTime,
+    WindowSpec spec) {
+    Utils.requireNonNull(store, "Store cannot be null.");
+    Utils.checkEventType(type);
+    Utils.checkQueryInterval(startTime, endTime);
+    Utils.requireNonNull(spec, "Window specification cannot be null.");
+    try {
+      if (spec.kind() == WindowSpec.Kind.SESSION) {
+        return sessions(store, type, startTime, endTime, spec.gap());
+      }
+      return slidingWindows(store, type, startTime, endTime, spec);
+    }
+    catch (RuntimeException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Could not aggregate events.", e);
+    }
+  }
+
+  /**
+   * Aggregates events into tumbling or sliding windows.
+   *
+   * @param store The store to be read.
+   * @param type The type of the events.
+   * @param startTime Start of the range of window starts (inclusive).
+   * @param endTime End of the range of window starts (exclusive).
+   * @param spec The window specification.
+   * @return The windows, in time order.
+   * @throws Exception if the query iterator could not be closed.
+   */
+  private static List<WindowResult> slidingWindows(EventStore store, String type, long startTime, long endTime,
+    WindowSpec spec) throws Exception {
+    long first = PaneWindows.ceilDiv(startTime, spec.slide());
+    long last = PaneWindows.ceilDiv(endTime, spec.slide()) - 1;
+    if (first > last) {
+      return Collections.emptyList();
+    }
+    long lastStart = last * spec.slide();
+    long queryEnd = lastStart > Long.MAX_VALUE - spec.size() ? Long.MAX_VALUE : lastStart + spec.size();
+
+    long pane = spec.pane();
+    PaneWindows panes = new PaneWindows(64);
+    try (EventIterator iterator = store.query(type, first * spec.slide(), queryEnd)) {
+      long current = 0;
+      long count = 0;
+      while (iterator.moveNext()) {
+        long index = Math.floorDiv(iterator.current().timestamp(), pane);
+        if (count > 0 && index != current) {
+          panes.append(current, count);
+          count = 0;
+        }
+        current = index;
+        ++count;
+      }
+      if (count > 0) {
+        panes.append(current, count);
+      }
+    }
+    return panes.windows(spec, startTime, endTime);
+  }
+
+  /**
+   * Aggregates events into session windows.
+   *
+   * @param store The store to be read.
+   * @param type The type of the events.
+   * @param startTime Start of the range of session starts (inclusive).
+   * @param endTime End of the range of session starts (exclusive).
+   * @param gap Largest distance between consecutive events of a session.
+   * @return The sessions, in time order.
+   * @throws Exception if the query iterator could not be closed.
+   */
+  private static List<WindowResult> sessions(EventStore store, String type, long startTime, long endTime, long gap)
+    throws Exception {
+    List<WindowResult> sessions = new ArrayList<>();
+    try (EventIterator iterator = store.query(type, startTime, Long.MAX_VALUE)) {
+      long start = 0;
+      long previous = 0;
+      long count = 0;
+      while (iterator.moveNext()) {
+        long timestamp = iterator.current().timestamp();
+        if (count > 0 && timestamp - previous > gap) {
+          sessions.add(new WindowResult(start, sessionEnd(previous, gap), count));
+          count = 0;
+        }
+        if (count == 0) {
+          if (timestamp >= endTime) {
+            return sessions;
+          }
+          start = timestamp;
+        }
+        previous = timestamp;
+        ++count;
+      }
+      if (count > 0) {
+        sessions.add(new WindowResult(start, sessionEnd(previous, gap), count));
+      }
+    }
+    return sessions;
+  }
+
+  /**
+   * Gets the end of a session, which is its last event plus the gap.
+   *
+   * @param last The timestamp of the last event of the session.
+   * @param gap The session gap.
+   * @return The end of the session (exclusive).
+   */
+  static long sessionEnd(long last, long gap) {
+    return last >= Long.MAX_VALUE - gap ? Long.MAX_VALUE : last + gap + 1;
+  }
+
+}
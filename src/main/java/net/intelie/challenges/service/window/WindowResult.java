@@ -0,0 +1,91 @@
+package net.intelie.challenges.service.window;
+
+/**
+ * An immutable snapshot of the aggregate of the events that fall into a
+ * window.
+ */
+public final class WindowResult {
+
+  /** Start time of the window (inclusive). */
+  private final long start;
+
+  /** End time of the window (exclusive). */
+  private final long end;
+
+  /** Number of events in the window. */
+  private final long count;
+
+  /**
+   * Constructor. Creates a new instance of {@link WindowResult}.
+   *
+   * @param start Start time of the window (inclusive).
+   * @param end End time of the window (exclusive).
+   * @param count Number of events in the window.
+   */
+  WindowResult(long start, long end, long count) {
+    this.start = start;
+    this.end = end;
+    this.count = count;
+  }
+
+  /**
+   * Gets the start time of the window.
+   *
+   * @return The start time (inclusive).
+   */
+  public long start() {
+    return start;
+  }
+
+  /**
+   * Gets the end time of the window. A session ends right after its last
+   * event plus the gap, the first time at which an event would start a new
+   * session instead of joining it.
+   *
+   * @return The end time (exclusive).
+   */
+  public long end() {
+    return end;
+  }
+
+  /**
+   * Gets the number of events in the window.
+   *
+   * @return The event count.
+   */
+  public long count() {
+    return count;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof WindowResult)) {
+      return false;
+    }
+    WindowResult other = (WindowResult) obj;
+    return start == other.start && end == other.end && count == other.count;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Long.hashCode(start) * 31 + Long.hashCode(count);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "[" + start + ", " + end + "): " + count;
+  }
+
+}
@@ -0,0 +1,160 @@
+package net.intelie.challenges.service.window;
+
+/**
+ * Describes how events are grouped into time windows.
+ * <p>
+ * Tumbling and sliding windows are aligned to multiples of their slide, as the
+ * buckets of a rollup tier are, so the same timestamp always falls into the
+ * same windows. A tumbling window is a sliding window whose slide equals its
+ * size. Session windows are not aligned: a session starts at an event and
+ * keeps growing while each event follows the previous one within the gap.
+ */
+public final class WindowSpec {
+
+  /** Kinds of windows. */
+  public enum Kind {
+
+    /** Adjacent windows of a fixed size. */
+    TUMBLING,
+
+    /** Windows of a fixed size starting at every multiple of a slide. */
+    SLIDING,
+
+    /** Windows of events separated by less than a gap. */
+    SESSION
+  }
+
+  /** The kind of the windows. */
+  private final Kind kind;
+
+  /** Size of the windows, or zero for sessions. */
+  private final long size;
+
+  /** Distance between the starts of the windows, or zero for sessions. */
+  private final long slide;
+
+  /** Largest distance between events of a session, or zero for the others. */
+  private final long gap;
+
+  /**
+   * Constructor. Creates a new instance of {@link WindowSpec}.
+   *
+   * @param kind The kind of the windows.
+   * @param size Size of the windows.
+   * @param slide Distance between the starts of the windows.
+   * @param gap Largest distance between events of a session.
+   */
+  private WindowSpec(Kind kind, long size, long slide, long gap) {
+    this.kind = kind;
+    this.size = size;
+    this.slide = slide;
+    this.gap = gap;
+  }
+
+  /**
+   * Creates the specification of tumbling windows.
+   *
+   * @param size Size of the windows.
+   * @return The specification.
+   * @throws IllegalArgumentException if the size is not positive.
+   */
+  public static WindowSpec tumbling(long size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Window size must be positive.");
+    }
+    return new WindowSpec(Kind.TUMBLING, size, size, 0);
+  }
+
+  /**
+   * Creates the specification of sliding windows.
+   *
+   * @param size Size of the windows.
+   * @param slide Distance between the starts of consecutive windows.
+   * @return The specification.
+   * @throws IllegalArgumentException if the size or the slide is not
+   *         positive.
+   */
+  public static WindowSpec sliding(long size, long slide) {
+    if (size <= 0 || slide <= 0) {
+      throw new IllegalArgumentException("Window size and slide must be positive.");
+    }
+    return new WindowSpec(Kind.SLIDING, size, slide, 0);
+  }
+
+  /**
+   * Creates the specification of session windows.
+   *
+   * @param gap Largest distance between consecutive events of a session.
+   * @return The specification.
+   * @throws IllegalArgumentException if the gap is negative.
+   */
+  public static WindowSpec session(long gap) {
+    if (gap < 0) {
+      throw new IllegalArgumentException("Session gap cannot be negative.");
+    }
+    return new WindowSpec(Kind.SESSION, 0, 0, gap);
+  }
+
+  /**
+   * Gets the kind of the windows.
+   *
+   * @return The window kind.
+   */
+  public Kind kind() {
+    return kind;
+  }
+
+  /**
+   * Gets the size of the windows.
+   *
+   * @return The window size, or zero for sessions.
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Gets the distance between the starts of consecutive windows.
+   *
+   * @return The slide, or zero for sessions.
+   */
+  public long slide() {
+    return slide;
+  }
+
+  /**
+   * Gets the largest distance between consecutive events of a session.
+   *
+   * @return The gap, or zero for tumbling and sliding windows.
+   */
+  public long gap() {
+    return gap;
+  }
+
+  /**
+   * Gets the width of the panes the windows are made of: the largest width
+   * that divides both the size and the slide, so every window is a whole
+   * number of panes and each event is counted in one pane only.
+   *
+   * @return The pane width.
+   */
+  long pane() {
+    long a = size;
+    long b = slide;
+    while (b != 0) {
+      long r = a % b;
+      a = b;
+      b = r;
+    }
+    return a;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return kind == Kind.SESSION ? "SESSION(gap=" + gap + ")" : kind + "(size=" + size + ", slide=" + slide + ")";
+  }
+
+}
@@ -0,0 +1,264 @@
+package net.intelie.challenges.service.window;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.service.EventStoreListener;
+import net.intelie.challenges.service.ObservableEventStore;
+import net.intelie.challenges.util.Utils;
+
+/**
+ * Keeps the windowed aggregates of the events of a type up to date as the
+ * events of an {@link ObservableEventStore} change.
+ * <p>
+ * Tumbling and sliding windows are kept as pane counts, updated without locks
+ * by each insertion and removal, as the buckets of a rollup index are; a
+ * window is assembled from its panes when it is read. Sessions are kept as
+ * spans that an insertion extends or merges, under a lock, since a single
+ * event may join two sessions. A removal discounts its event from its session
+ * but does not split it, so after removals a session may span gaps it would
+ * not have had if the removed events never existed.
+ * <p>
+ * Like the rollup index, events stored before the aggregation is created are
+ * not accounted; they can be aggregated once with {@link WindowAggregator}.
+ */
+public class WindowedAggregation implements EventStoreListener, AutoCloseable {
+
+  /** The observed store. */
+  private final ObservableEventStore store;
+
+  /** The type of the aggregated events. */
+  private final String type;
+
+  /** The window specification. */
+  private final WindowSpec spec;
+
+  /** Event counts of the tumbling or sliding panes, mapped by pane index. */
+  private final ConcurrentSkipListMap<Long, LongAdder> panes = new ConcurrentSkipListMap<>();
+
+  /** Sessions mapped by their start. Guarded by {@link #sessionLock}. */
+  private final TreeMap<Long, Session> sessions = new TreeMap<>();
+
+  /** Guards the sessions. */
+  private final ReentrantLock sessionLock = new ReentrantLock();
+
+  /**
+   * Constructor. Creates a new instance of {@link WindowedAggregation} and
+   * attaches it to a store.
+   *
+   * @param store The store to be observed.
+   * @param type The type of the aggregated events.
+   * @param spec The window specification.
+   */
+  public WindowedAggregation(ObservableEventStore store, String type, WindowSpec spec) {
+    Utils.requireNonNull(store, "Store cannot be null.");
+    Utils.checkEventType(type);
+    Utils.requireNonNull(spec, "Window specification cannot be null.");
+    this.store = store;
+    this.type = type;
+    this.spec = spec;
+    store.addListener(this);
+  }
+
+  /**
+   * Gets the window specification.
+   *
+   * @return The window specification.
+   */
+  public WindowSpec spec() {
+    return spec;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onInsert(Event event) {
+    if (!type.equals(event.type())) {
+      return;
+    }
+    if (spec.kind() != WindowSpec.Kind.SESSION) {
+      panes.computeIfAbsent(Math.floorDiv(event.timestamp(), spec.pane()), pane -> new LongAdder()).increment();
+      return;
+    }
+    sessionLock.lock();
+    try {
+      join(event.timestamp());
+    }
+    finally {
+      sessionLock.unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onRemove(Event event) {
+    if (!type.equals(event.type())) {
+      return;
+    }
+    if (spec.kind() != WindowSpec.Kind.SESSION) {
+      LongAdder pane = panes.get(Math.floorDiv(event.timestamp(), spec.pane()));
+      if (pane != null) {
+        pane.decrement();
+      }
+      return;
+    }
+    sessionLock.lock();
+    try {
+      Map.Entry<Long, Session> entry = sessions.floorEntry(event.timestamp());
+      if (entry != null && event.timestamp() <= entry.getValue().last && --entry.getValue().count == 0) {
+        sessions.remove(entry.getKey());
+      }
+    }
+    finally {
+      sessionLock.unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onRemoveAll(String type) {
+    if (!this.type.equals(type)) {
+      return;
+    }
+    panes.clear();
+    sessionLock.lock();
+    try {
+      sessions.clear();
+    }
+    finally {
+      sessionLock.unlock();
+    }
+  }
+
+  /**
+   * Adds an event to the session it extends, merging the sessions it bridges,
+   * or starts a new session.
+   *
+   * @param timestamp The timestamp of the event.
+   */
+  private void join(long timestamp) {
+    Map.Entry<Long, Session> before = sessions.floorEntry(timestamp);
+    Map.Entry<Long, Session> after = sessions.higherEntry(timestamp);
+    Session joined = null;
+    if (before != null && timestamp - before.getValue().last <= spec.gap()) {
+      joined = before.getValue();
+      joined.last = Math.max(joined.last, timestamp);
+      ++joined.count;
+    }
+    if (after != null && after.getKey() - timestamp <= spec.gap()) {
+      Session next = sessions.remove(after.getKey());
+      if (joined == null) {
+        next.start = timestamp;
+        ++next.count;
+        joined = next;
+      }
+      else {
+        joined.last = next.last;
+        joined.count += next.count;
+      }
+    }
+    if (joined == null) {
+      joined = new Session(timestamp);
+    }
+    sessions.put(joined.start, joined);
+  }
+
+  /**
+   * Gets the current aggregates of the windows that start within a range.
+   * Windows without events are omitted.
+   *
+   * @param startTime Start of the range of window starts (inclusive).
+   * @param endTime End of the range of window starts (exclusive).
+   * @return The windows, in time order.
+   */
+  public List<WindowResult> results(long startTime, long endTime) {
+    Utils.checkQueryInterval(startTime, endTime);
+    if (spec.kind() == WindowSpec.Kind.SESSION) {
+      return sessions(startTime, endTime);
+    }
+
+    long first = PaneWindows.ceilDiv(startTime, spec.slide());
+    long last = PaneWindows.ceilDiv(endTime, spec.slide()) - 1;
+    PaneWindows snapshot = new PaneWindows(64);
+    if (first <= last) {
+      long step = spec.slide() / spec.pane();
+      long span = spec.size() / spec.pane();
+      long lastPane = last * step > Long.MAX_VALUE - span ? Long.MAX_VALUE : last * step + span - 1;
+      NavigableMap<Long, LongAdder> range = panes.subMap(first * step, true, lastPane, true);
+      for (Map.Entry<Long, LongAdder> pane : range.entrySet()) {
+        long count = pane.getValue().sum();
+        if (count > 0) {
+          snapshot.append(pane.getKey(), count);
+        }
+      }
+    }
+    return snapshot.windows(spec, startTime, endTime);
+  }
+
+  /**
+   * Gets the sessions that start within a range.
+   *
+   * @param startTime Start of the range of session starts (inclusive).
+   * @param endTime End of the range of session starts (exclusive).
+   * @return The sessions, in time order.
+   */
+  private List<WindowResult> sessions(long startTime, long endTime) {
+    List<WindowResult> results = new ArrayList<>();
+    sessionLock.lock();
+    try {
+      for (Session session : sessions.subMap(startTime, endTime).values()) {
+        results.add(new WindowResult(session.start, WindowAggregator.sessionEnd(session.last, spec.gap()),
+          session.count));
+      }
+    }
+    finally {
+      sessionLock.unlock();
+    }
+    return results;
+  }
+
+  /**
+   * {@inheritDoc} Detaches the aggregation from the store.
+   */
+  @Override
+  public void close() {
+    store.removeListener(this);
+  }
+
+  /** A session window under construction. */
+  private static final class Session {
+
+    /** Timestamp of the first event. */
+    private long start;
+
+    /** Timestamp of the last event. */
+    private long last;
+
+    /** Number of events. */
+    private long count;
+
+    /**
+     * Constructor. Creates a session with a single event.
+     *
+     * @param timestamp The timestamp of the event.
+     */
+    private Session(long timestamp) {
+      start = timestamp;
+      last = timestamp;
+      count = 1;
+    }
+  }
+
+}
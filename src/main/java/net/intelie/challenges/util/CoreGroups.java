@@ -0,0 +1,93 @@
+package net.intelie.challenges.util;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Assigns threads to core groups, such as the sockets or NUMA nodes of a
+ * host, so the stores can give each group its own copy of hot, read-mostly
+ * data (see <code>EventStoreImpl.setReadReplicas</code>).
+ * <p>
+ * Java cannot tell which core a thread runs on, nor pin it, so the group of a
+ * thread is declared by the application: threads that are pinned to the
+ * cores of a group call {@link #bind(int)}, or are created by
+ * {@link #threads(String, int)}. Unbound threads are spread over the groups by
+ * their id. On Linux, the JVM gives its threads their Java names, so a thread
+ * group can be pinned from outside, e.g.:
+ *
+ * <pre>
+ * for tid in $(ps -L -o tid=,comm= -p $PID | awk '$2 ~ /^readers-0/ {print $1}'); do
+ *   taskset -p -c 0-15 $tid
+ * done
+ * </pre>
+ *
+ * Memory allocated by a thread comes from the node of its core when the JVM
+ * runs with <code>-XX:+UseNUMA</code>, which is why replicas are copied by the
+ * threads of their own group.
+ */
+public final class CoreGroups {
+
+  /** The group of each bound thread, plus one; zero when unbound. */
+  private static final ThreadLocal<int[]> BOUND = ThreadLocal.withInitial(() -> new int[1]);
+
+  /** Prevents instantiation. */
+  private CoreGroups() {
+  }
+
+  /**
+   * Binds the current thread to a group.
+   *
+   * @param group The group, from zero.
+   */
+  public static void bind(int group) {
+    if (group < 0) {
+      throw new IllegalArgumentException("Group cannot be negative.");
+    }
+    BOUND.get()[0] = group + 1;
+  }
+
+  /**
+   * Unbinds the current thread, which is spread by its id again.
+   */
+  public static void unbind() {
+    BOUND.remove();
+  }
+
+  /**
+   * Gets the group of the current thread.
+   *
+   * @param groups Number of groups.
+   * @return The bound group modulo the number of groups, or a group picked by
+   *         the id of an unbound thread.
+   */
+  public static int of(int groups) {
+    int bound = BOUND.get()[0];
+    if (bound > 0) {
+      return (bound - 1) % groups;
+    }
+    return (int) (Thread.currentThread().getId() % groups);
+  }
+
+  /**
+   * Creates a factory of daemon platform threads bound to a group. The
+   * threads are named after the name and the group, so they can be found
+   * and pinned from outside.
+   *
+   * @param name The name of the threads.
+   * @param group The group, from zero.
+   * @return The thread factory.
+   */
+  public static ThreadFactory threads(String name, int group) {
+    if (group < 0) {
+      throw new IllegalArgumentException("Group cannot be negative.");
+    }
+    return runnable -> {
+      Thread thread = new Thread(() -> {
+        bind(group);
+        runnable.run();
+      }, name + "-" + group);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+}
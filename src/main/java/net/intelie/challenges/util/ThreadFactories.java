@@ -0,0 +1,97 @@
+package net.intelie.challenges.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads used by the stores for their background work.
+ * <p>
+ * The project is built for Java 11, so it cannot refer to virtual threads
+ * directly. When it runs on Java 21 or later, {@link #forBlockingWork} looks
+ * them up reflectively, once, and threads that mostly wait on sockets or
+ * queues become virtual threads, which do not hold a platform thread while
+ * blocked. On older runtimes, it falls back to daemon platform threads.
+ * <p>
+ * Virtual threads only release their carrier when they block outside a
+ * monitor, which is why the stores guard their blocking sections with
+ * {@link java.util.concurrent.locks.Lock locks} rather than
+ * <code>synchronized</code>.
+ */
+public final class ThreadFactories {
+
+  /**
+   * <code>Thread.ofVirtual()</code>, <code>Thread.Builder.name(String)</code>
+   * and <code>Thread.Builder.factory()</code>, or <code>null</code> if the
+   * runtime has no virtual threads.
+   */
+  private static final Method[] VIRTUAL_BUILDER = lookupVirtualBuilder();
+
+  /** Prevents instantiation. */
+  private ThreadFactories() {
+  }
+
+  /**
+   * Looks up the methods that build a virtual thread factory.
+   *
+   * @return The methods, or <code>null</code> if virtual threads are not
+   *         available.
+   */
+  private static Method[] lookupVirtualBuilder() {
+    try {
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      return new Method[] { Thread.class.getMethod("ofVirtual"), builder.getMethod("name", String.class), builder
+        .getMethod("factory") };
+    }
+    catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Checks whether the runtime supports virtual threads.
+   *
+   * @return <code>true</code> if {@link #forBlockingWork} creates virtual
+   *         threads.
+   */
+  public static boolean virtualThreadsAvailable() {
+    return VIRTUAL_BUILDER != null;
+  }
+
+  /**
+   * Creates a factory of daemon platform threads, for work that keeps a CPU
+   * busy or runs periodically.
+   *
+   * @param name The name of the threads.
+   * @return The thread factory.
+   */
+  public static ThreadFactory daemon(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Creates a factory for work that mostly blocks, such as socket I/O. It
+   * creates virtual threads when available and daemon platform threads
+   * otherwise; both kinds do not keep the JVM alive.
+   *
+   * @param name The name of the threads.
+   * @return The thread factory.
+   */
+  public static ThreadFactory forBlockingWork(String name) {
+    if (VIRTUAL_BUILDER == null) {
+      return daemon(name);
+    }
+    try {
+      Object builder = VIRTUAL_BUILDER[0].invoke(null);
+      builder = VIRTUAL_BUILDER[1].invoke(builder, name);
+      return (ThreadFactory) VIRTUAL_BUILDER[2].invoke(builder);
+    }
+    catch (ReflectiveOperationException e) {
+      return daemon(name);
+    }
+  }
+
+}
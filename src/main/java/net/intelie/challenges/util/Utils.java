@@ -2,6 +2,9 @@ package net.intelie.challenges.util;
 
 import java.util.Objects;
 
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+
 /**
  * Utility class. Provides general purpose methods (i.e. validation methods).
  */
@@ -21,4 +24,41 @@ public class Utils {
       throw new IllegalArgumentException(msg);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Checks the validity of query time interval.
+   * 
+   * @param startTime Initial time (inclusive).
+   * @param endTime Final time (exclusive).
+   * @throws IllegalArgumentException if the initial time is bigger than final
+   *         time.
+   */
+  public static void checkQueryInterval(long startTime, long endTime) {
+    if (startTime > endTime) {
+      throw new IllegalArgumentException("Start time is bigger than end time.");
+    }
+  }
+
+  /**
+   * Checks if an event is valid.
+   * 
+   * @param event The event to be checked.
+   * @throws IllegalArgumentException if the event is null or if it has invalid
+   *         type.
+   */
+  public static void checkEvent(Event event) {
+    requireNonNull(event, "Event cannot be null.");
+    checkEventType(event.type());
+  }
+
+  /**
+   * Checks if an event type is valid.
+   * 
+   * @param eventType The type to be checked.
+   * @throws IllegalArgumentException if the type is null or not supported.
+   */
+  public static void checkEventType(String eventType) {
+    requireNonNull(eventType, "Event type cannot be null.");
+    requireNonNull(EventType.getByName(eventType), String.format("Event type '%s' not supported.", eventType));
+  }
+}
@@ -0,0 +1,186 @@
+package net.intelie.challenges.load;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventStoreChallengeTest;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/**
+ * Unit tests for {@link WorkloadRunner}, its workloads and its
+ * {@link LatencyHistogram}.
+ */
+public class WorkloadRunnerTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Limits a workload to a number of operations.
+   *
+   * @param workload The workload.
+   * @param operations Number of operations.
+   * @return The limited workload.
+   */
+  private static Workload limit(Workload workload, int operations) {
+    int[] left = { operations };
+    return () -> left[0]-- > 0 ? workload.next() : null;
+  }
+
+  /**
+   * Tests if a synthetic workload follows its profile.
+   */
+  @Test
+  public void next_ShouldFollowProfile_When_WorkloadIsSynthetic() {
+    WorkloadProfile profile = WorkloadProfile.defaults().withInsertRate(1000).withQueryRate(100).withRemoveRates(0,
+      0).withOutOfOrder(0.1, 50).withTypeSkew(1).withWindows(WorkloadProfile.WindowDistribution.FIXED, 10);
+    Workload workload = new SyntheticWorkload(profile, 42);
+
+    int inserts = 0;
+    int late = 0;
+    int skewed = 0;
+    int queries = 0;
+    long previous = 0;
+    for (int i = 0; i < 100_000; ++i) {
+      Operation operation = workload.next();
+      assertTrue(operation.offsetNanos() >= previous);
+      previous = operation.offsetNanos();
+      if (operation.type().equals(TYPE)) {
+        ++skewed;
+      }
+      if (operation.kind() == Operation.Kind.INSERT) {
+        ++inserts;
+        if (operation.startTime() < operation.offsetNanos()) {
+          ++late;
+          assertTrue(operation.offsetNanos() - operation.startTime() <= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+      }
+      else {
+        ++queries;
+        assertEquals(Operation.Kind.QUERY, operation.kind());
+        assertEquals(operation.offsetNanos(), operation.endTime());
+      }
+    }
+    assertEquals(100_000, inserts + queries);
+    assertEquals(10, inserts / (double) queries, 0.5);
+    assertEquals(0.1, late / (double) inserts, 0.01);
+    assertEquals(2 / 3.0, skewed / 100_000.0, 0.01);
+    assertEquals(100_000 / 1100.0, previous / 1e9, 2);
+  }
+
+  /**
+   * Tests if an unpaced run applies every operation and reports them.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void run_ShouldReportEveryOperation_When_Unpaced() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    WorkloadProfile profile = WorkloadProfile.defaults().withRemoveRates(0, 0).withTypeSkew(0);
+    WorkloadRunner runner = new WorkloadRunner(store, 4, 0);
+
+    WorkloadReport report = runner.run(limit(new SyntheticWorkload(profile, 7), 50_000), 1, TimeUnit.MINUTES);
+
+    assertEquals(50_000, report.operations());
+    assertEquals(0, report.errors());
+    long inserts = report.operations(Operation.Kind.INSERT);
+    assertEquals(50_000 - report.operations(Operation.Kind.QUERY), inserts);
+    assertTrue(report.liveEvents() > 0.95 * inserts && report.liveEvents() <= inserts);
+    assertTrue(report.eventsRead() > 0);
+    assertTrue(report.throughput() > 0);
+    assertTrue(report.latency(Operation.Kind.INSERT).valueAt(50) <= report.latency(Operation.Kind.INSERT).max());
+    assertTrue(report.toString().contains("INSERT"));
+  }
+
+  /**
+   * Tests if a paced run keeps to its schedule and reports its progress.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void run_ShouldReportProgress_When_Paced() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    WorkloadProfile profile = WorkloadProfile.defaults().withInsertRate(2000).withQueryRate(0).withRemoveRates(0,
+      0);
+    List<WorkloadReport> progress = new ArrayList<>();
+
+    WorkloadReport report = new WorkloadRunner(store, 2).run(new SyntheticWorkload(profile, 3), 500, 100,
+      TimeUnit.MILLISECONDS, progress::add);
+
+    assertTrue(report.elapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(450));
+    assertEquals(1000, report.operations(), 200);
+    assertTrue(progress.size() >= 3);
+    assertTrue(progress.get(0).operations() < report.operations());
+  }
+
+  /**
+   * Tests if a recorded trace replays to the same contents, including
+   * removals made through iterators and by filter.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void replay_ShouldReproduceStore_When_TraceIsRecorded() throws Exception {
+    EventStoreImpl recorded = new EventStoreImpl();
+    StringWriter trace = new StringWriter();
+    try (TraceRecorder recorder = new TraceRecorder(recorded, trace)) {
+      for (long timestamp = 0; timestamp < 100; ++timestamp) {
+        recorder.insert(new Event(TYPE, timestamp));
+        recorder.insert(new Event(EventType.TYPE_2.toString(), timestamp));
+      }
+      eventIterator = recorder.query(TYPE, 10, 20);
+      while (eventIterator.moveNext()) {
+        if (eventIterator.current().timestamp() % 3 == 0) {
+          eventIterator.remove();
+        }
+      }
+      recorder.removeIf(TYPE, 50, 100, event -> event.timestamp() % 2 == 1);
+      recorder.removeAll(EventType.TYPE_2.toString());
+    }
+
+    EventStoreImpl replayed = new EventStoreImpl();
+    try (TraceWorkload workload = new TraceWorkload(new BufferedReader(new StringReader(trace.toString())))) {
+      WorkloadReport report = new WorkloadRunner(replayed, 1, 0).run(workload, 1, TimeUnit.MINUTES);
+      assertEquals(0, report.errors());
+      assertEquals(200, report.operations(Operation.Kind.INSERT));
+      assertEquals(1, report.operations(Operation.Kind.QUERY));
+      assertEquals(3 + 25, report.operations(Operation.Kind.REMOVE));
+    }
+    assertEquals(timestamps(recorded, TYPE), timestamps(replayed, TYPE));
+    assertEquals(100 - 3 - 25, timestamps(replayed, TYPE).size());
+    assertEquals(0, replayed.size(EventType.TYPE_2.toString()));
+  }
+
+  /**
+   * Tests if percentiles are within the resolution of the histogram.
+   */
+  @Test
+  public void valueAt_ShouldBeWithinResolution_When_ValuesSpanManyMagnitudes() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 1_000_000; ++value) {
+      histogram.record(value * 1000);
+    }
+
+    assertEquals(1_000_000, histogram.count());
+    assertEquals(1_000_000_000L, histogram.max());
+    assertEquals(500_000_000.0, histogram.valueAt(50), 500_000_000.0 * 0.035);
+    assertEquals(990_000_000.0, histogram.valueAt(99), 990_000_000.0 * 0.035);
+    assertTrue(histogram.valueAt(50) >= 500_000_000L);
+    assertEquals(1000, histogram.valueAt(0), 1000 * 0.035);
+    assertEquals(1_000_000_000L, histogram.valueAt(100));
+    assertEquals(500_000_500.0, histogram.snapshot().mean(), 1);
+  }
+
+}
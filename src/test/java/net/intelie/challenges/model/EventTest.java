@@ -1,6 +1,7 @@
 package net.intelie.challenges.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 import org.junit.Test;
 
@@ -14,4 +15,11 @@ public class EventTest {
     assertEquals(123L, event.timestamp());
     assertEquals("some_type", event.type());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void hashCode_ShouldMatch_When_EventsAreEqual() throws Exception {
+    assertEquals(new Event("some_type", 123L), new Event("some_type", 123L));
+    assertEquals(new Event("some_type", 123L).hashCode(), new Event("some_type", 123L).hashCode());
+    assertNotEquals(new Event("some_type", 123L), new Event("some_type", 124L));
+  }
+}
@@ -0,0 +1,249 @@
+package net.intelie.challenges.server;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStore;
+import net.intelie.challenges.service.EventStoreChallengeTest;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/** Unit tests for {@link EventStoreServer} and {@link EventStoreClient}. */
+public class EventStoreServerTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /** The store exposed by the server. */
+  private EventStoreImpl store;
+
+  /** The server. */
+  private EventStoreServer server;
+
+  /** A client connected to the server. */
+  private EventStoreClient client;
+
+  /** Starts a server on a free port and connects a client with small pages. */
+  @Before
+  public void setup() throws Exception {
+    store = new EventStoreImpl();
+    server = new EventStoreServer(store, 0);
+    client = new EventStoreClient("localhost", server.port(), 64);
+  }
+
+  /** Closes the client and the server. */
+  @After
+  public void shutdown() throws Exception {
+    client.close();
+    server.close();
+  }
+
+  /**
+   * Tests if the client inserts, streams over several pages, removes through
+   * the iterator and removes all events of the shared store.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void client_ShouldApplyOperations_When_ServerIsOnLoopback() throws Exception {
+    for (long timestamp = 0; timestamp < 100; ++timestamp) {
+      client.insert(new Event(TYPE, timestamp));
+    }
+    List<Event> batch = new ArrayList<>();
+    for (long timestamp = 100; timestamp < 1000; ++timestamp) {
+      batch.add(new Event(TYPE, timestamp));
+    }
+    client.insertAll(batch);
+    assertEquals(1000, store.size(TYPE));
+
+    List<Long> timestamps = timestamps(client, TYPE, 0, 1000);
+    assertEquals(1000, timestamps.size());
+    for (int i = 0; i < timestamps.size(); ++i) {
+      assertEquals(i, timestamps.get(i).longValue());
+    }
+
+    eventIterator = client.query(TYPE, 200, 400);
+    while (eventIterator.moveNext()) {
+      if (eventIterator.current().timestamp() % 2 == 0) {
+        eventIterator.remove();
+      }
+    }
+    assertEquals(900, store.size(TYPE));
+    assertEquals(100, timestamps(client, TYPE, 200, 400).size());
+
+    client.removeAll(TYPE);
+    assertEquals(0, store.size(TYPE));
+    assertTrue(timestamps(client, TYPE, 0, 1000).isEmpty());
+  }
+
+  /**
+   * Tests if asynchronous requests are pipelined over the connection and all
+   * applied.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void client_ShouldPipelineRequests_When_CallsAreAsynchronous() throws Exception {
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (long timestamp = 0; timestamp < 50_000; ++timestamp) {
+      futures.add(client.insertAsync(new Event(TYPE, timestamp)));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    assertEquals(50_000, store.size(TYPE));
+    assertEquals(50_000, timestamps(client, TYPE, 0, Long.MAX_VALUE).size());
+  }
+
+  /**
+   * Tests if a failed request reports the error of the store without
+   * breaking the connection.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void client_ShouldThrowStoreError_When_RequestFails() throws Exception {
+    EventStore readOnly = new EventStore() {
+
+      @Override
+      public void insert(Event event) {
+        throw new IllegalStateException("The store is read-only.");
+      }
+
+      @Override
+      public void removeAll(String type) {
+        throw new IllegalArgumentException("Type " + type + " cannot be removed.");
+      }
+
+      @Override
+      public EventIterator query(String type, long startTime, long endTime) {
+        return store.query(type, startTime, endTime);
+      }
+    };
+    store.insert(new Event(TYPE, 1));
+
+    try (EventStoreServer other = new EventStoreServer(readOnly, 0);
+      EventStoreClient otherClient = new EventStoreClient("localhost", other.port())) {
+      try {
+        otherClient.insert(new Event(TYPE, 2));
+        fail();
+      }
+      catch (IllegalStateException e) {
+        assertEquals("The store is read-only.", e.getMessage());
+      }
+      try {
+        otherClient.removeAll(TYPE);
+        fail();
+      }
+      catch (IllegalArgumentException e) {
+        assertEquals("Type " + TYPE + " cannot be removed.", e.getMessage());
+      }
+      eventIterator = otherClient.query(TYPE, 0, 10);
+      assertTrue(eventIterator.moveNext());
+      assertEquals(1, eventIterator.current().timestamp());
+    }
+  }
+
+  /**
+   * Tests if iterators closed before their end release their cursors, and if
+   * the removals of another client are seen.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void server_ShouldReleaseCursors_When_IteratorsAreClosedEarly() throws Exception {
+    for (long timestamp = 0; timestamp < 1000; ++timestamp) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+    for (int i = 0; i < 2 * EventStoreServer.MAX_CURSORS; ++i) {
+      try (EventIterator iterator = client.query(TYPE, 0, 1000)) {
+        assertTrue(iterator.moveNext());
+      }
+    }
+    timestamps(client, TYPE, 0, 1);
+    assertEquals(0, store.iterators().openCount());
+
+    try (EventStoreClient other = new EventStoreClient("localhost", server.port())) {
+      eventIterator = other.query(TYPE, 0, 10);
+      assertTrue(eventIterator.moveNext());
+      eventIterator.remove();
+      assertFalse(timestamps(client, TYPE, 0, 10).contains(0L));
+    }
+  }
+
+  /**
+   * Opens a raw connection to the server.
+   *
+   * @return The socket.
+   * @throws Exception
+   */
+  private Socket connect() throws Exception {
+    Socket socket = new Socket();
+    socket.setSoTimeout(5000);
+    socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port()));
+    return socket;
+  }
+
+  /**
+   * Tests if removing an event at the largest timestamp answers that it was
+   * not found, instead of failing on the range that ends after it.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void remove_ShouldNotFindEvent_When_TimestampIsMaxValue() throws Exception {
+    store.insert(new Event(TYPE, Long.MAX_VALUE));
+    try (Socket socket = connect()) {
+      DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+      DataInputStream input = new DataInputStream(socket.getInputStream());
+      output.writeByte(Protocol.REMOVE);
+      output.writeUTF(TYPE);
+      output.writeLong(Long.MAX_VALUE);
+      output.flush();
+
+      assertEquals(Protocol.OK, input.readUnsignedByte());
+      assertFalse(input.readBoolean());
+    }
+  }
+
+  /**
+   * Tests if a query with an empty page size is rejected as malformed, since
+   * its cursor would never advance.
+   *
+   * @throws Exception
+   */
+  @Test(expected = EOFException.class)
+  public void query_ShouldCloseConnection_When_PageSizeIsZero() throws Exception {
+    store.insert(new Event(TYPE, 1));
+    try (Socket socket = connect()) {
+      DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+      DataInputStream input = new DataInputStream(socket.getInputStream());
+      output.writeByte(Protocol.QUERY);
+      output.writeUTF(TYPE);
+      output.writeLong(0);
+      output.writeLong(10);
+      output.writeInt(0);
+      output.flush();
+
+      input.readUnsignedByte();
+    }
+  }
+
+}
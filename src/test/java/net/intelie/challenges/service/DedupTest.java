@@ -0,0 +1,89 @@
+package net.intelie.challenges.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+
+/**
+ * Unit tests for the dedup mode of {@link EventStoreImpl}.
+ */
+public class DedupTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Tests if retried events are dropped, counted and not notified.
+   */
+  @Test
+  public void insert_ShouldDropRetries_When_DedupIsEnabled() {
+    EventStoreImpl store = new EventStoreImpl();
+    store.enableDedup();
+    AtomicLong notified = new AtomicLong();
+    store.addListener(new EventStoreListener() {
+
+      @Override
+      public void onInsert(Event event) {
+        notified.incrementAndGet();
+      }
+    });
+
+    for (long timestamp = 0; timestamp < 100; ++timestamp) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+    for (long timestamp = 0; timestamp < 100; timestamp += 4) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+
+    assertEquals(100, store.size(TYPE));
+    assertEquals(100, notified.get());
+    assertEquals(25, store.duplicates());
+    assertEquals(25.0 / 125, store.dedupHitRate(), 1e-9);
+  }
+
+  /**
+   * Tests if new events are never counted as duplicates.
+   */
+  @Test
+  public void insert_ShouldKeepNewEvents_When_DedupIsEnabled() {
+    EventStoreImpl store = new EventStoreImpl();
+    store.enableDedup();
+    for (long timestamp = 0; timestamp < 10_000; ++timestamp) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+
+    assertEquals(10_000, store.size(TYPE));
+    assertEquals(0, store.duplicates());
+    assertEquals(0, store.dedupHitRate(), 0);
+  }
+
+  /**
+   * Tests if duplicates of frozen events are dropped, and if disabling the
+   * mode stops the counting.
+   */
+  @Test
+  public void insert_ShouldDropDuplicates_When_EventsAreFrozen() {
+    EventStoreImpl store = new EventStoreImpl();
+    store.enableDedup();
+    store.insert(new Event(TYPE, 1));
+    store.insert(new Event(TYPE, 2));
+    store.freeze(TYPE);
+
+    store.insert(new Event(TYPE, 1));
+    store.insert(new Event(TYPE, 2));
+    store.insert(new Event(TYPE, 2));
+
+    assertEquals(2, store.size(TYPE));
+    assertEquals(3, store.duplicates());
+
+    store.disableDedup();
+    store.insert(new Event(TYPE, 1));
+    assertEquals(3, store.duplicates());
+  }
+
+}
@@ -2,6 +2,7 @@ package net.intelie.challenges.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Collections;
@@ -255,6 +256,69 @@ public class EventStoreTest extends EventStoreChallengeTest {
     assertFalse(eventIterator.moveNext());
   }
 
+  /**
+   * Tests if <code>size</code> counts stored events by type, ignoring events
+   * that replace others with the same timestamp.
+   */
+  @Test
+  public void size_ShouldCountStoredEventsByType() {
+    populateStore(Optional.empty());
+    eventStore.insert(EventDataRepository.getEventsDataSet().get(0));
+    SizedEventStore sizedStore = (SizedEventStore) eventStore;
+
+    assertEquals(EventDataRepository.getEventsDataSetByType(EventType.TYPE_1).size(), sizedStore.size(EventType.TYPE_1
+      .toString()));
+    assertEquals(EventDataRepository.getEventsDataSet().size(), sizedStore.size());
+  }
+
+  /**
+   * Tests if <code>size</code> reflects removals made through iterators and
+   * <code>removeAll</code>.
+   */
+  @Test
+  public void size_ShouldDecrease_When_EventsAreRemoved() {
+    populateStore(Optional.empty());
+    SizedEventStore sizedStore = (SizedEventStore) eventStore;
+
+    eventIterator = eventStore.query(EventType.TYPE_1.toString(), Long.MIN_VALUE, Long.MAX_VALUE);
+    eventIterator.moveNext();
+    eventIterator.remove();
+    eventStore.removeAll(EventType.TYPE_2.toString());
+
+    assertEquals(EventDataRepository.getEventsDataSetByType(EventType.TYPE_1).size() - 1, sizedStore.size());
+  }
+
+  /**
+   * Tests if a query for an absent type returns the shared empty iterator.
+   */
+  @Test
+  public void query_ShouldReturnSharedEmptyIterator_When_TypeIsAbsent() {
+    eventIterator = eventStore.query(EventType.TYPE_1.toString(), Long.MIN_VALUE, Long.MAX_VALUE);
+
+    assertSame(EventIterator.empty(), eventIterator);
+    assertFalse(eventIterator.moveNext());
+  }
+
+  /**
+   * Tests if a registered type keeps an empty partition after
+   * <code>removeAll</code> and accepts new events.
+   */
+  @Test
+  public void removeAll_ShouldKeepPartition_When_TypeIsRegistered() {
+    EventStoreImpl store = new EventStoreImpl(EventType.TYPE_1.toString());
+    assertTrue(store.statsCatalog().containsKey(EventType.TYPE_1.toString()));
+
+    store.insert(new Event(EventType.TYPE_1.toString(), 1));
+    store.removeAll(EventType.TYPE_1.toString());
+    assertTrue(store.statsCatalog().containsKey(EventType.TYPE_1.toString()));
+    assertEquals(0, store.size(EventType.TYPE_1.toString()));
+
+    store.insert(new Event(EventType.TYPE_1.toString(), 2));
+    eventIterator = store.query(EventType.TYPE_1.toString(), Long.MIN_VALUE, Long.MAX_VALUE);
+    assertTrue(eventIterator.moveNext());
+    assertEquals(2, eventIterator.current().timestamp());
+  }
+
   /**
    * Utility method used to populate the event store using the test dataset as
    * source.
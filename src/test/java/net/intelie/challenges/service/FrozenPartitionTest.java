@@ -0,0 +1,181 @@
+package net.intelie.challenges.service;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+
+/**
+ * Unit tests for the frozen partitions of {@link EventStoreImpl}.
+ */
+public class FrozenPartitionTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Tests if a frozen type answers queries like a regular one, including the
+   * events inserted after the freeze, and takes less memory.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldMergeDelta_When_TypeIsFrozen() throws Exception {
+    EventStoreImpl reference = new EventStoreImpl();
+    EventStoreImpl store = new EventStoreImpl();
+    for (long timestamp = 0; timestamp < 10_000; timestamp += 2) {
+      store.insert(new Event(TYPE, timestamp));
+      reference.insert(new Event(TYPE, timestamp));
+    }
+    long unfrozenBytes = store.estimatedBytes();
+
+    assertTrue(store.freeze(TYPE));
+    assertTrue(store.isFrozen(TYPE));
+    assertFalse(store.freeze(EventType.TYPE_2.toString()));
+    assertTrue(store.estimatedBytes() < unfrozenBytes);
+
+    for (long timestamp = 1; timestamp < 100; timestamp += 2) {
+      store.insert(new Event(TYPE, timestamp));
+      reference.insert(new Event(TYPE, timestamp));
+    }
+    store.insert(new Event(TYPE, 50));
+
+    assertEquals(reference.size(TYPE), store.size(TYPE));
+    assertEquals(timestamps(reference, TYPE, 0, 10_000), timestamps(store, TYPE, 0, 10_000));
+    assertEquals(timestamps(reference, TYPE, 41, 61), timestamps(store, TYPE, 41, 61));
+    assertEquals(timestamps(reference, TYPE, 9000, 9001), timestamps(store, TYPE, 9000, 9001));
+    assertTrue(timestamps(store, TYPE, 10_000, 20_000).isEmpty());
+  }
+
+  /**
+   * Tests if removals reach both the frozen events and the delta, and survive
+   * a merge.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void remove_ShouldHideEvents_When_TypeIsFrozen() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    for (long timestamp = 0; timestamp < 100; timestamp += 2) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+    store.freeze(TYPE);
+    store.insert(new Event(TYPE, 11));
+
+    eventIterator = store.query(TYPE, 10, 13);
+    while (eventIterator.moveNext()) {
+      eventIterator.remove();
+    }
+    eventIterator.close();
+
+    assertEquals(48, store.size(TYPE));
+    assertTrue(timestamps(store, TYPE, 9, 14).isEmpty());
+
+    store.insert(new Event(TYPE, 10));
+    store.freeze(TYPE);
+    assertEquals(49, store.size(TYPE));
+    assertEquals(3, timestamps(store, TYPE, 8, 16).size());
+
+    store.removeAll(TYPE);
+    assertFalse(store.isFrozen(TYPE));
+    assertEquals(0, store.size(TYPE));
+  }
+
+  /**
+   * Tests if the delta is merged as inserts go on, and if exports read the
+   * frozen events.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void insert_ShouldMergeDelta_When_DeltaGrows() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    store.insert(new Event(TYPE, 0));
+    store.freeze(TYPE);
+    for (long timestamp = 1; timestamp <= 5 * EventPartition.MIN_MERGE_DELTA; ++timestamp) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+
+    long delta = store.size(TYPE) * EventStoreImpl.ESTIMATED_BYTES_PER_EVENT - store.estimatedBytes();
+    assertTrue(delta > 0);
+    assertEquals(5 * EventPartition.MIN_MERGE_DELTA + 1, store.size(TYPE));
+    assertEquals(5 * EventPartition.MIN_MERGE_DELTA + 1, timestamps(store, TYPE, 0, Long.MAX_VALUE).size());
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    assertEquals(100, store.exportPartition(TYPE, 100, 200, Channels.newChannel(bytes)));
+  }
+
+  /**
+   * Tests if a delta grown past the threshold is merged in the background
+   * after the inserts return.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void insert_ShouldMergeDeltaInBackground_When_DeltaPassesThreshold() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    store.insert(new Event(TYPE, 0));
+    store.freeze(TYPE);
+    for (long timestamp = 1; timestamp <= EventPartition.MIN_MERGE_DELTA + 1; ++timestamp) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+
+    long merged = store.size(TYPE) * FrozenLayer.BYTES_PER_EVENT;
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (store.estimatedBytes() != merged && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals(merged, store.estimatedBytes());
+    assertEquals(EventPartition.MIN_MERGE_DELTA + 2, timestamps(store, TYPE, 0, Long.MAX_VALUE).size());
+  }
+
+  /**
+   * Tests if concurrent inserts on a frozen type are all stored once while
+   * merges happen.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void insert_ShouldStoreEachEventOnce_When_InsertsRaceWithMerges() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    store.insert(new Event(TYPE, -1));
+    store.freeze(TYPE);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; ++thread) {
+        futures.add(executor.submit(() -> {
+          for (long timestamp = 0; timestamp < 20_000; ++timestamp) {
+            store.insert(new Event(TYPE, timestamp));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    finally {
+      executor.shutdown();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    store.freeze(TYPE);
+    assertEquals(20_001, timestamps(store, TYPE, -1, 20_000).size());
+    assertEquals(20_001, store.size(TYPE));
+  }
+
+}
@@ -0,0 +1,200 @@
+package net.intelie.challenges.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+
+/** Unit tests for {@link IteratorRegistry} and the reclamation of partitions. */
+public class IteratorRegistryTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /** The event store to be tested. */
+  private EventStoreImpl eventStore;
+
+  /** Creates a new event store with some events to each test method. */
+  @Before
+  public void setup() {
+    eventStore = new EventStoreImpl();
+    for (long timestamp = 0; timestamp < 100; ++timestamp) {
+      eventStore.insert(new Event(TYPE, timestamp));
+    }
+  }
+
+  /**
+   * Tests if iterators are listed while open and forgotten once closed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void openIterators_ShouldListIterator_Until_IteratorIsClosed() throws Exception {
+    eventIterator = eventStore.query(TYPE, 10, 20);
+
+    List<IteratorRegistry.OpenIterator> open = eventStore.iterators().openIterators();
+    assertEquals(1, open.size());
+    assertEquals(TYPE, open.get(0).type());
+    assertEquals(10, open.get(0).startTime());
+    assertEquals(20, open.get(0).endTime());
+    assertEquals(Thread.currentThread().getName(), open.get(0).threadName());
+
+    eventIterator.close();
+    eventIterator.close();
+    assertEquals(0, eventStore.iterators().openCount());
+  }
+
+  /**
+   * Tests if only iterators older than the given age are reported.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void openLongerThan_ShouldListOldIterators_When_AgeIsExceeded() throws Exception {
+    eventIterator = eventStore.query(TYPE, 0, 50);
+    Thread.sleep(50);
+    try (EventIterator recent = eventStore.query(TYPE, 50, 100)) {
+      List<IteratorRegistry.OpenIterator> old = eventStore.iterators().openLongerThan(40, TimeUnit.MILLISECONDS);
+
+      assertEquals(1, old.size());
+      assertEquals(0, old.get(0).startTime());
+      assertTrue(old.get(0).age(TimeUnit.MILLISECONDS) >= 40);
+      assertEquals(2, eventStore.iterators().openCount());
+    }
+  }
+
+  /**
+   * Tests if a removed partition is reported as pinned while read, and
+   * released when its last reader is closed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void pinnedEvents_ShouldDropToZero_When_LastReaderIsClosed() throws Exception {
+    EventIterator first = eventStore.query(TYPE, 0, 100);
+    eventIterator = eventStore.query(TYPE, 0, 10);
+
+    eventStore.removeAll(TYPE);
+    assertEquals(100, eventStore.pinnedEvents());
+
+    int count = 0;
+    while (first.moveNext()) {
+      ++count;
+    }
+    assertEquals(100, count);
+    first.close();
+    assertEquals(100, eventStore.pinnedEvents());
+
+    eventIterator.close();
+    assertEquals(0, eventStore.pinnedEvents());
+  }
+
+  /**
+   * Tests if removing a type nobody reads does not pin it.
+   */
+  @Test
+  public void pinnedEvents_ShouldBeZero_When_RemovedTypeHasNoReaders() {
+    eventStore.removeAll(TYPE);
+
+    assertEquals(0, eventStore.pinnedEvents());
+  }
+
+  /**
+   * Tests if the age of the oldest open iterator is reported.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void maxAge_ShouldReportOldestIterator_When_IteratorsAreOpen() throws Exception {
+    assertEquals(0, eventStore.iterators().maxAge(TimeUnit.MILLISECONDS));
+    eventIterator = eventStore.query(TYPE, 0, 10);
+    Thread.sleep(20);
+
+    assertTrue(eventStore.iterators().maxAge(TimeUnit.MILLISECONDS) >= 20);
+  }
+
+  /**
+   * Tests if iterators opened by many threads get distinct identifiers and
+   * are all listed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void openIterators_ShouldListIteratorsOfAllThreads() throws Exception {
+    List<EventIterator> opened = new CopyOnWriteArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; ++i) {
+      threads.add(new Thread(() -> {
+        for (int j = 0; j < 10; ++j) {
+          opened.add(eventStore.query(TYPE, 0, 100));
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    List<IteratorRegistry.OpenIterator> open = eventStore.iterators().openIterators();
+    Set<Long> ids = new HashSet<>();
+    for (IteratorRegistry.OpenIterator iterator : open) {
+      ids.add(iterator.id());
+    }
+    assertEquals(80, open.size());
+    assertEquals(80, ids.size());
+
+    for (EventIterator iterator : opened) {
+      iterator.close();
+    }
+    assertEquals(0, eventStore.iterators().openCount());
+  }
+
+  /**
+   * Opens an iterator and drops it without closing it.
+   */
+  private void leakIterator() {
+    EventIterator leaked = eventStore.query(TYPE, 0, 100);
+    leaked.moveNext();
+  }
+
+  /**
+   * Tests if an iterator dropped without being closed is reported as a leak,
+   * with its allocation site, and stops pinning its partition.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void expungeLeaks_ShouldReleaseIterator_When_IteratorIsNeverClosed() throws Exception {
+    List<IteratorRegistry.OpenIterator> leaks = new CopyOnWriteArrayList<>();
+    eventStore.iterators().onLeak(leaks::add);
+    eventStore.iterators().sampleAllocationSites(1);
+    leakIterator();
+    eventStore.removeAll(TYPE);
+    assertEquals(100, eventStore.pinnedEvents());
+
+    for (int attempt = 0; attempt < 100 && eventStore.iterators().leakedCount() == 0; ++attempt) {
+      System.gc();
+      Thread.sleep(10);
+    }
+
+    assertEquals(1, eventStore.iterators().leakedCount());
+    assertEquals(0, eventStore.iterators().openCount());
+    assertEquals(0, eventStore.pinnedEvents());
+    assertEquals(1, leaks.size());
+    assertNotNull(leaks.get(0).allocationSite());
+    assertEquals("leakIterator", leaks.get(0).allocationSite()[2].getMethodName());
+  }
+
+}
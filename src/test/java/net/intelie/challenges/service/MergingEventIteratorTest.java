@@ -0,0 +1,96 @@
+package net.intelie.challenges.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+
+/** Unit tests for {@link MergingEventIterator}. */
+public class MergingEventIteratorTest extends EventStoreChallengeTest {
+
+  /**
+   * Creates a data view with events of the given timestamps.
+   *
+   * @param timestamps The timestamps of the events.
+   * @return A {@link TreeMap} with the events.
+   */
+  private static Map<Long, Event> createDataView(long... timestamps) {
+    Map<Long, Event> dataView = new TreeMap<>();
+    for (long timestamp : timestamps) {
+      dataView.put(timestamp, new Event(EventType.TYPE_1.toString(), timestamp));
+    }
+    return dataView;
+  }
+
+  /** Tests if <code>moveNext</code> visits the events of all sources in order. */
+  @Test
+  public void moveNext_ShouldMergeSourcesInOrder() {
+    eventIterator = new MergingEventIterator(Arrays.asList(new EventIteratorImpl(createDataView(1, 4, 7)),
+      new EventIteratorImpl(createDataView()), new EventIteratorImpl(createDataView(2, 3, 9))));
+
+    for (long expected : new long[] { 1, 2, 3, 4, 7, 9 }) {
+      assertTrue(eventIterator.moveNext());
+      assertEquals(expected, eventIterator.current().timestamp());
+    }
+    assertFalse(eventIterator.moveNext());
+  }
+
+  /** Tests if <code>moveNext</code> returns false without sources. */
+  @Test
+  public void moveNext_ShouldReturnFalse_When_ThereAreNoSources() {
+    eventIterator = new MergingEventIterator(Collections.emptyList());
+    assertFalse(eventIterator.moveNext());
+  }
+
+  /** Tests if <code>remove</code> deletes the event from its own source. */
+  @Test
+  public void remove_ShouldDeleteEventFromItsSource() {
+    Map<Long, Event> first = createDataView(1, 3);
+    Map<Long, Event> second = createDataView(2, 4);
+    eventIterator = new MergingEventIterator(Arrays.asList(new EventIteratorImpl(first), new EventIteratorImpl(
+      second)));
+
+    eventIterator.moveNext();
+    eventIterator.moveNext();
+    eventIterator.remove();
+
+    assertFalse(second.containsKey(2L));
+    assertTrue(eventIterator.moveNext());
+    assertEquals(3, eventIterator.current().timestamp());
+  }
+
+  /**
+   * Tests if <code>current</code> throws {@link IllegalStateException} after a
+   * removal.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void current_ShouldThrowIllegalState_When_EventWasRemoved() {
+    eventIterator = new MergingEventIterator(Arrays.asList(new EventIteratorImpl(createDataView(1))));
+    eventIterator.moveNext();
+    eventIterator.remove();
+    eventIterator.current();
+  }
+
+  /**
+   * Tests if <code>moveNext</code> returns false after the iterator is closed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void moveNext_ShouldReturnFalse_When_IterationHasBeenClosed() throws Exception {
+    eventIterator = new MergingEventIterator(Arrays.asList(new EventIteratorImpl(createDataView(1, 2))));
+    eventIterator.moveNext();
+    eventIterator.close();
+    assertFalse(eventIterator.moveNext());
+  }
+
+}
@@ -0,0 +1,145 @@
+package net.intelie.challenges.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+
+/**
+ * Unit tests for the statistics catalog of {@link EventStoreImpl}.
+ */
+public class PartitionStatsTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Tests if the statistics follow inserts and removals at the bounds.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void stats_ShouldTrackCountAndBounds_When_EventsChange() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    for (long timestamp = 100; timestamp < 200; ++timestamp) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+
+    PartitionStats stats = store.stats(TYPE);
+    assertEquals(100, stats.count());
+    assertEquals(100, stats.firstTimestamp());
+    assertEquals(199, stats.lastTimestamp());
+    assertEquals(1.0, stats.density(), 1e-9);
+    assertEquals(100 * EventStoreImpl.ESTIMATED_BYTES_PER_EVENT, stats.estimatedBytes());
+    assertTrue(stats.insertsPerSecond() > 0);
+
+    eventIterator = store.query(TYPE, 100, 102);
+    while (eventIterator.moveNext()) {
+      eventIterator.remove();
+    }
+    eventIterator.close();
+    eventIterator = store.query(TYPE, 199, 200);
+    eventIterator.moveNext();
+    eventIterator.remove();
+
+    stats = store.stats(TYPE);
+    assertEquals(97, stats.count());
+    assertEquals(102, stats.firstTimestamp());
+    assertEquals(198, stats.lastTimestamp());
+  }
+
+  /**
+   * Tests if an absent type has empty statistics and the catalog lists the
+   * present types.
+   */
+  @Test
+  public void statsCatalog_ShouldListTypes_When_EventsAreStored() {
+    EventStoreImpl store = new EventStoreImpl();
+    assertTrue(store.stats(TYPE).isEmpty());
+    store.insert(new Event(TYPE, 1));
+    store.insert(new Event(EventType.TYPE_2.toString(), 2));
+
+    Map<String, PartitionStats> catalog = store.statsCatalog();
+    assertEquals(2, catalog.size());
+    assertEquals(1, catalog.get(TYPE).count());
+  }
+
+  /**
+   * Tests if queries outside the bounds return nothing without being tracked,
+   * while queries within them still see new events.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldShortCircuit_When_RangeIsOutOfBounds() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    store.insert(new Event(TYPE, 1000));
+    store.insert(new Event(TYPE, 2000));
+
+    eventIterator = store.query(TYPE, 0, 1000);
+    assertFalse(eventIterator.moveNext());
+    assertEquals(0, store.iterators().openCount());
+    eventIterator.close();
+
+    eventIterator = store.query(TYPE, 2001, 3000);
+    assertFalse(eventIterator.moveNext());
+    eventIterator.close();
+
+    eventIterator = store.query(TYPE, 1500, 2001);
+    assertTrue(eventIterator.moveNext());
+    assertEquals(2000, eventIterator.current().timestamp());
+  }
+
+  /**
+   * Tests if the bounds include every stored event after concurrent inserts
+   * and removals at the edges.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void stats_ShouldBoundAllEvents_Over_ConcurrentChanges() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      final int offset = i;
+      threads.add(new Thread(() -> {
+        for (long timestamp = offset; timestamp < 20_000; timestamp += 4) {
+          store.insert(new Event(TYPE, timestamp));
+          if (timestamp % 3 == 0) {
+            try (EventIterator iterator = store.query(TYPE, Long.MIN_VALUE, Long.MAX_VALUE)) {
+              if (iterator.moveNext()) {
+                iterator.remove();
+              }
+            }
+            catch (Exception e) {
+              throw new IllegalStateException(e);
+            }
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    PartitionStats stats = store.stats(TYPE);
+    eventIterator = store.query(TYPE, Long.MIN_VALUE, Long.MAX_VALUE);
+    long count = 0;
+    while (eventIterator.moveNext()) {
+      long timestamp = eventIterator.current().timestamp();
+      assertTrue(timestamp >= stats.firstTimestamp() && timestamp <= stats.lastTimestamp());
+      ++count;
+    }
+    assertEquals(count, stats.count());
+  }
+
+}
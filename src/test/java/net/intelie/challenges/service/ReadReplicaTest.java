@@ -0,0 +1,196 @@
+package net.intelie.challenges.service;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.util.CoreGroups;
+
+/**
+ * Unit tests for the read replicas of the frozen partitions of
+ * {@link EventStoreImpl}.
+ */
+public class ReadReplicaTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /** Unbinds the test thread from its core group. */
+  @After
+  public void unbind() {
+    CoreGroups.unbind();
+  }
+
+  /**
+   * Builds a frozen layer of consecutive timestamps.
+   *
+   * @param version Version of the layer.
+   * @param length Number of events.
+   * @return The layer.
+   */
+  private static FrozenLayer layer(long version, int length) {
+    long[] timestamps = new long[length];
+    Event[] events = new Event[length];
+    for (int i = 0; i < length; ++i) {
+      timestamps[i] = i;
+      events[i] = new Event(TYPE, i);
+    }
+    return new FrozenLayer(version, timestamps, events);
+  }
+
+  /**
+   * Tests if each group copies a published layer once, and if the copies
+   * share their removals.
+   */
+  @Test
+  public void replicaOf_ShouldCopyOncePerGroup_When_LayerIsPublished() {
+    EventPartition partition = new EventPartition();
+    FrozenLayer published = layer(1, 100);
+
+    CoreGroups.bind(0);
+    FrozenLayer first = partition.replicaOf(published, 2);
+    assertNotSame(published, first);
+    assertSame(first, partition.replicaOf(published, 2));
+    CoreGroups.bind(1);
+    FrozenLayer second = partition.replicaOf(published, 2);
+    assertNotSame(first, second);
+    assertEquals(1, CoreGroups.of(2));
+    assertEquals(1, CoreGroups.of(4) % 2);
+
+    assertEquals(new Event(TYPE, 7), first.removeAt(7));
+    assertTrue(published.isRemoved(7));
+    assertTrue(second.isRemoved(7));
+    assertEquals(99, second.liveCount());
+
+    FrozenLayer merged = layer(2, 50);
+    FrozenLayer refreshed = partition.replicaOf(merged, 2);
+    assertNotSame(second, refreshed);
+    assertEquals(2, refreshed.version());
+    assertEquals(50, refreshed.length());
+    assertSame(published, partition.replicaOf(published, 2));
+  }
+
+  /**
+   * Tests if concurrent readers of a group make a single copy of a published
+   * layer, the others reading the layer itself until the copy is ready.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void replicaOf_ShouldCopyOnce_When_ReadersOfGroupRace() throws Exception {
+    EventPartition partition = new EventPartition();
+    FrozenLayer published = layer(1, 1_000_000);
+    ExecutorService executor = Executors.newFixedThreadPool(8, CoreGroups.threads("readers", 0));
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<FrozenLayer>> readers = new ArrayList<>();
+      for (int i = 0; i < 8; ++i) {
+        readers.add(executor.submit(() -> {
+          start.await();
+          return partition.replicaOf(published, 2);
+        }));
+      }
+      start.countDown();
+      Set<FrozenLayer> copies = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (Future<FrozenLayer> reader : readers) {
+        FrozenLayer read = reader.get(30, TimeUnit.SECONDS);
+        if (read != published) {
+          copies.add(read);
+        }
+      }
+      assertEquals(1, copies.size());
+    }
+    finally {
+      executor.shutdown();
+    }
+    CoreGroups.bind(0);
+    assertNotSame(published, partition.replicaOf(published, 2));
+  }
+
+  /**
+   * Tests if readers of several groups see consistent results while the
+   * layer is merged and its events removed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldReadOwnReplica_When_LayerChangesConcurrently() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    store.setReadReplicas(2);
+    assertEquals(2, store.readReplicas());
+    for (long timestamp = 0; timestamp < 20_000; timestamp += 2) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+    store.freeze(TYPE);
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    List<ExecutorService> groups = new ArrayList<>();
+    List<Future<Integer>> readers = new ArrayList<>();
+    for (int group = 0; group < 2; ++group) {
+      ExecutorService executor = Executors.newFixedThreadPool(2, CoreGroups.threads("readers", group));
+      groups.add(executor);
+      for (int i = 0; i < 2; ++i) {
+        readers.add(executor.submit(() -> {
+          int queries = 0;
+          while (running.get() || queries == 0) {
+            List<Long> timestamps = timestamps(store, TYPE, 10_000, 20_000);
+            for (int j = 1; j < timestamps.size(); ++j) {
+              assertTrue(timestamps.get(j - 1) < timestamps.get(j));
+            }
+            assertTrue(timestamps.size() >= 2500);
+            ++queries;
+          }
+          return queries;
+        }));
+      }
+    }
+
+    for (long timestamp = 1; timestamp < 20_000; timestamp += 2) {
+      store.insert(new Event(TYPE, timestamp));
+      if (timestamp % 4000 == 1) {
+        store.freeze(TYPE);
+      }
+    }
+    for (long timestamp = 10_000; timestamp < 15_000; timestamp += 4) {
+      store.removeIf(TYPE, timestamp, timestamp + 1, event -> true);
+    }
+    store.freeze(TYPE);
+    running.set(false);
+    for (Future<Integer> reader : readers) {
+      assertTrue(reader.get(30, TimeUnit.SECONDS) > 0);
+    }
+
+    List<Long> expected = new ArrayList<>();
+    for (long timestamp = 10_000; timestamp < 20_000; ++timestamp) {
+      if (timestamp >= 15_000 || timestamp % 4 != 0) {
+        expected.add(timestamp);
+      }
+    }
+    for (ExecutorService executor : groups) {
+      assertEquals(expected, executor.submit(() -> timestamps(store, TYPE, 10_000, 20_000)).get());
+      executor.shutdown();
+    }
+    store.setReadReplicas(1);
+    assertEquals(expected, timestamps(store, TYPE, 10_000, 20_000));
+  }
+
+}
@@ -0,0 +1,187 @@
+package net.intelie.challenges.service;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.chunked.ChunkedEventStore;
+
+/**
+ * Unit tests for {@link EventStore#removeIf} and its overrides.
+ */
+public class RemoveIfTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /** Selects the events with an even timestamp. */
+  private static final Predicate<Event> EVEN = event -> event.timestamp() % 2 == 0;
+
+  /**
+   * Stores the events from 0 to 999 and removes the even ones within
+   * [100, 900), checking the result against the expected timestamps.
+   *
+   * @param store The store to be checked.
+   * @throws Exception
+   */
+  private static void checkRemoveEven(EventStore store) throws Exception {
+    List<Long> expected = new ArrayList<>();
+    for (long timestamp = 0; timestamp < 1000; ++timestamp) {
+      store.insert(new Event(TYPE, timestamp));
+      if (timestamp < 100 || timestamp >= 900 || timestamp % 2 != 0) {
+        expected.add(timestamp);
+      }
+    }
+
+    assertEquals(400, store.removeIf(TYPE, 100, 900, EVEN));
+    assertEquals(0, store.removeIf(TYPE, 100, 900, EVEN));
+    assertEquals(expected, timestamps(store, TYPE, 0, 1000));
+  }
+
+  /**
+   * Tests if the store removes the matching events within the range and
+   * notifies the listeners about each of them.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void removeIf_ShouldRemoveMatchingEvents_When_StoreIsConcurrent() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    AtomicLong notified = new AtomicLong();
+    store.addListener(new EventStoreListener() {
+
+      @Override
+      public void onRemove(Event event) {
+        notified.incrementAndGet();
+      }
+    });
+
+    checkRemoveEven(store);
+    assertEquals(600, store.size(TYPE));
+    assertEquals(400, notified.get());
+    assertEquals(1, store.removeIf(TYPE, 0, 1, event -> true));
+    assertEquals(1, store.stats(TYPE).firstTimestamp());
+  }
+
+  /**
+   * Tests if the store removes the matching events from the frozen layer and
+   * from the delta.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void removeIf_ShouldRemoveMatchingEvents_When_TypeIsFrozen() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    for (long timestamp = 0; timestamp < 1000; timestamp += 2) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+    store.freeze(TYPE);
+    for (long timestamp = 1; timestamp < 1000; timestamp += 2) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+
+    assertEquals(200, store.removeIf(TYPE, 100, 300, event -> true));
+    assertEquals(800, store.size(TYPE));
+    assertTrue(timestamps(store, TYPE, 100, 300).isEmpty());
+    assertEquals(100, timestamps(store, TYPE, 0, 100).size());
+  }
+
+  /**
+   * Tests if the chunked store rewrites the chunks, the tail and the reorder
+   * buffer, with and without compression.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void removeIf_ShouldRewriteChunks_When_StoreIsChunked() throws Exception {
+    for (boolean compress : new boolean[] { false, true }) {
+      try (ChunkedEventStore store = new ChunkedEventStore(64, 1_000_000, 0, compress)) {
+        checkRemoveEven(store);
+        assertEquals(600, store.size(TYPE));
+
+        store.insert(new Event(TYPE, 500));
+        store.insert(new Event(TYPE, 502));
+        assertEquals(3, store.removeIf(TYPE, 0, 2000, event -> event.timestamp() == 500 || event
+          .timestamp() == 502 || event.timestamp() == 999));
+        assertEquals(1, store.removeIf(TYPE, 998, 1000, event -> true));
+        assertEquals(598, store.size(TYPE));
+        assertEquals(598, timestamps(store, TYPE, 0, 1000).size());
+      }
+    }
+  }
+
+  /**
+   * Tests if the chunked store filters the chunks that a concurrent change
+   * seals from the tail or merges from the reorder buffer while the
+   * overlapping chunks are rebuilt.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void removeIf_ShouldFilterChunksChangedMeanwhile_When_StoreIsChunked() throws Exception {
+    for (boolean compress : new boolean[] { false, true }) {
+      try (ChunkedEventStore store = new ChunkedEventStore(64, 1_000_000, 0, compress)) {
+        for (long timestamp = 0; timestamp < 400; timestamp += 2) {
+          store.insert(new Event(TYPE, timestamp));
+        }
+        AtomicBoolean changed = new AtomicBoolean();
+        long removed = store.removeIf(TYPE, 0, 1000, event -> {
+          if (changed.compareAndSet(false, true)) {
+            store.insert(new Event(TYPE, 101));
+            for (long timestamp = 1000; timestamp < 1064; ++timestamp) {
+              store.insert(new Event(TYPE, timestamp));
+            }
+            store.mergeLateEvents();
+          }
+          return true;
+        });
+
+        assertEquals(201, removed);
+        assertTrue(timestamps(store, TYPE, 0, 1000).isEmpty());
+        assertEquals(64, store.size(TYPE));
+      }
+    }
+  }
+
+  /**
+   * Tests if the default implementation and the sharded store remove the
+   * matching events.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void removeIf_ShouldRemoveMatchingEvents_When_StoreIsComposed() throws Exception {
+    checkRemoveEven(new ShardedEventStore(3, EventStoreImpl::new, ForkJoinPool.commonPool(), 16));
+
+    EventStoreImpl inner = new EventStoreImpl();
+    checkRemoveEven(new EventStore() {
+
+      @Override
+      public void insert(Event event) {
+        inner.insert(event);
+      }
+
+      @Override
+      public void removeAll(String type) {
+        inner.removeAll(type);
+      }
+
+      @Override
+      public EventIterator query(String type, long startTime, long endTime) {
+        return inner.query(type, startTime, endTime);
+      }
+    });
+  }
+
+}
@@ -0,0 +1,157 @@
+package net.intelie.challenges.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+
+/** Unit tests for {@link ShardedEventStore}. */
+public class ShardedEventStoreTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /** Pool shared by the tested stores. */
+  private static ForkJoinPool POOL;
+
+  /** The event store to be tested. */
+  private ShardedEventStore eventStore;
+
+  /** Creates the pool before all tests. */
+  @BeforeClass
+  public static void init() {
+    POOL = new ForkJoinPool(4);
+  }
+
+  /** Releases the pool after all tests. */
+  @AfterClass
+  public static void shutdown() {
+    POOL.shutdown();
+  }
+
+  /** Creates a new event store to each test method. */
+  @Before
+  public void setup() {
+    eventStore = new ShardedEventStore(8, EventStoreImpl::new, POOL, 16);
+  }
+
+  /**
+   * Gets the timestamps returned by the current iterator.
+   *
+   * @return The timestamps, in iteration order.
+   */
+  private List<Long> drain() {
+    List<Long> timestamps = new ArrayList<>();
+    while (eventIterator.moveNext()) {
+      timestamps.add(eventIterator.current().timestamp());
+    }
+    return timestamps;
+  }
+
+  /**
+   * Tests if <code>query</code> merges the shards in timestamp order.
+   */
+  @Test
+  public void query_ShouldReturnEventsInOrder() {
+    for (long timestamp = 999; timestamp >= 0; --timestamp) {
+      eventStore.insert(new Event(TYPE, timestamp));
+    }
+
+    eventIterator = eventStore.query(TYPE, 100, 900);
+    List<Long> timestamps = drain();
+
+    assertEquals(800, timestamps.size());
+    for (int i = 0; i < timestamps.size(); ++i) {
+      assertEquals(Long.valueOf(100 + i), timestamps.get(i));
+    }
+  }
+
+  /**
+   * Tests if the events are spread over the shards.
+   */
+  @Test
+  public void insert_ShouldSpreadEventsOverShards() {
+    ShardedEventStore store = new ShardedEventStore(4, EventStoreImpl::new, POOL, 16);
+    for (long timestamp = 0; timestamp < 4000; timestamp += 10) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+    assertEquals(400, store.size(TYPE));
+    assertEquals(4, store.shardCount());
+  }
+
+  /**
+   * Tests if <code>remove</code> deletes the current event from its shard.
+   */
+  @Test
+  public void remove_ShouldDeleteEventFromShard() {
+    for (long timestamp = 0; timestamp < 100; ++timestamp) {
+      eventStore.insert(new Event(TYPE, timestamp));
+    }
+
+    eventIterator = eventStore.query(TYPE, 0, 100);
+    while (eventIterator.moveNext()) {
+      if (eventIterator.current().timestamp() % 2 == 0) {
+        eventIterator.remove();
+      }
+    }
+
+    eventIterator = eventStore.query(TYPE, 0, 100);
+    List<Long> timestamps = drain();
+    assertEquals(50, timestamps.size());
+    assertTrue(timestamps.stream().allMatch(timestamp -> timestamp % 2 == 1));
+  }
+
+  /**
+   * Tests if <code>removeAll</code> clears the type from all shards.
+   */
+  @Test
+  public void removeAll_ShouldClearEventsFromAllShards() {
+    for (long timestamp = 0; timestamp < 100; ++timestamp) {
+      eventStore.insert(new Event(TYPE, timestamp));
+      eventStore.insert(new Event(EventType.TYPE_2.toString(), timestamp));
+    }
+
+    eventStore.removeAll(TYPE);
+
+    eventIterator = eventStore.query(TYPE, Long.MIN_VALUE, Long.MAX_VALUE);
+    assertFalse(eventIterator.moveNext());
+    assertEquals(100, eventStore.size());
+  }
+
+  /**
+   * Tests if concurrent insertions are all stored.
+   *
+   * @throws InterruptedException
+   */
+  @Test
+  public void insert_ShouldWork_Over_ConcurrentAccesses() throws InterruptedException {
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; ++i) {
+      final long offset = i * 10_000L;
+      threads.add(new Thread(() -> {
+        for (long timestamp = offset; timestamp < offset + 10_000; ++timestamp) {
+          eventStore.insert(new Event(TYPE, timestamp));
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    eventIterator = eventStore.query(TYPE, Long.MIN_VALUE, Long.MAX_VALUE);
+    assertEquals(80_000, drain().size());
+  }
+
+}
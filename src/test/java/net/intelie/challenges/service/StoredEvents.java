@@ -0,0 +1,45 @@
+package net.intelie.challenges.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Reads the events of a store, for the assertions of unit tests. */
+public final class StoredEvents {
+
+  /** Prevents instantiation. */
+  private StoredEvents() {
+  }
+
+  /**
+   * Gets the timestamps of all events of a type.
+   *
+   * @param store The store to be read.
+   * @param type The type of the events.
+   * @return The timestamps, in iteration order.
+   * @throws Exception
+   */
+  public static List<Long> timestamps(EventStore store, String type) throws Exception {
+    return timestamps(store, type, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Gets the timestamps of the events of a type within a range.
+   *
+   * @param store The store to be read.
+   * @param type The type of the events.
+   * @param startTime Start timestamp (inclusive).
+   * @param endTime End timestamp (exclusive).
+   * @return The timestamps, in iteration order.
+   * @throws Exception
+   */
+  public static List<Long> timestamps(EventStore store, String type, long startTime, long endTime) throws Exception {
+    List<Long> timestamps = new ArrayList<>();
+    try (EventIterator iterator = store.query(type, startTime, endTime)) {
+      while (iterator.moveNext()) {
+        timestamps.add(iterator.current().timestamp());
+      }
+    }
+    return timestamps;
+  }
+
+}
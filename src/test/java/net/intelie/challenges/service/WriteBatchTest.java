@@ -0,0 +1,165 @@
+package net.intelie.challenges.service;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+
+/**
+ * Unit tests for the write batches of {@link EventStoreImpl}.
+ */
+public class WriteBatchTest extends EventStoreChallengeTest {
+
+  /** First type used by the tests. */
+  private static final String TYPE_1 = EventType.TYPE_1.toString();
+
+  /** Second type used by the tests. */
+  private static final String TYPE_2 = EventType.TYPE_2.toString();
+
+  /**
+   * Tests if a committed batch applies its inserts and removals across types.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void commit_ShouldApplyChanges_When_BatchIsCommitted() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    store.insert(new Event(TYPE_1, 1));
+
+    WriteBatch batch = store.newBatch().insert(new Event(TYPE_1, 2)).insert(new Event(TYPE_2, 2)).remove(new Event(
+      TYPE_1, 1)).remove(new Event(TYPE_2, 99));
+    assertEquals(4, batch.size());
+    assertEquals(1, batch.commit());
+    assertEquals(2, store.newBatch().insert(new Event(TYPE_2, 3)).commit());
+
+    assertEquals(1, store.size(TYPE_1));
+    assertEquals(2, store.size(TYPE_2));
+    assertEquals(2L, (long) timestamps(store, TYPE_1, 0, 10).get(0));
+    try {
+      batch.insert(new Event(TYPE_1, 5));
+    }
+    catch (IllegalStateException e) {
+      return;
+    }
+    throw new AssertionError("A committed batch must not accept changes.");
+  }
+
+  /**
+   * Tests if an iterator opened before a commit sees none of its changes,
+   * while a later one sees all of them.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldKeepSnapshot_When_BatchIsCommittedDuringIteration() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    WriteBatch first = store.newBatch();
+    for (long timestamp = 0; timestamp < 10; ++timestamp) {
+      first.insert(new Event(TYPE_1, timestamp * 10));
+    }
+    first.commit();
+
+    eventIterator = store.query(TYPE_1, 0, 1000);
+    assertTrue(eventIterator.moveNext());
+    assertEquals(0, eventIterator.current().timestamp());
+
+    store.newBatch().insert(new Event(TYPE_1, 15)).insert(new Event(TYPE_1, 25)).remove(new Event(TYPE_1, 50))
+      .remove(new Event(TYPE_1, 60)).commit();
+
+    List<Long> seen = new ArrayList<>();
+    while (eventIterator.moveNext()) {
+      seen.add(eventIterator.current().timestamp());
+    }
+    assertEquals(9, seen.size());
+    assertTrue(seen.contains(50L) && seen.contains(60L));
+    assertTrue(!seen.contains(15L) && !seen.contains(25L));
+
+    List<Long> latest = timestamps(store, TYPE_1, 0, 1000);
+    assertEquals(10, latest.size());
+    assertTrue(latest.contains(15L) && !latest.contains(50L));
+  }
+
+  /**
+   * Tests if concurrent queries never see a batch partially applied.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldSeeWholeBatches_When_BatchesAreCommittedConcurrently() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    int groupSize = 20;
+    WriteBatch initial = store.newBatch();
+    for (long timestamp = 0; timestamp < groupSize; ++timestamp) {
+      initial.insert(new Event(TYPE_1, timestamp));
+    }
+    initial.commit();
+
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<String> failure = new AtomicReference<>();
+    Thread reader = new Thread(() -> {
+      try {
+        while (!done.get()) {
+          int count = timestamps(store, TYPE_1, Long.MIN_VALUE, Long.MAX_VALUE).size();
+          if (count != groupSize) {
+            failure.set("Saw " + count + " events.");
+          }
+        }
+      }
+      catch (Exception e) {
+        failure.set(e.toString());
+      }
+    });
+    reader.start();
+
+    for (int group = 1; group < 500; ++group) {
+      WriteBatch batch = store.newBatch();
+      for (long timestamp = 0; timestamp < groupSize; ++timestamp) {
+        batch.remove(new Event(TYPE_1, (group - 1) * groupSize + timestamp));
+        batch.insert(new Event(TYPE_1, group * groupSize + timestamp));
+      }
+      batch.commit();
+    }
+    done.set(true);
+    reader.join();
+
+    assertEquals(null, failure.get());
+    assertEquals(groupSize, store.size(TYPE_1));
+  }
+
+  /**
+   * Tests if the removal records of a batch are kept while a query has an
+   * older snapshot, and dropped by the first commit after it is closed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void commit_ShouldPruneRecords_When_OlderSnapshotsAreClosed() throws Exception {
+    CommitVersions versions = new CommitVersions();
+    CommitVersions.Commit first = versions.begin();
+    first.recordRemoval(new Event(TYPE_1, 1));
+    versions.publish(first);
+    long snapshot = versions.openSnapshot();
+
+    CommitVersions.Commit second = versions.begin();
+    second.recordRemoval(new Event(TYPE_1, 2));
+    versions.publish(second);
+    assertEquals(1, snapshot);
+    assertEquals(1, versions.removalsOf(TYPE_1).size());
+
+    versions.closeSnapshot(snapshot);
+    assertTrue(versions.hasRemovals(TYPE_1));
+    versions.publish(versions.begin());
+    assertFalse(versions.hasRemovals(TYPE_1));
+  }
+
+}
@@ -0,0 +1,203 @@
+package net.intelie.challenges.service.cache;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStoreChallengeTest;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/** Unit tests for {@link CachingEventStore}. */
+public class CachingEventStoreTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /** The cached store. */
+  private EventStoreImpl backing;
+
+  /** Creates a backing store with some events to each test method. */
+  @Before
+  public void setup() {
+    backing = new EventStoreImpl();
+    for (long timestamp = 0; timestamp < 1000; ++timestamp) {
+      backing.insert(new Event(TYPE, timestamp));
+    }
+  }
+
+  /**
+   * Tests if a repeated query and the queries within its range are hits.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldHitCache_When_RangeIsWithinWindow() throws Exception {
+    try (CachingEventStore cache = new CachingEventStore(backing, 10_000, 1)) {
+      assertEquals(timestamps(backing, TYPE, 100, 200), timestamps(cache, TYPE, 100, 200));
+      assertEquals(timestamps(backing, TYPE, 100, 200), timestamps(cache, TYPE, 100, 200));
+      assertEquals(timestamps(backing, TYPE, 150, 160), timestamps(cache, TYPE, 150, 160));
+
+      assertEquals(2, cache.hits());
+      assertEquals(1, cache.misses());
+      assertEquals(2.0 / 3, cache.hitRate(), 1e-9);
+      assertEquals(100, cache.cachedEvents());
+    }
+  }
+
+  /**
+   * Tests if a sliding window is served by extending the cached window.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldExtendWindow_When_RangeSlidesForward() throws Exception {
+    try (CachingEventStore cache = new CachingEventStore(backing, 10_000, 1)) {
+      for (long start = 0; start < 800; start += 10) {
+        assertEquals(timestamps(backing, TYPE, start, start + 100), timestamps(cache, TYPE, start, start + 100));
+      }
+
+      assertEquals(1, cache.misses());
+      assertEquals(79, cache.partialHits());
+      assertEquals(1, cache.cachedWindows());
+      assertTrue(cache.cachedEvents() <= 200);
+    }
+  }
+
+  /**
+   * Tests if inserts and removals within a cached range are applied to the
+   * window.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldReflectChanges_When_WindowIsCached() throws Exception {
+    try (CachingEventStore cache = new CachingEventStore(backing, 10_000, 1)) {
+      timestamps(cache, TYPE, 2000, 3000);
+      cache.insert(new Event(TYPE, 2500));
+      backing.insert(new Event(TYPE, 2600));
+      backing.insert(new Event(TYPE, 3500));
+      eventIterator = cache.query(TYPE, 2500, 2501);
+      eventIterator.moveNext();
+      eventIterator.remove();
+
+      assertEquals(Collections.singletonList(2600L), timestamps(cache, TYPE, 2000, 3000));
+      assertEquals(Collections.singletonList(2600L), timestamps(backing, TYPE, 2000, 3000));
+      assertEquals(2, cache.hits());
+    }
+  }
+
+  /**
+   * Tests if <code>removeAll</code> drops the windows of the type.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void removeAll_ShouldDropWindows_When_TypeIsRemoved() throws Exception {
+    try (CachingEventStore cache = new CachingEventStore(backing, 10_000, 1)) {
+      timestamps(cache, TYPE, 0, 100);
+      cache.removeAll(TYPE);
+
+      assertEquals(0, cache.cachedWindows());
+      assertTrue(timestamps(cache, TYPE, 0, 100).isEmpty());
+    }
+  }
+
+  /**
+   * Tests if the least recently used windows are evicted to respect the
+   * bound.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldEvictLeastRecentlyUsed_When_BoundIsExceeded() throws Exception {
+    try (CachingEventStore cache = new CachingEventStore(backing, 250, 1)) {
+      timestamps(cache, TYPE, 0, 100);
+      timestamps(cache, TYPE, 200, 300);
+      timestamps(cache, TYPE, 0, 100);
+      timestamps(cache, TYPE, 400, 500);
+
+      assertEquals(1, cache.evictions());
+      assertEquals(200, cache.cachedEvents());
+      timestamps(cache, TYPE, 0, 100);
+      assertEquals(2, cache.hits());
+    }
+  }
+
+  /**
+   * Tests if a window is only cached once its query shape missed enough.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldAdmitWindow_When_ShapeMissesRepeatedly() throws Exception {
+    try (CachingEventStore cache = new CachingEventStore(backing, 10_000, 2)) {
+      timestamps(cache, TYPE, 0, 100);
+      assertEquals(0, cache.cachedWindows());
+      timestamps(cache, TYPE, 500, 600);
+      assertEquals(1, cache.cachedWindows());
+      timestamps(cache, TYPE, 520, 580);
+      assertEquals(1, cache.hits());
+    }
+  }
+
+  /**
+   * Tests if cached results match the store after concurrent changes and
+   * sliding queries.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldMatchStore_Over_ConcurrentAccesses() throws Exception {
+    try (CachingEventStore cache = new CachingEventStore(backing, 10_000, 1)) {
+      List<Thread> threads = new ArrayList<>();
+      List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+      for (int i = 0; i < 2; ++i) {
+        final long offset = 1000 + i;
+        threads.add(new Thread(() -> {
+          for (long timestamp = offset; timestamp < 5000; timestamp += 2) {
+            cache.insert(new Event(TYPE, timestamp));
+            if (timestamp % 7 == 0) {
+              try (EventIterator iterator = cache.query(TYPE, timestamp - 10, timestamp)) {
+                if (iterator.moveNext()) {
+                  iterator.remove();
+                }
+              }
+              catch (Exception e) {
+                failures.add(e);
+              }
+            }
+          }
+        }));
+      }
+      threads.add(new Thread(() -> {
+        try {
+          for (long start = 0; start < 4000; start += 5) {
+            timestamps(cache, TYPE, start, start + 1000);
+          }
+        }
+        catch (Exception e) {
+          failures.add(e);
+        }
+      }));
+      threads.forEach(Thread::start);
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertTrue(failures.toString(), failures.isEmpty());
+      assertEquals(timestamps(backing, TYPE, 3000, 5000), timestamps(cache, TYPE, 3000, 5000));
+      assertEquals(timestamps(backing, TYPE, 3500, 4500), timestamps(cache, TYPE, 3500, 4500));
+    }
+  }
+
+}
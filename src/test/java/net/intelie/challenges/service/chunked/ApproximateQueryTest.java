@@ -0,0 +1,185 @@
+package net.intelie.challenges.service.chunked;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+
+/**
+ * Unit tests for the sampling and approximate queries of
+ * {@link ChunkedEventStore}.
+ */
+public class ApproximateQueryTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Inserts events at irregular intervals, plus a few late ones that stay in
+   * the reorder buffer.
+   *
+   * @param store The store.
+   * @param random The source of randomness.
+   * @return The inserted timestamps, sorted.
+   */
+  private static long[] fill(ChunkedEventStore store, Random random) {
+    long[] timestamps = new long[20_000];
+    long timestamp = 0;
+    for (int i = 0; i < timestamps.length; ++i) {
+      timestamp += 2 + random.nextInt(50);
+      timestamps[i] = timestamp;
+    }
+    for (int i = 0; i < timestamps.length; i += 1000) {
+      --timestamps[i];
+    }
+    for (int i = 0; i < timestamps.length; ++i) {
+      if (i % 1000 != 0) {
+        store.insert(new Event(TYPE, timestamps[i]));
+      }
+    }
+    for (int i = 0; i < timestamps.length; i += 1000) {
+      store.insert(new Event(TYPE, timestamps[i]));
+    }
+    return timestamps;
+  }
+
+  /**
+   * Gets the number of timestamps lower than a timestamp.
+   *
+   * @param timestamps The timestamps, sorted.
+   * @param timestamp The timestamp.
+   * @return The rank.
+   */
+  private static int rank(long[] timestamps, long timestamp) {
+    int low = 0;
+    int high = timestamps.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (timestamps[middle] < timestamp) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Tests if samples hold distinct events of the range, in order, and if
+   * every part of the range is sampled about as often.
+   */
+  @Test
+  public void sample_ShouldBeUniformAndDistinct_When_RangeIsLarge() {
+    Random random = new Random(3);
+    try (ChunkedEventStore store = new ChunkedEventStore(256, 64, 0)) {
+      long[] timestamps = fill(store, random);
+      long start = timestamps[1000];
+      long end = timestamps[17_000];
+
+      int[] histogram = new int[4];
+      for (int round = 0; round < 200; ++round) {
+        List<Event> sample = store.sample(TYPE, start, end, 100);
+        assertEquals(100, sample.size());
+        for (int i = 0; i < sample.size(); ++i) {
+          long timestamp = sample.get(i).timestamp();
+          assertTrue(timestamp >= start && timestamp < end);
+          assertTrue(i == 0 || sample.get(i - 1).timestamp() < timestamp);
+          int index = rank(timestamps, timestamp);
+          assertEquals(timestamp, timestamps[index]);
+          ++histogram[(index - 1000) / 4000];
+        }
+      }
+      for (int count : histogram) {
+        assertTrue(Math.abs(count - 5000) < 500);
+      }
+
+      assertEquals(3, store.sample(TYPE, timestamps[10], timestamps[13], 100).size());
+      assertTrue(store.sample(TYPE, 0, 1, 10).isEmpty());
+      assertTrue(store.sample(EventType.TYPE_2.toString(), 0, end, 10).isEmpty());
+      try {
+        store.sample(TYPE, start, end, 0);
+        fail();
+      }
+      catch (IllegalArgumentException e) {
+        assertEquals("Sample size must be positive.", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Tests if approximate counts and quantiles are bounded by the exact
+   * answers, in both chunk layouts, and exact in the plain one.
+   */
+  @Test
+  public void approximate_ShouldBoundExactAnswers_When_RangesAreRandom() {
+    for (boolean compress : new boolean[] { true, false }) {
+      Random random = new Random(5);
+      try (ChunkedEventStore store = new ChunkedEventStore(1024, 64, 0, compress)) {
+        long[] timestamps = fill(store, random);
+        long last = timestamps[timestamps.length - 1];
+        for (int round = 0; round < 500; ++round) {
+          long start = (long) (random.nextDouble() * last);
+          long end = start + 1 + (long) (random.nextDouble() * (last - start + 10));
+          int first = rank(timestamps, start);
+          int count = rank(timestamps, end) - first;
+
+          Estimate estimate = store.approximateCount(TYPE, start, end);
+          assertTrue(estimate.lower() <= count && count <= estimate.upper());
+          assertTrue(estimate.upper() - estimate.lower() <= 2 * 64 + 20);
+          if (!compress) {
+            assertEquals(count, estimate.value());
+          }
+
+          double quantile = random.nextDouble();
+          Estimate value = store.approximateQuantile(TYPE, start, end, quantile);
+          if (count == 0) {
+            assertNull(value);
+            continue;
+          }
+          long exact = timestamps[first + (int) Math.round(quantile * (count - 1))];
+          assertTrue(value.lower() <= exact && exact <= value.upper());
+          assertTrue(value.lower() <= value.value() && value.value() <= value.upper());
+        }
+        assertEquals(timestamps.length, store.approximateCount(TYPE, Long.MIN_VALUE, Long.MAX_VALUE).value());
+      }
+    }
+  }
+
+  /**
+   * Tests if a range holding only late events is answered exactly.
+   */
+  @Test
+  public void approximateQuantile_ShouldBeExact_When_RangeHoldsOnlyLateEvents() {
+    try (ChunkedEventStore store = new ChunkedEventStore(16, 64, 0)) {
+      for (long timestamp = 100; timestamp < 200; ++timestamp) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+      store.insert(new Event(TYPE, 10));
+      store.insert(new Event(TYPE, 20));
+      store.insert(new Event(TYPE, 30));
+
+      Estimate median = store.approximateQuantile(TYPE, 0, 50, 0.5);
+      assertTrue(median.isExact());
+      assertEquals(20, median.value());
+      assertEquals(3, store.approximateCount(TYPE, 0, 50).value());
+      assertEquals(new Estimate(0, 0, 0).toString(), store.approximateCount(TYPE, 50, 60).toString());
+      try {
+        store.approximateQuantile(TYPE, 0, 50, 1.5);
+        fail();
+      }
+      catch (IllegalArgumentException e) {
+        assertEquals("Quantile must be between 0 and 1.", e.getMessage());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,225 @@
+package net.intelie.challenges.service.chunked;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventStoreChallengeTest;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/** Unit tests for {@link ChunkedEventStore}. */
+public class ChunkedEventStoreTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Tests if shuffled inserts are returned in order, before and after the late
+   * events are merged.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldReturnEventsInOrder_When_InsertsAreOutOfOrder() throws Exception {
+    try (ChunkedEventStore store = new ChunkedEventStore(16, 64, 0)) {
+      Random random = new Random(42);
+      TreeSet<Long> expected = new TreeSet<>();
+      for (long timestamp = 0; timestamp < 1000; ++timestamp) {
+        long jittered = timestamp + random.nextInt(20);
+        store.insert(new Event(TYPE, jittered));
+        expected.add(jittered);
+      }
+
+      assertEquals(new ArrayList<>(expected), timestamps(store, TYPE, Long.MIN_VALUE, Long.MAX_VALUE));
+      assertEquals(new ArrayList<>(expected.subSet(100L, 500L)), timestamps(store, TYPE, 100, 500));
+      store.mergeLateEvents();
+      assertEquals(new ArrayList<>(expected), timestamps(store, TYPE, Long.MIN_VALUE, Long.MAX_VALUE));
+      assertEquals(new ArrayList<>(expected.subSet(100L, 500L)), timestamps(store, TYPE, 100, 500));
+      assertEquals(expected.size(), store.size(TYPE));
+    }
+  }
+
+  /**
+   * Tests if repeated timestamps are stored once, wherever the first copy is.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void insert_ShouldIgnoreDuplicates_When_TimestampIsStored() throws Exception {
+    try (ChunkedEventStore store = new ChunkedEventStore(4, 64, 0)) {
+      for (long timestamp = 10; timestamp < 20; ++timestamp) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+      store.insert(new Event(TYPE, 5));
+      store.insert(new Event(TYPE, 5));
+      store.insert(new Event(TYPE, 12));
+      store.insert(new Event(TYPE, 19));
+      store.mergeLateEvents();
+      store.insert(new Event(TYPE, 5));
+
+      assertEquals(11, store.size(TYPE));
+      assertEquals(11, timestamps(store, TYPE, Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+  }
+
+  /**
+   * Tests if removals through iterators reach the chunks, the tail and the
+   * reorder buffer.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void remove_ShouldRemoveEvents_When_EventsAreInEveryRegion() throws Exception {
+    try (ChunkedEventStore store = new ChunkedEventStore(8, 64, 0)) {
+      for (long timestamp = 0; timestamp < 100; timestamp += 2) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+      for (long timestamp = 1; timestamp < 100; timestamp += 10) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+
+      eventIterator = store.query(TYPE, Long.MIN_VALUE, Long.MAX_VALUE);
+      while (eventIterator.moveNext()) {
+        if (eventIterator.current().timestamp() % 3 == 0) {
+          eventIterator.remove();
+        }
+      }
+
+      List<Long> remaining = timestamps(store, TYPE, Long.MIN_VALUE, Long.MAX_VALUE);
+      assertEquals(remaining.size(), store.size(TYPE));
+      for (Long timestamp : remaining) {
+        assertTrue(timestamp % 3 != 0);
+      }
+      store.mergeLateEvents();
+      assertEquals(remaining, timestamps(store, TYPE, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+  }
+
+  /**
+   * Tests if removing all events of a type leaves it empty.
+   */
+  @Test
+  public void removeAll_ShouldEmptyType_When_EventsAreStored() {
+    try (ChunkedEventStore store = new ChunkedEventStore()) {
+      for (long timestamp = 0; timestamp < 100; ++timestamp) {
+        store.insert(new Event(TYPE, 100 - timestamp));
+      }
+      store.removeAll(TYPE);
+
+      assertEquals(0, store.size(TYPE));
+      eventIterator = store.query(TYPE, Long.MIN_VALUE, Long.MAX_VALUE);
+      assertFalse(eventIterator.moveNext());
+    }
+  }
+
+  /**
+   * Tests if the metrics report the late events and the forced merges.
+   */
+  @Test
+  public void ingestMetrics_ShouldReportLateness_When_EventsAreLate() {
+    try (ChunkedEventStore store = new ChunkedEventStore(16, 4, 0)) {
+      for (long timestamp = 100; timestamp < 200; ++timestamp) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+      store.insert(new Event(TYPE, 98));
+      store.insert(new Event(TYPE, 97));
+      store.insert(new Event(TYPE, 50));
+      store.insert(new Event(TYPE, 60));
+
+      IngestMetrics metrics = store.ingestMetrics();
+      assertEquals(100, metrics.inOrderEvents());
+      assertEquals(4, metrics.lateEvents());
+      assertEquals(149, metrics.maxLateness());
+      assertEquals(1, metrics.forcedMerges());
+      assertEquals(4.0 / 104, metrics.lateRatio(), 1e-9);
+      long histogramTotal = 0;
+      for (long count : metrics.latenessHistogram()) {
+        histogramTotal += count;
+      }
+      assertEquals(4, histogramTotal);
+    }
+  }
+
+  /**
+   * Tests if compressed chunks use at least ten times less memory than a skip
+   * list, and return the same events as uncompressed ones.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void estimatedBytesPerEvent_ShouldBeTenTimesSmaller_When_ChunksAreCompressed() throws Exception {
+    try (ChunkedEventStore compressed = new ChunkedEventStore(1024, 64, 0, true);
+      ChunkedEventStore plain = new ChunkedEventStore(1024, 64, 0, false)) {
+      for (long i = 0; i < 100_000; ++i) {
+        long timestamp = 1_500_000_000_000L + 250 * i + i % 7;
+        compressed.insert(new Event(TYPE, timestamp));
+        plain.insert(new Event(TYPE, timestamp));
+      }
+
+      assertTrue(compressed.estimatedBytesPerEvent() * 10 <= new EventStoreImpl().estimatedBytesPerEvent());
+      assertTrue(compressed.estimatedBytesPerEvent() < plain.estimatedBytesPerEvent());
+      assertEquals(timestamps(plain, TYPE, Long.MIN_VALUE, Long.MAX_VALUE), timestamps(compressed, TYPE, Long.MIN_VALUE,
+        Long.MAX_VALUE));
+      long start = 1_500_000_000_000L + 250 * 31_000;
+      long end = 1_500_000_000_000L + 250 * 32_500;
+      assertEquals(timestamps(plain, TYPE, start, end), timestamps(compressed, TYPE, start, end));
+      assertEquals(1500, timestamps(compressed, TYPE, start, end).size());
+    }
+  }
+
+  /**
+   * Tests if concurrent writers and readers see consistent, ordered results.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldReturnAllEvents_Over_ConcurrentAccesses() throws Exception {
+    try (ChunkedEventStore store = new ChunkedEventStore(64, 128, 1)) {
+      List<Thread> threads = new ArrayList<>();
+      List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+      for (int i = 0; i < 4; ++i) {
+        final long offset = i;
+        threads.add(new Thread(() -> {
+          try {
+            for (long timestamp = offset; timestamp < 20000; timestamp += 4) {
+              store.insert(new Event(TYPE, timestamp));
+              if (timestamp % 1000 == offset) {
+                List<Long> seen = timestamps(store, TYPE, Long.MIN_VALUE, Long.MAX_VALUE);
+                for (int j = 1; j < seen.size(); ++j) {
+                  assertTrue(seen.get(j - 1) < seen.get(j));
+                }
+              }
+            }
+          }
+          catch (Throwable e) {
+            failures.add(e);
+          }
+        }));
+      }
+      threads.forEach(Thread::start);
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertTrue(failures.toString(), failures.isEmpty());
+      List<Long> all = timestamps(store, TYPE, Long.MIN_VALUE, Long.MAX_VALUE);
+      assertEquals(20000, all.size());
+      for (int i = 0; i < all.size(); ++i) {
+        assertEquals(i, all.get(i).longValue());
+      }
+      assertEquals(0, store.mergeFailures());
+    }
+  }
+
+}
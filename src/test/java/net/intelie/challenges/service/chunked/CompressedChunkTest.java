@@ -0,0 +1,124 @@
+package net.intelie.challenges.service.chunked;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Unit tests for {@link CompressedChunk}. */
+public class CompressedChunkTest {
+
+  /**
+   * Tests if sequences of any spacing, including the extremes of the
+   * <code>long</code> range, decode to the original timestamps.
+   */
+  @Test
+  public void toArray_ShouldReturnOriginalTimestamps_When_SpacingIsIrregular() {
+    Random random = new Random(7);
+    long[] timestamps = new long[1000];
+    timestamps[0] = Long.MIN_VALUE;
+    for (int i = 1; i < timestamps.length - 1; ++i) {
+      timestamps[i] = random.nextLong();
+    }
+    timestamps[timestamps.length - 1] = Long.MAX_VALUE;
+    Arrays.sort(timestamps);
+
+    CompressedChunk chunk = CompressedChunk.encode(timestamps, timestamps.length);
+
+    assertArrayEquals(timestamps, chunk.toArray());
+    assertEquals(Long.MIN_VALUE, chunk.min());
+    assertEquals(Long.MAX_VALUE, chunk.max());
+    assertEquals(timestamps.length, chunk.size());
+  }
+
+  /**
+   * Tests if timestamps produced at a steady rate take about one byte each.
+   */
+  @Test
+  public void estimatedBytes_ShouldBeAboutOneBytePerEvent_When_RateIsSteady() {
+    long[] timestamps = new long[1024];
+    for (int i = 0; i < timestamps.length; ++i) {
+      timestamps[i] = 1_500_000_000_000L + 1000L * i;
+    }
+
+    CompressedChunk chunk = CompressedChunk.encode(timestamps, timestamps.length);
+
+    assertTrue(chunk.estimatedBytes() < 2 * timestamps.length);
+    assertTrue(chunk.estimatedBytes() * 4 < new SortedChunk(timestamps).estimatedBytes());
+  }
+
+  /**
+   * Tests if point lookups and cursor seeks find the right positions.
+   */
+  @Test
+  public void cursor_ShouldStartAtFirstTimestampInRange_When_SeekingWithinChunk() {
+    long[] timestamps = { 10, 20, 25, 40, 100 };
+    CompressedChunk chunk = CompressedChunk.encode(timestamps, timestamps.length);
+
+    assertTrue(chunk.contains(25));
+    assertFalse(chunk.contains(26));
+    assertFalse(chunk.contains(5));
+    assertFalse(chunk.contains(101));
+
+    TimestampCursor cursor = chunk.cursor(21);
+    assertEquals(25, cursor.current());
+    cursor.advance();
+    assertEquals(40, cursor.current());
+    cursor.advance();
+    cursor.advance();
+    assertFalse(cursor.hasCurrent());
+    assertFalse(chunk.cursor(101).hasCurrent());
+    assertEquals(10, chunk.cursor(Long.MIN_VALUE).current());
+  }
+
+  /**
+   * Tests if removing a timestamp keeps the chunk compressed and consistent.
+   */
+  @Test
+  public void without_ShouldLeaveOutTimestamp_When_TimestampIsInChunk() {
+    long[] timestamps = { 1, 2, 3, 5, 8 };
+    CompressedChunk chunk = CompressedChunk.encode(timestamps, timestamps.length);
+
+    CompressedChunk remaining = chunk.without(1).without(5);
+
+    assertArrayEquals(new long[] { 2, 3, 8 }, remaining.toArray());
+    assertEquals(2, remaining.min());
+    assertNull(CompressedChunk.encode(new long[] { 4 }, 1).without(4));
+  }
+
+  /**
+   * Tests if ranks and positional reads match the plain array, and if the
+   * rank sketch bounds every rank.
+   */
+  @Test
+  public void rank_ShouldMatchPlainChunk_When_ReadingFromCheckpoints() {
+    Random random = new Random(11);
+    long[] timestamps = new long[1000];
+    long timestamp = 0;
+    for (int i = 0; i < timestamps.length; ++i) {
+      timestamp += 1 + random.nextInt(100);
+      timestamps[i] = timestamp;
+    }
+    CompressedChunk chunk = CompressedChunk.encode(timestamps, timestamps.length);
+    RankSketch sketch = chunk.sketch();
+
+    for (int i = 0; i < timestamps.length; ++i) {
+      assertEquals(timestamps[i], chunk.get(i));
+      assertTrue(sketch.lowerValue(i) <= timestamps[i] && timestamps[i] <= sketch.upperValue(i));
+    }
+    for (long probe = 0; probe <= timestamp + 1; probe += 7) {
+      int expected = new SortedChunk(timestamps).rank(probe);
+      assertEquals(expected, chunk.rank(probe));
+      assertTrue(sketch.lowerRank(probe) <= expected && expected <= sketch.upperRank(probe));
+      assertTrue(sketch.upperRank(probe) - sketch.lowerRank(probe) < sketch.step());
+    }
+    assertEquals(timestamps[500], chunk.cursor(timestamps[500]).current());
+  }
+
+}
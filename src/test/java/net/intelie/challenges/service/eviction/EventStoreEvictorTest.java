@@ -0,0 +1,256 @@
+package net.intelie.challenges.service.eviction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/** Unit tests for {@link EventStoreEvictor} and the eviction policies. */
+public class EventStoreEvictorTest {
+
+  /** The event store to be trimmed. */
+  private EventStoreImpl eventStore;
+
+  /** Creates a new event store to each test method. */
+  @Before
+  public void setup() {
+    eventStore = new EventStoreImpl();
+  }
+
+  /**
+   * Inserts a range of events of a type.
+   *
+   * @param type Type of the events.
+   * @param start Initial timestamp (inclusive).
+   * @param end Final timestamp (exclusive).
+   */
+  private void insert(EventType type, long start, long end) {
+    for (long timestamp = start; timestamp < end; ++timestamp) {
+      eventStore.insert(new Event(type.toString(), timestamp));
+    }
+  }
+
+  /**
+   * Gets the oldest timestamp of a type.
+   *
+   * @param type Type of the events.
+   * @return The oldest timestamp, or <code>null</code> if there are no events.
+   * @throws Exception
+   */
+  private Long oldest(EventType type) throws Exception {
+    try (EventIterator iterator = eventStore.query(type.toString(), Long.MIN_VALUE, Long.MAX_VALUE)) {
+      return iterator.moveNext() ? iterator.current().timestamp() : null;
+    }
+  }
+
+  /**
+   * Tests if <code>evict</code> does nothing when the store is within its
+   * budget.
+   */
+  @Test
+  public void evict_ShouldRemoveNothing_When_StoreIsWithinBudget() {
+    insert(EventType.TYPE_1, 0, 10);
+    EventStoreEvictor evictor = new EventStoreEvictor(eventStore, EventBudget.ofEvents(10),
+      new OldestGlobalEvictionPolicy());
+
+    assertEquals(0, evictor.evict());
+    assertEquals(10, eventStore.size());
+  }
+
+  /**
+   * Tests if the global policy removes the oldest events, whatever their
+   * types.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void evict_ShouldRemoveOldestEvents_When_PolicyIsGlobal() throws Exception {
+    insert(EventType.TYPE_1, 0, 100);
+    insert(EventType.TYPE_2, 50, 150);
+    EventStoreEvictor evictor = new EventStoreEvictor(eventStore, EventBudget.ofEvents(100),
+      new OldestGlobalEvictionPolicy(), 7);
+
+    assertEquals(100, evictor.evict());
+    assertEquals(100, eventStore.size());
+    assertEquals(25, eventStore.size(EventType.TYPE_1.toString()));
+    assertEquals(Long.valueOf(75), oldest(EventType.TYPE_1));
+    assertEquals(Long.valueOf(75), oldest(EventType.TYPE_2));
+  }
+
+  /**
+   * Tests if the per type policy keeps an even share of each type.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void evict_ShouldKeepShareOfEachType_When_PolicyIsPerType() throws Exception {
+    insert(EventType.TYPE_1, 0, 1000);
+    insert(EventType.TYPE_2, 0, 500);
+    EventStoreEvictor evictor = new EventStoreEvictor(eventStore, EventBudget.ofEvents(100),
+      new OldestPerTypeEvictionPolicy());
+
+    evictor.evict();
+
+    assertEquals(50, eventStore.size(EventType.TYPE_1.toString()));
+    assertEquals(50, eventStore.size(EventType.TYPE_2.toString()));
+    assertEquals(Long.valueOf(950), oldest(EventType.TYPE_1));
+  }
+
+  /**
+   * Tests if the per type policy gives the share a small type does not use to
+   * the others, trimming the store down to its capacity only.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void evict_ShouldGiveUnusedShareToOtherTypes_When_PolicyIsPerType() throws Exception {
+    insert(EventType.TYPE_1, 0, 1000);
+    insert(EventType.TYPE_2, 0, 10);
+    EventStoreEvictor evictor = new EventStoreEvictor(eventStore, EventBudget.ofEvents(100),
+      new OldestPerTypeEvictionPolicy());
+
+    evictor.evict();
+
+    assertEquals(100, eventStore.size());
+    assertEquals(90, eventStore.size(EventType.TYPE_1.toString()));
+    assertEquals(10, eventStore.size(EventType.TYPE_2.toString()));
+    assertEquals(Long.valueOf(910), oldest(EventType.TYPE_1));
+  }
+
+  /**
+   * Tests if the quota policy only trims the types that exceed their quotas.
+   */
+  @Test
+  public void evict_ShouldTrimTypeToQuota_When_PolicyIsPerTypeQuota() {
+    insert(EventType.TYPE_1, 0, 100);
+    insert(EventType.TYPE_2, 0, 100);
+    EventStoreEvictor evictor = new EventStoreEvictor(eventStore, EventBudget.ofEvents(1000),
+      new PerTypeQuotaEvictionPolicy(Collections.singletonMap(EventType.TYPE_1.toString(), 30L)));
+
+    assertEquals(70, evictor.evict());
+    assertEquals(30, eventStore.size(EventType.TYPE_1.toString()));
+    assertEquals(100, eventStore.size(EventType.TYPE_2.toString()));
+  }
+
+  /**
+   * Tests if the quota policy holds the capacity of the store among the types
+   * without a quota, evicting their oldest events.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void evict_ShouldHoldCapacity_When_TypesHaveNoQuota() throws Exception {
+    insert(EventType.TYPE_1, 0, 100);
+    insert(EventType.TYPE_2, 50, 150);
+    EventStoreEvictor evictor = new EventStoreEvictor(eventStore, EventBudget.ofEvents(100),
+      new PerTypeQuotaEvictionPolicy(Collections.emptyMap()));
+
+    assertEquals(100, evictor.evict());
+    assertEquals(100, eventStore.size());
+    assertEquals(Long.valueOf(75), oldest(EventType.TYPE_1));
+    assertEquals(Long.valueOf(75), oldest(EventType.TYPE_2));
+  }
+
+  /**
+   * Tests if the quota policy evicts from all types once the quotas alone
+   * exceed the capacity of the store.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void evict_ShouldHoldCapacity_When_QuotasExceedIt() throws Exception {
+    insert(EventType.TYPE_1, 0, 100);
+    insert(EventType.TYPE_2, 50, 150);
+    Map<String, Long> quotas = new HashMap<>();
+    quotas.put(EventType.TYPE_1.toString(), 80L);
+    quotas.put(EventType.TYPE_2.toString(), 80L);
+    EventStoreEvictor evictor = new EventStoreEvictor(eventStore, EventBudget.ofEvents(100),
+      new PerTypeQuotaEvictionPolicy(quotas));
+
+    assertEquals(100, evictor.evict());
+    assertEquals(100, eventStore.size());
+    assertEquals(Long.valueOf(75), oldest(EventType.TYPE_1));
+    assertEquals(Long.valueOf(75), oldest(EventType.TYPE_2));
+  }
+
+  /**
+   * Tests if a memory budget is converted to a number of events using the
+   * estimate of the store.
+   */
+  @Test
+  public void evict_ShouldHonorMemoryBudget() {
+    insert(EventType.TYPE_1, 0, 100);
+    long bytes = 40 * eventStore.estimatedBytesPerEvent();
+    EventStoreEvictor evictor = new EventStoreEvictor(eventStore, EventBudget.ofBytes(bytes),
+      new OldestGlobalEvictionPolicy());
+
+    evictor.evict();
+
+    assertEquals(40, eventStore.size());
+    assertTrue(eventStore.estimatedBytes() <= bytes);
+  }
+
+  /**
+   * Tests if the background runs keep the store within its budget.
+   *
+   * @throws InterruptedException
+   */
+  @Test
+  public void start_ShouldEvictInBackground() throws InterruptedException {
+    try (EventStoreEvictor evictor = new EventStoreEvictor(eventStore, EventBudget.ofEvents(10),
+      new OldestGlobalEvictionPolicy())) {
+      evictor.start(1, TimeUnit.MILLISECONDS);
+      insert(EventType.TYPE_1, 0, 1000);
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (evictor.evictedCount() < 990 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      assertEquals(10, eventStore.size());
+      assertEquals(990, evictor.evictedCount());
+    }
+  }
+
+  /**
+   * Tests if a failed background run is counted and does not stop the next
+   * runs.
+   *
+   * @throws InterruptedException
+   */
+  @Test
+  public void start_ShouldKeepEvicting_When_RunFails() throws InterruptedException {
+    AtomicInteger calls = new AtomicInteger();
+    EvictionPolicy oldest = new OldestGlobalEvictionPolicy();
+    EvictionPolicy failingOnce = (store, capacity, maxEvents) -> {
+      if (calls.getAndIncrement() == 0) {
+        throw new IllegalStateException("Transient failure.");
+      }
+      return oldest.evict(store, capacity, maxEvents);
+    };
+    insert(EventType.TYPE_1, 0, 100);
+    try (EventStoreEvictor evictor = new EventStoreEvictor(eventStore, EventBudget.ofEvents(10), failingOnce)) {
+      evictor.start(1, TimeUnit.MILLISECONDS);
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (evictor.evictedCount() < 90 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      assertEquals(1, evictor.evictionFailures());
+      assertEquals(10, eventStore.size());
+      assertEquals(90, evictor.evictedCount());
+    }
+  }
+
+}
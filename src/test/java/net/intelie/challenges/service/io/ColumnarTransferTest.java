@@ -0,0 +1,278 @@
+package net.intelie.challenges.service.io;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventStoreChallengeTest;
+import net.intelie.challenges.service.EventStoreImpl;
+import net.intelie.challenges.service.EventStoreListener;
+
+/**
+ * Unit tests for {@link ColumnarWriter}, {@link ColumnarReader} and the
+ * partition export and import of {@link EventStoreImpl}.
+ */
+public class ColumnarTransferTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Creates a store with events of the test type at every third timestamp.
+   *
+   * @param count Number of events.
+   * @return The store.
+   */
+  private static EventStoreImpl store(int count) {
+    EventStoreImpl store = new EventStoreImpl();
+    for (long i = 0; i < count; ++i) {
+      store.insert(new Event(TYPE, i * 3));
+    }
+    return store;
+  }
+
+  /**
+   * Reads all timestamps of a reader.
+   *
+   * @param reader The reader.
+   * @return The timestamps.
+   * @throws IOException
+   */
+  private static List<Long> readAll(ColumnarReader reader) throws IOException {
+    List<Long> timestamps = new ArrayList<>();
+    while (reader.hasNext()) {
+      timestamps.add(reader.next());
+    }
+    return timestamps;
+  }
+
+  /**
+   * Tests if a partition exported over several blocks is imported with the
+   * same events.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void importPartition_ShouldRestoreEvents_When_PartitionWasExported() throws Exception {
+    EventStoreImpl source = store(20_000);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    assertEquals(20_000, source.exportPartition(TYPE, Channels.newChannel(bytes)));
+
+    EventStoreImpl target = new EventStoreImpl();
+    assertEquals(20_000, target.importPartition(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()))));
+    assertEquals(20_000, target.size(TYPE));
+    assertEquals(timestamps(source, TYPE, 0, Long.MAX_VALUE), timestamps(target, TYPE, 0, Long.MAX_VALUE));
+
+    target.insert(new Event(TYPE, 1));
+    eventIterator = target.query(TYPE, 0, 4);
+    assertTrue(eventIterator.moveNext());
+    eventIterator.remove();
+    assertEquals(20_000, target.size(TYPE));
+  }
+
+  /**
+   * Tests if ranges are applied both when exporting and when importing, with
+   * blocks skipped by seeking a file.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void importPartition_ShouldOnlyStoreRange_When_RangeIsGiven() throws Exception {
+    EventStoreImpl source = store(30_000);
+    Path file = Files.createTempFile("events", ".col");
+    try {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        assertEquals(20_000, source.exportPartition(TYPE, 15_000, 75_000, channel));
+      }
+      EventStoreImpl target = new EventStoreImpl();
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        assertEquals(100, target.importPartition(channel, 60_000, 60_300));
+      }
+
+      assertEquals(timestamps(source, TYPE, 60_000, 60_300), timestamps(target, TYPE, 0, Long.MAX_VALUE));
+    }
+    finally {
+      Files.delete(file);
+    }
+  }
+
+  /**
+   * Tests if an import into an existing type merges the events and notifies
+   * the listeners about the new ones only.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void importPartition_ShouldMergeAndNotify_When_TypeExists() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    store(100).exportPartition(TYPE, Channels.newChannel(bytes));
+    EventStoreImpl target = new EventStoreImpl();
+    for (long timestamp = 0; timestamp < 300; timestamp += 2) {
+      target.insert(new Event(TYPE, timestamp));
+    }
+    List<Event> inserted = new ArrayList<>();
+    target.addListener(new EventStoreListener() {
+
+      @Override
+      public void onInsert(Event event) {
+        inserted.add(event);
+      }
+    });
+
+    long stored = target.importPartition(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertEquals(50, stored);
+    assertEquals(50, inserted.size());
+    assertEquals(200, target.size(TYPE));
+  }
+
+  /**
+   * Tests if events inserted while an import replaces the empty partition of
+   * their type are kept, and if the listeners are told about every event.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void importPartition_ShouldKeepConcurrentInserts_When_TypeIsEmpty() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    store(5000).exportPartition(TYPE, Channels.newChannel(bytes));
+
+    for (int round = 0; round < 50; ++round) {
+      EventStoreImpl target = new EventStoreImpl(TYPE);
+      Set<Long> notified = ConcurrentHashMap.newKeySet();
+      target.addListener(new EventStoreListener() {
+
+        @Override
+        public void onInsert(Event event) {
+          notified.add(event.timestamp());
+        }
+      });
+      CountDownLatch reading = new CountDownLatch(1);
+      AtomicBoolean imported = new AtomicBoolean();
+      AtomicLong inserted = new AtomicLong();
+      List<Thread> writers = new ArrayList<>();
+      for (int i = 1; i < 3; ++i) {
+        final long offset = i;
+        writers.add(new Thread(() -> {
+          try {
+            reading.await();
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+          for (long timestamp = offset; !imported.get(); timestamp += 3) {
+            target.insert(new Event(TYPE, timestamp));
+            inserted.incrementAndGet();
+          }
+        }));
+      }
+      writers.forEach(Thread::start);
+      /* The writers start once the import is reading the events. */
+      ReadableByteChannel source = Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()));
+      target.importPartition(new ReadableByteChannel() {
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+          int read = source.read(destination);
+          if (reading.getCount() > 0 && target.size(TYPE) == 0 && read > 0) {
+            reading.countDown();
+          }
+          return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+          return source.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+          source.close();
+        }
+      });
+      imported.set(true);
+      reading.countDown();
+      for (Thread writer : writers) {
+        writer.join();
+      }
+
+      long expected = 5000 + inserted.get();
+      assertEquals(expected, target.size(TYPE));
+      assertEquals(expected, timestamps(target, TYPE).size());
+      assertEquals(expected, notified.size());
+    }
+  }
+
+  /**
+   * Tests if the writer rejects timestamps out of order.
+   *
+   * @throws Exception
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void write_ShouldThrowException_When_TimestampIsOutOfOrder() throws Exception {
+    try (ColumnarWriter writer = new ColumnarWriter(Channels.newChannel(new ByteArrayOutputStream()), TYPE)) {
+      writer.write(10);
+      writer.write(10);
+    }
+  }
+
+  /**
+   * Tests if the reader reads a range from a channel that cannot seek, and
+   * rejects input of another format.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void next_ShouldReadRange_When_ChannelCannotSeek() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ColumnarWriter writer = new ColumnarWriter(Channels.newChannel(bytes), TYPE)) {
+      for (long timestamp = 0; timestamp < 50_000; ++timestamp) {
+        writer.write(timestamp);
+      }
+    }
+    ColumnarReader reader = new ColumnarReader(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())),
+      40_000, 40_003);
+
+    assertEquals(TYPE, reader.type());
+    List<Long> expected = new ArrayList<>();
+    expected.add(40_000L);
+    expected.add(40_001L);
+    expected.add(40_002L);
+    assertEquals(expected, readAll(reader));
+    assertFalse(reader.hasNext());
+
+    boolean rejected = false;
+    try {
+      new ColumnarReader(Channels.newChannel(new ByteArrayInputStream(new byte[16])));
+    }
+    catch (IOException e) {
+      rejected = true;
+    }
+    assertTrue(rejected);
+  }
+
+}
@@ -0,0 +1,128 @@
+package net.intelie.challenges.service.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventStoreChallengeTest;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/** Unit tests for {@link FlightRecorderEventStore}. */
+public class FlightRecorderEventStoreTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Runs operations on a store while a recording is on, and reads the events
+   * of the store it recorded.
+   *
+   * @param store The store.
+   * @param insertThreshold Threshold of the insert events.
+   * @return The events of the store, in order.
+   * @throws Exception
+   */
+  private List<RecordedEvent> record(FlightRecorderEventStore store, Duration insertThreshold) throws Exception {
+    Path file = Files.createTempFile("store", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(InsertEvent.NAME).withThreshold(insertThreshold);
+      recording.enable(QueryEvent.NAME).withThreshold(Duration.ZERO);
+      recording.enable(RemoveAllEvent.NAME);
+      recording.start();
+
+      for (long timestamp = 0; timestamp < 100; ++timestamp) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+      eventIterator = store.query(TYPE, 10, 20);
+      while (eventIterator.moveNext()) {
+        if (eventIterator.current().timestamp() % 5 == 0) {
+          eventIterator.remove();
+        }
+      }
+      eventIterator.close();
+      store.removeAll(TYPE);
+
+      recording.stop();
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file).stream().filter(event -> event.getEventType().getName()
+        .startsWith("net.intelie.challenges.")).collect(Collectors.toList());
+    }
+    finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Tests if the store records its inserts, queries and removals when the
+   * thresholds let every operation through.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void store_ShouldRecordOperations_When_RecordingIsOn() throws Exception {
+    List<RecordedEvent> events = record(new FlightRecorderEventStore(new EventStoreImpl()), Duration.ZERO);
+
+    assertEquals(102, events.size());
+    assertEquals(100, events.stream().filter(event -> event.getEventType().getName().equals(InsertEvent.NAME))
+      .count());
+
+    RecordedEvent query = events.stream().filter(event -> event.getEventType().getName().equals(QueryEvent.NAME))
+      .findFirst().get();
+    assertEquals(TYPE, query.getString("type"));
+    assertEquals(10, query.getLong("rangeStart"));
+    assertEquals(20, query.getLong("rangeEnd"));
+    assertEquals(10, query.getLong("resultCount"));
+    assertEquals(2, query.getLong("removedCount"));
+    assertTrue(query.getDuration("scanTime").compareTo(query.getDuration()) <= 0);
+
+    RecordedEvent removeAll = events.stream().filter(event -> event.getEventType().getName().equals(
+      RemoveAllEvent.NAME)).findFirst().get();
+    assertEquals(TYPE, removeAll.getString("type"));
+  }
+
+  /**
+   * Tests if fast inserts are left out by the threshold and unsampled queries
+   * are not recorded.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void store_ShouldSkipOperations_When_BelowThresholdOrNotSampled() throws Exception {
+    List<RecordedEvent> events = record(new FlightRecorderEventStore(new EventStoreImpl(), 1, Integer.MAX_VALUE),
+      Duration.ofHours(1));
+
+    assertEquals(1, events.size());
+    assertEquals(RemoveAllEvent.NAME, events.get(0).getEventType().getName());
+  }
+
+  /**
+   * Tests if the store forwards the operations when no recording is on.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void store_ShouldForwardOperations_When_RecordingIsOff() throws Exception {
+    EventStoreImpl inner = new EventStoreImpl();
+    FlightRecorderEventStore store = new FlightRecorderEventStore(inner, 8, 8);
+    for (long timestamp = 0; timestamp < 100; ++timestamp) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+    assertEquals(100, inner.size(TYPE));
+    assertEquals(50, store.removeIf(TYPE, 0, 100, event -> event.timestamp() % 2 == 0));
+    store.removeAll(TYPE);
+    assertEquals(0, inner.size(TYPE));
+  }
+
+}
@@ -0,0 +1,200 @@
+package net.intelie.challenges.service.replication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventStoreChallengeTest;
+import net.intelie.challenges.service.EventStoreImpl;
+import net.intelie.challenges.service.StoreChange;
+
+/** Unit tests for {@link ChangeFeed} and {@link ConsumerOffsets}. */
+public class ChangeFeedTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Creates a batch of inserted events, numbered from a sequence on.
+   *
+   * @param first Sequence of the first change.
+   * @param count Number of changes.
+   * @return The batch.
+   */
+  private static List<StoreChange> inserts(long first, int count) {
+    List<StoreChange> batch = new ArrayList<>();
+    for (long sequence = first; sequence < first + count; ++sequence) {
+      batch.add(new StoreChange(sequence, StoreChange.Kind.INSERT, TYPE, sequence));
+    }
+    return batch;
+  }
+
+  /**
+   * Tests if a consumer reads every change of the leader in batches and in
+   * log order, resuming from its offset.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void poll_ShouldReadAllChanges_When_ConsumerResumesFromOffset() throws Exception {
+    ChangeFeed feed = new ChangeFeed(4096);
+    try (ReplicatingEventStore leader = new ReplicatingEventStore(new EventStoreImpl(), feed)) {
+      for (long timestamp = 0; timestamp < 1000; ++timestamp) {
+        leader.insert(new Event(TYPE, timestamp));
+      }
+      eventIterator = leader.query(TYPE, 0, 10);
+      while (eventIterator.moveNext()) {
+        eventIterator.remove();
+      }
+      leader.removeAll(TYPE);
+      assertTrue(leader.awaitShipped(5, TimeUnit.SECONDS));
+    }
+
+    List<StoreChange> changes = new ArrayList<>();
+    long offset = 0;
+    List<StoreChange> batch;
+    while (!(batch = feed.poll(offset, 64, 10, TimeUnit.MILLISECONDS)).isEmpty()) {
+      assertTrue(batch.size() <= 64);
+      changes.addAll(batch);
+      offset = batch.get(batch.size() - 1).sequence();
+    }
+
+    assertEquals(1011, changes.size());
+    for (int i = 0; i < changes.size(); ++i) {
+      assertEquals(i + 1, changes.get(i).sequence());
+    }
+    assertEquals(StoreChange.Kind.INSERT, changes.get(999).kind());
+    assertEquals(StoreChange.Kind.REMOVE, changes.get(1000).kind());
+    assertEquals(StoreChange.Kind.REMOVE_ALL, changes.get(1010).kind());
+    assertEquals(1011, feed.lastSequence());
+  }
+
+  /**
+   * Tests if the ring keeps only its capacity and reports the changes lost by
+   * a consumer that fell behind.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void read_ShouldThrowException_When_ChangesWereOverwritten() {
+    ChangeFeed feed = new ChangeFeed(100);
+    assertEquals(128, feed.capacity());
+    feed.send(0, inserts(1, 200));
+    feed.send(0, inserts(150, 60));
+
+    assertEquals(209, feed.lastSequence());
+    assertEquals(82, feed.firstSequence());
+    assertEquals(82, feed.read(81, 1000).get(0).sequence());
+    assertEquals(128, feed.read(81, 1000).size());
+    assertTrue(feed.read(209, 10).isEmpty());
+    feed.read(80, 10);
+  }
+
+  /**
+   * Tests if a consumer blocked on an empty feed is woken up by new changes.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void poll_ShouldWakeUpConsumer_When_ChangesArrive() throws Exception {
+    ChangeFeed feed = new ChangeFeed(16);
+    Thread writer = new Thread(() -> {
+      try {
+        Thread.sleep(20);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      feed.send(0, inserts(1, 3));
+    });
+    writer.start();
+
+    List<StoreChange> batch = feed.poll(0, 10, 5, TimeUnit.SECONDS);
+    writer.join();
+    assertEquals(3, batch.size());
+    assertTrue(feed.poll(3, 10, 1, TimeUnit.MILLISECONDS).isEmpty());
+  }
+
+  /**
+   * Tests if committed offsets survive a reload, only move forward and can
+   * be reset.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void commit_ShouldPersistOffsets_When_OffsetsAreReloaded() throws Exception {
+    Path directory = Files.createTempDirectory("offsets");
+    Path file = directory.resolve("offsets.properties");
+    try {
+      ConsumerOffsets offsets = new ConsumerOffsets(file);
+      assertEquals(0, offsets.offset("sync"));
+      offsets.commit("sync", 42);
+      offsets.commit("sync", 10);
+      offsets.commit("audit", 7);
+
+      ConsumerOffsets reloaded = new ConsumerOffsets(file);
+      assertEquals(42, reloaded.offset("sync"));
+      assertEquals(7, reloaded.offset("audit"));
+
+      reloaded.reset("audit");
+      assertEquals(0, new ConsumerOffsets(file).offset("audit"));
+      assertEquals(42, new ConsumerOffsets(file).offset("sync"));
+    }
+    finally {
+      Files.deleteIfExists(file);
+      Files.delete(directory);
+    }
+  }
+
+  /**
+   * Tests if a commit that fails to write the file leaves no offset behind
+   * for a consumer that never committed one.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void commit_ShouldForgetNewConsumer_When_WriteFails() throws Exception {
+    Path directory = Files.createTempDirectory("offsets");
+    Path file = directory.resolve("offsets.properties");
+    Path blocker = directory.resolve("offsets.properties.tmp");
+    try {
+      ConsumerOffsets offsets = new ConsumerOffsets(file);
+      offsets.commit("sync", 42);
+      Files.createDirectory(blocker);
+      try {
+        offsets.commit("audit", 7);
+        fail("The commit should not succeed.");
+      }
+      catch (IOException e) {
+        // Expected.
+      }
+      Files.delete(blocker);
+
+      offsets.commit("sync", 43);
+      Properties properties = new Properties();
+      try (InputStream input = Files.newInputStream(file)) {
+        properties.load(input);
+      }
+      assertEquals(Collections.singleton("sync"), properties.stringPropertyNames());
+      assertEquals(43, new ConsumerOffsets(file).offset("sync"));
+    }
+    finally {
+      Files.deleteIfExists(blocker);
+      Files.deleteIfExists(file);
+      Files.delete(directory);
+    }
+  }
+
+}
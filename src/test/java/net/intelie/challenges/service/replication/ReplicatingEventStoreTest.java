@@ -0,0 +1,233 @@
+package net.intelie.challenges.service.replication;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStoreChallengeTest;
+import net.intelie.challenges.service.EventStoreImpl;
+import net.intelie.challenges.service.StoreChange;
+
+/** Unit tests for {@link ReplicatingEventStore} and its followers. */
+public class ReplicatingEventStoreTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Applies inserts, removals and <code>removeAll</code> to a leader.
+   *
+   * @param leader The leader.
+   * @throws Exception
+   */
+  private static void write(ReplicatingEventStore leader) throws Exception {
+    for (long timestamp = 0; timestamp < 1000; ++timestamp) {
+      leader.insert(new Event(TYPE, timestamp));
+      leader.insert(new Event(EventType.TYPE_2.toString(), timestamp));
+    }
+    try (EventIterator iterator = leader.query(TYPE, 100, 200)) {
+      while (iterator.moveNext()) {
+        iterator.remove();
+      }
+    }
+    leader.removeAll(EventType.TYPE_2.toString());
+  }
+
+  /**
+   * Tests if a follower fed in process ends up with the data of the leader.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void follower_ShouldMatchLeader_When_TransportIsInProcess() throws Exception {
+    EventStoreImpl primary = new EventStoreImpl();
+    FollowerEventStore follower = new FollowerEventStore();
+
+    try (ReplicatingEventStore leader = new ReplicatingEventStore(primary, new InProcessTransport(follower), 16, 8)) {
+      write(leader);
+      assertTrue(leader.awaitShipped(5, TimeUnit.SECONDS));
+      assertEquals(leader.lastSequence(), follower.appliedSequence());
+    }
+
+    assertEquals(timestamps(primary, TYPE), timestamps(follower, TYPE));
+    assertEquals(900, timestamps(follower, TYPE).size());
+    eventIterator = follower.query(EventType.TYPE_2.toString(), Long.MIN_VALUE, Long.MAX_VALUE);
+    assertFalse(eventIterator.moveNext());
+  }
+
+  /**
+   * Tests if a follower fed over a loopback socket ends up with the data of
+   * the leader.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void follower_ShouldMatchLeader_When_TransportIsSocket() throws Exception {
+    EventStoreImpl primary = new EventStoreImpl();
+    FollowerEventStore follower = new FollowerEventStore();
+
+    try (ReplicationReceiver receiver = new ReplicationReceiver(follower, 0);
+      ReplicatingEventStore leader = new ReplicatingEventStore(primary, new SocketTransport("localhost", receiver
+        .port()))) {
+      write(leader);
+      assertTrue(leader.awaitShipped(5, TimeUnit.SECONDS));
+      assertEquals(leader.lastSequence(), follower.appliedSequence());
+    }
+
+    assertEquals(timestamps(primary, TYPE), timestamps(follower, TYPE));
+  }
+
+  /**
+   * Tests if a follower drops the data of a leader that restarted and applies
+   * the new log, whose sequences start from one again.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void follower_ShouldMatchNewLeader_When_LeaderRestarts() throws Exception {
+    FollowerEventStore follower = new FollowerEventStore();
+    try (ReplicationReceiver receiver = new ReplicationReceiver(follower, 0)) {
+      try (ReplicatingEventStore leader = new ReplicatingEventStore(new EventStoreImpl(), new SocketTransport(
+        "localhost", receiver.port()))) {
+        write(leader);
+        assertTrue(leader.awaitShipped(5, TimeUnit.SECONDS));
+      }
+
+      EventStoreImpl primary = new EventStoreImpl();
+      try (ReplicatingEventStore leader = new ReplicatingEventStore(primary, new SocketTransport("localhost",
+        receiver.port()))) {
+        for (long timestamp = 5000; timestamp < 5010; ++timestamp) {
+          leader.insert(new Event(TYPE, timestamp));
+        }
+        assertTrue(leader.awaitShipped(5, TimeUnit.SECONDS));
+        assertEquals(leader.epoch(), follower.epoch());
+        assertEquals(10, follower.appliedSequence());
+      }
+
+      assertEquals(timestamps(primary, TYPE), timestamps(follower, TYPE));
+      assertEquals(10, timestamps(follower, TYPE).size());
+    }
+  }
+
+  /**
+   * Tests if a receiver that never acknowledges fails the deliveries, which
+   * are then retried, instead of blocking the shipper.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void deliver_ShouldRetry_When_ReceiverDoesNotAcknowledge() throws Exception {
+    try (ServerSocket silent = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      ReplicatingEventStore leader = new ReplicatingEventStore(new EventStoreImpl(), new SocketTransport(
+        "localhost", silent.getLocalPort(), 1000, 100))) {
+      leader.insert(new Event(TYPE, 1));
+
+      assertFalse(leader.awaitShipped(1, TimeUnit.SECONDS));
+      assertTrue(leader.failedDeliveries() >= 2);
+    }
+  }
+
+  /**
+   * Tests if concurrent writers are replicated without losing changes.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void follower_ShouldMatchLeader_Over_ConcurrentAccesses() throws Exception {
+    EventStoreImpl primary = new EventStoreImpl();
+    FollowerEventStore follower = new FollowerEventStore();
+
+    try (ReplicatingEventStore leader = new ReplicatingEventStore(primary, new InProcessTransport(follower), 128,
+      32)) {
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < 4; ++i) {
+        final long offset = i * 1000L;
+        threads.add(new Thread(() -> {
+          for (long timestamp = offset; timestamp < offset + 1000; ++timestamp) {
+            leader.insert(new Event(TYPE, timestamp));
+          }
+          try (EventIterator iterator = leader.query(TYPE, offset, offset + 500)) {
+            while (iterator.moveNext()) {
+              iterator.remove();
+            }
+          }
+          catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        }));
+      }
+      threads.forEach(Thread::start);
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      assertTrue(leader.awaitShipped(5, TimeUnit.SECONDS));
+    }
+
+    assertEquals(2000, timestamps(follower, TYPE).size());
+    assertEquals(timestamps(primary, TYPE), timestamps(follower, TYPE));
+  }
+
+  /**
+   * Tests if a removal through an iterator opened before a
+   * <code>removeAll</code> is not replicated when it leaves alone an event
+   * inserted again since then.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void follower_ShouldKeepReinsertedEvent_When_StaleIteratorRemoves() throws Exception {
+    EventStoreImpl primary = new EventStoreImpl();
+    FollowerEventStore follower = new FollowerEventStore();
+
+    try (ReplicatingEventStore leader = new ReplicatingEventStore(primary, new InProcessTransport(follower), 16, 8)) {
+      leader.insert(new Event(TYPE, 1));
+      try (EventIterator iterator = leader.query(TYPE, 0, 10)) {
+        leader.removeAll(TYPE);
+        leader.insert(new Event(TYPE, 1));
+        assertTrue(iterator.moveNext());
+        iterator.remove();
+      }
+      long logged = leader.lastSequence();
+      assertTrue(leader.awaitShipped(5, TimeUnit.SECONDS));
+      assertEquals(3, logged);
+      assertEquals(logged, follower.appliedSequence());
+    }
+
+    assertEquals(Collections.singletonList(1L), timestamps(primary, TYPE));
+    assertEquals(timestamps(primary, TYPE), timestamps(follower, TYPE));
+  }
+
+  /**
+   * Tests if followers reject writes.
+   */
+  @Test(expected = UnsupportedOperationException.class)
+  public void insert_ShouldThrowUnsupportedOperation_When_StoreIsFollower() {
+    new FollowerEventStore().insert(new Event(TYPE, 0));
+  }
+
+  /**
+   * Tests if iterators of followers reject removals.
+   */
+  @Test(expected = UnsupportedOperationException.class)
+  public void remove_ShouldThrowUnsupportedOperation_When_StoreIsFollower() {
+    FollowerEventStore follower = new FollowerEventStore();
+    follower.apply(1, Collections.singletonList(new StoreChange(1, StoreChange.Kind.INSERT, TYPE, 1)));
+    eventIterator = follower.query(TYPE, 0, 10);
+    eventIterator.moveNext();
+    eventIterator.remove();
+  }
+
+}
@@ -0,0 +1,214 @@
+package net.intelie.challenges.service.rollup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/** Unit tests for {@link RollupIndex}. */
+public class RollupIndexTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /** The summarized store. */
+  private EventStoreImpl eventStore;
+
+  /** The index to be tested. */
+  private RollupIndex index;
+
+  /** Creates a new store and index to each test method. */
+  @Before
+  public void setup() {
+    eventStore = new EventStoreImpl();
+    index = new RollupIndex(eventStore);
+  }
+
+  /** Detaches the index after each test method. */
+  @After
+  public void tearDown() {
+    index.close();
+  }
+
+  /**
+   * Inserts one event every <code>step</code> milliseconds.
+   *
+   * @param start Initial timestamp (inclusive).
+   * @param end Final timestamp (exclusive).
+   * @param step Distance between events.
+   */
+  private void insert(long start, long end, long step) {
+    for (long timestamp = start; timestamp < end; timestamp += step) {
+      eventStore.insert(new Event(TYPE, timestamp));
+    }
+  }
+
+  /**
+   * Counts the raw events of a window.
+   *
+   * @param start Start timestamp (inclusive).
+   * @param end End timestamp (exclusive).
+   * @return The number of events.
+   * @throws Exception
+   */
+  private long countRaw(long start, long end) throws Exception {
+    long count = 0;
+    try (EventIterator iterator = eventStore.query(TYPE, start, end)) {
+      while (iterator.moveNext()) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Tests if <code>count</code> matches a raw count for unaligned windows.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void count_ShouldMatchRawCount_When_WindowIsUnaligned() throws Exception {
+    insert(-7_200_000, 7_200_000, 997);
+
+    long[][] windows = { { -7_200_000, 7_200_000 }, { -3_599_999, 3_600_001 }, { 1234, 5_432_101 }, { 10, 20 }, {
+      -61_000, 59_500 }, { 0, 0 } };
+    for (long[] window : windows) {
+      assertEquals(countRaw(window[0], window[1]), index.count(TYPE, window[0], window[1]));
+    }
+  }
+
+  /**
+   * Tests if <code>count</code> handles the whole timestamp domain.
+   */
+  @Test
+  public void count_ShouldHandleExtremeTimestamps() {
+    eventStore.insert(new Event(TYPE, Long.MIN_VALUE));
+    eventStore.insert(new Event(TYPE, 0));
+    eventStore.insert(new Event(TYPE, Long.MAX_VALUE - 1));
+
+    assertEquals(3, index.count(TYPE, Long.MIN_VALUE, Long.MAX_VALUE));
+  }
+
+  /**
+   * Tests if removals through iterators and <code>removeAll</code> are
+   * reflected in the summaries.
+   */
+  @Test
+  public void count_ShouldReflectRemovals() {
+    insert(0, 10_000, 10);
+
+    try (EventIterator iterator = eventStore.query(TYPE, 0, 5000)) {
+      while (iterator.moveNext()) {
+        iterator.remove();
+      }
+    }
+    catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+    assertEquals(500, index.count(TYPE, Long.MIN_VALUE, Long.MAX_VALUE));
+
+    eventStore.removeAll(TYPE);
+    assertEquals(0, index.count(TYPE, Long.MIN_VALUE, Long.MAX_VALUE));
+  }
+
+  /**
+   * Tests if <code>buckets</code> returns the summaries of a tier.
+   */
+  @Test
+  public void buckets_ShouldSummarizeEachMinute() {
+    insert(0, 180_000, 1000);
+    eventStore.insert(new Event(TYPE, 61_500));
+
+    List<RollupBucket> buckets = index.buckets(TYPE, RollupTier.MINUTE, 0, 180_000);
+
+    assertEquals(3, buckets.size());
+    assertEquals(60_000, buckets.get(1).start());
+    assertEquals(61, buckets.get(1).count());
+    assertEquals(60_000, buckets.get(1).firstTimestamp());
+    assertEquals(119_000, buckets.get(1).lastTimestamp());
+  }
+
+  /**
+   * Tests if aged raw events are removed from the store while their summaries
+   * are kept.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void ageRawEvents_ShouldKeepSummaries() throws Exception {
+    insert(0, 3_600_000, 100);
+
+    assertEquals(18_000, index.ageRawEvents(TYPE, 1_800_000));
+
+    assertEquals(0, countRaw(0, 1_800_000));
+    assertEquals(36_000, index.count(TYPE, 0, 3_600_000));
+    assertEquals(18_000, index.count(TYPE, 0, 1_800_000));
+    assertEquals(10, index.count(TYPE, 1000, 2000));
+    assertFalse(index.buckets(TYPE, RollupTier.SECOND, 0, 1000).isEmpty());
+  }
+
+  /**
+   * Tests if the summaries of aged events survive a <code>removeAll</code>,
+   * while the summaries of the raw events are dropped.
+   */
+  @Test
+  public void removeAll_ShouldKeepAgedSummaries() {
+    insert(0, 3_600_000, 100);
+    index.ageRawEvents(TYPE, 1_800_000);
+
+    eventStore.removeAll(TYPE);
+
+    assertEquals(18_000, index.count(TYPE, Long.MIN_VALUE, Long.MAX_VALUE));
+    assertEquals(0, index.count(TYPE, 1_800_000, 3_600_000));
+    List<RollupBucket> buckets = index.buckets(TYPE, RollupTier.HOUR, 0, 3_600_000);
+    assertEquals(1, buckets.size());
+    assertEquals(1_799_900, buckets.get(0).lastTimestamp());
+
+    insert(1_800_000, 1_900_000, 100);
+    assertEquals(19_000, index.count(TYPE, Long.MIN_VALUE, Long.MAX_VALUE));
+  }
+
+  /**
+   * Tests if the bounds of a bucket are narrowed when the events at its edges
+   * are removed.
+   */
+  @Test
+  public void buckets_ShouldNarrowBounds_When_EdgeEventsAreRemoved() {
+    insert(0, 180_000, 1000);
+    try (EventIterator iterator = eventStore.query(TYPE, 60_000, 62_000)) {
+      while (iterator.moveNext()) {
+        iterator.remove();
+      }
+    }
+    catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+    try (EventIterator iterator = eventStore.query(TYPE, 119_000, 120_000)) {
+      while (iterator.moveNext()) {
+        iterator.remove();
+      }
+    }
+    catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+
+    List<RollupBucket> minutes = index.buckets(TYPE, RollupTier.MINUTE, 60_000, 120_000);
+    assertEquals(1, minutes.size());
+    assertEquals(57, minutes.get(0).count());
+    assertEquals(62_000, minutes.get(0).firstTimestamp());
+    assertEquals(118_000, minutes.get(0).lastTimestamp());
+    List<RollupBucket> hours = index.buckets(TYPE, RollupTier.HOUR, 0, 3_600_000);
+    assertEquals(0, hours.get(0).firstTimestamp());
+    assertEquals(179_000, hours.get(0).lastTimestamp());
+  }
+
+}
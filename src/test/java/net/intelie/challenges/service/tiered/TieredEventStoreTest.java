@@ -0,0 +1,202 @@
+package net.intelie.challenges.service.tiered;
+
+import static net.intelie.challenges.service.StoredEvents.timestamps;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventStoreChallengeTest;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/** Unit tests for {@link TieredEventStore}. */
+public class TieredEventStoreTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /** Directory of the segment files. */
+  private Path directory;
+
+  /** Creates the directory of the segment files to each test method. */
+  @Before
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("tiered");
+  }
+
+  /** Deletes the directory of the segment files. */
+  @After
+  public void deleteDirectory() throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      files.forEach(file -> file.toFile().delete());
+    }
+    Files.delete(directory);
+  }
+
+  /**
+   * Tests if sealed events move to a cold segment and queries spanning both
+   * tiers still see all events in order.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldMergeTiers_When_EventsAreSealed() throws Exception {
+    EventStoreImpl reference = new EventStoreImpl();
+    try (TieredEventStore store = new TieredEventStore(directory, 1000, 0)) {
+      for (long timestamp = 0; timestamp < 20_000; timestamp += 2) {
+        store.insert(new Event(TYPE, timestamp));
+        reference.insert(new Event(TYPE, timestamp));
+      }
+
+      assertEquals(5000, store.sealBefore(TYPE, 10_000));
+      assertEquals(1, store.coldSegments(TYPE));
+      assertEquals(5000, store.hotSize(TYPE));
+      assertEquals(10_000, store.size(TYPE));
+      assertTrue(store.estimatedBytes() < reference.estimatedBytes() * 2 / 3);
+
+      assertEquals(timestamps(reference, TYPE, 0, 20_000), timestamps(store, TYPE, 0, 20_000));
+      assertEquals(timestamps(reference, TYPE, 9990, 10_010), timestamps(store, TYPE, 9990, 10_010));
+      assertEquals(timestamps(reference, TYPE, 100, 200), timestamps(store, TYPE, 100, 200));
+    }
+  }
+
+  /**
+   * Tests if segment files left by a store that was not closed are deleted,
+   * so they neither come back in queries nor collide with new segments.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void sealBefore_ShouldReplaceStaleSegments_When_StoreIsRecreated() throws Exception {
+    Files.write(directory.resolve(TYPE + "-1.col"), new byte[] { 1, 2, 3 });
+    Path other = Files.write(directory.resolve("notes.col"), new byte[] { 1 });
+
+    try (TieredEventStore store = new TieredEventStore(directory, 1000, 0)) {
+      for (long timestamp = 0; timestamp < 100; ++timestamp) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+
+      assertEquals(50, store.sealBefore(TYPE, 50));
+      assertEquals(100, timestamps(store, TYPE, Long.MIN_VALUE, Long.MAX_VALUE).size());
+      assertTrue(Files.exists(other));
+    }
+  }
+
+  /**
+   * Tests if an iterator opened before a seal still returns every event once,
+   * including the events moved to the new segment while it was reading.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void query_ShouldReturnAllEvents_When_SealRunsWhileIterating() throws Exception {
+    try (TieredEventStore store = new TieredEventStore(directory, 1000, 0)) {
+      for (long timestamp = 0; timestamp < 1000; ++timestamp) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+
+      eventIterator = store.query(TYPE, 0, 1000);
+      for (long expected = 0; expected < 10; ++expected) {
+        assertTrue(eventIterator.moveNext());
+        assertEquals(expected, eventIterator.current().timestamp());
+      }
+      assertEquals(900, store.sealBefore(TYPE, 900));
+      assertEquals(1, store.coldSegments(TYPE));
+      for (long expected = 10; expected < 1000; ++expected) {
+        assertTrue(eventIterator.moveNext());
+        assertEquals(expected, eventIterator.current().timestamp());
+      }
+      assertFalse(eventIterator.moveNext());
+      assertEquals(1000, store.size(TYPE));
+    }
+  }
+
+  /**
+   * Tests if a removal through an iterator opened before a seal reaches an
+   * event that was moved to the new segment.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void remove_ShouldReachSealedEvent_When_SealRunsAfterRead() throws Exception {
+    try (TieredEventStore store = new TieredEventStore(directory, 1000, 0)) {
+      for (long timestamp = 0; timestamp < 100; ++timestamp) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+
+      eventIterator = store.query(TYPE, 0, 100);
+      assertTrue(eventIterator.moveNext());
+      assertTrue(eventIterator.moveNext());
+      store.sealBefore(TYPE, 50);
+      eventIterator.remove();
+
+      assertEquals(99, store.size(TYPE));
+      assertFalse(timestamps(store, TYPE, 0, 100).contains(1L));
+    }
+  }
+
+  /**
+   * Tests if removals reach cold events and duplicates of cold events are not
+   * inserted again.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void remove_ShouldHideColdEvent_When_RemovedThroughIterator() throws Exception {
+    try (TieredEventStore store = new TieredEventStore(directory, 1000, 0)) {
+      for (long timestamp = 0; timestamp < 100; ++timestamp) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+      store.sealBefore(TYPE, 50);
+      store.insert(new Event(TYPE, 10));
+
+      eventIterator = store.query(TYPE, 10, 12);
+      assertTrue(eventIterator.moveNext());
+      eventIterator.remove();
+      eventIterator.close();
+
+      assertEquals(99, store.size(TYPE));
+      List<Long> remaining = timestamps(store, TYPE, 9, 13);
+      assertEquals(3, remaining.size());
+      assertFalse(remaining.contains(10L));
+
+      store.removeAll(TYPE);
+      assertEquals(0, store.size(TYPE));
+      assertEquals(0, store.coldSegments(TYPE));
+    }
+  }
+
+  /**
+   * Tests if the background job seals the events behind the hot retention.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void migrate_ShouldSealAgedEvents_When_PeriodElapses() throws Exception {
+    try (TieredEventStore store = new TieredEventStore(directory, 100, 10)) {
+      for (long timestamp = 0; timestamp < 1000; ++timestamp) {
+        store.insert(new Event(TYPE, timestamp));
+      }
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (store.hotSize(TYPE) > 101 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+
+      assertEquals(101, store.hotSize(TYPE));
+      assertEquals(1000, store.size(TYPE));
+      assertEquals(0, store.migrationFailures());
+      assertEquals(1000, timestamps(store, TYPE, 0, 1000).size());
+    }
+  }
+
+}
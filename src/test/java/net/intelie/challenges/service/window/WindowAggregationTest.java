@@ -0,0 +1,145 @@
+package net.intelie.challenges.service.window;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStoreChallengeTest;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/**
+ * Unit tests for {@link WindowAggregator} and {@link WindowedAggregation}.
+ */
+public class WindowAggregationTest extends EventStoreChallengeTest {
+
+  /** Type used by the tests. */
+  private static final String TYPE = EventType.TYPE_1.toString();
+
+  /**
+   * Counts the windows starting within a range with one query per window,
+   * which is what the aggregations replace.
+   *
+   * @param store The store to be read.
+   * @param startTime Start of the range of window starts (inclusive).
+   * @param endTime End of the range of window starts (exclusive).
+   * @param spec The window specification.
+   * @return The non-empty windows.
+   * @throws Exception
+   */
+  private static List<WindowResult> countByQueries(EventStoreImpl store, long startTime, long endTime,
+    WindowSpec spec) throws Exception {
+    List<WindowResult> windows = new ArrayList<>();
+    for (long start = PaneWindows.ceilDiv(startTime, spec.slide()) * spec.slide(); start < endTime; start += spec
+      .slide()) {
+      long count = 0;
+      try (EventIterator iterator = store.query(TYPE, start, start + spec.size())) {
+        while (iterator.moveNext()) {
+          ++count;
+        }
+      }
+      if (count > 0) {
+        windows.add(new WindowResult(start, start + spec.size(), count));
+      }
+    }
+    return windows;
+  }
+
+  /**
+   * Creates a store with random events of the test type.
+   *
+   * @param random The source of timestamps.
+   * @return The store.
+   */
+  private static EventStoreImpl randomStore(Random random) {
+    EventStoreImpl store = new EventStoreImpl();
+    for (int i = 0; i < 2000; ++i) {
+      store.insert(new Event(TYPE, random.nextInt(10_000)));
+    }
+    return store;
+  }
+
+  /**
+   * Tests if tumbling and sliding windows match the counts of one query per
+   * window, including slides that do not divide the size.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void aggregate_ShouldMatchQueryCounts_When_WindowsAreAligned() throws Exception {
+    EventStoreImpl store = randomStore(new Random(7));
+    for (WindowSpec spec : Arrays.asList(WindowSpec.tumbling(250), WindowSpec.sliding(300, 200), WindowSpec
+      .sliding(1000, 100), WindowSpec.sliding(50, 120))) {
+      assertEquals(spec.toString(), countByQueries(store, 130, 9500, spec), WindowAggregator.aggregate(store, TYPE,
+        130, 9500, spec));
+    }
+  }
+
+  /**
+   * Tests if sessions are split where events are farther apart than the gap.
+   */
+  @Test
+  public void aggregate_ShouldSplitSessions_When_GapIsExceeded() {
+    EventStoreImpl store = new EventStoreImpl();
+    for (long timestamp : new long[] { 5, 10, 20, 100, 105, 300 }) {
+      store.insert(new Event(TYPE, timestamp));
+    }
+
+    List<WindowResult> expected = Arrays.asList(new WindowResult(10, 31, 2), new WindowResult(100, 116, 2));
+    assertEquals(expected, WindowAggregator.aggregate(store, TYPE, 10, 300, WindowSpec.session(10)));
+  }
+
+  /**
+   * Tests if incremental windows match a single pass after inserts and
+   * removals.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void results_ShouldMatchSinglePass_When_EventsChange() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    WindowSpec spec = WindowSpec.sliding(600, 150);
+    try (WindowedAggregation aggregation = new WindowedAggregation(store, TYPE, spec)) {
+      Random random = new Random(11);
+      for (int i = 0; i < 2000; ++i) {
+        store.insert(new Event(TYPE, random.nextInt(10_000)));
+        store.insert(new Event(EventType.TYPE_2.toString(), random.nextInt(10_000)));
+      }
+      eventIterator = store.query(TYPE, 4000, 6000);
+      while (eventIterator.moveNext()) {
+        eventIterator.remove();
+      }
+
+      assertEquals(WindowAggregator.aggregate(store, TYPE, -1000, 11_000, spec), aggregation.results(-1000, 11_000));
+      store.removeAll(TYPE);
+      assertEquals(0, aggregation.results(Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+  }
+
+  /**
+   * Tests if an incremental session grows and merges as events arrive.
+   */
+  @Test
+  public void results_ShouldMergeSessions_When_EventBridgesThem() {
+    EventStoreImpl store = new EventStoreImpl();
+    try (WindowedAggregation aggregation = new WindowedAggregation(store, TYPE, WindowSpec.session(10))) {
+      store.insert(new Event(TYPE, 100));
+      store.insert(new Event(TYPE, 108));
+      store.insert(new Event(TYPE, 125));
+      assertEquals(2, aggregation.results(0, 1000).size());
+
+      store.insert(new Event(TYPE, 116));
+      assertEquals(Arrays.asList(new WindowResult(100, 136, 4)), aggregation.results(0, 1000));
+      assertEquals(WindowAggregator.aggregate(store, TYPE, 0, 1000, WindowSpec.session(10)), aggregation.results(0,
+        1000));
+    }
+  }
+
+}
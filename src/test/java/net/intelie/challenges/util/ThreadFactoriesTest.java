@@ -0,0 +1,86 @@
+package net.intelie.challenges.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.Test;
+
+import net.intelie.challenges.model.Event;
+import net.intelie.challenges.model.EventType;
+import net.intelie.challenges.service.EventIterator;
+import net.intelie.challenges.service.EventStoreImpl;
+
+/**
+ * Unit tests for {@link ThreadFactories}.
+ */
+public class ThreadFactoriesTest {
+
+  /**
+   * Tests if virtual threads are detected exactly on the runtimes that have
+   * them.
+   */
+  @Test
+  public void virtualThreadsAvailable_ShouldMatchRuntime_When_Called() {
+    String version = System.getProperty("java.specification.version");
+    int feature = version.startsWith("1.") ? 8 : Integer.parseInt(version);
+
+    assertEquals(feature >= 21, ThreadFactories.virtualThreadsAvailable());
+  }
+
+  /**
+   * Tests if both factories create named threads that do not keep the JVM
+   * alive.
+   */
+  @Test
+  public void newThread_ShouldCreateNamedDaemonThread_When_FactoryIsUsed() {
+    for (ThreadFactory factory : new ThreadFactory[] { ThreadFactories.daemon("test-daemon"), ThreadFactories
+      .forBlockingWork("test-blocking") }) {
+      Thread thread = factory.newThread(() -> {
+      });
+
+      assertTrue(thread.isDaemon());
+      assertTrue(thread.getName().startsWith("test-"));
+    }
+  }
+
+  /**
+   * Tests if the store works from many threads created for blocking work,
+   * which are virtual threads on Java 21.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void forBlockingWork_ShouldRunStoreOperations_Over_ManyThreads() throws Exception {
+    EventStoreImpl store = new EventStoreImpl();
+    String type = EventType.TYPE_1.toString();
+    ThreadFactory factory = ThreadFactories.forBlockingWork("test-store-client");
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 500; ++i) {
+      final long offset = i * 100L;
+      threads.add(factory.newThread(() -> {
+        for (long timestamp = offset; timestamp < offset + 100; ++timestamp) {
+          store.insert(new Event(type, timestamp));
+        }
+        try (EventIterator iterator = store.query(type, offset, offset + 50)) {
+          while (iterator.moveNext()) {
+            iterator.remove();
+          }
+        }
+        catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(25_000, store.size(type));
+  }
+
+}
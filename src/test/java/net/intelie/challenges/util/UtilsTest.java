@@ -29,4 +29,31 @@ public class UtilsTest {
     Utils.requireNonNull("Test Object", "Exception message");
   }
 
+  /**
+   * Tests if <code>checkQueryInterval</code> throws
+   * {@link IllegalArgumentException} when start time is bigger than end time.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void checkQueryInterval_ShouldThrowIllegalArgument_When_StartIsBiggerThanEnd() {
+    Utils.checkQueryInterval(2, 1);
+  }
+
+  /**
+   * Tests if <code>checkEventType</code> throws
+   * {@link IllegalArgumentException} when the type is not supported.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void checkEventType_ShouldThrowIllegalArgument_When_TypeIsNotSupported() {
+    Utils.checkEventType("MyType");
+  }
+
+  /**
+   * Tests if <code>checkEvent</code> throws {@link IllegalArgumentException}
+   * when the event is <code>null</code>.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void checkEvent_ShouldThrowIllegalArgument_When_EventIsNull() {
+    Utils.checkEvent(null);
+  }
+
 }